@@ -29,6 +29,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
+import javax.management.ObjectName;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.sql.DataSource;
@@ -53,10 +54,12 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.ode.axis2.deploy.DeploymentPoller;
 import org.apache.ode.axis2.service.DeploymentWebService;
 import org.apache.ode.axis2.service.ManagementService;
+import org.apache.ode.axis2.util.MBeans;
 import org.apache.ode.bpel.connector.BpelServerConnector;
 import org.apache.ode.bpel.dao.BpelDAOConnectionFactory;
 import org.apache.ode.bpel.engine.BpelServerImpl;
 import org.apache.ode.bpel.engine.CountLRUDehydrationPolicy;
+import org.apache.ode.bpel.engine.FootprintDehydrationPolicy;
 import org.apache.ode.bpel.engine.cron.CronScheduler;
 import org.apache.ode.bpel.extvar.jdbc.JdbcExternalVariableModule;
 import org.apache.ode.bpel.iapi.BpelEventListener;
@@ -112,6 +115,10 @@ public class ODEServer {
     
     protected CronScheduler _cronScheduler;
 
+    private ObjectName _schedulerStatisticsName;
+
+    private ObjectName _deadJobsName;
+
     protected Database _db;
 
     private DeploymentPoller _poller;
@@ -287,6 +294,11 @@ public class ODEServer {
                     __log.debug("Error stopping poller.", t);
                 }
 
+            if (_mgtService != null) {
+                _mgtService.disableService();
+                _mgtService = null;
+            }
+
             if (_bpelServer != null)
                 try {
                     __log.debug("shutting down ODE server.");
@@ -306,6 +318,8 @@ public class ODEServer {
                 }
             }
             
+            unregisterSchedulerMBeans();
+
             if (_scheduler != null)
                 try {
                     __log.debug("shutting down scheduler.");
@@ -477,6 +491,7 @@ public class ODEServer {
         _bpelServer = new BpelServerImpl();
         _scheduler = createScheduler();
         _scheduler.setJobProcessor(_bpelServer);
+        registerSchedulerMBeans();
         
         BpelServerImpl.PolledRunnableProcessor polledRunnableProcessor = new BpelServerImpl.PolledRunnableProcessor();
         polledRunnableProcessor.setPolledRunnableExecutorService(_executorService);
@@ -494,7 +509,13 @@ public class ODEServer {
         _bpelServer.setMessageExchangeContext(new MessageExchangeContextImpl(this));
         _bpelServer.setBindingContext(new BindingContextImpl(this));
         _bpelServer.setScheduler(_scheduler);
-        if (_odeConfig.isDehydrationEnabled()) {
+        if (_odeConfig.isDehydrationEnabled() && _odeConfig.getDehydrationMaximumFootprint() > 0) {
+            FootprintDehydrationPolicy dehy = new FootprintDehydrationPolicy();
+            dehy.setProcessMaxAge(_odeConfig.getDehydrationMaximumAge());
+            dehy.setProcessMaxFootprint(_odeConfig.getDehydrationMaximumFootprint());
+            dehy.setMemoryThreshold(_odeConfig.getDehydrationMemoryThreshold());
+            _bpelServer.setDehydrationPolicy(dehy);
+        } else if (_odeConfig.isDehydrationEnabled()) {
             CountLRUDehydrationPolicy dehy = new CountLRUDehydrationPolicy();
             dehy.setProcessMaxAge(_odeConfig.getDehydrationMaximumAge());
             dehy.setProcessMaxCount(_odeConfig.getDehydrationMaximumCount());
@@ -507,6 +528,29 @@ public class ODEServer {
         _bpelServer.setProcessThrottledMaximumSize(_odeConfig.getProcessThrottledMaximumSize());
         _bpelServer.setHydrationLazy(_odeConfig.isHydrationLazy());
         _bpelServer.setHydrationLazyMinimumSize(_odeConfig.getHydrationLazyMinimumSize());
+        _bpelServer.setSoupCompression(_odeConfig.getSoupCompression());
+        _bpelServer.setSoupCacheSize(_odeConfig.getSoupCacheSize());
+        _bpelServer.setRouteIndexSize(_odeConfig.getRouteIndexSize());
+        _bpelServer.setEventWriterCapacity(_odeConfig.getEventWriterCapacity());
+        _bpelServer.setEventWriterBatchSize(_odeConfig.getEventWriterBatchSize());
+        _bpelServer.setVpuStatisticsEnabled(_odeConfig.isVpuStatisticsEnabled());
+        _bpelServer.setDehydrationSoft(_odeConfig.isDehydrationSoft());
+        _bpelServer.setHydrationWarmup(_odeConfig.getHydrationWarmupThreads(), _odeConfig.isHydrationWarmupPrecompile(),
+                new File(_workRoot, "process-traffic.properties"));
+    }
+
+    private void registerSchedulerMBeans() {
+        if (!(_scheduler instanceof SimpleScheduler))
+            return;
+        _schedulerStatisticsName = MBeans.register(((SimpleScheduler) _scheduler).getStatistics(), "SchedulerStatistics");
+        _deadJobsName = MBeans.register(((SimpleScheduler) _scheduler).getDeadJobs(), "DeadJobs");
+    }
+
+    private void unregisterSchedulerMBeans() {
+        MBeans.unregister(_schedulerStatisticsName);
+        _schedulerStatisticsName = null;
+        MBeans.unregister(_deadJobsName);
+        _deadJobsName = null;
     }
 
     private void initHttpConnectionManager() throws ServletException {
@@ -560,6 +604,10 @@ public class ODEServer {
         return _mgtService.getProcessMgmt();
     }
 
+    public ManagementService getManagementService() {
+        return _mgtService;
+    }
+
     public File getAppRoot() {
         return _appRoot;
     }
@@ -674,6 +722,14 @@ public class ODEServer {
                 __log.debug("Ignoring store event: " + pse);
         }
         
+        if (_scheduler instanceof SimpleScheduler) {
+            // Share of the job executor given to the process
+            if (pconf != null && pse.type != ProcessStoreEvent.Type.UNDEPLOYED)
+                ((SimpleScheduler) _scheduler).setProcessShare(pse.pid, pconf.getJobPriority(), pconf.getJobWeight());
+            else
+                ((SimpleScheduler) _scheduler).removeProcessShare(pse.pid);
+        }
+
         if( pconf != null ) {
             if( pse.type == ProcessStoreEvent.Type.UNDEPLOYED) {
                 __log.debug("Cancelling all cron scheduled jobs on store event: " + pse);
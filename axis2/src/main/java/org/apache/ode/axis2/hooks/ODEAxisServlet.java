@@ -59,7 +59,9 @@ public class ODEAxisServlet extends AxisServlet {
     }
 
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-        if (!_browser.doFilter(request, response)) super.doGet(request, response);
+        if (!_browser.doFilter(request, response)
+                && (_odeServer.getManagementService() == null || !_odeServer.getManagementService().doFilter(request, response)))
+            super.doGet(request, response);
     }
 
 
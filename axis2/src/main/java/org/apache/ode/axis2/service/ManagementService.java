@@ -24,6 +24,9 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
+import javax.management.ObjectName;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.wsdl.Definition;
 import javax.wsdl.WSDLException;
 import javax.wsdl.factory.WSDLFactory;
@@ -47,7 +50,10 @@ import org.apache.axis2.util.Utils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.ode.axis2.hooks.ODEAxisService;
+import org.apache.ode.axis2.util.MBeans;
+import org.apache.ode.bpel.engine.BpelServerImpl;
 import org.apache.ode.bpel.engine.ProcessAndInstanceManagementImpl;
+import org.apache.ode.bpel.engine.VpuStatisticsMBean;
 import org.apache.ode.bpel.iapi.BpelServer;
 import org.apache.ode.bpel.iapi.ProcessStore;
 import org.apache.ode.bpel.pmapi.InstanceManagement;
@@ -72,11 +78,21 @@ public class ManagementService {
 
     private ProcessManagement _processMgmt;
     private InstanceManagement _instanceMgmt;
+    private VpuStatisticsMBean _vpuStatistics;
+    private ObjectName _vpuStatisticsName;
+    private ObjectName _routeIndexName;
+    private ObjectName _eventWriterName;
 
     public void enableService(AxisConfiguration axisConfig, BpelServer server, ProcessStore _store, String rootpath) {
         ProcessAndInstanceManagementImpl pm = new ProcessAndInstanceManagementImpl(server, _store);
         _processMgmt = pm;
         _instanceMgmt = pm;
+        if (server instanceof BpelServerImpl) {
+            _vpuStatistics = ((BpelServerImpl) server).getVpuStatistics();
+            _vpuStatisticsName = MBeans.register(_vpuStatistics, "VpuStatistics");
+            _routeIndexName = MBeans.register(((BpelServerImpl) server).getRouteIndex(), "CorrelationRouteIndex");
+            _eventWriterName = MBeans.register(((BpelServerImpl) server).getEventWriter(), "BpelEventWriter");
+        }
 
         Definition def;
         try {
@@ -98,6 +114,28 @@ public class ManagementService {
         }
     }
 
+    public void disableService() {
+        MBeans.unregister(_vpuStatisticsName);
+        _vpuStatisticsName = null;
+        MBeans.unregister(_routeIndexName);
+        _routeIndexName = null;
+        MBeans.unregister(_eventWriterName);
+        _eventWriterName = null;
+    }
+
+    /**
+     * Serves the VPU statistics in the Prometheus text format on GET requests to <code>/metrics</code>; called
+     * directly from the ODEAxisServlet, like the deployment browser.
+     * @return true if the request was handled
+     */
+    public boolean doFilter(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (_vpuStatistics == null || !"/metrics".equals(request.getServletPath()))
+            return false;
+        response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        response.getWriter().write(_vpuStatistics.exportMetrics());
+        return true;
+    }
+
     public ProcessManagement getProcessMgmt() {
         return _processMgmt;
     }
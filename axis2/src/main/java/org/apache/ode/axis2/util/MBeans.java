@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.axis2.util;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ode.utils.jmx.JMXConstants;
+
+/**
+ * Registers the MBeans of the server in the platform MBean server, under the ODE domain.
+ */
+public class MBeans {
+    private static final Log __log = LogFactory.getLog(MBeans.class);
+
+    private MBeans() {
+    }
+
+    /**
+     * Registers an MBean, in place of the one registered under the same name if any.
+     * @param mbean the MBean
+     * @param type type of the MBean, its name in the ODE domain
+     * @return the name of the MBean, or null if it couldn't be registered
+     */
+    public static ObjectName register(Object mbean, String type) {
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(JMXConstants.JMX_DOMAIN, "type", type);
+            if (mbeanServer.isRegistered(name))
+                mbeanServer.unregisterMBean(name);
+            mbeanServer.registerMBean(mbean, name);
+            return name;
+        } catch (Exception e) {
+            __log.warn("Couldn't register the " + type + " MBean.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Unregisters an MBean, if still registered.
+     * @param name the name of the MBean, may be null
+     */
+    public static void unregister(ObjectName name) {
+        if (name == null)
+            return;
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mbeanServer.isRegistered(name))
+                mbeanServer.unregisterMBean(name);
+        } catch (Exception e) {
+            __log.debug("Couldn't unregister the " + name + " MBean.", e);
+        }
+    }
+}
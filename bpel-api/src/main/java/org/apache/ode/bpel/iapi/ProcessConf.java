@@ -173,6 +173,12 @@ public interface ProcessConf {
 
     boolean isEventEnabled(List<String> scopeNames, BpelEvent.TYPE type);
 
+    /**
+     * Gets how the enabled events of the process instances are persisted.
+     * @return persistence mode, {@link EVENT_PERSISTENCE#IMMEDIATE} unless set in the deployment descriptor
+     */
+    EVENT_PERSISTENCE getEventPersistence();
+
     public Map<String, String> getEndpointProperties(EndpointReference epr);
 
     boolean isCleanupCategoryEnabled(boolean instanceSucceeded, CLEANUP_CATEGORY category);
@@ -180,7 +186,49 @@ public interface ProcessConf {
     Set<CLEANUP_CATEGORY> getCleanupCategories(boolean instanceSucceeded);
 
     List<CronJob> getCronJobs();
+
+    /**
+     * Gets the priority of the jobs of the process, relative to the priority class of their type.
+     * @return priority, {@link JOB_PRIORITY#NORMAL} unless set in the deployment descriptor
+     */
+    JOB_PRIORITY getJobPriority();
+
+    /**
+     * Gets the weight of the process when the job executor is shared between processes.
+     * @return weight, between 1 and 1000, 1 unless set in the deployment descriptor
+     */
+    int getJobWeight();
+
+    /**
+     * Tells whether the completed instances of the process are moved to the instance archive.
+     * @param instanceSucceeded whether the instance completed successfully or faulted
+     * @return true if an archive element covering the outcome is set in the deployment descriptor
+     */
+    boolean isArchiveEnabled(boolean instanceSucceeded);
+
+    public enum JOB_PRIORITY {
+        HIGH,
+        NORMAL,
+        LOW;
+
+        public static JOB_PRIORITY fromString(String lowerCase) {
+            return valueOf(JOB_PRIORITY.class, lowerCase.toUpperCase());
+        }
+    }
     
+    public enum EVENT_PERSISTENCE {
+        /** Each event is inserted when it is generated, in the transaction of the instance. */
+        IMMEDIATE,
+        /** The events of an execution of the instance are inserted together, in the transaction of the instance. */
+        DURABLE,
+        /** The events are written in batches by a background writer once the transaction of the instance commits. */
+        ASYNC;
+
+        public static EVENT_PERSISTENCE fromString(String lowerCase) {
+            return valueOf(EVENT_PERSISTENCE.class, lowerCase.toUpperCase());
+        }
+    }
+
     public enum CLEANUP_CATEGORY {
         INSTANCE,
         VARIABLES,
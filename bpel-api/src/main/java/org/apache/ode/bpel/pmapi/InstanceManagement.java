@@ -135,6 +135,17 @@ public interface InstanceManagement {
      */
     InstanceInfoListDocument listInstancesSummary(String filter, String order, int limit);
 
+    /**
+     * List the archives of completed instances, by increasing instance id. The summary information,
+     * the fault and the correlation properties of the instances are listed; their scopes and variables
+     * are kept in the archive document but are no longer available through the scope and variable queries.
+     *
+     * @param filter See listInstances' filter argument, the property criteria don't apply to archives
+     * @param limit maximum number of instances to return
+     * @return list of matching archived instances
+     */
+    InstanceInfoListDocument listArchivedInstances(String filter, int limit);
+
     /**
      * @deprecated As of Ode 1.3, this method is deprecated in favor of 
      *             listInstances(filter, order, limit)
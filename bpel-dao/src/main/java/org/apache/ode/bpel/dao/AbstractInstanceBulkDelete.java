@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.dao;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
+
+/**
+ * Set-based deletion of process instances and their runtime data, shared by the DAO implementations.
+ * Each table is purged with one bulk statement restricted to a list of instance ids; this class owns the
+ * chunking of the id list and the order in which the clean up categories run, the implementations supply
+ * the statements of each category (children before parents) and the way to execute them.
+ */
+public abstract class AbstractInstanceBulkDelete {
+    /**
+     * Some databases limit the number of values of an IN list (1000 for Oracle), larger id lists are
+     * deleted in several rounds.
+     */
+    public static final int MAX_IDS_PER_STATEMENT = 500;
+
+    /**
+     * The order of the categories matters, the instance rows go last.
+     */
+    private static final CLEANUP_CATEGORY[] CATEGORY_ORDER = {
+        CLEANUP_CATEGORY.EVENTS,
+        CLEANUP_CATEGORY.CORRELATIONS,
+        CLEANUP_CATEGORY.MESSAGES,
+        CLEANUP_CATEGORY.VARIABLES,
+        CLEANUP_CATEGORY.INSTANCE
+    };
+
+    /**
+     * Deletes the data of the given categories for the given instances.
+     *
+     * @param iids instance ids
+     * @param categories clean up categories
+     * @return the number of instances processed
+     */
+    public int delete(List<Long> iids, Set<CLEANUP_CATEGORY> categories) {
+        for (int index = 0; index < iids.size(); index += MAX_IDS_PER_STATEMENT) {
+            List<Long> subList = iids.subList(index, Math.min(index + MAX_IDS_PER_STATEMENT, iids.size()));
+            for (CLEANUP_CATEGORY category : CATEGORY_ORDER) {
+                if (categories.contains(category)) delete(category, subList);
+            }
+        }
+        return iids.size();
+    }
+
+    /**
+     * Deletes the data of one category for at most {@link #MAX_IDS_PER_STATEMENT} instances.
+     *
+     * @param category clean up category
+     * @param iids instance ids
+     */
+    protected void delete(CLEANUP_CATEGORY category, List<Long> iids) {
+        for (String statement : getStatements(category)) {
+            execute(statement, iids);
+        }
+    }
+
+    /**
+     * @param category clean up category
+     * @return the bulk delete statements of the category, in execution order, with the instance ids bound
+     *         to the <code>iids</code> parameter
+     */
+    protected abstract String[] getStatements(CLEANUP_CATEGORY category);
+
+    /**
+     * Executes one bulk delete statement.
+     *
+     * @param statement the statement
+     * @param iids the instance ids to bind to the <code>iids</code> parameter
+     */
+    protected abstract void execute(String statement, List<Long> iids);
+}
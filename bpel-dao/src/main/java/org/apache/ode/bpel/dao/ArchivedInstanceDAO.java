@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.dao;
+
+import java.util.Date;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Archive of a completed process instance. The attributes used to search and list the archives
+ * and the correlation properties of the instance have their own columns, the fault, the scopes and
+ * the variables are kept in a compressed document.
+ */
+public interface ArchivedInstanceDAO {
+
+    Long getInstanceId();
+
+    QName getProcessId();
+
+    QName getProcessType();
+
+    /**
+     * @return the final state of the instance
+     * @see org.apache.ode.bpel.common.ProcessState
+     */
+    short getState();
+
+    Date getCreateTime();
+
+    Date getLastActiveTime();
+
+    /**
+     * @return the time at which the instance was archived
+     */
+    Date getArchiveTime();
+
+    /**
+     * @return the correlation properties of the instance, uncompressed, or null if no correlation
+     * set of the instance was initialized
+     */
+    byte[] getCorrelationProperties();
+
+    /**
+     * @return the compressed archive document, or null if the instance had neither fault nor scope
+     */
+    byte[] getData();
+}
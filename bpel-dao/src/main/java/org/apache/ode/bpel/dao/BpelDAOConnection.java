@@ -29,6 +29,7 @@ import javax.xml.namespace.QName;
 import org.apache.ode.bpel.common.BpelEventFilter;
 import org.apache.ode.bpel.common.InstanceFilter;
 import org.apache.ode.bpel.evt.BpelEvent;
+import org.apache.ode.bpel.evt.ProcessInstanceEvent;
 
 
 /**
@@ -80,6 +81,13 @@ public interface BpelDAOConnection {
     void insertBpelEvent(BpelEvent event, ProcessDAO process, 
             ProcessInstanceDAO instance);
 
+    /**
+     * Insert a batch of BPEL events into the database. The process and the instance of each event are the ones
+     * identified by its process id and process instance id (both optional).
+     * @param events BPEL events
+     */
+    void insertBpelEvents(List<ProcessInstanceEvent> events);
+
     /**
      * Execute a query for the timeline for BPEL events matching the criteria.
      * @param ifilter instance filter (optional)
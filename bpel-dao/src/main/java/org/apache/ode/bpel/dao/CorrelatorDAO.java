@@ -100,8 +100,9 @@ public interface CorrelatorDAO {
   /**
    * Remove all routes with the given route-group identifier.
    * @param routeGroupId
+   * @return number of routes removed
    */
-  void removeRoutes(String routeGroupId, ProcessInstanceDAO target);
+  int removeRoutes(String routeGroupId, ProcessInstanceDAO target);
 
     /**
      * @return all routes registered on this correlator, use with care as it can potentially return a lot of values
@@ -1,5 +1,6 @@
 package org.apache.ode.bpel.dao;
 
+import java.util.List;
 import java.util.Set;
 
 import org.apache.ode.bpel.common.InstanceFilter;
@@ -21,4 +22,25 @@ public interface FilteredInstanceDeletable {
      * @return returns the number of instances that are deleted
      */
     int deleteInstances(InstanceFilter filter, Set<CLEANUP_CATEGORY> categories);
+
+    /**
+     * Finds the ids of the instances matching the given instance filter, in increasing order and starting
+     * after the given id. The number of ids returned is limited by the filter limit, so that large purges
+     * can walk through the matching instances one id range at a time.
+     * 
+     * @param filter instance filter
+     * @param afterIid only ids greater than this one are returned
+     * @return the matching instance ids, in increasing order
+     */
+    List<Long> findInstanceIds(InstanceFilter filter, long afterIid);
+
+    /**
+     * Deletes the data of the given clean up categories for the given instances, with one set-based
+     * statement per table rather than row by row.
+     * 
+     * @param iids instance ids
+     * @param categories clean up categories
+     * @return returns the number of instances that are processed
+     */
+    int deleteInstances(List<Long> iids, Set<CLEANUP_CATEGORY> categories);
 }
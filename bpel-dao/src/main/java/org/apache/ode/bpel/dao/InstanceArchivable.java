@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.dao;
+
+import java.util.Collection;
+
+import org.apache.ode.bpel.common.InstanceFilter;
+
+/**
+ * An implementation of this interface keeps the archives of completed process instances in a table
+ * of their own, so that the live instance tables only hold the instances the engine may still need.
+ */
+public interface InstanceArchivable {
+    /**
+     * Stores the archive of the given instance. The instance itself isn't deleted.
+     * 
+     * @param instance completed instance
+     * @param correlationProperties correlation properties of the instance, may be null
+     * @param data compressed archive document, may be null
+     * @return the archive
+     */
+    ArchivedInstanceDAO archiveInstance(ProcessInstanceDAO instance, byte[] correlationProperties, byte[] data);
+
+    /**
+     * @param iid instance id
+     * @return the archive of the instance, or null if the instance isn't archived
+     */
+    ArchivedInstanceDAO getArchivedInstance(Long iid);
+
+    /**
+     * Finds the archives matching the given instance filter. Only the iid, pid, name, namespace, status,
+     * started and last-active criteria apply to archives; they're returned by increasing instance id.
+     * 
+     * @param filter instance filter
+     * @return the matching archives
+     */
+    Collection<ArchivedInstanceDAO> archivedInstanceQuery(InstanceFilter filter);
+}
@@ -24,6 +24,7 @@ import org.w3c.dom.Element;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 import javax.xml.namespace.QName;
@@ -86,6 +87,24 @@ public interface ProcessInstanceDAO {
      */
     void setExecutionState(byte[] execState);
 
+    /**
+     * Get the (opaque) execution state deltas added since the execution state was last cleared of deltas.
+     * @return execution state deltas, in the order they were added
+     */
+    List<byte[]> getExecutionStateDeltas();
+
+    /**
+     * Append an (opaque) execution state delta, to be applied on top of the execution state and of the deltas
+     * added before it.
+     * @param delta execution state delta
+     */
+    void addExecutionStateDelta(byte[] delta);
+
+    /**
+     * Discard the execution state deltas; typically done when the full execution state is set.
+     */
+    void clearExecutionStateDeltas();
+
     /**
      * Get the process.
      *
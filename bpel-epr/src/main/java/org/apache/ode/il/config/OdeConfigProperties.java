@@ -82,11 +82,21 @@ public class OdeConfigProperties {
     public static final String PROP_PROCESS_DEHYDRATION_MAXIMUM_AGE = "process.dehydration.maximum.age";
     
     public static final String PROP_PROCESS_DEHYDRATION_MAXIMUM_COUNT = "process.dehydration.maximum.count";
+
+    public static final String PROP_PROCESS_DEHYDRATION_SOFT = "process.dehydration.soft";
+
+    public static final String PROP_PROCESS_DEHYDRATION_MAXIMUM_FOOTPRINT = "process.dehydration.maximum.footprint";
+
+    public static final String PROP_PROCESS_DEHYDRATION_MEMORY_THRESHOLD = "process.dehydration.memory.threshold";
     
     public static final String PROP_PROCESS_HYDRATION_LAZY = "process.hydration.lazy";
     
     public static final String PROP_PROCESS_HYDRATION_LAZY_MINIMUM_SIZE = "process.hydration.lazy.minimum.size";
     
+    public static final String PROP_PROCESS_HYDRATION_WARMUP_THREADS = "process.hydration.warmup.threads";
+
+    public static final String PROP_PROCESS_HYDRATION_WARMUP_PRECOMPILE = "process.hydration.warmup.precompile";
+
     public static final String PROP_PROCESS_HYDRATION_THROTTLED_MAXIMUM_COUNT = "process.hydration.throttled.maximum.count";
     
     public static final String PROP_PROCESS_HYDRATION_THROTTLED_MAXIMUM_SIZE = "process.hydration.throttled.maximum.size";
@@ -94,6 +104,18 @@ public class OdeConfigProperties {
     public static final String PROP_PROCESS_INSTANCE_THROTTLED_MAXIMUM_COUNT = "process.instance.throttled.maximum.count";
     
     public static final String PROP_DAOCF = "dao.factory";
+
+    public static final String PROP_SOUP_COMPRESSION = "soup.compression";
+
+    public static final String PROP_SOUP_CACHE_SIZE = "soup.cache.size";
+
+    public static final String PROP_VPU_STATISTICS = "vpu.statistics";
+
+    public static final String PROP_ROUTE_INDEX_SIZE = "route.index.size";
+
+    public static final String PROP_EVENT_WRITER_CAPACITY = "event.writer.capacity";
+
+    public static final String PROP_EVENT_WRITER_BATCH_SIZE = "event.writer.batch.size";
     
     public static final String DEFAULT_TX_FACTORY_CLASS_NAME = "org.apache.ode.il.EmbeddedGeronimoFactory";
 
@@ -264,6 +286,27 @@ public class OdeConfigProperties {
     public int getDehydrationMaximumCount() {
         return Integer.valueOf(getProperty(PROP_PROCESS_DEHYDRATION_MAXIMUM_COUNT, ""+1000));
     }
+
+    /**
+     * Maximum footprint (in bytes) of the hydrated processes; 0 (the default) dehydrates on count and age only.
+     */
+    public long getDehydrationMaximumFootprint() {
+        return Long.valueOf(getProperty(PROP_PROCESS_DEHYDRATION_MAXIMUM_FOOTPRINT, "0"));
+    }
+
+    /**
+     * Fraction of the heap above which, after a collection, the footprint of the hydrated processes is shed.
+     */
+    public double getDehydrationMemoryThreshold() {
+        return Double.valueOf(getProperty(PROP_PROCESS_DEHYDRATION_MEMORY_THRESHOLD, "0.8"));
+    }
+
+    /**
+     * Whether dehydrated process models are kept softly reachable for a cheap rehydration.
+     */
+    public boolean isDehydrationSoft() {
+        return Boolean.valueOf(getProperty(PROP_PROCESS_DEHYDRATION_SOFT, "false"));
+    }
     
     public boolean isHydrationLazy() {
         return Boolean.valueOf(getProperty(OdeConfigProperties.PROP_PROCESS_HYDRATION_LAZY, "true"));
@@ -273,6 +316,21 @@ public class OdeConfigProperties {
         return Integer.valueOf(getProperty(OdeConfigProperties.PROP_PROCESS_HYDRATION_LAZY_MINIMUM_SIZE, String.valueOf(0)));
     }
     
+    /**
+     * @return number of threads hydrating the processes in the background when the server starts, 0 to hydrate
+     * them on registration (or lazily)
+     */
+    public int getHydrationWarmupThreads() {
+        return Integer.valueOf(getProperty(PROP_PROCESS_HYDRATION_WARMUP_THREADS, "0"));
+    }
+
+    /**
+     * @return whether the expressions of the processes hydrated in the background are compiled as well
+     */
+    public boolean isHydrationWarmupPrecompile() {
+        return Boolean.valueOf(getProperty(PROP_PROCESS_HYDRATION_WARMUP_PRECOMPILE, "true"));
+    }
+
     public int getProcessThrottledMaximumCount() {
         return Integer.valueOf(getProperty(OdeConfigProperties.PROP_PROCESS_HYDRATION_THROTTLED_MAXIMUM_COUNT, String.valueOf(Integer.MAX_VALUE)));
     }
@@ -289,6 +347,48 @@ public class OdeConfigProperties {
         return getProcessThrottledMaximumSize() == Long.MAX_VALUE;
     }
     
+    /**
+     * Compression of the persisted instance execution state: NONE, FAST or GZIP.
+     */
+    public String getSoupCompression() {
+        return getProperty(OdeConfigProperties.PROP_SOUP_COMPRESSION, "FAST");
+    }
+
+    /**
+     * Maximum number of instance execution states kept deserialized between jobs; 0 disables the cache.
+     */
+    public int getSoupCacheSize() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_SOUP_CACHE_SIZE, "100"));
+    }
+
+    /**
+     * Maximum number of message routes kept in the in-memory correlation index; 0 disables the index.
+     */
+    public int getRouteIndexSize() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_ROUTE_INDEX_SIZE, "10000"));
+    }
+
+    /**
+     * Maximum number of asynchronously persisted events waiting to be written.
+     */
+    public int getEventWriterCapacity() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_EVENT_WRITER_CAPACITY, "10000"));
+    }
+
+    /**
+     * Maximum number of asynchronously persisted events written in one transaction.
+     */
+    public int getEventWriterBatchSize() {
+        return Integer.valueOf(getProperty(OdeConfigProperties.PROP_EVENT_WRITER_BATCH_SIZE, "100"));
+    }
+
+    /**
+     * Whether the Jacob VPU statistics are aggregated per process (and exposed through JMX and /metrics).
+     */
+    public boolean isVpuStatisticsEnabled() {
+        return Boolean.valueOf(getProperty(OdeConfigProperties.PROP_VPU_STATISTICS, "false"));
+    }
+
     public boolean isDbLoggingEnabled() {
         return Boolean.valueOf(getProperty(OdeConfigProperties.PROP_DB_LOGGING, "false"));
     }
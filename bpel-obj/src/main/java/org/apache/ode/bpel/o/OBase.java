@@ -65,6 +65,20 @@ public class OBase implements Serializable {
         return _id;
     }
 
+    /**
+     * Get the debug information of the object. Prefer this to the field: the debug information of a model read
+     * from an indexed compiled process is only materialized on first access.
+     */
+    public DebugInfo getDebugInfo() {
+        if (debugInfo == null) {
+            if (_owner != null)
+                _owner.materializeDebugInfo();
+            else if (this instanceof OProcess)
+                ((OProcess) this).materializeDebugInfo();
+        }
+        return debugInfo;
+    }
+
     public String toString() {
         StringBuffer buf = new StringBuffer(getClass().getSimpleName());
         buf.append('#');
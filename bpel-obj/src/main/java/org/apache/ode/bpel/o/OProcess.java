@@ -66,6 +66,9 @@ public class OProcess extends OBase {
 
     List<OBase> _children = new ArrayList<OBase>();
 
+    /** Serialized debug information of the children, not materialized yet; see {@link Serializer}. */
+    private transient volatile byte[] _debugInfo;
+
     public final HashSet<OExpressionLanguage> expressionLanguages = new HashSet<OExpressionLanguage>();
 
     public final HashMap<QName, OMessageVarType> messageTypes = new HashMap<QName, OMessageVarType>();
@@ -94,6 +97,39 @@ public class OProcess extends OBase {
         return _children;
     }
 
+    /**
+     * Set the serialized debug information of the children, materialized on first access.
+     */
+    void setDebugInfo(byte[] debugInfo) {
+        _debugInfo = debugInfo;
+    }
+
+    /**
+     * Materialize the debug information of the children, if it hasn't been yet.
+     */
+    void materializeDebugInfo() {
+        if (_debugInfo == null)
+            return;
+        synchronized (this) {
+            byte[] serialized = _debugInfo;
+            if (serialized == null)
+                return;
+            try {
+                DebugInfo[] infos = Serializer.readDebugInfo(serialized);
+                if (infos.length > 0)
+                    debugInfo = infos[0];
+                for (OBase child : _children) {
+                    if (child.getId() < infos.length)
+                        child.debugInfo = infos[child.getId()];
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Corrupted debug information of process " + getQName(), e);
+            } finally {
+                _debugInfo = null;
+            }
+        }
+    }
+
     public OScope getScope(String scopeName) {
         throw new UnsupportedOperationException();
     }
@@ -215,5 +251,6 @@ public class OProcess extends OBase {
     	elementTypes.clear();
     	xsdTypes.clear();
     	xslSheets.clear();
+    	_debugInfo = null;
     }
 }
@@ -20,10 +20,26 @@ package org.apache.ode.bpel.o;
 
 import javax.xml.namespace.QName;
 import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 /**
  * Header written at the beginning of every compiled BPEL object file.
+ * <p>
+ * Since {@link #MAGIC_NUMBER_OFH_20090601} the header is followed by an index of the sections of the file: the
+ * serialized {@link OProcess} without the debug information of its objects, then that debug information by
+ * object id. Reading the header never touches the model, and the debug information is only materialized on
+ * first access (see {@link OBase#getDebugInfo()}). When the file is read from a {@link FileInputStream} the
+ * sections are memory-mapped and read straight from the mapping, which is released right after.
+ * </p>
+ * <p>
+ * The scopes and activities are still deserialized along with the process: the runtime reads the public fields
+ * of the model directly, so they can't be materialized on demand.
+ * </p>
  */
 public class Serializer  {
 
@@ -33,10 +49,29 @@ public class Serializer  {
     public static final byte[] MAGIC_NUMBER_OFH_20061101 =
         new byte[]  { 0x55, '5', 'S', 0x00, 'O', 'F', 'H', 0x20, 0x06, 0x11, 0x01  };
 
-    public static final byte[] MAGIC_NUMBER = MAGIC_NUMBER_OFH_20061101;
+    /**
+     * Indexed format. Releases older than this format reject the files written with it as having a bad magic
+     * number: processes compiled by this release must be recompiled to be deployed on an older one.
+     */
+    public static final byte[] MAGIC_NUMBER_OFH_20090601 =
+        new byte[]  { 0x55, '5', 'S', 0x00, 'O', 'F', 'H', 0x20, 0x09, 0x06, 0x01  };
+
+    public static final byte[] MAGIC_NUMBER = MAGIC_NUMBER_OFH_20090601;
 
     public static final short FORMAT_SERIALIZED_JAVA14 = 0x01;
 
+    /** Section holding the serialized {@link OProcess}. */
+    public static final short SECTION_OPROCESS = 0x01;
+
+    /** Section holding the {@link DebugInfo}s of the model, by object id. */
+    public static final short SECTION_DEBUG_INFO = 0x02;
+
+    public final static String COMPILED_PROCESS_MAPPING_DISABLED_NAME =
+        "org.apache.ode.disable.compiledProcessMapping";
+
+    private static final boolean COMPILED_PROCESS_MAPPING_DISABLED =
+        Boolean.getBoolean(COMPILED_PROCESS_MAPPING_DISABLED_NAME);
+
     // START PERSISTED FIELDS
     public final byte[] magic = new byte[MAGIC_NUMBER.length];
 
@@ -60,6 +95,22 @@ public class Serializer  {
 
   // END PERSISTED FIELDS
 
+    /** Offset of the model section from the end of the index, -1 if the file has no index. */
+    private long _modelOffset = -1;
+
+    private long _modelLength;
+
+    /** Offset of the debug information section from the end of the index, -1 if the file has none. */
+    private long _debugInfoOffset = -1;
+
+    private long _debugInfoLength;
+
+    /** Channel of the file being read, if it can be mapped. */
+    private FileChannel _channel;
+
+    /** Position of the end of the index in the file. */
+    private long _dataStart;
+
     public Serializer(long compileTime) {
         System.arraycopy(MAGIC_NUMBER, 0, magic, 0, MAGIC_NUMBER.length);
         this.format = FORMAT_SERIALIZED_JAVA14;
@@ -76,8 +127,7 @@ public class Serializer  {
 
     public void read(InputStream is) throws IOException {
         DataInputStream oin = new DataInputStream(is);
-        byte[] magic = new byte[MAGIC_NUMBER.length];
-        oin.read(magic, 0, magic.length);
+        oin.readFully(magic);
 
         if (Arrays.equals(MAGIC_NUMBER_OFH_20040908, magic)) {
             // Old format requires us to read the OModel to get the type and guid. 
@@ -96,62 +146,214 @@ public class Serializer  {
             
             return;
         }
+        if (Arrays.equals(MAGIC_NUMBER_OFH_20061101, magic)) {
+            readHeader(oin);
+            return;
+        }
         // The current (most recent) scheme
         if (Arrays.equals(MAGIC_NUMBER, magic)) {
-            this.format = oin.readShort();
-            this.compileTime = oin.readLong();
-            this.guid = oin.readUTF();
-            String tns = oin.readUTF();
-            String name = oin.readUTF();
-            this.type = new QName(tns, name);
+            readHeader(oin);
+            int sections = oin.readInt();
+            for (int i = 0; i < sections; ++i) {
+                short kind = oin.readShort();
+                long offset = oin.readLong();
+                long length = oin.readLong();
+                if (kind == SECTION_OPROCESS) {
+                    _modelOffset = offset;
+                    _modelLength = length;
+                } else if (kind == SECTION_DEBUG_INFO) {
+                    _debugInfoOffset = offset;
+                    _debugInfoLength = length;
+                }
+            }
+            if (_modelOffset < 0)
+                throw new IOException("Compiled process has no model section.");
+            if (_debugInfoOffset >= 0 && _debugInfoOffset < _modelOffset + _modelLength)
+                throw new IOException("Debug information section before the end of the model section.");
+            // The DataInputStream doesn't buffer, so the file position is at the end of the index
+            if (is instanceof FileInputStream && !COMPILED_PROCESS_MAPPING_DISABLED) {
+                _channel = ((FileInputStream) is).getChannel();
+                _dataStart = _channel.position();
+            }
             return;
         }
 
         throw new IOException("Unrecognized file format (bad magic number).");
     }
  
+    private void readHeader(DataInputStream oin) throws IOException {
+        this.format = oin.readShort();
+        this.compileTime = oin.readLong();
+        this.guid = oin.readUTF();
+        String tns = oin.readUTF();
+        String name = oin.readUTF();
+        this.type = new QName(tns, name);
+    }
+
+    /**
+     * @return true if the file has an index of its sections, i.e. the model can be read without the header
+     */
+    public boolean isIndexed() {
+        return _modelOffset >= 0;
+    }
+
     public void writeOProcess(OProcess process, OutputStream os) throws IOException {
-        DataOutputStream out = new DataOutputStream(os);
+        ByteArrayOutputStream model = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new CustomObjectOutputStream(model, true);
+        oos.writeObject(process);
+        oos.flush();
+
+        DebugInfo[] infos = new DebugInfo[process._childIdCounter + 1];
+        infos[0] = process.debugInfo;
+        for (OBase child : process.getChildren())
+            infos[child.getId()] = child.debugInfo;
+        ByteArrayOutputStream debugInfo = new ByteArrayOutputStream();
+        oos = new CustomObjectOutputStream(debugInfo);
+        oos.writeObject(infos);
+        oos.flush();
 
+        DataOutputStream out = new DataOutputStream(os);
         out.write(MAGIC_NUMBER);
         out.writeShort(format);
         out.writeLong(compileTime);
         out.writeUTF(process.guid);
         out.writeUTF(process.targetNamespace);
         out.writeUTF(process.processName);
+        out.writeInt(2);
+        out.writeShort(SECTION_OPROCESS);
+        out.writeLong(0);
+        out.writeLong(model.size());
+        out.writeShort(SECTION_DEBUG_INFO);
+        out.writeLong(model.size());
+        out.writeLong(debugInfo.size());
+        model.writeTo(out);
+        debugInfo.writeTo(out);
         out.flush();
-        ObjectOutputStream oos = new CustomObjectOutputStream(os);
-        oos.writeObject(process);
-        oos.flush();
     }
 
     public OProcess readOProcess() throws IOException, ClassNotFoundException {
 //        if (_oprocess != null)
 //            return _oprocess;
         
-        ObjectInputStream ois = new CustomObjectInputStream(_inputStream);
-        OProcess oprocess;
+        if (_channel != null) {
+            long length = Math.max(_modelOffset + _modelLength, _debugInfoOffset + _debugInfoLength);
+            MappedByteBuffer mapping = _channel.map(FileChannel.MapMode.READ_ONLY, _dataStart, length);
+            try {
+                OProcess oprocess = readModel(new ByteBufferInputStream(section(mapping, _modelOffset, _modelLength)));
+                if (_debugInfoOffset >= 0) {
+                    byte[] debugInfo = new byte[(int) _debugInfoLength];
+                    section(mapping, _debugInfoOffset, _debugInfoLength).get(debugInfo);
+                    oprocess.setDebugInfo(debugInfo);
+                }
+                return oprocess;
+            } finally {
+                release(mapping);
+            }
+        }
+
+        InputStream is = _inputStream;
+        if (!isIndexed())
+            return readModel(is);
+        skipFully(is, _modelOffset);
+        BoundedInputStream model = new BoundedInputStream(is, _modelLength);
+        OProcess oprocess = readModel(model);
+        skipFully(model, model.remaining());
+        if (_debugInfoOffset >= 0) {
+            skipFully(is, _debugInfoOffset - _modelOffset - _modelLength);
+            byte[] debugInfo = new byte[(int) _debugInfoLength];
+            new DataInputStream(is).readFully(debugInfo);
+            oprocess.setDebugInfo(debugInfo);
+        }
+        return oprocess;
+    }
+
+    private OProcess readModel(InputStream is) throws IOException {
+        ObjectInputStream ois = new CustomObjectInputStream(is);
         try {
-            oprocess = (OProcess) ois.readObject();
+            return (OProcess) ois.readObject();
         } catch (ClassNotFoundException e) {
             throw new IOException("DataStream Error");
         }
-            
-        return oprocess;
+    }
+
+    /**
+     * Read the debug information section of a model, see {@link OProcess#materializeDebugInfo()}.
+     */
+    static DebugInfo[] readDebugInfo(byte[] section) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new CustomObjectInputStream(new ByteArrayInputStream(section));
+        return (DebugInfo[]) ois.readObject();
+    }
+
+    private static ByteBuffer section(ByteBuffer mapping, long offset, long length) {
+        ByteBuffer section = mapping.duplicate();
+        section.position((int) offset);
+        section.limit((int) (offset + length));
+        return section.slice();
+    }
+
+    private static void skipFully(InputStream is, long skip) throws IOException {
+        while (skip > 0) {
+            long skipped = is.skip(skip);
+            if (skipped <= 0)
+                throw new EOFException();
+            skip -= skipped;
+        }
+    }
+
+    /**
+     * Unmap a buffer right away rather than when it's garbage collected, as an open mapping keeps the file
+     * from being deleted on some platforms. Neither the buffer nor any slice of it may be used afterwards.
+     */
+    private static void release(MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (NoSuchMethodException e) {
+            // Earlier runtimes expose the cleaner of the buffer
+        } catch (Exception e) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (Exception e) {
+            // Released when the buffer is garbage collected
+        }
     }
   
     static class CustomObjectOutputStream extends ObjectOutputStream {
+        private final boolean _stripDebugInfo;
 
         /**
          * @param out
          * @throws IOException
          */
         public CustomObjectOutputStream(OutputStream out) throws IOException {
+            this(out, false);
+        }
+
+        /**
+         * @param out
+         * @param stripDebugInfo whether to write the {@link DebugInfo}s as <code>null</code>
+         * @throws IOException
+         */
+        CustomObjectOutputStream(OutputStream out, boolean stripDebugInfo) throws IOException {
             super(out);
+            _stripDebugInfo = stripDebugInfo;
             enableReplaceObject(true);
         }
         
         protected Object replaceObject(Object obj) throws IOException{
+            if (_stripDebugInfo && obj instanceof DebugInfo)
+                return null;
             if(obj instanceof QName){
                 QName q = (QName)obj;
                 return new OQName(q.getNamespaceURI(), q.getLocalPart(), q.getPrefix());
@@ -198,6 +400,96 @@ public class Serializer  {
       
     }
   
+    /**
+     * Stream over a (mapped) buffer, so that the model is deserialized without copying the file.
+     */
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer _buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+
+        public int read() {
+            return _buffer.hasRemaining() ? _buffer.get() & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!_buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, _buffer.remaining());
+            _buffer.get(b, off, len);
+            return len;
+        }
+
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, _buffer.remaining()));
+            _buffer.position(_buffer.position() + skipped);
+            return skipped;
+        }
+
+        public int available() {
+            return _buffer.remaining();
+        }
+    }
+
+    /**
+     * Stream over the first bytes of another stream, so that reading a section never goes past its end.
+     */
+    static class BoundedInputStream extends FilterInputStream {
+        private long _remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            _remaining = length;
+        }
+
+        long remaining() {
+            return _remaining;
+        }
+
+        public int read() throws IOException {
+            if (_remaining <= 0)
+                return -1;
+            int b = in.read();
+            if (b >= 0)
+                --_remaining;
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (_remaining <= 0)
+                return -1;
+            int read = in.read(b, off, (int) Math.min(len, _remaining));
+            if (read > 0)
+                _remaining -= read;
+            return read;
+        }
+
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, _remaining));
+            if (skipped > 0)
+                _remaining -= skipped;
+            return skipped;
+        }
+
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), _remaining);
+        }
+
+        public boolean markSupported() {
+            return false;
+        }
+
+        public void close() {
+            // The underlying stream holds the next sections
+        }
+    }
+
     static class OQName implements Serializable{
        
         private static final long serialVersionUID = 1L; 
@@ -21,10 +21,17 @@ package org.apache.ode.bpel.o;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
 
+import javax.xml.namespace.QName;
+
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -163,4 +170,107 @@ public class SerializerTest {
 			if( is != null ) is.close();
 		}
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testIndexedFormat() throws Exception {
+		OProcess process = newProcess();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new Serializer(1234L).writeOProcess(process, baos);
+
+		Serializer ofh = new Serializer(new ByteArrayInputStream(baos.toByteArray()));
+		assertTrue(ofh.isIndexed());
+		assertEquals(1234L, ofh.compileTime);
+		assertEquals("guid-1", ofh.guid);
+		assertEquals(new QName("urn:test", "process"), ofh.type);
+		OProcess read = ofh.readOProcess();
+		assertEquals("guid-1", read.guid);
+		assertEquals("process", read.processName);
+		// materialized on first access
+		assertNull(read.getChild(1).debugInfo);
+		assertDebugInfo(read);
+	}
+
+	@Test
+	public void testTruncatedHeader() throws Exception {
+		try {
+			new Serializer(new ByteArrayInputStream(new byte[] { 0x55, '5', 'S' }));
+			fail("Truncated magic number accepted");
+		} catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void testMappedModel() throws Exception {
+		File cbp = File.createTempFile("process", ".cbp");
+		try {
+			FileOutputStream fos = new FileOutputStream(cbp);
+			try {
+				new Serializer(1234L).writeOProcess(newProcess(), fos);
+			} finally {
+				fos.close();
+			}
+
+			FileInputStream fis = new FileInputStream(cbp);
+			try {
+				Serializer ofh = new Serializer(fis);
+				assertEquals("guid-1", ofh.guid);
+				OProcess read = ofh.readOProcess();
+				assertEquals("urn:test", read.targetNamespace);
+				assertEquals("guid-1", read.guid);
+				// read from a copy once the mapping is released
+				assertDebugInfo(read);
+			} finally {
+				fis.close();
+			}
+		} finally {
+			assertTrue(cbp.delete());
+		}
+	}
+
+	@Test
+	public void testPreviousFormat() throws Exception {
+		OProcess process = newProcess();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		out.write(Serializer.MAGIC_NUMBER_OFH_20061101);
+		out.writeShort(Serializer.FORMAT_SERIALIZED_JAVA14);
+		out.writeLong(1234L);
+		out.writeUTF(process.guid);
+		out.writeUTF(process.targetNamespace);
+		out.writeUTF(process.processName);
+		out.flush();
+		ObjectOutputStream oos = new Serializer.CustomObjectOutputStream(baos);
+		oos.writeObject(process);
+		oos.flush();
+
+		Serializer ofh = new Serializer(new ByteArrayInputStream(baos.toByteArray()));
+		assertFalse(ofh.isIndexed());
+		assertEquals(new QName("urn:test", "process"), ofh.type);
+		OProcess read = ofh.readOProcess();
+		assertEquals("guid-1", read.guid);
+		// read along with the model
+		assertNotNull(read.getChild(1).debugInfo);
+		assertDebugInfo(read);
+	}
+
+	private OProcess newProcess() {
+		OProcess process = new OProcess("2.0");
+		process.guid = "guid-1";
+		process.targetNamespace = "urn:test";
+		process.processName = "process";
+		process.debugInfo = new DebugInfo("process.bpel", 1, 40, null);
+		OProcess.OProperty property = new OProcess.OProperty(process);
+		property.name = new QName("urn:test", "orderId");
+		property.debugInfo = new DebugInfo("process.bpel", 12, null);
+		process.properties.add(property);
+		return process;
+	}
+
+	private void assertDebugInfo(OProcess process) {
+		assertEquals(1, process.getDebugInfo().startLine);
+		OBase property = process.getChild(1);
+		assertEquals(new QName("urn:test", "orderId"), ((OProcess.OProperty) property).name);
+		assertEquals(12, property.getDebugInfo().startLine);
+		assertEquals("process.bpel", property.getDebugInfo().sourceURI);
+	}
+}
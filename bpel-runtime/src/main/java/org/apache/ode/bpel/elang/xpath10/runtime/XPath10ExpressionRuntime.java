@@ -48,6 +48,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * XPath 1.0 Expression Language run-time subsytem.
@@ -56,8 +57,8 @@ public class XPath10ExpressionRuntime implements ExpressionLanguageRuntime {
     /** Class-level logger. */
     private static final Log __log = LogFactory.getLog(XPath10ExpressionRuntime.class);
 
-    /** Compiled expression cache. */
-    private final Map<String, XPath> _compiledExpressions = new HashMap<String, XPath>();
+    /** Compiled expression cache, filled concurrently by the instances and the warm-up. */
+    private final Map<String, XPath> _compiledExpressions = new ConcurrentHashMap<String, XPath>();
 
     /** Registered extension functions. */
     private final Map _extensionFunctions = new HashMap();
@@ -169,13 +170,26 @@ public class XPath10ExpressionRuntime implements ExpressionLanguageRuntime {
         return jctx;
     }
 
+    /**
+     * Compile an expression ahead of its first evaluation.
+     * @return <code>false</code> if the expression isn't an XPath 1.0 one
+     */
+    public boolean precompile(OExpression cexp) throws EvaluationException {
+        if (!(cexp instanceof OXPath10Expression))
+            return false;
+        try {
+            compile((OXPath10Expression) cexp);
+        } catch (JaxenException je) {
+            throw new EvaluationException(je.getMessage(), je);
+        }
+        return true;
+    }
+
     private XPath compile(OXPath10Expression exp) throws JaxenException {
         XPath xpath = _compiledExpressions.get(exp.xpath);
         if (xpath == null) {
             xpath = new DOMXPath(exp.xpath);
-            synchronized (_compiledExpressions) {
-                _compiledExpressions.put(exp.xpath, xpath);
-            }
+            _compiledExpressions.put(exp.xpath, xpath);
         }
         return xpath;
     }
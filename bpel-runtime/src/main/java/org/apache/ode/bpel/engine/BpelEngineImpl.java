@@ -26,6 +26,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import javax.wsdl.Operation;
@@ -60,6 +64,7 @@ import org.apache.ode.bpel.o.OConstants;
 import org.apache.ode.bpel.o.OPartnerLink;
 import org.apache.ode.bpel.o.OProcess;
 import org.apache.ode.bpel.runtime.InvalidProcessException;
+import org.apache.ode.jacob.vpu.ExecutionQueueImpl;
 import org.apache.ode.utils.DOMUtils;
 import org.apache.ode.utils.Namespaces;
 import org.apache.ode.utils.msg.MessageBundle;
@@ -117,9 +122,19 @@ public class BpelEngineImpl implements BpelEngine {
 
     private final Map<QName, Long> _hydratedSizes = new HashMap<QName, Long>();
     private final Map<QName, Long> _unhydratedSizes = new HashMap<QName, Long>();
+
+    /** Execution queues of recently executed instances. */
+    final ExecutionQueueCache _soupCache = new ExecutionQueueCache(100);
+
+    /** Message routes of the instances, by correlation key. */
+    final CorrelationRouteIndex _routeIndex = new CorrelationRouteIndex(10000);
+
+    /** Background writer of the events of the processes that persist them asynchronously. */
+    final BpelEventWriter _eventWriter;
     
     public BpelEngineImpl(Contexts contexts) {
         _contexts = contexts;
+        _eventWriter = new BpelEventWriter(contexts);
         _sharedEps = new SharedEndpoints();
         _sharedEps.init();
     }
@@ -554,6 +569,14 @@ public class BpelEngineImpl implements BpelEngine {
         return hydratedFootprint;
     }
     
+    long getProcessSize(QName processId) {
+        Long size = _hydratedSizes.get(processId);
+        if (size == null) {
+            size = _unhydratedSizes.get(processId);
+        }
+        return size == null ? 0 : size.longValue();
+    }
+
     public long getHydratedProcessSize(QName processName) {
         return getHydratedProcessSize(_activeProcesses.get(processName));
     }
@@ -593,6 +616,58 @@ public class BpelEngineImpl implements BpelEngine {
     private int _processThrottledMaximumCount = Integer.MAX_VALUE;
     private int _instanceThrottledMaximumCount = Integer.MAX_VALUE;
     private boolean _hydrationThrottled = false;
+    private ExecutionQueueImpl.Compression _soupCompression = ExecutionQueueImpl.Compression.FAST;
+
+    public ExecutionQueueImpl.Compression getSoupCompression() {
+        return _soupCompression;
+    }
+
+    public void setSoupCompression(ExecutionQueueImpl.Compression soupCompression) {
+        this._soupCompression = soupCompression;
+    }
+
+    private boolean _dehydrationSoft;
+
+    public boolean isDehydrationSoft() {
+        return _dehydrationSoft;
+    }
+
+    public void setDehydrationSoft(boolean dehydrationSoft) {
+        _dehydrationSoft = dehydrationSoft;
+    }
+
+    public int getSoupCacheSize() {
+        return _soupCache.getMaximumSize();
+    }
+
+    public void setSoupCacheSize(int soupCacheSize) {
+        _soupCache.setMaximumSize(soupCacheSize);
+    }
+
+    /** Threads of the processes reducing continuations in parallel, created on first use. */
+    private ExecutorService _reductionExecutor;
+
+    synchronized Executor getReductionExecutor() {
+        if (_reductionExecutor == null) {
+            _reductionExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                int threadNumber = 0;
+                public Thread newThread(Runnable r) {
+                    threadNumber += 1;
+                    Thread t = new Thread(r, "ODEReduction-" + threadNumber);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return _reductionExecutor;
+    }
+
+    synchronized void shutdownReductionExecutor() {
+        if (_reductionExecutor != null) {
+            _reductionExecutor.shutdown();
+            _reductionExecutor = null;
+        }
+    }
 
     public void setInstanceThrottledMaximumCount(
             int instanceThrottledMaximumCount) {
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ode.bpel.evt.ProcessInstanceEvent;
+import org.apache.ode.bpel.iapi.ProcessConf;
+
+/**
+ * Writes the events of the processes that persist them asynchronously, see
+ * {@link ProcessConf.EVENT_PERSISTENCE#ASYNC}. The events of an instance are queued once its transaction
+ * commits, and a background thread writes them to the database in batches, one transaction per batch.
+ * <p>
+ * The queue is bounded: when the database can't keep up, events are dropped rather than holding up the
+ * instances. Events still queued when the server goes down abruptly are lost as well; that's the price of
+ * taking the event inserts out of the transactions of the instances.
+ * </p>
+ */
+public class BpelEventWriter implements BpelEventWriterMBean, Runnable {
+    private static final Log __log = LogFactory.getLog(BpelEventWriter.class);
+
+    /** How long the writer waits for an event before checking whether it should stop. */
+    private static final long POLL_MS = 500;
+
+    private final Contexts _contexts;
+
+    private volatile BlockingQueue<ProcessInstanceEvent> _queue = new ArrayBlockingQueue<ProcessInstanceEvent>(10000);
+
+    private volatile int _batchSize = 100;
+
+    private volatile boolean _running;
+
+    private Thread _thread;
+
+    private final AtomicLong _written = new AtomicLong();
+
+    private final AtomicLong _dropped = new AtomicLong();
+
+    private final AtomicLong _failed = new AtomicLong();
+
+    BpelEventWriter(Contexts contexts) {
+        _contexts = contexts;
+    }
+
+    /**
+     * Set the maximum number of queued events. Ignored once the writer is running.
+     */
+    synchronized void setCapacity(int capacity) {
+        if (_thread == null)
+            _queue = new ArrayBlockingQueue<ProcessInstanceEvent>(Math.max(1, capacity));
+    }
+
+    void setBatchSize(int batchSize) {
+        _batchSize = Math.max(1, batchSize);
+    }
+
+    synchronized void start() {
+        if (_thread != null)
+            return;
+        _running = true;
+        _thread = new Thread(this, "ODEEventWriter");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * Stop the writer, once the events queued so far have been written.
+     */
+    synchronized void stop() {
+        if (_thread == null)
+            return;
+        _running = false;
+        try {
+            _thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _thread = null;
+    }
+
+    /**
+     * Queue the events of a committed transaction for writing.
+     */
+    void enqueue(List<ProcessInstanceEvent> events) {
+        for (ProcessInstanceEvent event : events) {
+            if (!_queue.offer(event) && _dropped.incrementAndGet() % 1000 == 1)
+                __log.warn("Event queue full, dropping events (" + _dropped.get() + " dropped so far).");
+        }
+    }
+
+    public void run() {
+        List<ProcessInstanceEvent> batch = new ArrayList<ProcessInstanceEvent>();
+        // Once stopped, drain the queue before leaving
+        while (_running || !_queue.isEmpty()) {
+            try {
+                ProcessInstanceEvent event = _queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (event == null)
+                    continue;
+                batch.add(event);
+            } catch (InterruptedException e) {
+                break;
+            }
+            _queue.drainTo(batch, _batchSize - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<ProcessInstanceEvent> batch) {
+        try {
+            insert(batch);
+            _written.addAndGet(batch.size());
+        } catch (Exception e) {
+            if (batch.size() > 1) {
+                // Isolate the events that can't be written (e.g. their instance has been deleted since)
+                if (__log.isDebugEnabled())
+                    __log.debug("Couldn't write a batch of " + batch.size() + " events, writing them one by one.", e);
+                for (ProcessInstanceEvent event : batch)
+                    write(Collections.singletonList(event));
+            } else if (_failed.incrementAndGet() % 1000 == 1) {
+                __log.warn("Couldn't write an event of instance " + batch.get(0).getProcessInstanceId() + " ("
+                        + _failed.get() + " failed so far).", e);
+            }
+        }
+    }
+
+    private void insert(final List<ProcessInstanceEvent> events) throws Exception {
+        _contexts.scheduler.execTransaction(new Callable<Void>() {
+            public Void call() throws Exception {
+                _contexts.dao.getConnection().insertBpelEvents(events);
+                return null;
+            }
+        });
+    }
+
+    public int getQueued() {
+        return _queue.size();
+    }
+
+    public int getCapacity() {
+        return _queue.size() + _queue.remainingCapacity();
+    }
+
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    public long getWritten() {
+        return _written.get();
+    }
+
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    public long getFailed() {
+        return _failed.get();
+    }
+
+    public void reset() {
+        _written.set(0);
+        _dropped.set(0);
+        _failed.set(0);
+    }
+}
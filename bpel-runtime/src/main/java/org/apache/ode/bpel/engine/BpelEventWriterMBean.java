@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+/**
+ * Management interface of the background writer of the asynchronously persisted events, see
+ * {@link BpelEventWriter}.
+ */
+public interface BpelEventWriterMBean {
+
+    /**
+     * @return the number of events waiting to be written
+     */
+    int getQueued();
+
+    int getCapacity();
+
+    int getBatchSize();
+
+    /**
+     * @return the number of events written to the database
+     */
+    long getWritten();
+
+    /**
+     * @return the number of events dropped because the queue was full
+     */
+    long getDropped();
+
+    /**
+     * @return the number of events that couldn't be written to the database
+     */
+    long getFailed();
+
+    void reset();
+}
@@ -19,6 +19,7 @@
 package org.apache.ode.bpel.engine;
 
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Date;
@@ -30,6 +31,7 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.namespace.QName;
 
@@ -58,10 +60,14 @@ import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
 import org.apache.ode.bpel.intercept.InstanceCountThrottler;
 import org.apache.ode.bpel.intercept.InterceptorInvoker;
 import org.apache.ode.bpel.intercept.MessageExchangeInterceptor;
+import org.apache.ode.bpel.o.OBase;
 import org.apache.ode.bpel.o.OElementVarType;
+import org.apache.ode.bpel.o.OEventHandler;
+import org.apache.ode.bpel.o.OExpression;
 import org.apache.ode.bpel.o.OExpressionLanguage;
 import org.apache.ode.bpel.o.OMessageVarType;
 import org.apache.ode.bpel.o.OPartnerLink;
+import org.apache.ode.bpel.o.OPickReceive;
 import org.apache.ode.bpel.o.OProcess;
 import org.apache.ode.bpel.o.Serializer;
 import org.apache.ode.bpel.runtime.ExpressionLanguageRuntimeRegistry;
@@ -107,10 +113,14 @@ public class BpelProcess {
 
     final QName _pid;
     private volatile OProcess _oprocess;
+    /** Model kept after a soft dehydration, reused on rehydration unless the garbage collector claimed it. */
+    private SoftReference<OProcess> _dehydratedOProcess;
     // Has the process already been hydrated before?
     private boolean _hydratedOnce = false;
     /** Last time the process was used. */
     private volatile long _lastUsed;
+    /** Number of times the process was used. */
+    private final AtomicLong _useCount = new AtomicLong();
 
     BpelEngineImpl _engine;
     ClassLoader _classLoader = getClass().getClassLoader();
@@ -131,10 +141,16 @@ public class BpelProcess {
 
     private ExternalVariableManager _evm;
 
+    /** Correlators with routes delivering messages to all the matching instances, computed lazily. */
+    private volatile Set<String> _broadcastCorrelators;
+
     public static final QName PROP_PATH = new QName("PATH"); 
     public static final QName PROP_SVG = new QName("SVG"); 
     public static final QName PROP_LAZY_HYDRATE = new QName("process.hydration.lazy");
     public static final QName PROP_MAX_INSTANCES = new QName("process.instance.throttled.maximum.count");
+    public static final QName PROP_MAX_STATE_DELTAS = new QName("process.instance.state.delta.maximum.count");
+    public static final QName PROP_FAST_EXECUTION_QUEUE = new QName("process.instance.execution.queue.fast");
+    public static final QName PROP_REDUCTION_PARALLELISM = new QName("process.instance.reduction.parallelism");
     
     // The ratio of in-memory vs serialized size of compiled bpel object.
     private static final int PROCESS_MEMORY_TO_SERIALIZED_SIZE_RATIO = 5;
@@ -530,7 +546,32 @@ public class BpelProcess {
     }
 
     /**
-     * De-serialize the compiled process representation from a stream.
+     * Check whether some receive, pick or event handler of the process routes the messages of a correlator to
+     * all the matching instances, in which case the correlation route index can't be used for it.
+     */
+    boolean hasBroadcastRoutes(String correlatorId) {
+        Set<String> correlators = _broadcastCorrelators;
+        if (correlators == null) {
+            correlators = new HashSet<String>();
+            for (OBase child : getOProcess().getChildren()) {
+                if (child instanceof OPickReceive.OnMessage) {
+                    OPickReceive.OnMessage onMessage = (OPickReceive.OnMessage) child;
+                    if ("all".equals(onMessage.route))
+                        correlators.add(genCorrelatorId(onMessage.partnerLink, onMessage.operation.getName()));
+                } else if (child instanceof OEventHandler.OEvent) {
+                    OEventHandler.OEvent onEvent = (OEventHandler.OEvent) child;
+                    if ("all".equals(onEvent.route))
+                        correlators.add(genCorrelatorId(onEvent.partnerLink, onEvent.operation.getName()));
+                }
+            }
+            _broadcastCorrelators = correlators;
+        }
+        return correlators.contains(correlatorId);
+    }
+
+    /**
+     * De-serialize the compiled process representation from a stream. The model retained by a soft dehydration
+     * is reused if the compiled process still has the same guid, only the header is read then.
      *
      * @param is
      *            input stream
@@ -539,6 +580,13 @@ public class BpelProcess {
     private OProcess deserializeCompiledProcess(InputStream is) throws Exception {
         OProcess compiledProcess;
         Serializer ofh = new Serializer(is);
+        compiledProcess = _dehydratedOProcess == null ? null : _dehydratedOProcess.get();
+        _dehydratedOProcess = null;
+        if (compiledProcess != null && ofh.isIndexed() && ofh.guid.equals(compiledProcess.guid)) {
+            if (__log.isDebugEnabled())
+                __log.debug("Reusing the softly dehydrated model of process " + _pid);
+            return compiledProcess;
+        }
         compiledProcess = ofh.readOProcess();
         return compiledProcess;
     }
@@ -677,15 +725,26 @@ public class BpelProcess {
     }
 
     public void saveEvent(ProcessInstanceEvent event, ProcessInstanceDAO instanceDao, List<String> scopeNames) {
+        saveEvent(event, instanceDao, scopeNames, null);
+    }
+
+    /**
+     * @param batch events of the instance persisted together later on, see {@link ProcessConf#getEventPersistence()};
+     * <code>null</code> to insert the event right away
+     */
+    void saveEvent(ProcessInstanceEvent event, ProcessInstanceDAO instanceDao, List<String> scopeNames,
+            List<ProcessInstanceEvent> batch) {
         markused();
         if (_pconf.isEventEnabled(scopeNames, event.getType())) {
             // notify the listeners
             _engine.fireEvent(event);
 
-            if (instanceDao != null)
-                instanceDao.insertBpelEvent(event);
-            else
+            if (instanceDao == null)
                 __log.debug("Couldn't find instance to save event, no event generated!");
+            else if (batch != null)
+                batch.add(event);
+            else
+                instanceDao.insertBpelEvent(event);
         }
     }
 
@@ -713,6 +772,32 @@ public class BpelProcess {
         }
     }
 
+    /**
+     * Compile the expressions of the process ahead of their first evaluation, hydrating it if needed.
+     * @return the number of expressions compiled
+     */
+    int precompileExpressions() {
+        try {
+            _hydrationLatch.latch(1);
+            int compiled = 0;
+            for (OBase child : _oprocess.getChildren()) {
+                if (!(child instanceof OExpression))
+                    continue;
+                try {
+                    if (_expLangRuntimeRegistry.precompile((OExpression) child))
+                        compiled++;
+                } catch (EvaluationException e) {
+                    // Will fail again when evaluated, with the proper fault
+                    if (__log.isDebugEnabled())
+                        __log.debug("Couldn't precompile expression " + child + " of process " + _pid, e);
+                }
+            }
+            return compiled;
+        } finally {
+            _hydrationLatch.release(1);
+        }
+    }
+
     public OProcess getOProcess() {
         try {
             _hydrationLatch.latch(1);
@@ -771,6 +856,10 @@ public class BpelProcess {
         return _lastUsed;
     }
 
+    public long getUseCount() {
+        return _useCount.get();
+    }
+
     QName getProcessType() {
         return _pconf.getType();
     }
@@ -785,6 +874,7 @@ public class BpelProcess {
     /** Keep track of the time the process was last used. */
     private final void markused() {
         _lastUsed = System.currentTimeMillis();
+        _useCount.incrementAndGet();
     }
 
     /** Create a version-appropriate runtime context. */
@@ -810,8 +900,13 @@ public class BpelProcess {
         }
 
         private void doDehydrate() {
+            _engine._soupCache.removeProcess(_pid);
             if (_oprocess != null) {
-                _oprocess.dehydrate();
+                if (_engine.isDehydrationSoft()) {
+                    _dehydratedOProcess = new SoftReference<OProcess>(_oprocess);
+                } else {
+                    _oprocess.dehydrate();
+                }
                 _oprocess = null;
             }
             if (_myRoles != null) {
@@ -838,7 +933,8 @@ public class BpelProcess {
         }
 
         private void doHydrate() {
-            markused();
+            // Not a use: the warm-up would otherwise count as traffic and keep itself going
+            _lastUsed = System.currentTimeMillis();
             __log.debug("Rehydrating process " + _pconf.getProcessId());
             try {
                 InputStream inputStream = _pconf.getCBPInputStream();
@@ -1010,6 +1106,10 @@ public class BpelProcess {
         return _pconf.getCleanupCategories(instanceSucceeded);
     }
 
+    public boolean isArchiveEnabled(boolean instanceSucceeded) {
+        return !isInMemory() && _pconf.isArchiveEnabled(instanceSucceeded);
+    }
+
     public Node getProcessProperty(QName propertyName) {
         Map<QName, Node> properties = _pconf.getProcessProperties();
         if (properties != null) {
@@ -1097,11 +1197,63 @@ public class BpelProcess {
         return Integer.valueOf(getProcessProperty(PROP_MAX_INSTANCES, Integer.toString(_engine.getInstanceThrottledMaximumCount())));
     }
 
+    /**
+     * Maximum number of execution state deltas written on top of a full execution state before the
+     * latter is rewritten; 0 (the default) always writes the full execution state.
+     */
+    public int getMaximumStateDeltaCount() {
+        return getIntProcessProperty(PROP_MAX_STATE_DELTAS, 0, 0);
+    }
+
+    /**
+     * Whether the instances run on a {@link org.apache.ode.jacob.vpu.FastExecutionQueueImpl}; off by default.
+     */
+    public boolean isFastExecutionQueue() {
+        return Boolean.valueOf(getProcessProperty(PROP_FAST_EXECUTION_QUEUE, "false"));
+    }
+
+    /**
+     * Maximum number of independent continuations of an instance reduced in parallel; 1 (the default)
+     * reduces them one at a time.
+     */
+    public int getReductionParallelism() {
+        return getIntProcessProperty(PROP_REDUCTION_PARALLELISM, 1, 1);
+    }
+
+    /**
+     * @return the value of an integer process property, at least the given minimum; the default value if the
+     * property isn't set or isn't a number
+     */
+    private int getIntProcessProperty(QName property, int defaultValue, int min) {
+        String value = getProcessProperty(property, null);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Math.max(min, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            __log.warn("Invalid value " + value + " of property " + property + " of process " + _pid
+                    + ", using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
     public long getEstimatedHydratedSize() {
         return _pconf.getCBPFileSize() * 
                     PROCESS_MEMORY_TO_SERIALIZED_SIZE_RATIO;
     }
 
+    public long getCBPFileSize() {
+        return _pconf.getCBPFileSize();
+    }
+
+    /**
+     * @return the footprint of the process as last measured by the engine, or its estimated hydrated size
+     */
+    public long getFootprint() {
+        long footprint = _engine.getProcessSize(_pid);
+        return footprint > 0 ? footprint : getEstimatedHydratedSize();
+    }
+
     public long getTimeout(OPartnerLink partnerLink, boolean p2p) {
         // OPartnerLink, PartnerLinkPartnerRoleImpl
         final PartnerLinkPartnerRoleImpl linkPartnerRole = _partnerRoles.get(partnerLink);
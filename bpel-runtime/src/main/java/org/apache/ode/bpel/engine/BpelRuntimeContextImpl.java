@@ -28,6 +28,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.CRC32;
 
 import javax.wsdl.Operation;
 import javax.xml.namespace.QName;
@@ -69,6 +70,7 @@ import org.apache.ode.bpel.iapi.Scheduler;
 import org.apache.ode.bpel.iapi.MessageExchange.FailureType;
 import org.apache.ode.bpel.iapi.MessageExchange.MessageExchangePattern;
 import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
+import org.apache.ode.bpel.iapi.ProcessConf.EVENT_PERSISTENCE;
 import org.apache.ode.bpel.intercept.InterceptorInvoker;
 import org.apache.ode.bpel.memdao.ProcessInstanceDaoImpl;
 import org.apache.ode.bpel.o.OMessageVarType;
@@ -90,7 +92,9 @@ import org.apache.ode.bpel.runtime.channels.InvokeResponseChannel;
 import org.apache.ode.bpel.runtime.channels.PickResponseChannel;
 import org.apache.ode.bpel.runtime.channels.TimerResponseChannel;
 import org.apache.ode.jacob.JacobRunnable;
+import org.apache.ode.jacob.soup.ReplacementMap;
 import org.apache.ode.jacob.vpu.ExecutionQueueImpl;
+import org.apache.ode.jacob.vpu.FastExecutionQueueImpl;
 import org.apache.ode.jacob.vpu.JacobVPU;
 import org.apache.ode.utils.DOMUtils;
 import org.apache.ode.utils.GUID;
@@ -119,6 +123,21 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
     /** JACOB ExecutionQueue (state) */
     protected ExecutionQueueImpl _soup;
 
+    /** Size of the full execution state in the DAO, and number and total size of the deltas written on top of it. */
+    private int _stateSize;
+
+    private int _stateDeltaCount;
+
+    private int _stateDeltaSize;
+
+    /** Checksum of the execution state and deltas in the DAO, when execution queues are cached. */
+    private CRC32 _stateCrc;
+
+    /** Checks the execution queue into the cache at the end of the transaction, once a state was written. */
+    private ExecutionQueueCache.Checkin _cacheCheckin;
+
+    private ReplacementMap _replacementMap;
+
     private MyRoleMessageExchangeImpl _instantiatingMessageExchange;
 
     protected OutstandingRequestManager _outstandingRequests;
@@ -130,6 +149,12 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
     /** Five second maximum for continous execution. */
     private long _maxReductionTimeMs = 2000000;
 
+    /** Events of the current execution waiting to be persisted together, <code>null</code> if they aren't batched. */
+    private List<ProcessInstanceEvent> _pendingEvents;
+
+    /** Whether the clean up on completion of the current execution deletes the events of the instance. */
+    private boolean _cleanupDeletesEvents;
+
     public BpelRuntimeContextImpl(BpelProcess bpelProcess, ProcessInstanceDAO dao, PROCESS PROCESS,
                                   MyRoleMessageExchangeImpl instantiatingMessageExchange) {
         _bpelProcess = bpelProcess;
@@ -138,9 +163,15 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
         _instantiatingMessageExchange = instantiatingMessageExchange;
         _vpu = new JacobVPU();
         _vpu.registerExtension(BpelRuntimeContext.class, this);
-
-        _soup = new ExecutionQueueImpl(null);
-        _soup.setReplacementMap(_bpelProcess.getReplacementMap(dao.getProcess().getProcessId()));
+        _vpu.setStatisticsEnabled(_bpelProcess._engine._contexts.vpuStatistics.isEnabled());
+        int parallelism = _bpelProcess.getReductionParallelism();
+        if (parallelism > 1)
+            _vpu.setParallelReduction(_bpelProcess._engine.getReductionExecutor(), parallelism);
+
+        _soup = _bpelProcess.isFastExecutionQueue() ? new FastExecutionQueueImpl(null) : new ExecutionQueueImpl(null);
+        _replacementMap = _bpelProcess.getReplacementMap(dao.getProcess().getProcessId());
+        _soup.setReplacementMap(_replacementMap);
+        _soup.setCompression(_bpelProcess._engine.getSoupCompression());
         _outstandingRequests = new OutstandingRequestManager();
         _vpu.setContext(_soup);
 
@@ -154,11 +185,38 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
         } else {
             byte[] daoState = dao.getExecutionState();
             if (daoState != null) {
-                ByteArrayInputStream iis = new ByteArrayInputStream(daoState);
-                try {
-                    _soup.read(iis);
-                } catch (Exception ex) {
-                    throw new RuntimeException(ex);
+                List<byte[]> deltas = dao.getExecutionStateDeltas();
+                _stateSize = daoState.length;
+                _stateDeltaCount = deltas.size();
+                for (byte[] delta : deltas) {
+                    _stateDeltaSize += delta.length;
+                }
+
+                ExecutionQueueImpl cached = null;
+                ExecutionQueueCache cache = _bpelProcess._engine._soupCache;
+                if (cache.isEnabled()) {
+                    _stateCrc = new CRC32();
+                    _stateCrc.update(daoState);
+                    for (byte[] delta : deltas) {
+                        _stateCrc.update(delta);
+                    }
+                    cached = cache.checkout(_iid, ExecutionQueueCache.stamp(_stateCrc, _stateSize + _stateDeltaSize),
+                            _replacementMap);
+                }
+
+                if (cached != null) {
+                    _soup = cached;
+                    _soup.setCompression(_bpelProcess._engine.getSoupCompression());
+                    _vpu.setContext(_soup);
+                } else {
+                    try {
+                        _soup.read(new ByteArrayInputStream(daoState));
+                        for (byte[] delta : deltas) {
+                            _soup.readDelta(new ByteArrayInputStream(delta));
+                        }
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex);
+                    }
                 }
                 _outstandingRequests = (OutstandingRequestManager) _soup.getGlobalData();
             }
@@ -232,6 +290,7 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
 
         faultOutstandingMessageExchanges(faultData);
 
+        dropCleanedUpEvents(_bpelProcess.getCleanupCategories(false));
         _bpelProcess._engine._contexts.scheduler.registerSynchronizer(new Scheduler.Synchronizer() {
             public void afterCompletion(boolean success) {
             }
@@ -239,6 +298,7 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
                 _dao.delete(_bpelProcess.getCleanupCategories(false), false);
             }
         });
+        scheduleArchive(false);
     }
 
     /**
@@ -261,6 +321,7 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
 
         completeOutstandingMessageExchanges();
 
+        dropCleanedUpEvents(_bpelProcess.getCleanupCategories(true));
         _bpelProcess._engine._contexts.scheduler.registerSynchronizer(new Scheduler.Synchronizer() {
             public void afterCompletion(boolean success) {
             }
@@ -268,6 +329,29 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
                 _dao.delete(_bpelProcess.getCleanupCategories(true), false);
             }
         });
+        scheduleArchive(true);
+    }
+
+    /**
+     * The events of the current execution are not persisted when the clean up on completion deletes them, or
+     * the instance, anyway: the event writer would insert them once that clean up is done.
+     */
+    private void dropCleanedUpEvents(Set<CLEANUP_CATEGORY> cleanup) {
+        if (cleanup.contains(CLEANUP_CATEGORY.EVENTS) || cleanup.contains(CLEANUP_CATEGORY.INSTANCE))
+            _cleanupDeletesEvents = true;
+    }
+
+    /**
+     * Schedules the move of the completed instance to the archive, unless the clean up on completion
+     * deletes it anyway.
+     */
+    private void scheduleArchive(boolean succeeded) {
+        if (!_bpelProcess.isArchiveEnabled(succeeded)
+                || _bpelProcess.isCleanupCategoryEnabled(succeeded, CLEANUP_CATEGORY.INSTANCE)) {
+            return;
+        }
+        _bpelProcess._engine._contexts.scheduler.scheduleMapSerializableRunnable(
+                new InstanceArchiveRunnable(_dao.getInstanceId()), new Date());
     }
 
     /**
@@ -379,6 +463,12 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
 
             correlator.addRoute(pickResponseChannel.export(), _dao, i, selector.correlationKeySet, selector.route);
             scheduleCorrelatorMatcher(correlator.getCorrelatorId(), selector.correlationKeySet);
+            CorrelationRouteIndex routeIndex = _bpelProcess._engine._routeIndex;
+            if (!_bpelProcess.isInMemory() && routeIndex.isEnabled()
+                    && !_bpelProcess.hasBroadcastRoutes(correlator.getCorrelatorId()))
+                _bpelProcess._engine._contexts.scheduler.registerSynchronizer(routeIndex.new Update(
+                        _bpelProcess.getPID().toString(), correlator.getCorrelatorId(), selector.correlationKeySet,
+                        _iid, pickResponseChannel.export(), i, selector.route));
 
             if (BpelProcess.__log.isDebugEnabled()) {
                 BpelProcess.__log.debug("SELECT: " + pickResponseChannel + ": ADDED ROUTE " + correlator.getCorrelatorId() + ": "
@@ -882,12 +972,120 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
         message.setHeader(header);
     }
 
+    /**
+     * Write the execution state to the DAO: a delta on top of the current full execution state when the process
+     * allows it, and the full execution state (replacing the deltas) once too many deltas, or deltas larger than
+     * the full state itself, have accumulated.
+     */
+    private void writeExecutionState() {
+        boolean delta = _stateSize > 0 && _stateDeltaCount < _bpelProcess.getMaximumStateDeltaCount()
+                && _stateDeltaSize < _stateSize;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(delta ? 1000 : 10000);
+        try {
+            if (delta) _soup.writeDelta(bos);
+            else _soup.write(bos);
+            bos.close();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+
+        byte[] state = bos.toByteArray();
+        if (delta) {
+            _dao.addExecutionStateDelta(state);
+            _stateDeltaCount++;
+            _stateDeltaSize += state.length;
+        } else {
+            _dao.setExecutionState(state);
+            if (_stateDeltaCount > 0) _dao.clearExecutionStateDeltas();
+            _stateSize = state.length;
+            _stateDeltaCount = 0;
+            _stateDeltaSize = 0;
+            _stateCrc = _bpelProcess._engine._soupCache.isEnabled() ? new CRC32() : null;
+        }
+
+        if (_stateCrc != null) {
+            _stateCrc.update(state);
+            cacheExecutionState(ExecutionQueueCache.stamp(_stateCrc, _stateSize + _stateDeltaSize));
+        }
+    }
+
+    /**
+     * Hand the execution queue over to the engine cache once the transaction that wrote it commits.
+     */
+    private void cacheExecutionState(long stamp) {
+        if (_cacheCheckin == null) {
+            ExecutionQueueCache cache = _bpelProcess._engine._soupCache;
+            _cacheCheckin = cache.new Checkin(_iid, _bpelProcess.getPID(), _replacementMap, _soup);
+            _bpelProcess._engine._contexts.scheduler.registerSynchronizer(_cacheCheckin);
+        }
+        _cacheCheckin.written(stamp);
+    }
+
+    /**
+     * Drop routes of this instance from the correlation route index of the engine.
+     * @param groupId route group, <code>null</code> for all the routes of the instance
+     */
+    private void removeIndexedRoutes(String groupId) {
+        if (!_bpelProcess.isInMemory())
+            _bpelProcess._engine._routeIndex.removeGroup(_iid, groupId);
+    }
+
     public void execute() {
+        EVENT_PERSISTENCE eventPersistence = _bpelProcess.isInMemory() ? EVENT_PERSISTENCE.IMMEDIATE
+                : _bpelProcess.getConf().getEventPersistence();
+        _pendingEvents = eventPersistence == EVENT_PERSISTENCE.IMMEDIATE ? null : new ArrayList<ProcessInstanceEvent>();
+        _cleanupDeletesEvents = false;
+        try {
+            executeInstance();
+            if (_pendingEvents != null && !_pendingEvents.isEmpty() && !_cleanupDeletesEvents)
+                persistEvents(eventPersistence, _pendingEvents);
+        } finally {
+            _pendingEvents = null;
+        }
+    }
+
+    /**
+     * Persist the events of an execution of the instance: in the transaction of the instance when durable,
+     * otherwise by the engine event writer once the transaction commits.
+     */
+    private void persistEvents(EVENT_PERSISTENCE eventPersistence, List<ProcessInstanceEvent> events) {
+        if (eventPersistence == EVENT_PERSISTENCE.DURABLE)
+            _bpelProcess._engine._contexts.dao.getConnection().insertBpelEvents(events);
+        else
+            _bpelProcess._engine._contexts.scheduler.registerSynchronizer(new EventHandoff(events));
+    }
+
+    /**
+     * Hands the events of an execution over to the engine event writer once the transaction commits. A named
+     * class, so that adding it did not renumber the anonymous {@link JacobRunnable}s of this class, which end up
+     * in persisted execution states.
+     */
+    private class EventHandoff implements Scheduler.Synchronizer {
+        private final List<ProcessInstanceEvent> _events;
+
+        EventHandoff(List<ProcessInstanceEvent> events) {
+            _events = events;
+        }
+
+        public void afterCompletion(boolean success) {
+            if (success)
+                _bpelProcess._engine._eventWriter.enqueue(_events);
+        }
+
+        public void beforeCompletion() {
+        }
+    }
+
+    private void executeInstance() {
         long maxTime = System.currentTimeMillis() + _maxReductionTimeMs;
         boolean canReduce = true;
         while (ProcessState.canExecute(_dao.getState()) && System.currentTimeMillis() < maxTime && canReduce) {
             canReduce = _vpu.execute();
         }
+        if (_vpu.isStatisticsEnabled()) {
+            _bpelProcess._engine._contexts.vpuStatistics.record(_bpelProcess.getPID(), _vpu.getStatistics());
+            _vpu.getStatistics().reset();
+        }
         _dao.setLastActiveTime(new Date());
         if (!ProcessState.isFinished(_dao.getState())) {
             if (__log.isDebugEnabled()) __log.debug("Setting execution state on instance " + _iid);
@@ -897,14 +1095,7 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
                 // don't serialize in-memory processes
                 ((ProcessInstanceDaoImpl) _dao).setSoup(_soup);
             } else {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream(10000);
-                try {
-                    _soup.write(bos);
-                    bos.close();
-                } catch (Exception ex) {
-                    throw new RuntimeException(ex);
-                }
-                _dao.setExecutionState(bos.toByteArray());
+                writeExecutionState();
             }
 
             if (ProcessState.canExecute(_dao.getState()) && canReduce) {
@@ -925,6 +1116,8 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
                     throw new BpelEngineException(e);
                 }
             }
+        } else {
+            removeIndexedRoutes(null);
         }
     }
 
@@ -962,6 +1155,7 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
         // In case this is a pick event, we remove routes,
         // and cancel the outstanding requests.
         _dao.getProcess().removeRoutes(timerResponseChannel, _dao);
+        removeIndexedRoutes(timerResponseChannel);
         _outstandingRequests.cancel(timerResponseChannel);
 
         // Ignore timer events after the process is finished.
@@ -985,6 +1179,7 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
         // receive/reply association.
         final String id = timerResponseChannel.export();
         _dao.getProcess().removeRoutes(id, _dao);
+        removeIndexedRoutes(id);
         _outstandingRequests.cancel(id);
 
         _vpu.inject(new JacobRunnable() {
@@ -1073,7 +1268,7 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
         }
 
         // saving
-        _bpelProcess.saveEvent(event, _dao, scopeNames);
+        _bpelProcess.saveEvent(event, _dao, scopeNames, _pendingEvents);
     }
 
     /**
@@ -1419,6 +1614,7 @@ public class BpelRuntimeContextImpl implements BpelRuntimeContext {
             }
             for (String groupId : groupIds) {
                 correlator.removeRoutes(groupId, _dao);
+                removeIndexedRoutes(groupId);
             }
 
             // Do not release yet if the process is suspended, the mex will be used again
@@ -18,6 +18,7 @@
  */
 package org.apache.ode.bpel.engine;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -59,6 +60,7 @@ import org.apache.ode.bpel.iapi.Scheduler.MapSerializableRunnable;
 import org.apache.ode.bpel.iapi.Scheduler.Synchronizer;
 import org.apache.ode.bpel.intercept.MessageExchangeInterceptor;
 import org.apache.ode.bpel.o.OProcess;
+import org.apache.ode.jacob.vpu.ExecutionQueueImpl;
 import org.apache.ode.utils.msg.MessageBundle;
 import org.apache.ode.utils.stl.CollectionsX;
 import org.apache.ode.utils.stl.MemberOfFunction;
@@ -107,6 +109,7 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
     private DehydrationPolicy _dehydrationPolicy;
     private boolean _hydrationLazy;
     private int _hydrationLazyMinimumSize;
+    private ProcessWarmup _warmup;
     
     BpelEngineImpl _engine;
     protected BpelDatabase _db;
@@ -158,13 +161,28 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
             // Eventually running some migrations before starting
             new MigrationHandler(_contexts).migrate(_registeredProcesses);
 
+            _engine._eventWriter.start();
             _state = State.RUNNING;
             __log.info(__msgs.msgServerStarted());
             if (_dehydrationPolicy != null) {
-                Thread thread = new Thread(new ProcessDefReaper(), "Dehydrator");
+                final ProcessDefReaper reaper = new ProcessDefReaper();
+                Thread thread = new Thread(reaper, "Dehydrator");
                 thread.setDaemon(true);
                 thread.start();
-                
+                if (_dehydrationPolicy instanceof FootprintDehydrationPolicy) {
+                    ((FootprintDehydrationPolicy) _dehydrationPolicy).startMonitoring(new Runnable() {
+                        public void run() {
+                            reaper.kick();
+                        }
+                    });
+                }
+            }
+            if (_warmup != null) {
+                Set<BpelProcess> lazy = new HashSet<BpelProcess>();
+                for (BpelProcess process : _registeredProcesses) {
+                    if (isLazyHydratable(process)) lazy.add(process);
+                }
+                _warmup.start(_warmup.select(_registeredProcesses, lazy), _mngmtLock, _registeredProcesses);
             }
         } finally {
             _mngmtLock.writeLock().unlock();
@@ -219,6 +237,15 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
             __log.debug("BPEL SERVER STOPPING");
 
             _contexts.scheduler.stop();
+            _engine._eventWriter.stop();
+            if (_warmup != null) {
+                _warmup.stop();
+                _warmup.saveTraffic(_registeredProcesses);
+            }
+            if (_dehydrationPolicy instanceof FootprintDehydrationPolicy) {
+                ((FootprintDehydrationPolicy) _dehydrationPolicy).stopMonitoring();
+            }
+            _engine.shutdownReductionExecutor();
             _engine = null;
             _state = State.INIT;
             __log.info(__msgs.msgServerStopped());
@@ -313,7 +340,8 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
 
             _engine.registerProcess(process);
             _registeredProcesses.add(process);
-            if (!isLazyHydratable(process)) {
+            // Until the server runs, the warm-up takes care of the hydration
+            if (!isLazyHydratable(process) && (_warmup == null || _state == State.RUNNING)) {
                 process.hydrate();
             } else {
                 _engine.setProcessSize(process.getPID(), false);
@@ -444,12 +472,23 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
     }
     
     private class ProcessDefReaper implements Runnable {
+        private boolean _kicked;
+
+        /** Run the dehydration policy right away rather than at the next poll. */
+        synchronized void kick() {
+            _kicked = true;
+            notifyAll();
+        }
+
         public void run() {
             __log.debug("Starting process definition reaper thread.");
             long pollingTime = 10000;
             try {
                 while (true) {
-                    Thread.sleep(pollingTime);
+                    synchronized (this) {
+                        if (!_kicked) wait(pollingTime);
+                        _kicked = false;
+                    }
                     if (!_mngmtLock.writeLock().tryLock(100L, TimeUnit.MILLISECONDS)) continue;
                     try { 
                         __log.debug("Kicking reaper, OProcess instances: " + OProcess.instanceCount);
@@ -564,6 +603,91 @@ public class BpelServerImpl implements BpelServer, Scheduler.JobProcessor {
         _engine.setInstanceThrottledMaximumCount(instanceThrottledMaximumCount);
     }
 
+    /**
+     * Set the compression applied to the persisted execution state (soup) of process instances.
+     * @param soupCompression name of a {@link ExecutionQueueImpl.Compression} constant
+     */
+    public void setSoupCompression(String soupCompression) {
+        _engine.setSoupCompression(ExecutionQueueImpl.Compression.valueOf(soupCompression.trim().toUpperCase()));
+    }
+
+    /**
+     * Set the maximum number of instance execution states (soups) kept deserialized between jobs; 0 disables
+     * the cache.
+     */
+    public void setSoupCacheSize(int soupCacheSize) {
+        _engine.setSoupCacheSize(soupCacheSize);
+    }
+
+    /**
+     * Set the maximum number of message routes kept in the in-memory correlation index; 0 disables the index.
+     */
+    public void setRouteIndexSize(int routeIndexSize) {
+        _engine._routeIndex.setMaximumSize(routeIndexSize);
+    }
+
+    /**
+     * @return the in-memory correlation route index, also meant to be registered as an MBean
+     */
+    public CorrelationRouteIndexMBean getRouteIndex() {
+        return _engine._routeIndex;
+    }
+
+    /**
+     * Set the maximum number of asynchronously persisted events waiting to be written; further events are
+     * dropped until the writer catches up.
+     */
+    public void setEventWriterCapacity(int eventWriterCapacity) {
+        _engine._eventWriter.setCapacity(eventWriterCapacity);
+    }
+
+    /**
+     * Set the maximum number of asynchronously persisted events written in one transaction.
+     */
+    public void setEventWriterBatchSize(int eventWriterBatchSize) {
+        _engine._eventWriter.setBatchSize(eventWriterBatchSize);
+    }
+
+    /**
+     * @return the background writer of the asynchronously persisted events, also meant to be registered as an MBean
+     */
+    public BpelEventWriterMBean getEventWriter() {
+        return _engine._eventWriter;
+    }
+
+    /**
+     * Keep the models of dehydrated processes softly reachable, so that a rehydration can reuse them as long as
+     * the garbage collector doesn't need the memory.
+     */
+    public void setDehydrationSoft(boolean dehydrationSoft) {
+        _engine.setDehydrationSoft(dehydrationSoft);
+    }
+
+    /**
+     * Hydrate the processes in the background when the server starts, rather than when they're registered.
+     * @param threads number of hydrating threads, 0 to disable the warm-up
+     * @param precompile whether the expressions of the processes should be compiled too
+     * @param trafficFile file the traffic of the processes is persisted in, to hydrate the busiest ones
+     * first; may be <code>null</code>
+     */
+    public void setHydrationWarmup(int threads, boolean precompile, File trafficFile) {
+        _warmup = threads > 0 ? new ProcessWarmup(threads, precompile, trafficFile) : null;
+    }
+
+    /**
+     * Turn the aggregation of the Jacob VPU statistics per process on or off (off by default).
+     */
+    public void setVpuStatisticsEnabled(boolean vpuStatisticsEnabled) {
+        _contexts.vpuStatistics.setEnabled(vpuStatisticsEnabled);
+    }
+
+    /**
+     * @return the Jacob VPU statistics aggregated per process, also meant to be registered as an MBean
+     */
+    public VpuStatisticsMBean getVpuStatistics() {
+        return _contexts.vpuStatistics;
+    }
+
     /**
      * A polled runnable instance that implements this interface will be set 
      * with the contexts before the run() method is called.
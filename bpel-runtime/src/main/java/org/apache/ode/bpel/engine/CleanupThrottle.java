@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Paces a clean up of instance data running as a series of transactions: pauses between the transactions
+ * so that a large purge doesn't monopolize the database, and periodically logs how far it went.
+ */
+public class CleanupThrottle {
+    private static final Log __log = LogFactory.getLog(CleanupThrottle.class);
+
+    /** Pause between two clean up transactions, in milliseconds. */
+    public final static long CLEANUP_PAUSE = Long.getLong("org.apache.ode.cleanup.pause", 0);
+
+    /** Minimum delay between two progress reports, in milliseconds. */
+    public final static long CLEANUP_PROGRESS_INTERVAL = Long.getLong("org.apache.ode.cleanup.progressInterval", 30000);
+
+    private final String _name;
+    private final long _pause;
+    private final long _progressInterval;
+
+    private final long _start = System.currentTimeMillis();
+    private long _lastReport = _start;
+    private long _instances;
+    private int _transactions;
+
+    public CleanupThrottle(String name) {
+        this(name, CLEANUP_PAUSE, CLEANUP_PROGRESS_INTERVAL);
+    }
+
+    public CleanupThrottle(String name, long pause, long progressInterval) {
+        _name = name;
+        _pause = pause;
+        _progressInterval = progressInterval;
+    }
+
+    /**
+     * Records a committed clean up transaction and reports the progress if it's time to.
+     *
+     * @param instances the number of instances cleaned by the transaction
+     */
+    public void cleaned(int instances) {
+        _instances += instances;
+        _transactions++;
+        long now = System.currentTimeMillis();
+        if (now - _lastReport >= _progressInterval) {
+            _lastReport = now;
+            if (__log.isInfoEnabled()) __log.info("Cleaning up " + _name + ": " + progress(now) + " so far.");
+        }
+    }
+
+    /**
+     * Pauses before the next clean up transaction.
+     *
+     * @return false if the thread was interrupted and the clean up should stop
+     */
+    public boolean pause() {
+        if (_pause > 0) {
+            try {
+                Thread.sleep(_pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                __log.warn("Interrupted while cleaning up " + _name + " after " + progress(System.currentTimeMillis()) + ".");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports the end of the clean up.
+     */
+    public void done() {
+        if (__log.isInfoEnabled()) __log.info("Cleaned up " + _name + ": " + progress(System.currentTimeMillis()) + ".");
+    }
+
+    public long getInstances() {
+        return _instances;
+    }
+
+    public int getTransactions() {
+        return _transactions;
+    }
+
+    private String progress(long now) {
+        long elapsed = Math.max(1, now - _start);
+        return _instances + " instances in " + _transactions + " transactions and " + elapsed + "ms ("
+                + (_instances * 1000 / elapsed) + " instances/s)";
+    }
+}
@@ -62,4 +62,7 @@ public class Contexts {
     /** Mapping from external variable engine identifier to the engine implementation. */
     final HashMap<QName, ExternalVariableModule> externalVariableEngines = new HashMap<QName, ExternalVariableModule>();
 
+    /** Jacob VPU statistics of the processes, kept across engine restarts. */
+    final VpuStatistics vpuStatistics = new VpuStatistics();
+
 }
@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ode.bpel.common.CorrelationKey;
+import org.apache.ode.bpel.common.CorrelationKeySet;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.MessageRouteDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.iapi.Scheduler;
+
+/**
+ * Size-bounded LRU index of the message routes (selectors of the pending receives and picks) of persistent
+ * process instances, by process id, correlator and canonical correlation key, so that most inbound messages
+ * can be routed without querying the routes of the correlator in the database.
+ * <p>
+ * The process id is the versioned one, of the process the instances were created by, and lookups are made for
+ * the process receiving the message. The routes of the instances of a retired version are therefore never
+ * served from the index to the active version: those lookups miss and fall back to the database.
+ * </p>
+ * <p>
+ * Routes are indexed once the transaction that added them commits (see {@link Update}), and dropped as soon as
+ * they're removed. Routes with the same key are kept in the order they were added, like the database returns
+ * them, so the oldest one is claimed first. The index is only a hint though: other nodes of a cluster don't
+ * update it, so an indexed route is claimed by deleting it from the database before the message is routed to
+ * it. If the route is gone, the lookup falls back to the database. Routes delivering messages to all the
+ * matching instances are never indexed; the callers bypass the index for their correlators altogether.
+ * </p>
+ */
+public class CorrelationRouteIndex implements CorrelationRouteIndexMBean {
+    private static final Log __log = LogFactory.getLog(CorrelationRouteIndex.class);
+
+    private int _maximumSize;
+
+    /** Number of indexed routes. */
+    private int _size;
+
+    /** Order of the routes added, standing in for the ids the database gives them. */
+    private long _sequence;
+
+    private long _hits;
+
+    private long _misses;
+
+    private long _staleHits;
+
+    /** Indexed routes, oldest first, by key; in least recently used order of the keys. */
+    private final LinkedHashMap<Key, List<Route>> _routes = new LinkedHashMap<Key, List<Route>>(16, 0.75f, true);
+
+    /** Indexed routes of each instance, by route group. */
+    private final Map<Long, Map<String, List<Route>>> _instances = new HashMap<Long, Map<String, List<Route>>>();
+
+    CorrelationRouteIndex(int maximumSize) {
+        _maximumSize = maximumSize;
+    }
+
+    public synchronized int getSize() {
+        return _size;
+    }
+
+    public synchronized int getMaximumSize() {
+        return _maximumSize;
+    }
+
+    public synchronized void setMaximumSize(int maximumSize) {
+        _maximumSize = maximumSize;
+        evict();
+    }
+
+    boolean isEnabled() {
+        return getMaximumSize() > 0;
+    }
+
+    /**
+     * Index a route, once the transaction that added it to the database has committed.
+     */
+    void add(String pid, String correlatorId, CorrelationKeySet keySet, Long iid, String groupId,
+             int index, String routePolicy) {
+        add(pid, correlatorId, keySet, iid, groupId, index, routePolicy, nextSequence());
+    }
+
+    private synchronized void add(String pid, String correlatorId, CorrelationKeySet keySet, Long iid,
+                                  String groupId, int index, String routePolicy, long sequence) {
+        if (_maximumSize <= 0 || "all".equals(routePolicy))
+            return;
+        Key key = new Key(pid, correlatorId, keySet.toCanonicalString());
+        Route route = new Route(key, sequence, keySet, iid, groupId, index, routePolicy);
+        List<Route> routes = _routes.get(key);
+        if (routes == null) {
+            routes = new ArrayList<Route>(1);
+            _routes.put(key, routes);
+        }
+        int i = routes.size();
+        while (i > 0 && routes.get(i - 1).sequence > sequence)
+            --i;
+        routes.add(i, route);
+        ++_size;
+
+        Map<String, List<Route>> groups = _instances.get(iid);
+        if (groups == null) {
+            groups = new HashMap<String, List<Route>>();
+            _instances.put(iid, groups);
+        }
+        List<Route> group = groups.get(groupId);
+        if (group == null) {
+            group = new ArrayList<Route>(2);
+            groups.put(groupId, group);
+        }
+        group.add(route);
+        evict();
+    }
+
+    private synchronized long nextSequence() {
+        return ++_sequence;
+    }
+
+    /**
+     * Find an indexed route matching some subset of the given correlation keys, and remove it from the index
+     * along with the other routes of its group. A lookup that finds nothing is counted as a miss.
+     * @return the oldest matching route, or <code>null</code> if the database should be queried
+     */
+    synchronized Route claim(String pid, String correlatorId, CorrelationKeySet keySet) {
+        if (_maximumSize > 0) {
+            for (CorrelationKeySet subSet : keySet.findSubSets()) {
+                List<Route> routes = _routes.get(new Key(pid, correlatorId, subSet.toCanonicalString()));
+                if (routes != null) {
+                    Route route = routes.get(0);
+                    removeGroup(route.iid, route.groupId);
+                    return route;
+                }
+            }
+        }
+        ++_misses;
+        return null;
+    }
+
+    /**
+     * Find a route for the given correlation keys in the index, and claim it by removing it from the database.
+     * A route no longer in the database is counted as a stale hit.
+     * @param pid versioned id of the process, as a string
+     * @param correlator correlator of the message
+     * @param keySet correlation keys of the message
+     * @param conn connection to the database of the routes
+     * @return the claimed route, or <code>null</code> if the routes of the correlator should be queried
+     */
+    MessageRouteDAO findRoute(String pid, CorrelatorDAO correlator, CorrelationKeySet keySet,
+                              BpelDAOConnection conn) {
+        Route route = claim(pid, correlator.getCorrelatorId(), keySet);
+        if (route == null)
+            return null;
+        ProcessInstanceDAO instanceDao = conn.getInstance(route.iid);
+        if (instanceDao == null || correlator.removeRoutes(route.groupId, instanceDao) == 0) {
+            stale(route);
+            return null;
+        }
+        hit();
+        return new IndexedMessageRoute(route, instanceDao);
+    }
+
+    /**
+     * Count a lookup answered with a route returned by {@link #claim}.
+     */
+    synchronized void hit() {
+        ++_hits;
+    }
+
+    /**
+     * Count a lookup that went to the database because the route returned by {@link #claim} was gone.
+     */
+    synchronized void stale(Route route) {
+        ++_staleHits;
+        ++_misses;
+        if (__log.isDebugEnabled())
+            __log.debug("Indexed route " + route.groupId + " of instance " + route.iid + " no longer in the database");
+    }
+
+    /**
+     * Remove the routes of a group of an instance from the index.
+     * @param groupId route group, <code>null</code> for all the routes of the instance
+     */
+    synchronized void removeGroup(Long iid, String groupId) {
+        Map<String, List<Route>> groups = _instances.get(iid);
+        if (groups == null)
+            return;
+        if (groupId == null) {
+            _instances.remove(iid);
+            for (List<Route> group : groups.values())
+                removeRoutes(group);
+        } else {
+            List<Route> group = groups.remove(groupId);
+            if (group != null)
+                removeRoutes(group);
+            if (groups.isEmpty())
+                _instances.remove(iid);
+        }
+    }
+
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    public synchronized long getStaleHits() {
+        return _staleHits;
+    }
+
+    public synchronized double getHitRatio() {
+        long lookups = _hits + _misses;
+        return lookups == 0 ? 0 : (double) _hits / lookups;
+    }
+
+    public synchronized void reset() {
+        _hits = 0;
+        _misses = 0;
+        _staleHits = 0;
+    }
+
+    /**
+     * Remove routes from their keys.
+     */
+    private void removeRoutes(List<Route> group) {
+        for (Route route : group) {
+            List<Route> routes = _routes.get(route.key);
+            if (routes != null && routes.remove(route)) {
+                --_size;
+                if (routes.isEmpty())
+                    _routes.remove(route.key);
+            }
+        }
+    }
+
+    /**
+     * Drop the routes of the least recently used keys until the index fits its maximum size.
+     */
+    private void evict() {
+        for (Iterator<List<Route>> i = _routes.values().iterator(); _size > _maximumSize && i.hasNext();) {
+            List<Route> routes = i.next();
+            i.remove();
+            _size -= routes.size();
+            for (Route route : routes)
+                unlink(route);
+        }
+    }
+
+    /**
+     * Remove an evicted route from its group.
+     */
+    private void unlink(Route route) {
+        Map<String, List<Route>> groups = _instances.get(route.iid);
+        if (groups == null)
+            return;
+        List<Route> group = groups.get(route.groupId);
+        if (group != null && group.remove(route) && group.isEmpty()) {
+            groups.remove(route.groupId);
+            if (groups.isEmpty())
+                _instances.remove(route.iid);
+        }
+    }
+
+    /**
+     * Adds a route to the index once the transaction that added it to the database commits. The order of the
+     * route is taken when the route is added to the database, not when the transaction commits.
+     */
+    class Update implements Scheduler.Synchronizer {
+        private final String _pid;
+        private final String _correlatorId;
+        private final CorrelationKeySet _keySet;
+        private final Long _iid;
+        private final String _groupId;
+        private final int _index;
+        private final String _routePolicy;
+        private final long _sequence;
+
+        Update(String pid, String correlatorId, CorrelationKeySet keySet, Long iid, String groupId,
+               int index, String routePolicy) {
+            _pid = pid;
+            _correlatorId = correlatorId;
+            _keySet = keySet;
+            _iid = iid;
+            _groupId = groupId;
+            _index = index;
+            _routePolicy = routePolicy;
+            _sequence = nextSequence();
+        }
+
+        public void afterCompletion(boolean success) {
+            if (success)
+                add(_pid, _correlatorId, _keySet, _iid, _groupId, _index, _routePolicy, _sequence);
+        }
+
+        public void beforeCompletion() {
+        }
+    }
+
+    /**
+     * An indexed route.
+     */
+    static class Route {
+        final Key key;
+        final long sequence;
+        final CorrelationKeySet keySet;
+        final Long iid;
+        final String groupId;
+        final int index;
+        final String routePolicy;
+
+        Route(Key key, long sequence, CorrelationKeySet keySet, Long iid, String groupId, int index,
+              String routePolicy) {
+            this.key = key;
+            this.sequence = sequence;
+            this.keySet = keySet;
+            this.iid = iid;
+            this.groupId = groupId;
+            this.index = index;
+            this.routePolicy = routePolicy;
+        }
+    }
+
+    /**
+     * A route found in the index, already removed from the database.
+     */
+    static class IndexedMessageRoute implements MessageRouteDAO {
+        private final Route _route;
+        private final ProcessInstanceDAO _instance;
+        private CorrelationKeySet _keySet;
+
+        IndexedMessageRoute(Route route, ProcessInstanceDAO instance) {
+            _route = route;
+            _instance = instance;
+            _keySet = route.keySet;
+        }
+
+        public ProcessInstanceDAO getTargetInstance() {
+            return _instance;
+        }
+
+        public String getGroupId() {
+            return _route.groupId;
+        }
+
+        public int getIndex() {
+            return _route.index;
+        }
+
+        public String getRoute() {
+            return _route.routePolicy;
+        }
+
+        public CorrelationKeySet getCorrelationKeySet() {
+            return _keySet;
+        }
+
+        public void setCorrelationKeySet(CorrelationKeySet keySet) {
+            _keySet = keySet;
+        }
+
+        public void setCorrelationKey(CorrelationKey key) {
+            _keySet = new CorrelationKeySet();
+            _keySet.add(key);
+        }
+
+        public CorrelationKey getCorrelationKey() {
+            return _keySet.isEmpty() ? null : _keySet.iterator().next();
+        }
+
+        public String toString() {
+            return "{IndexedMessageRoute " + _route.groupId + " of instance " + _route.iid + "}";
+        }
+    }
+
+    private static class Key {
+        final String pid;
+        final String correlatorId;
+        final String correlationKey;
+
+        Key(String pid, String correlatorId, String correlationKey) {
+            this.pid = pid;
+            this.correlatorId = correlatorId;
+            this.correlationKey = correlationKey;
+        }
+
+        public int hashCode() {
+            return (pid.hashCode() * 31 + correlatorId.hashCode()) * 31 + correlationKey.hashCode();
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return correlationKey.equals(other.correlationKey) && correlatorId.equals(other.correlatorId)
+                    && pid.equals(other.pid);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+/**
+ * Management interface of the in-memory index of the correlation routes, see {@link CorrelationRouteIndex}.
+ */
+public interface CorrelationRouteIndexMBean {
+
+    int getSize();
+
+    int getMaximumSize();
+
+    /**
+     * Set the maximum number of indexed routes; 0 disables the index.
+     */
+    void setMaximumSize(int maximumSize);
+
+    /**
+     * @return the number of lookups answered from the index
+     */
+    long getHits();
+
+    /**
+     * @return the number of lookups that went to the database, the route not being indexed
+     */
+    long getMisses();
+
+    /**
+     * @return the number of indexed routes found gone from the database when claimed, the lookup then going
+     * to the database as well
+     */
+    long getStaleHits();
+
+    /**
+     * @return the share of the lookups answered from the index, between 0 and 1
+     */
+    double getHitRatio();
+
+    void reset();
+}
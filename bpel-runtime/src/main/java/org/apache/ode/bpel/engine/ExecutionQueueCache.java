@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ode.bpel.iapi.Scheduler;
+import org.apache.ode.jacob.soup.ReplacementMap;
+import org.apache.ode.jacob.vpu.ExecutionQueueImpl;
+
+/**
+ * Size-bounded LRU cache of the deserialized execution queues (soups) of persistent process instances, so that
+ * back-to-back jobs on the same instance can reuse the live object graph instead of reading it from the DAO.
+ * <p>
+ * An entry is stamped with a checksum of the execution state (and deltas) it was written as, and is only handed
+ * out if the state currently in the DAO carries the same stamp. Entries are checked out, i.e. removed, while an
+ * instance executes and only checked back in by a {@link Checkin} once the transaction commits; a rollback
+ * evicts the instance, so the soup mutated by the aborted execution is never handed out again.
+ * </p>
+ */
+class ExecutionQueueCache {
+    private static final Log __log = LogFactory.getLog(ExecutionQueueCache.class);
+
+    private int _maximumSize;
+
+    private long _hits;
+
+    private long _misses;
+
+    private final LinkedHashMap<Long, Entry> _entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > _maximumSize;
+        }
+    };
+
+    ExecutionQueueCache(int maximumSize) {
+        _maximumSize = maximumSize;
+    }
+
+    synchronized int getMaximumSize() {
+        return _maximumSize;
+    }
+
+    synchronized void setMaximumSize(int maximumSize) {
+        _maximumSize = maximumSize;
+        for (Iterator<Long> i = _entries.keySet().iterator(); _entries.size() > maximumSize && i.hasNext();) {
+            i.next();
+            i.remove();
+        }
+    }
+
+    boolean isEnabled() {
+        return getMaximumSize() > 0;
+    }
+
+    /**
+     * Remove the cached execution queue of an instance, and return it if it was cached with the given stamp and
+     * replacement map.
+     * @return the cached execution queue, or <code>null</code> if it isn't cached or is stale
+     */
+    synchronized ExecutionQueueImpl checkout(Long iid, long stamp, ReplacementMap replacementMap) {
+        Entry entry = _entries.remove(iid);
+        if (entry != null && entry.stamp == stamp && entry.replacementMap == replacementMap) {
+            ++_hits;
+            return entry.soup;
+        }
+        ++_misses;
+        if (entry != null && __log.isDebugEnabled())
+            __log.debug("Discarding stale execution queue of instance " + iid);
+        return null;
+    }
+
+    /**
+     * Cache the execution queue of an instance, as written with the given stamp.
+     */
+    synchronized void checkin(Long iid, QName pid, long stamp, ReplacementMap replacementMap, ExecutionQueueImpl soup) {
+        if (_maximumSize > 0)
+            _entries.put(iid, new Entry(pid, stamp, replacementMap, soup));
+    }
+
+    synchronized void remove(Long iid) {
+        _entries.remove(iid);
+    }
+
+    /**
+     * Remove the execution queues of all the instances of a process, e.g. when the process is dehydrated.
+     */
+    synchronized void removeProcess(QName pid) {
+        for (Iterator<Entry> i = _entries.values().iterator(); i.hasNext();) {
+            if (i.next().pid.equals(pid))
+                i.remove();
+        }
+    }
+
+    synchronized long getHits() {
+        return _hits;
+    }
+
+    synchronized long getMisses() {
+        return _misses;
+    }
+
+    /**
+     * Compute the stamp of an execution state: its total length and CRC.
+     */
+    static long stamp(CRC32 crc, long length) {
+        return (length << 32) | crc.getValue();
+    }
+
+    /**
+     * Checks the execution queue of an instance into the cache when the transaction that wrote it commits, with
+     * the stamp of the last state written in the transaction, and evicts the instance if the transaction rolls
+     * back. One is registered per transaction.
+     */
+    class Checkin implements Scheduler.Synchronizer {
+        private final Long _iid;
+        private final QName _pid;
+        private final ReplacementMap _replacementMap;
+        private final ExecutionQueueImpl _soup;
+        private long _stamp;
+
+        Checkin(Long iid, QName pid, ReplacementMap replacementMap, ExecutionQueueImpl soup) {
+            _iid = iid;
+            _pid = pid;
+            _replacementMap = replacementMap;
+            _soup = soup;
+        }
+
+        /**
+         * Record the stamp of a state written in the transaction.
+         */
+        void written(long stamp) {
+            _stamp = stamp;
+        }
+
+        public void afterCompletion(boolean success) {
+            if (success)
+                checkin(_iid, _pid, _stamp, _replacementMap, _soup);
+            else
+                remove(_iid);
+        }
+
+        public void beforeCompletion() {
+        }
+    }
+
+    private static class Entry {
+        final QName pid;
+        final long stamp;
+        final ReplacementMap replacementMap;
+        final ExecutionQueueImpl soup;
+
+        Entry(QName pid, long stamp, ReplacementMap replacementMap, ExecutionQueueImpl soup) {
+            this.pid = pid;
+            this.stamp = stamp;
+            this.replacementMap = replacementMap;
+            this.soup = soup;
+        }
+    }
+}
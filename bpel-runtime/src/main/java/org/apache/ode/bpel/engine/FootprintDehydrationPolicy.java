@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Dehydration policy keeping the footprint of the hydrated processes under a budget.
+ * <p>
+ * Processes unused for longer than the maximum age go first. If the remaining ones still take more than the
+ * budget, the ones with the lowest priority are dehydrated, the priority being computed as in GreedyDual-Size
+ * with frequency: <code>L + F * C / S</code>, where <code>F</code> is the access frequency of the process
+ * (halved at each check), <code>C</code> the cost to rehydrate it (the size of its compiled process),
+ * <code>S</code> its footprint and <code>L</code> the priority of the last dehydrated process, so that processes
+ * that aren't accessed anymore age.
+ * </p>
+ * <p>
+ * Once {@link #startMonitoring(Runnable)} has been called, the policy also listens to the collection usage
+ * threshold notifications of the heap memory pools; on heap pressure the footprint is halved at the next check,
+ * which the callback is expected to trigger right away.
+ * </p>
+ */
+public class FootprintDehydrationPolicy implements DehydrationPolicy {
+    private static final Log __log = LogFactory.getLog(FootprintDehydrationPolicy.class);
+
+    /** Maximum age of a process before it is quiesced */
+    private long _processMaxAge = 20 * 60 * 1000;
+    /** Maximum footprint of the hydrated processes (in bytes), 0 for no limit */
+    private long _processMaxFootprint = Runtime.getRuntime().maxMemory() / 4;
+    /** Fraction of the heap pools above which, after a collection, the footprint is shed */
+    private double _memoryThreshold = 0.8;
+
+    /** Priority of the last dehydrated process. */
+    private double _inflation;
+
+    private final Map<QName, Entry> _entries = new HashMap<QName, Entry>();
+
+    private volatile boolean _underPressure;
+
+    private NotificationListener _pressureListener;
+
+    public synchronized List<BpelProcess> markForDehydration(List<BpelProcess> runningProcesses) {
+        ArrayList<BpelProcess> ripped = new ArrayList<BpelProcess>();
+        ArrayList<BpelProcess> candidates = new ArrayList<BpelProcess>();
+        final Map<BpelProcess, Double> priorities = new HashMap<BpelProcess, Double>();
+        Set<QName> seen = new HashSet<QName>();
+        long now = System.currentTimeMillis();
+        long footprint = 0;
+
+        for (BpelProcess process : runningProcesses) {
+            seen.add(process.getPID());
+            Entry entry = _entries.get(process.getPID());
+            long useCount = process.getUseCount();
+            if (entry == null) {
+                entry = new Entry();
+                _entries.put(process.getPID(), entry);
+            } else {
+                entry.frequency = entry.frequency / 2 + (useCount - entry.useCount);
+            }
+            entry.useCount = useCount;
+
+            if (_processMaxAge > 0 && now - process.getLastUsed() > _processMaxAge) {
+                // The oldies have to go first
+                ripped.add(process);
+                continue;
+            }
+
+            long size = Math.max(1, process.getFootprint());
+            footprint += size;
+            candidates.add(process);
+            priorities.put(process, priority(_inflation, entry.frequency, process.getCBPFileSize(), size));
+        }
+        _entries.keySet().retainAll(seen);
+
+        long budget = _processMaxFootprint > 0 ? _processMaxFootprint : Long.MAX_VALUE;
+        if (_underPressure) {
+            _underPressure = false;
+            budget = Math.min(budget, footprint / 2);
+            __log.info("Heap pressure, shedding hydrated processes down to " + budget + " bytes (from " + footprint + ").");
+        }
+
+        if (footprint > budget) {
+            Collections.sort(candidates, new Comparator<BpelProcess>() {
+                public int compare(BpelProcess p1, BpelProcess p2) {
+                    int c = priorities.get(p1).compareTo(priorities.get(p2));
+                    if (c != 0) return c;
+                    if (p1.getLastUsed() < p2.getLastUsed()) return -1;
+                    if (p1.getLastUsed() > p2.getLastUsed()) return 1;
+                    return 0;
+                }
+            });
+            for (BpelProcess process : candidates) {
+                if (footprint <= budget)
+                    break;
+                // Would be rehydrated right away
+                if (process.getInstanceInUseCount() > 0)
+                    continue;
+                ripped.add(process);
+                footprint -= Math.max(1, process.getFootprint());
+                _inflation = Math.max(_inflation, priorities.get(process));
+            }
+        }
+
+        for (BpelProcess process : ripped)
+            _entries.remove(process.getPID());
+        return ripped;
+    }
+
+    static double priority(double inflation, double frequency, long cost, long size) {
+        return inflation + (1 + frequency) * Math.max(1, cost) / Math.max(1, size);
+    }
+
+    /**
+     * Listen to the heap pressure notifications of the JVM.
+     * @param onPressure called (from a JMX thread) when the heap is over the threshold after a collection
+     */
+    public synchronized void startMonitoring(final Runnable onPressure) {
+        if (_pressureListener != null)
+            return;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // Only the tenured pools support usage thresholds
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+                    && pool.isCollectionUsageThresholdSupported() && pool.getCollectionUsageThreshold() == 0) {
+                long max = pool.getUsage().getMax();
+                if (max > 0)
+                    pool.setCollectionUsageThreshold((long) (max * _memoryThreshold));
+            }
+        }
+        _pressureListener = new NotificationListener() {
+            public void handleNotification(Notification notification, Object handback) {
+                if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                    _underPressure = true;
+                    onPressure.run();
+                }
+            }
+        };
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(_pressureListener, null, null);
+    }
+
+    public synchronized void stopMonitoring() {
+        if (_pressureListener == null)
+            return;
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(_pressureListener);
+        } catch (ListenerNotFoundException e) {
+            // ignore
+        }
+        _pressureListener = null;
+    }
+
+    boolean isUnderPressure() {
+        return _underPressure;
+    }
+
+    void setUnderPressure(boolean underPressure) {
+        _underPressure = underPressure;
+    }
+
+    public void setProcessMaxAge(long processMaxAge) {
+        _processMaxAge = processMaxAge;
+    }
+
+    public void setProcessMaxFootprint(long processMaxFootprint) {
+        _processMaxFootprint = processMaxFootprint;
+    }
+
+    public void setMemoryThreshold(double memoryThreshold) {
+        _memoryThreshold = memoryThreshold;
+    }
+
+    private static class Entry {
+        long useCount;
+        double frequency;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ode.bpel.common.ProcessState;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.FilteredInstanceDeletable;
+import org.apache.ode.bpel.dao.InstanceArchivable;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.engine.BpelServerImpl.ContextsAware;
+import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
+import org.apache.ode.bpel.iapi.Scheduler.MapSerializableRunnable;
+
+/**
+ * Moves a completed instance to the instance archive: stores its archive and deletes all
+ * its runtime data, in one transaction. Scheduled as a persisted job in the transaction that completes
+ * the instance, so that the archiving survives a crash but doesn't slow down the completion.
+ */
+public class InstanceArchiveRunnable implements MapSerializableRunnable, ContextsAware {
+    private static final long serialVersionUID = 1L;
+
+    private static final Log __log = LogFactory.getLog(InstanceArchiveRunnable.class);
+
+    private transient Contexts _contexts;
+    private transient Long _iid;
+
+    public InstanceArchiveRunnable() {
+    }
+
+    public InstanceArchiveRunnable(Long iid) {
+        _iid = iid;
+    }
+
+    // not under "iid", the job mustn't be serialized with the jobs of the instance
+    public void storeToDetailsMap(Map<String, Object> details) {
+        details.put("archivedIid", _iid);
+    }
+
+    public void restoreFromDetailsMap(Map<String, Object> details) {
+        _iid = (Long) details.get("archivedIid");
+    }
+
+    public void setContexts(Contexts contexts) {
+        _contexts = contexts;
+    }
+
+    public void run() {
+        try {
+            _contexts.scheduler.execTransaction(new Callable<Void>() {
+                public Void call() throws Exception {
+                    archive(_contexts.dao.getConnection());
+                    return null;
+                }
+            });
+        } catch (RuntimeException re) {
+            throw re;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    void archive(BpelDAOConnection conn) {
+        if (!(conn instanceof InstanceArchivable)) {
+            __log.warn("The DAO connection does not implement InstanceArchivable, instance " + _iid + " is not archived.");
+            return;
+        }
+        InstanceArchivable archivable = (InstanceArchivable) conn;
+
+        ProcessInstanceDAO instance = conn.getInstance(_iid);
+        // deleted by the clean up on completion, or the job ran already
+        if (instance == null) {
+            if (__log.isDebugEnabled()) __log.debug("Instance " + _iid + " no longer exists, nothing to archive.");
+            return;
+        }
+        if (!ProcessState.isFinished(instance.getState())) {
+            __log.warn("Instance " + _iid + " is not finished, it is not archived.");
+            return;
+        }
+
+        if (archivable.getArchivedInstance(_iid) == null) {
+            archivable.archiveInstance(instance, InstanceArchiver.archiveCorrelationProperties(instance),
+                    InstanceArchiver.archive(instance));
+        }
+        if (conn instanceof FilteredInstanceDeletable) {
+            ((FilteredInstanceDeletable) conn).deleteInstances(Collections.singletonList(_iid), EnumSet.allOf(CLEANUP_CATEGORY.class));
+        } else {
+            instance.delete(EnumSet.allOf(CLEANUP_CATEGORY.class), true);
+        }
+        if (__log.isDebugEnabled()) __log.debug("Archived instance " + _iid + ".");
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.namespace.QName;
+
+import org.apache.ode.bpel.dao.CorrelationSetDAO;
+import org.apache.ode.bpel.dao.FaultDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.dao.ScopeDAO;
+import org.apache.ode.bpel.dao.XmlDataDAO;
+import org.apache.ode.bpel.iapi.BpelEngineException;
+import org.apache.ode.utils.DOMUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Builds and reads the archive of a completed process instance. The correlation properties of the
+ * instance are archived uncompressed, so that archives can be listed without inflating them; the
+ * fault, the scopes and the variables are archived in a gzipped document. The events and the message
+ * exchanges of the instance aren't archived.
+ */
+public class InstanceArchiver {
+    static final String INSTANCE = "instance";
+    static final String FAULT = "fault";
+    static final String EXPLANATION = "explanation";
+    static final String DATA = "data";
+    static final String SCOPE = "scope";
+    static final String VARIABLE = "variable";
+    static final String CORRELATION_PROPERTIES = "correlation-properties";
+    static final String PROPERTY = "property";
+
+    private InstanceArchiver() {
+    }
+
+    /**
+     * Builds the compressed archive document of an instance.
+     *
+     * @param instance completed instance
+     * @return the gzipped archive document, or null if the instance has neither fault nor scope
+     */
+    public static byte[] archive(ProcessInstanceDAO instance) {
+        FaultDAO fault = instance.getFault();
+        Collection<ScopeDAO> scopes = instance.getScopes();
+        if (fault == null && scopes.isEmpty())
+            return null;
+
+        Document doc = DOMUtils.newDocument();
+        Element root = doc.createElement(INSTANCE);
+        doc.appendChild(root);
+        root.setAttribute("iid", instance.getInstanceId().toString());
+        if (fault != null)
+            root.appendChild(archiveFault(doc, fault));
+        for (ScopeDAO scope : scopes)
+            root.appendChild(archiveScope(doc, scope));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            GZIPOutputStream gzos = new GZIPOutputStream(bos);
+            DOMUtils.serialize(root, gzos);
+            gzos.close();
+        } catch (IOException e) {
+            throw new BpelEngineException("Could not compress the archive of instance " + instance.getInstanceId(), e);
+        }
+        return bos.toByteArray();
+    }
+
+    private static Element archiveFault(Document doc, FaultDAO fault) {
+        Element faultEl = doc.createElement(FAULT);
+        faultEl.setAttribute("name", fault.getName().toString());
+        faultEl.setAttribute("line", Integer.toString(fault.getLineNo()));
+        faultEl.setAttribute("activity", Integer.toString(fault.getActivityId()));
+        if (fault.getExplanation() != null) {
+            Element explanation = doc.createElement(EXPLANATION);
+            explanation.setTextContent(fault.getExplanation());
+            faultEl.appendChild(explanation);
+        }
+        if (fault.getData() != null) {
+            Element data = doc.createElement(DATA);
+            data.appendChild(doc.importNode(fault.getData(), true));
+            faultEl.appendChild(data);
+        }
+        return faultEl;
+    }
+
+    private static Element archiveScope(Document doc, ScopeDAO scope) {
+        Element scopeEl = doc.createElement(SCOPE);
+        scopeEl.setAttribute("siid", scope.getScopeInstanceId().toString());
+        scopeEl.setAttribute("name", scope.getName());
+        scopeEl.setAttribute("modelId", Integer.toString(scope.getModelId()));
+        if (scope.getState() != null)
+            scopeEl.setAttribute("state", scope.getState().toString());
+        if (scope.getParentScope() != null)
+            scopeEl.setAttribute("parent", scope.getParentScope().getScopeInstanceId().toString());
+        for (XmlDataDAO variable : scope.getVariables()) {
+            Element varEl = doc.createElement(VARIABLE);
+            varEl.setAttribute("name", variable.getName());
+            if (!variable.isNull()) {
+                Node value = variable.get();
+                if (value instanceof Document)
+                    value = ((Document) value).getDocumentElement();
+                varEl.appendChild(doc.importNode(value, true));
+            }
+            scopeEl.appendChild(varEl);
+        }
+        return scopeEl;
+    }
+
+    /**
+     * Builds the correlation properties section of the archive of an instance.
+     *
+     * @param instance completed instance
+     * @return the correlation properties document, or null if no correlation set of the instance was initialized
+     */
+    public static byte[] archiveCorrelationProperties(ProcessInstanceDAO instance) {
+        Document doc = DOMUtils.newDocument();
+        Element root = doc.createElement(CORRELATION_PROPERTIES);
+        doc.appendChild(root);
+        for (CorrelationSetDAO cset : instance.getCorrelationSets()) {
+            for (Map.Entry<QName, String> property : cset.getProperties().entrySet()) {
+                Element propEl = doc.createElement(PROPERTY);
+                propEl.setAttribute("csetid", cset.getCorrelationSetId().toString());
+                propEl.setAttribute("name", property.getKey().toString());
+                propEl.setTextContent(property.getValue());
+                root.appendChild(propEl);
+            }
+        }
+        if (DOMUtils.getFirstChildElement(root) == null)
+            return null;
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DOMUtils.serialize(root, bos);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Reads a compressed archive document.
+     *
+     * @param data the gzipped archive document
+     * @return the root element of the archive document
+     */
+    public static Element read(byte[] data) throws IOException, SAXException {
+        GZIPInputStream gzis = new GZIPInputStream(new ByteArrayInputStream(data));
+        try {
+            return DOMUtils.parse(gzis).getDocumentElement();
+        } finally {
+            gzis.close();
+        }
+    }
+
+    /**
+     * Reads the correlation properties section of an archive.
+     *
+     * @param data the correlation properties document
+     * @return the root element of the document, its children are the properties
+     */
+    public static Element readCorrelationProperties(byte[] data) throws IOException, SAXException {
+        return DOMUtils.parse(new ByteArrayInputStream(data)).getDocumentElement();
+    }
+}
@@ -137,7 +137,9 @@ public class PartnerLinkMyRoleImpl extends PartnerLinkRoleImpl {
         }
 
         // Try to find a route for one of our keys.
-        List<MessageRouteDAO> messageRoutes = correlator.findRoute(keySet);
+        List<MessageRouteDAO> messageRoutes = findIndexedRoute(correlatorId, correlator, keySet);
+        if (messageRoutes == null)
+            messageRoutes = correlator.findRoute(keySet);
         if (messageRoutes != null && messageRoutes.size() > 0) {
             for (MessageRouteDAO messageRoute : messageRoutes) {
                 if (__log.isDebugEnabled()) {
@@ -154,6 +156,25 @@ public class PartnerLinkMyRoleImpl extends PartnerLinkRoleImpl {
         return routingInfos;
     }
 
+    /**
+     * Look the keys up in the correlation route index of the engine. An indexed route is claimed by removing it
+     * from the database, it's only used if it was still there.
+     * @return the claimed route, or <code>null</code> if the routes of the correlator should be queried
+     */
+    private List<MessageRouteDAO> findIndexedRoute(String correlatorId, CorrelatorDAO correlator, CorrelationKeySet keySet) {
+        CorrelationRouteIndex index = _process._engine._routeIndex;
+        if (_process.isInMemory() || !index.isEnabled() || _process.hasBroadcastRoutes(correlatorId))
+            return null;
+
+        MessageRouteDAO route = index.findRoute(_process._pid.toString(), correlator, keySet,
+                _process._engine._contexts.dao.getConnection());
+        if (route == null)
+            return null;
+        List<MessageRouteDAO> messageRoutes = new ArrayList<MessageRouteDAO>(1);
+        messageRoutes.add(route);
+        return messageRoutes;
+    }
+
     public static class RoutingInfo {
         public MessageRouteDAO messageRoute;
         public CorrelationKeySet matchedKeySet;
@@ -222,8 +243,10 @@ public class PartnerLinkMyRoleImpl extends PartnerLinkRoleImpl {
         instance.inputMsgMatch(routing.messageRoute.getGroupId(), routing.messageRoute.getIndex(), mex);
 
         // Kill the route so some new message does not get routed to
-        // same process instance.
-        routing.correlator.removeRoutes(routing.messageRoute.getGroupId(), instanceDao);
+        // same process instance. Routes found in the index are already gone.
+        if (!(routing.messageRoute instanceof CorrelationRouteIndex.IndexedMessageRoute))
+            routing.correlator.removeRoutes(routing.messageRoute.getGroupId(), instanceDao);
+        _process._engine._routeIndex.removeGroup(instanceDao.getInstanceId(), routing.messageRoute.getGroupId());
 
         // send process instance event
         CorrelationMatchEvent evt = new CorrelationMatchEvent(new QName(_process.getOProcess().targetNamespace,
@@ -43,8 +43,10 @@ import org.apache.ode.bpel.common.Filter;
 import org.apache.ode.bpel.common.InstanceFilter;
 import org.apache.ode.bpel.common.ProcessFilter;
 import org.apache.ode.bpel.dao.ActivityRecoveryDAO;
+import org.apache.ode.bpel.dao.ArchivedInstanceDAO;
 import org.apache.ode.bpel.dao.BpelDAOConnection;
 import org.apache.ode.bpel.dao.CorrelationSetDAO;
+import org.apache.ode.bpel.dao.InstanceArchivable;
 import org.apache.ode.bpel.dao.PartnerLinkDAO;
 import org.apache.ode.bpel.dao.ProcessDAO;
 import org.apache.ode.bpel.dao.ProcessInstanceDAO;
@@ -129,6 +131,7 @@ import org.apache.ode.bpel.pmapi.TScopeRef;
 import org.apache.ode.bpel.pmapi.TVariableInfo;
 import org.apache.ode.bpel.pmapi.TVariableRef;
 import org.apache.ode.bpel.pmapi.VariableInfoDocument;
+import org.apache.ode.utils.DOMUtils;
 import org.apache.ode.utils.ISO8601DateParser;
 import org.apache.ode.utils.msg.MessageBundle;
 import org.apache.ode.utils.stl.CollectionsX;
@@ -372,6 +375,28 @@ public class ProcessAndInstanceManagementImpl implements InstanceManagement, Pro
         return ret;
     }
 
+    public InstanceInfoListDocument listArchivedInstances(String filter, int limit) {
+        InstanceInfoListDocument ret = InstanceInfoListDocument.Factory.newInstance();
+        final TInstanceInfoList infolist = ret.addNewInstanceInfoList();
+        final InstanceFilter instanceFilter = new InstanceFilter(filter, null, limit);
+        try {
+            _db.exec(new BpelDatabase.Callable<Object>() {
+                public Object run(BpelDAOConnection conn) throws Exception {
+                    if (conn instanceof InstanceArchivable) {
+                        for (ArchivedInstanceDAO archive : ((InstanceArchivable) conn).archivedInstanceQuery(instanceFilter)) {
+                            fillArchivedInstanceInfo(infolist.addNewInstanceInfo(), archive);
+                        }
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            __log.error("Exception while listing archived instances", e);
+            throw new ProcessingException("Exception while listing archived instances: " + e.toString());
+        }
+        return ret;
+    }
+
     public InstanceInfoListDocument listAllInstances() {
         return listInstancesSummary(null, null, Integer.MAX_VALUE);
     }
@@ -383,7 +408,7 @@ public class ProcessAndInstanceManagementImpl implements InstanceManagement, Pro
     public InstanceInfoDocument getInstanceInfo(final Long iid) throws InstanceNotFoundException {
         try {
             return _db.exec(new BpelDatabase.Callable<InstanceInfoDocument>() {
-                public InstanceInfoDocument run(BpelDAOConnection conn) {
+                public InstanceInfoDocument run(BpelDAOConnection conn) throws Exception {
                     return genInstanceInfoDocument(conn, iid);
                 }
             });
@@ -574,8 +599,8 @@ public class ProcessAndInstanceManagementImpl implements InstanceManagement, Pro
 
         for (int aid : aids) {
             OBase obase = oprocess.getChild(aid);
-            if (obase != null && obase.debugInfo != null && obase.debugInfo.extensibilityElements != null) {
-                for (Map.Entry<QName, Object> entry : obase.debugInfo.extensibilityElements.entrySet()) {
+            if (obase != null && obase.getDebugInfo() != null && obase.getDebugInfo().extensibilityElements != null) {
+                for (Map.Entry<QName, Object> entry : obase.getDebugInfo().extensibilityElements.entrySet()) {
                     TActivityExtInfo taei = taeil.addNewActivityExtInfo();
                     taei.setAiid("" + aid);
                     Object extValue = entry.getValue();
@@ -710,7 +735,7 @@ public class ProcessAndInstanceManagementImpl implements InstanceManagement, Pro
      *            instance identifier
      * @return generated document
      */
-    private InstanceInfoDocument genInstanceInfoDocument(BpelDAOConnection conn,  Long iid) {
+    private InstanceInfoDocument genInstanceInfoDocument(BpelDAOConnection conn,  Long iid) throws Exception {
         if (iid == null)
             throw new InvalidRequestException("Must specifiy instance id.");
 
@@ -719,8 +744,16 @@ public class ProcessAndInstanceManagementImpl implements InstanceManagement, Pro
 
         ii.setIid(iid.toString());
         ProcessInstanceDAO instance = conn.getInstance(iid);
-        if (instance == null)
-            throw new InstanceNotFoundException("InstanceNotFoundException " + iid);
+        if (instance == null) {
+            // completed instances may have been moved to the archive
+            ArchivedInstanceDAO archive = null;
+            if (conn instanceof InstanceArchivable)
+                archive = ((InstanceArchivable) conn).getArchivedInstance(iid);
+            if (archive == null)
+                throw new InstanceNotFoundException("InstanceNotFoundException " + iid);
+            fillArchivedInstanceInfo(ii, archive);
+            return ret;
+        }
         // TODO: deal with "ERROR" state information.
         fillInstanceInfo(ii, instance);
         return ret;
@@ -948,6 +981,42 @@ public class ProcessAndInstanceManagementImpl implements InstanceManagement, Pro
         }
     }
 
+    private void fillArchivedInstanceInfo(TInstanceInfo info, ArchivedInstanceDAO archive) throws Exception {
+        info.setIid("" + archive.getInstanceId());
+        info.setPid(archive.getProcessId().toString());
+        info.setProcessName(archive.getProcessType());
+        info.setDtStarted(toCalendar(archive.getCreateTime()));
+        info.setDtLastActive(toCalendar(archive.getLastActiveTime()));
+        info.setStatus(__psc.cvtInstanceStatus(archive.getState()));
+
+        // instances without fault nor scope have no archive document
+        if (archive.getData() != null) {
+            Element doc = InstanceArchiver.read(archive.getData());
+            Element fault = DOMUtils.findChildByName(doc, new QName(InstanceArchiver.FAULT));
+            if (fault != null) {
+                TFaultInfo faultInfo = info.addNewFaultInfo();
+                faultInfo.setName(QName.valueOf(fault.getAttribute("name")));
+                Element explanation = DOMUtils.findChildByName(fault, new QName(InstanceArchiver.EXPLANATION));
+                if (explanation != null)
+                    faultInfo.setExplanation(explanation.getTextContent());
+                faultInfo.setAiid(Integer.parseInt(fault.getAttribute("activity")));
+                faultInfo.setLineNumber(Integer.parseInt(fault.getAttribute("line")));
+            }
+        }
+
+        if (archive.getCorrelationProperties() != null) {
+            Element properties = InstanceArchiver.readCorrelationProperties(archive.getCorrelationProperties());
+            TInstanceInfo.CorrelationProperties corrProperties = info.addNewCorrelationProperties();
+            for (Element property = DOMUtils.getFirstChildElement(properties); property != null;
+                    property = DOMUtils.getNextSiblingElement(property)) {
+                TCorrelationProperty tproperty = corrProperties.addNewCorrelationProperty();
+                tproperty.setCsetid(property.getAttribute("csetid"));
+                tproperty.setPropertyName(QName.valueOf(property.getAttribute("name")));
+                tproperty.setStringValue(property.getTextContent());
+            }
+        }
+    }
+
     private void fillInstanceInfo(TInstanceInfo info, ProcessInstanceDAO instance) {
         fillInstanceSummary(info, instance);
 
@@ -45,6 +45,7 @@ public class ProcessCleanUpRunnable implements MapSerializableRunnable, Contexts
         try {
             // deleting of a process may involve hours' of database transaction, 
             // we need to break it down to smaller transactions
+            CleanupThrottle throttle = new CleanupThrottle("old process " + _pid);
             int transactionResultSize = 0;
             do {
                 transactionResultSize = _contexts.scheduler.execTransaction(new Callable<Integer>() {
@@ -56,8 +57,10 @@ public class ProcessCleanUpRunnable implements MapSerializableRunnable, Contexts
                         return ((DeferredProcessInstanceCleanable)process).deleteInstances(PROCESS_CLEANUP_TRANSACTION_SIZE);
                     }
                 });
-                if(__log.isDebugEnabled()) __log.debug("Deleted " + transactionResultSize + "instances for old process: " + _pid + ".");
-            } while( transactionResultSize == PROCESS_CLEANUP_TRANSACTION_SIZE );
+                if(__log.isDebugEnabled()) __log.debug("Deleted " + transactionResultSize + " instances for old process: " + _pid + ".");
+                throttle.cleaned(transactionResultSize);
+            } while( transactionResultSize == PROCESS_CLEANUP_TRANSACTION_SIZE && throttle.pause() );
+            throttle.done();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception ex) {
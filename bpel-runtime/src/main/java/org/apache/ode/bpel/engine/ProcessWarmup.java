@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Hydrates the registered processes in the background once the server has started, so that the first requests
+ * don't pay for it.
+ * <p>
+ * The processes that have been used the most recently go first: the use counts of the processes are persisted
+ * in a properties file when the server stops (halving the previous counts, so that old traffic fades away).
+ * Processes that are lazily hydrated are only warmed up if they had some traffic.
+ * </p>
+ */
+class ProcessWarmup {
+    private static final Log __log = LogFactory.getLog(ProcessWarmup.class);
+
+    private final int _threads;
+    private final boolean _precompile;
+    private final File _trafficFile;
+
+    /** Traffic of the previous runs, by process id. */
+    private final Map<QName, Long> _traffic = new HashMap<QName, Long>();
+
+    private ExecutorService _exec;
+
+    /**
+     * @param threads number of hydrating threads
+     * @param precompile whether the expressions of the processes should be compiled too
+     * @param trafficFile file the traffic of the processes is persisted in, or <code>null</code>
+     */
+    ProcessWarmup(int threads, boolean precompile, File trafficFile) {
+        _threads = Math.max(1, threads);
+        _precompile = precompile;
+        _trafficFile = trafficFile;
+        loadTraffic();
+    }
+
+    long getTraffic(QName pid) {
+        Long traffic = _traffic.get(pid);
+        return traffic == null ? 0 : traffic;
+    }
+
+    /**
+     * @return the processes to warm up, by decreasing traffic
+     */
+    List<BpelProcess> select(Collection<BpelProcess> processes, Set<BpelProcess> lazy) {
+        List<BpelProcess> selected = new ArrayList<BpelProcess>();
+        for (BpelProcess process : processes) {
+            if (!process.hintIsHydrated() && (!lazy.contains(process) || getTraffic(process.getPID()) > 0))
+                selected.add(process);
+        }
+        Collections.sort(selected, new Comparator<BpelProcess>() {
+            public int compare(BpelProcess p1, BpelProcess p2) {
+                long t1 = getTraffic(p1.getPID());
+                long t2 = getTraffic(p2.getPID());
+                return t1 > t2 ? -1 : (t1 < t2 ? 1 : 0);
+            }
+        });
+        return selected;
+    }
+
+    /**
+     * Start hydrating the given processes, in order. Each process is hydrated under the read lock of the
+     * management lock, and only if it is still registered at that point.
+     */
+    synchronized void start(List<BpelProcess> processes, final ReadWriteLock mngmtLock, final Set<BpelProcess> registered) {
+        if (processes.isEmpty())
+            return;
+        __log.info("Warming up " + processes.size() + " processes with " + _threads + " threads.");
+        _exec = Executors.newFixedThreadPool(_threads, new ThreadFactory() {
+            int threadNumber = 0;
+            public Thread newThread(Runnable r) {
+                threadNumber += 1;
+                Thread t = new Thread(r, "ODEWarmup-" + threadNumber);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        for (final BpelProcess process : processes) {
+            _exec.submit(new Runnable() {
+                public void run() {
+                    try {
+                        mngmtLock.readLock().lockInterruptibly();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    try {
+                        if (!registered.contains(process))
+                            return;
+                        long start = System.currentTimeMillis();
+                        process.hydrate();
+                        int compiled = _precompile ? process.precompileExpressions() : 0;
+                        if (__log.isDebugEnabled())
+                            __log.debug("Warmed up process " + process.getPID() + " in " + (System.currentTimeMillis() - start)
+                                    + "ms, " + compiled + " expressions compiled.");
+                    } catch (Throwable t) {
+                        // Will be hydrated again on first use, which will report the error to the caller
+                        __log.warn("Couldn't warm up process " + process.getPID(), t);
+                    } finally {
+                        mngmtLock.readLock().unlock();
+                    }
+                }
+            });
+        }
+        // Let the threads go away once done
+        _exec.shutdown();
+    }
+
+    /**
+     * Abort the warm-up, if still running.
+     */
+    synchronized void stop() {
+        if (_exec != null) {
+            _exec.shutdownNow();
+            _exec = null;
+        }
+    }
+
+    private void loadTraffic() {
+        if (_trafficFile == null || !_trafficFile.exists())
+            return;
+        Properties props = new Properties();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(_trafficFile);
+            props.load(is);
+        } catch (IOException e) {
+            __log.warn("Couldn't read the process traffic from " + _trafficFile, e);
+            return;
+        } finally {
+            if (is != null) try { is.close(); } catch (IOException e) { }
+        }
+        for (Map.Entry<Object, Object> e : props.entrySet()) {
+            try {
+                _traffic.put(QName.valueOf((String) e.getKey()), Long.valueOf(((String) e.getValue()).trim()));
+            } catch (IllegalArgumentException iae) {
+                __log.debug("Ignoring process traffic entry " + e.getKey() + "=" + e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Persist the traffic of the given processes, added to the halved traffic of the previous runs.
+     */
+    void saveTraffic(Collection<BpelProcess> processes) {
+        if (_trafficFile == null)
+            return;
+        Properties props = new Properties();
+        for (BpelProcess process : processes) {
+            long traffic = process.getUseCount() + getTraffic(process.getPID()) / 2;
+            if (traffic > 0)
+                props.setProperty(process.getPID().toString(), String.valueOf(traffic));
+        }
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(_trafficFile);
+            props.store(os, "Traffic of the processes, hydrated by decreasing traffic at startup");
+        } catch (IOException e) {
+            __log.warn("Couldn't write the process traffic to " + _trafficFile, e);
+        } finally {
+            if (os != null) try { os.close(); } catch (IOException e) { }
+        }
+    }
+}
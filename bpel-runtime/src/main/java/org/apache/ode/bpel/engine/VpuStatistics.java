@@ -0,0 +1,379 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.xml.namespace.QName;
+
+import org.apache.ode.jacob.vpu.Statistics;
+
+/**
+ * Jacob VPU statistics aggregated per process definition and, within a process, per activity type. The
+ * {@link Statistics} of the VPU of an instance are folded in after each execution of the instance; the
+ * counters are atomic so that executions of different instances don't contend on a lock.
+ * <p>
+ * The activity type of a reduction is the simple name of the outermost class of its closure, e.g.
+ * <code>SEQUENCE</code> for <code>org.apache.ode.bpel.runtime.SEQUENCE$ACTIVE</code>. Per-target run times
+ * are only measured when the collection is enabled, the other counters are always maintained by the VPU.
+ * </p>
+ */
+public class VpuStatistics implements VpuStatisticsMBean {
+
+    /** Upper bounds (in ns) of the buckets of the execution time histograms. */
+    static final long[] BUCKETS_NS = {
+            100000L, 250000L, 500000L, 1000000L, 2500000L, 5000000L, 10000000L, 25000000L, 50000000L,
+            100000000L, 250000000L, 500000000L, 1000000000L, 2500000000L, 5000000000L, 10000000000L
+    };
+
+    private volatile boolean _enabled;
+
+    private final ConcurrentMap<QName, ProcessStatistics> _processes = new ConcurrentHashMap<QName, ProcessStatistics>();
+
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    /**
+     * Fold the statistics of a VPU into the ones of its process.
+     * @param processId process of the instance the VPU executed
+     * @param stats statistics of the VPU since it was created or last reset
+     */
+    public void record(QName processId, Statistics stats) {
+        ProcessStatistics ps = process(processId);
+        ps.executions.incrementAndGet();
+        ps.cycles.addAndGet(stats.numCycles);
+        ps.runTimeNs.addAndGet(stats.totalRunTimeNs);
+        ps.clientTimeNs.addAndGet(stats.totalClientTimeNs);
+        ps.continuations.addAndGet(stats.numContinuations);
+        ps.channelsCreated.addAndGet(stats.channelsCreated);
+        ps.messagesSent.addAndGet(stats.messagesSent);
+        ps.runQueueEntries.addAndGet(stats.runQueueEntries);
+        ps.executionTime.observe(stats.totalRunTimeNs);
+
+        for (Map.Entry<String, Statistics.PerTargetStatistics> target : stats.byTarget.entrySet()) {
+            Statistics.PerTargetStatistics pts = target.getValue();
+            ActivityStatistics as = ps.activity(activityType(target.getKey()));
+            as.invocations.addAndGet(pts.invocations);
+            as.runTimeNs.addAndGet(pts.totalRunTimeNs);
+            max(as.maxRunTimeNs, pts.maxRunTimeNs);
+        }
+    }
+
+    public void reset() {
+        _processes.clear();
+    }
+
+    public String[] getProcesses() {
+        List<String> pids = new ArrayList<String>();
+        for (QName pid : _processes.keySet())
+            pids.add(pid.toString());
+        Collections.sort(pids);
+        return pids.toArray(new String[pids.size()]);
+    }
+
+    public long getTotalCycles() {
+        long total = 0;
+        for (ProcessStatistics ps : _processes.values())
+            total += ps.cycles.get();
+        return total;
+    }
+
+    public long getTotalRunTimeNs() {
+        long total = 0;
+        for (ProcessStatistics ps : _processes.values())
+            total += ps.runTimeNs.get();
+        return total;
+    }
+
+    public long getExecutions(String processId) {
+        ProcessStatistics ps = _processes.get(QName.valueOf(processId));
+        return ps == null ? 0 : ps.executions.get();
+    }
+
+    public long getCycles(String processId) {
+        ProcessStatistics ps = _processes.get(QName.valueOf(processId));
+        return ps == null ? 0 : ps.cycles.get();
+    }
+
+    public long getRunTimeNs(String processId) {
+        ProcessStatistics ps = _processes.get(QName.valueOf(processId));
+        return ps == null ? 0 : ps.runTimeNs.get();
+    }
+
+    public long getClientTimeNs(String processId) {
+        ProcessStatistics ps = _processes.get(QName.valueOf(processId));
+        return ps == null ? 0 : ps.clientTimeNs.get();
+    }
+
+    public long getContinuations(String processId) {
+        ProcessStatistics ps = _processes.get(QName.valueOf(processId));
+        return ps == null ? 0 : ps.continuations.get();
+    }
+
+    public long getChannelsCreated(String processId) {
+        ProcessStatistics ps = _processes.get(QName.valueOf(processId));
+        return ps == null ? 0 : ps.channelsCreated.get();
+    }
+
+    public long getMessagesSent(String processId) {
+        ProcessStatistics ps = _processes.get(QName.valueOf(processId));
+        return ps == null ? 0 : ps.messagesSent.get();
+    }
+
+    public String[] getActivityTypes(String processId) {
+        ProcessStatistics ps = _processes.get(QName.valueOf(processId));
+        if (ps == null)
+            return new String[0];
+        String[] types = ps.activities.keySet().toArray(new String[0]);
+        Arrays.sort(types);
+        return types;
+    }
+
+    public long getActivityInvocations(String processId, String activityType) {
+        ActivityStatistics as = activity(processId, activityType);
+        return as == null ? 0 : as.invocations.get();
+    }
+
+    public long getActivityRunTimeNs(String processId, String activityType) {
+        ActivityStatistics as = activity(processId, activityType);
+        return as == null ? 0 : as.runTimeNs.get();
+    }
+
+    public String exportMetrics() {
+        StringWriter out = new StringWriter();
+        try {
+            writeMetrics(out);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write all the statistics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public void writeMetrics(Writer out) throws IOException {
+        Map<QName, ProcessStatistics> snapshot = new HashMap<QName, ProcessStatistics>(_processes);
+        List<QName> pids = new ArrayList<QName>(snapshot.keySet());
+        Collections.sort(pids, new Comparator<QName>() {
+            public int compare(QName o1, QName o2) {
+                return o1.toString().compareTo(o2.toString());
+            }
+        });
+
+        header(out, "ode_vpu_executions_total", "counter", "Executions of process instances on the Jacob VPU.");
+        for (QName pid : pids)
+            sample(out, "ode_vpu_executions_total", pid, null, snapshot.get(pid).executions.get());
+        header(out, "ode_vpu_cycles_total", "counter", "Jacob VPU cycles (reductions) of process instances.");
+        for (QName pid : pids)
+            sample(out, "ode_vpu_cycles_total", pid, null, snapshot.get(pid).cycles.get());
+        header(out, "ode_vpu_run_seconds_total", "counter", "Time spent reducing process instances.");
+        for (QName pid : pids)
+            sample(out, "ode_vpu_run_seconds_total", pid, null, seconds(snapshot.get(pid).runTimeNs.get()));
+        header(out, "ode_vpu_client_seconds_total", "counter", "Time spent in the activity code of process instances.");
+        for (QName pid : pids)
+            sample(out, "ode_vpu_client_seconds_total", pid, null, seconds(snapshot.get(pid).clientTimeNs.get()));
+        header(out, "ode_vpu_continuations_total", "counter", "Continuations of process instances.");
+        for (QName pid : pids)
+            sample(out, "ode_vpu_continuations_total", pid, null, snapshot.get(pid).continuations.get());
+        header(out, "ode_vpu_channels_created_total", "counter", "Channels created by process instances.");
+        for (QName pid : pids)
+            sample(out, "ode_vpu_channels_created_total", pid, null, snapshot.get(pid).channelsCreated.get());
+        header(out, "ode_vpu_messages_sent_total", "counter", "Channel messages sent by process instances.");
+        for (QName pid : pids)
+            sample(out, "ode_vpu_messages_sent_total", pid, null, snapshot.get(pid).messagesSent.get());
+        header(out, "ode_vpu_run_queue_entries_total", "counter", "Continuations enqueued by process instances.");
+        for (QName pid : pids)
+            sample(out, "ode_vpu_run_queue_entries_total", pid, null, snapshot.get(pid).runQueueEntries.get());
+
+        header(out, "ode_vpu_execution_seconds", "histogram", "Time spent reducing a process instance per execution.");
+        for (QName pid : pids) {
+            Histogram h = snapshot.get(pid).executionTime;
+            long cumulated = 0;
+            for (int i = 0; i < BUCKETS_NS.length; ++i) {
+                cumulated += h.buckets.get(i);
+                sample(out, "ode_vpu_execution_seconds_bucket", pid, "le=\"" + seconds(BUCKETS_NS[i]) + "\"", cumulated);
+            }
+            cumulated += h.buckets.get(BUCKETS_NS.length);
+            sample(out, "ode_vpu_execution_seconds_bucket", pid, "le=\"+Inf\"", cumulated);
+            sample(out, "ode_vpu_execution_seconds_sum", pid, null, seconds(h.sumNs.get()));
+            sample(out, "ode_vpu_execution_seconds_count", pid, null, cumulated);
+        }
+
+        header(out, "ode_vpu_activity_invocations_total", "counter", "Reductions per activity type.");
+        for (QName pid : pids)
+            for (Map.Entry<String, ActivityStatistics> e : snapshot.get(pid).sortedActivities())
+                sample(out, "ode_vpu_activity_invocations_total", pid, activityLabel(e.getKey()),
+                        e.getValue().invocations.get());
+        header(out, "ode_vpu_activity_run_seconds_total", "counter", "Time spent in reductions per activity type.");
+        for (QName pid : pids)
+            for (Map.Entry<String, ActivityStatistics> e : snapshot.get(pid).sortedActivities())
+                sample(out, "ode_vpu_activity_run_seconds_total", pid, activityLabel(e.getKey()),
+                        seconds(e.getValue().runTimeNs.get()));
+        header(out, "ode_vpu_activity_run_seconds_max", "gauge", "Longest reduction per activity type.");
+        for (QName pid : pids)
+            for (Map.Entry<String, ActivityStatistics> e : snapshot.get(pid).sortedActivities())
+                sample(out, "ode_vpu_activity_run_seconds_max", pid, activityLabel(e.getKey()),
+                        seconds(Math.max(0, e.getValue().maxRunTimeNs.get())));
+    }
+
+    /**
+     * @return the activity type of a {@link Statistics#byTarget} key, i.e. the simple name of the outermost
+     * class of the closure
+     */
+    static String activityType(String target) {
+        int end = target.indexOf('$');
+        if (end < 0)
+            end = target.length();
+        int start = target.lastIndexOf('.', end - 1) + 1;
+        return target.substring(start, end);
+    }
+
+    private ProcessStatistics process(QName processId) {
+        ProcessStatistics ps = _processes.get(processId);
+        if (ps == null) {
+            ProcessStatistics existing = _processes.putIfAbsent(processId, ps = new ProcessStatistics());
+            if (existing != null)
+                ps = existing;
+        }
+        return ps;
+    }
+
+    private ActivityStatistics activity(String processId, String activityType) {
+        ProcessStatistics ps = _processes.get(QName.valueOf(processId));
+        return ps == null ? null : ps.activities.get(activityType);
+    }
+
+    private static void max(AtomicLong max, long value) {
+        long current;
+        while ((current = max.get()) < value && !max.compareAndSet(current, value))
+            ;
+    }
+
+    private static String seconds(long ns) {
+        return Double.toString(ns / 1e9);
+    }
+
+    private static String activityLabel(String activityType) {
+        return "activity=\"" + escape(activityType) + "\"";
+    }
+
+    private static void header(Writer out, String name, String type, String help) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private static void sample(Writer out, String name, QName pid, String labels, Object value) throws IOException {
+        out.write(name);
+        out.write("{process=\"");
+        out.write(escape(pid.toString()));
+        out.write('"');
+        if (labels != null) {
+            out.write(',');
+            out.write(labels);
+        }
+        out.write("} ");
+        out.write(value.toString());
+        out.write('\n');
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    static class ProcessStatistics {
+        final AtomicLong executions = new AtomicLong();
+        final AtomicLong cycles = new AtomicLong();
+        final AtomicLong runTimeNs = new AtomicLong();
+        final AtomicLong clientTimeNs = new AtomicLong();
+        final AtomicLong continuations = new AtomicLong();
+        final AtomicLong channelsCreated = new AtomicLong();
+        final AtomicLong messagesSent = new AtomicLong();
+        final AtomicLong runQueueEntries = new AtomicLong();
+        final Histogram executionTime = new Histogram();
+        final ConcurrentMap<String, ActivityStatistics> activities = new ConcurrentHashMap<String, ActivityStatistics>();
+
+        ActivityStatistics activity(String type) {
+            ActivityStatistics as = activities.get(type);
+            if (as == null) {
+                ActivityStatistics existing = activities.putIfAbsent(type, as = new ActivityStatistics());
+                if (existing != null)
+                    as = existing;
+            }
+            return as;
+        }
+
+        List<Map.Entry<String, ActivityStatistics>> sortedActivities() {
+            List<Map.Entry<String, ActivityStatistics>> sorted =
+                new ArrayList<Map.Entry<String, ActivityStatistics>>(activities.entrySet());
+            Collections.sort(sorted, new Comparator<Map.Entry<String, ActivityStatistics>>() {
+                public int compare(Map.Entry<String, ActivityStatistics> o1, Map.Entry<String, ActivityStatistics> o2) {
+                    return o1.getKey().compareTo(o2.getKey());
+                }
+            });
+            return sorted;
+        }
+    }
+
+    static class ActivityStatistics {
+        final AtomicLong invocations = new AtomicLong();
+        final AtomicLong runTimeNs = new AtomicLong();
+        final AtomicLong maxRunTimeNs = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * Fixed-bucket histogram over {@link VpuStatistics#BUCKETS_NS}, the last bucket counts the values above the
+     * highest bound.
+     */
+    static class Histogram {
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_NS.length + 1);
+        final AtomicLong sumNs = new AtomicLong();
+
+        void observe(long ns) {
+            int idx = Arrays.binarySearch(BUCKETS_NS, ns);
+            buckets.incrementAndGet(idx < 0 ? -idx - 1 : idx);
+            sumNs.addAndGet(ns);
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); ++i)
+                count += buckets.get(i);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+/**
+ * Management interface of the Jacob VPU statistics aggregated by the engine, see {@link VpuStatistics}.
+ * Processes are identified by the string form of their process id (<code>{namespace}name-version</code>).
+ */
+public interface VpuStatisticsMBean {
+
+    boolean isEnabled();
+
+    /**
+     * Turn the collection of the statistics on or off; only instance executions started afterwards are affected.
+     */
+    void setEnabled(boolean enabled);
+
+    String[] getProcesses();
+
+    long getTotalCycles();
+
+    long getTotalRunTimeNs();
+
+    long getExecutions(String processId);
+
+    long getCycles(String processId);
+
+    long getRunTimeNs(String processId);
+
+    long getClientTimeNs(String processId);
+
+    long getContinuations(String processId);
+
+    long getChannelsCreated(String processId);
+
+    long getMessagesSent(String processId);
+
+    String[] getActivityTypes(String processId);
+
+    long getActivityInvocations(String processId, String activityType);
+
+    long getActivityRunTimeNs(String processId, String activityType);
+
+    /**
+     * @return all the statistics in the Prometheus text exposition format
+     */
+    String exportMetrics();
+
+    void reset();
+}
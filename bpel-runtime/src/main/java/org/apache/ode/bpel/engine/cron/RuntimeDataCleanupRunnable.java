@@ -1,5 +1,7 @@
 package org.apache.ode.bpel.engine.cron;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -11,6 +13,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.ode.bpel.common.InstanceFilter;
 import org.apache.ode.bpel.dao.BpelDAOConnection;
 import org.apache.ode.bpel.dao.FilteredInstanceDeletable;
+import org.apache.ode.bpel.engine.CleanupThrottle;
 import org.apache.ode.bpel.engine.Contexts;
 import org.apache.ode.bpel.engine.BpelServerImpl.ContextsAware;
 import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
@@ -67,32 +70,55 @@ public class RuntimeDataCleanupRunnable implements MapSerializableRunnable, Cont
             
             if( filter.trim().length() > 0 ) {
                 _log.info("CRON CLEAN.run(" + filter + ")");
-                long numberOfDeletedInstances = 0;
-                do {
-                    numberOfDeletedInstances = cleanInstances(filter, _cleanupInfo.getCategories(), _transactionSize);
-                } while( numberOfDeletedInstances == _transactionSize );
+                cleanInstances(filter, _cleanupInfo.getCategories(), _transactionSize);
             }
         }
     }
     
-    int cleanInstances(String filter, final Set<CLEANUP_CATEGORY> categories, int limit) {
+    /**
+     * Walks through the instances matching the filter by increasing instance id, the instances of each id
+     * range of at most <code>limit</code> instances are cleaned up in their own transaction, with set-based
+     * deletes. The next range starts after the last id of the previous one, so the instances whose rows are
+     * kept (when the INSTANCE category isn't cleaned up) aren't selected again.
+     * 
+     * @return the number of cleaned up instances
+     */
+    long cleanInstances(String filter, final Set<CLEANUP_CATEGORY> categories, int limit) {
         _log.debug("CRON CLEAN using filter: " + filter + ", limit: " + limit);
         
+        if( _contexts.scheduler == null ) {
+            return 0;
+        }
+
         final InstanceFilter instanceFilter = new InstanceFilter(filter, "", limit);
+        CleanupThrottle throttle = new CleanupThrottle("instances matching '" + filter + "'");
+        long lastIid = 0;
+        while( true ) {
+            List<Long> iids = cleanInstances(instanceFilter, categories, lastIid);
+            throttle.cleaned(iids.size());
+            if( iids.size() < limit || !throttle.pause() ) {
+                break;
+            }
+            lastIid = iids.get(iids.size() - 1);
+        }
+        throttle.done();
+        return throttle.getInstances();
+    }
+
+    private List<Long> cleanInstances(final InstanceFilter instanceFilter, final Set<CLEANUP_CATEGORY> categories, final long afterIid) {
         try {
-            if( _contexts.scheduler != null ) {
-                return _contexts.scheduler.execTransaction(new Callable<Integer>() {
-                    public Integer call() throws Exception {
-                        BpelDAOConnection con = _contexts.dao.getConnection();
-                        if( con instanceof FilteredInstanceDeletable ) {
-                            return ((FilteredInstanceDeletable)con).deleteInstances(instanceFilter, categories);
-                        }
-                        return 0;
+            return _contexts.scheduler.execTransaction(new Callable<List<Long>>() {
+                public List<Long> call() throws Exception {
+                    BpelDAOConnection con = _contexts.dao.getConnection();
+                    if( con instanceof FilteredInstanceDeletable ) {
+                        FilteredInstanceDeletable deletable = (FilteredInstanceDeletable)con;
+                        List<Long> iids = deletable.findInstanceIds(instanceFilter, afterIid);
+                        deletable.deleteInstances(iids, categories);
+                        return iids;
                     }
-                });
-            } else {
-                return 0;
-            }
+                    return Collections.emptyList();
+                }
+            });
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
@@ -170,6 +170,8 @@ public class CorrelationKeySetMigration implements Migration {
             soup.setReplacementMap(new ReplacementMapImpl(oprocess));
             ByteArrayInputStream iis = new ByteArrayInputStream(instance.getExecutionState());
             soup.read(iis);
+            for (byte[] delta : instance.getExecutionStateDeltas())
+                soup.readDelta(new ByteArrayInputStream(delta));
             return soup;
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -182,6 +184,7 @@ public class CorrelationKeySetMigration implements Migration {
             soup.write(bos);
             bos.close();
             instance.setExecutionState(bos.toByteArray());
+            instance.clearExecutionStateDeltas();
             ExecutionQueueImpl._classDescriptors.clear();
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -31,6 +31,7 @@ import org.apache.ode.bpel.dao.ProcessDAO;
 import org.apache.ode.bpel.dao.ProcessInstanceDAO;
 import org.apache.ode.bpel.dao.ScopeDAO;
 import org.apache.ode.bpel.evt.BpelEvent;
+import org.apache.ode.bpel.evt.ProcessInstanceEvent;
 import org.apache.ode.bpel.iapi.Scheduler;
 import org.apache.ode.utils.ISO8601DateParser;
 import org.apache.ode.utils.stl.CollectionsX;
@@ -313,6 +314,10 @@ class BpelDAOConnectionImpl implements BpelDAOConnection {
         _events.add(event);
     }
 
+    public void insertBpelEvents(List<ProcessInstanceEvent> events) {
+        _events.addAll(events);
+    }
+
 
     public List<Date> bpelEventTimelineQuery(InstanceFilter ifilter, BpelEventFilter efilter) {
         // TODO : Provide more correct implementation:
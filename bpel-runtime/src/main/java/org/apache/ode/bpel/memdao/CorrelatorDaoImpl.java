@@ -100,8 +100,8 @@ class CorrelatorDaoImpl extends DaoBaseImpl implements CorrelatorDAO {
         _correlatorId = newId;
     }
 
-    public void removeRoutes(String routeGroupId, ProcessInstanceDAO target) {
-        ((ProcessInstanceDaoImpl)target).removeRoutes(routeGroupId);
+    public int removeRoutes(String routeGroupId, ProcessInstanceDAO target) {
+        return ((ProcessInstanceDaoImpl)target).removeRoutes(routeGroupId);
     }
 
     public Collection<MessageRouteDAO> getAllRoutes() {
@@ -139,13 +139,16 @@ class CorrelatorDaoImpl extends DaoBaseImpl implements CorrelatorDAO {
         return true;
     }
 
-    void _removeRoutes(String routeGroupId, ProcessInstanceDaoImpl target) {
+    int _removeRoutes(String routeGroupId, ProcessInstanceDaoImpl target) {
+        int removed = 0;
         for (Iterator<MessageRouteDaoImpl> i = _routes.iterator(); i.hasNext();) {
             MessageRouteDaoImpl we = i.next();
             if ((we._groupId.equals(routeGroupId) || routeGroupId == null) && we._instance == target) {
                 i.remove();
+                removed++;
             }
         }
+        return removed;
     }
 
     /**
@@ -134,6 +134,18 @@ public class ProcessInstanceDaoImpl extends DaoBaseImpl implements ProcessInstan
         throw new IllegalStateException("In-memory instances are never serialized");
     }
 
+    public List<byte[]> getExecutionStateDeltas() {
+        throw new IllegalStateException("In-memory instances are never serialized");
+    }
+
+    public void addExecutionStateDelta(byte[] delta) {
+        throw new IllegalStateException("In-memory instances are never serialized");
+    }
+
+    public void clearExecutionStateDeltas() {
+        throw new IllegalStateException("In-memory instances are never serialized");
+    }
+
     public Object getSoup() {
         return _soup;
     }
@@ -399,9 +411,11 @@ public class ProcessInstanceDaoImpl extends DaoBaseImpl implements ProcessInstan
 
     }
 
-    void removeRoutes(String routeGroupId) {
+    int removeRoutes(String routeGroupId) {
+        int removed = 0;
         for (CorrelatorDaoImpl correlator : _processDao._correlators.values())
-            correlator._removeRoutes(routeGroupId, this);
+            removed += correlator._removeRoutes(routeGroupId, this);
+        return removed;
     }
 
     public BpelDAOConnection getConnection() {
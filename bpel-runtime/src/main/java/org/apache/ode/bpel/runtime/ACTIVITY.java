@@ -89,8 +89,8 @@ abstract class ACTIVITY extends BpelJacobRunnable implements IndexedObject {
     }
 
     protected void sendEvent(ScopeEvent event) {
-        if (event.getLineNo() == -1 && _self.o.debugInfo != null) {
-            event.setLineNo(_self.o.debugInfo.startLine);
+        if (event.getLineNo() == -1 && _self.o.getDebugInfo() != null) {
+            event.setLineNo(_self.o.getDebugInfo().startLine);
         }
         _scopeFrame.fillEventInfo(event);
         fillEventContext(event);
@@ -138,8 +138,8 @@ abstract class ACTIVITY extends BpelJacobRunnable implements IndexedObject {
     }
 
     private int getLineNo() {
-        if (_self.o.debugInfo != null && _self.o.debugInfo.startLine != -1) {
-            return _self.o.debugInfo.startLine;
+        if (_self.o.getDebugInfo() != null && _self.o.getDebugInfo().startLine != -1) {
+            return _self.o.getDebugInfo().startLine;
         }
         return -1;
     }
@@ -452,8 +452,8 @@ class ASSIGN extends ACTIVITY {
             }
         }
 
-        if (ocopy.debugInfo != null)
-            se.setLineNo(ocopy.debugInfo.startLine);
+        if (ocopy.getDebugInfo() != null)
+            se.setLineNo(ocopy.getDebugInfo().startLine);
         sendEvent(se);
     }
 
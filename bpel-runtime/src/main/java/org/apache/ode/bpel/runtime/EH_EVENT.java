@@ -245,8 +245,8 @@ class EH_EVENT extends BpelJacobRunnable {
                                         VariableModificationEvent se = new VariableModificationEvent(vinst.declaration.name);
                                         se.setNewValue(msgEl);
                                         _scopeFrame.fillEventInfo(se);
-                                        if (_oevent.debugInfo != null)
-                                            se.setLineNo(_oevent.debugInfo.startLine);
+                                        if (_oevent.getDebugInfo() != null)
+                                            se.setLineNo(_oevent.getDebugInfo().startLine);
                                         getBpelRuntimeContext().sendEvent(se);
                                     } catch (Exception ex) {
                                         __log.fatal(ex);
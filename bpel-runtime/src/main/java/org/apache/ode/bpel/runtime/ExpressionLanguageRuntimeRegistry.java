@@ -19,6 +19,7 @@
 package org.apache.ode.bpel.runtime;
 
 import org.apache.ode.bpel.common.FaultException;
+import org.apache.ode.bpel.elang.xpath10.runtime.XPath10ExpressionRuntime;
 import org.apache.ode.bpel.explang.ConfigurationException;
 import org.apache.ode.bpel.explang.EvaluationContext;
 import org.apache.ode.bpel.explang.EvaluationException;
@@ -92,6 +93,15 @@ public class ExpressionLanguageRuntimeRegistry  {
     return findRuntime(cexp).evaluateAsDuration(cexp, ctx);
   }
 
+  /**
+   * Compile an expression ahead of its first evaluation, if its language runtime supports it.
+   * @return <code>true</code> if the expression has been compiled
+   */
+  public boolean precompile(OExpression cexp) throws EvaluationException {
+    ExpressionLanguageRuntime elangRT = findRuntime(cexp);
+    return elangRT instanceof XPath10ExpressionRuntime && ((XPath10ExpressionRuntime) elangRT).precompile(cexp);
+  }
+
   private ExpressionLanguageRuntime findRuntime(OExpression cexp) {
     return _runtimes.get(cexp.expressionLanguage);
   }
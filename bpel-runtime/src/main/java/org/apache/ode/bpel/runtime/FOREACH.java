@@ -222,8 +222,8 @@ public class FOREACH extends ACTIVITY {
         // Generating event
         VariableModificationEvent se = new VariableModificationEvent(vinst.declaration.name);
         se.setNewValue(counterNode);
-        if (_oforEach.debugInfo != null)
-            se.setLineNo(_oforEach.debugInfo.startLine);
+        if (_oforEach.getDebugInfo() != null)
+            se.setLineNo(_oforEach.getDebugInfo().startLine);
         sendEvent(se);
 
         instance(new SCOPE(child.activity, newFrame, _linkFrame));
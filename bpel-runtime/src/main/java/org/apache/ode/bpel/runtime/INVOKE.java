@@ -128,8 +128,8 @@ public class INVOKE extends ACTIVITY {
                         // Generating event
                         VariableModificationEvent se = new VariableModificationEvent(outputVar.declaration.name);
                         se.setNewValue(response);
-                        if (_oinvoke.debugInfo != null)
-                            se.setLineNo(_oinvoke.debugInfo.startLine);
+                        if (_oinvoke.getDebugInfo() != null)
+                            se.setLineNo(_oinvoke.getDebugInfo().startLine);
                         sendEvent(se);
 
                         try {
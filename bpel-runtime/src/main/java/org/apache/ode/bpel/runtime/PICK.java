@@ -263,8 +263,8 @@ class PICK extends ACTIVITY {
         // Generating event
         VariableModificationEvent se = new VariableModificationEvent(vinst.declaration.name);
         se.setNewValue(msgEl);
-        if (_opick.debugInfo != null)
-            se.setLineNo(_opick.debugInfo.startLine);
+        if (_opick.getDebugInfo() != null)
+            se.setLineNo(_opick.getDebugInfo().startLine);
         sendEvent(se);
     }
 
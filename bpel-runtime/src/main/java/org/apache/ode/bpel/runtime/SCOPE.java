@@ -318,8 +318,8 @@ class SCOPE extends ACTIVITY {
                                 // Generating event
                                 VariableModificationEvent se = new VariableModificationEvent(vinst.declaration.name);
                                 se.setNewValue(_fault.getFaultMessage());
-                                if (_oscope.debugInfo != null)
-                                    se.setLineNo(_oscope.debugInfo.startLine);
+                                if (_oscope.getDebugInfo() != null)
+                                    se.setLineNo(_oscope.getDebugInfo().startLine);
                                 sendEvent(se);
                             } catch (Exception ex) {
                                 __log.fatal(ex);
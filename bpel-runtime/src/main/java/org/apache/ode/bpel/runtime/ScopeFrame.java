@@ -149,8 +149,8 @@ class ScopeFrame implements Serializable {
         event.setScopeId(scopeInstanceId);
         event.setScopeName(oscope.name);
         event.setScopeDeclerationId(oscope.getId());
-        if (event.getLineNo() == -1 && oscope.debugInfo !=  null)
-            event.setLineNo(oscope.debugInfo.startLine);
+        if (event.getLineNo() == -1 && oscope.getDebugInfo() !=  null)
+            event.setLineNo(oscope.getDebugInfo().startLine);
     }
 
 
@@ -110,9 +110,9 @@ public class FaultData implements Serializable {
   protected int findLineNo(OBase location) {
   	if (location == null)
   		return -1;
-  	if (location.debugInfo == null)
+  	if (location.getDebugInfo() == null)
   		return -1;
-  	return location.debugInfo.startLine;
+  	return location.getDebugInfo().startLine;
   }
 
 
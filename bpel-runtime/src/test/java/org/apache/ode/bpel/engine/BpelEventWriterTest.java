@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.evt.ProcessInstanceEvent;
+import org.apache.ode.bpel.evt.ProcessInstanceStateChangeEvent;
+import org.apache.ode.il.MockScheduler;
+
+/**
+ * Test case for {@link BpelEventWriter}.
+ */
+public class BpelEventWriterTest extends TestCase {
+
+    /** Instance ids of the events of the written batches. */
+    final List<List<Long>> _batches = Collections.synchronizedList(new ArrayList<List<Long>>());
+
+    BpelEventWriter _writer;
+
+    public void setUp() {
+        Contexts contexts = new Contexts();
+        contexts.scheduler = new MockScheduler();
+        contexts.dao = Stubs.connectionFactory(connection());
+        _writer = new BpelEventWriter(contexts);
+    }
+
+    public void testBatches() {
+        _writer.setBatchSize(3);
+        _writer.enqueue(events(1, 2, 3, 4, 5));
+        assertEquals(5, _writer.getQueued());
+        _writer.start();
+        // the queued events are written before the writer stops
+        _writer.stop();
+        assertEquals("[[1, 2, 3], [4, 5]]", _batches.toString());
+        assertEquals(0, _writer.getQueued());
+        assertEquals(5, _writer.getWritten());
+    }
+
+    public void testFailedEvent() {
+        _writer.enqueue(events(1, -2, 3));
+        _writer.start();
+        _writer.stop();
+        // the batch is retried one event at a time
+        assertEquals("[[1], [3]]", _batches.toString());
+        assertEquals(2, _writer.getWritten());
+        assertEquals(1, _writer.getFailed());
+    }
+
+    public void testFullQueue() {
+        _writer.setCapacity(2);
+        _writer.enqueue(events(1, 2, 3));
+        assertEquals(2, _writer.getCapacity());
+        assertEquals(2, _writer.getQueued());
+        assertEquals(1, _writer.getDropped());
+        _writer.reset();
+        assertEquals(0, _writer.getDropped());
+    }
+
+    /**
+     * A connection recording the batches of events it's asked to insert, and failing on negative instance ids.
+     */
+    private BpelDAOConnection connection() {
+        return Stubs.stub(BpelDAOConnection.class, new InvocationHandler() {
+            @SuppressWarnings("unchecked")
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("insertBpelEvents")) {
+                    List<Long> iids = new ArrayList<Long>();
+                    for (ProcessInstanceEvent event : (List<ProcessInstanceEvent>) args[0]) {
+                        if (event.getProcessInstanceId() < 0)
+                            throw new IllegalStateException("No instance " + event.getProcessInstanceId());
+                        iids.add(event.getProcessInstanceId());
+                    }
+                    _batches.add(iids);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static List<ProcessInstanceEvent> events(long... iids) {
+        List<ProcessInstanceEvent> events = new ArrayList<ProcessInstanceEvent>();
+        for (long iid : iids) {
+            ProcessInstanceEvent event = new ProcessInstanceStateChangeEvent();
+            event.setProcessInstanceId(iid);
+            events.add(event);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.iapi.ProcessConf;
+import org.apache.ode.utils.DOMUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Test case for the process properties read by {@link BpelProcess}.
+ */
+public class BpelProcessTest extends TestCase {
+
+    Map<QName, Node> _properties;
+    BpelProcess _process;
+
+    public void setUp() {
+        _properties = new HashMap<QName, Node>();
+        Map<String, Object> conf = new HashMap<String, Object>();
+        conf.put("getProcessId", new QName("urn:test", "Order-1"));
+        conf.put("getProcessProperties", _properties);
+        _process = new BpelProcess(Stubs.stub(ProcessConf.class, conf));
+    }
+
+    public void testDefaults() {
+        assertEquals(0, _process.getMaximumStateDeltaCount());
+        assertEquals(1, _process.getReductionParallelism());
+    }
+
+    public void testIntProperties() {
+        setProperty(BpelProcess.PROP_MAX_STATE_DELTAS, " 8 ");
+        setProperty(BpelProcess.PROP_REDUCTION_PARALLELISM, "4");
+        assertEquals(8, _process.getMaximumStateDeltaCount());
+        assertEquals(4, _process.getReductionParallelism());
+    }
+
+    public void testInvalidIntProperties() {
+        setProperty(BpelProcess.PROP_MAX_STATE_DELTAS, "eight");
+        setProperty(BpelProcess.PROP_REDUCTION_PARALLELISM, "4x");
+        assertEquals(0, _process.getMaximumStateDeltaCount());
+        assertEquals(1, _process.getReductionParallelism());
+
+        setProperty(BpelProcess.PROP_MAX_STATE_DELTAS, "-3");
+        setProperty(BpelProcess.PROP_REDUCTION_PARALLELISM, "0");
+        assertEquals(0, _process.getMaximumStateDeltaCount());
+        assertEquals(1, _process.getReductionParallelism());
+    }
+
+    private void setProperty(QName property, String value) {
+        Document doc = DOMUtils.newDocument();
+        _properties.put(property, doc.createTextNode(value));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.common.CorrelationKey;
+import org.apache.ode.bpel.common.CorrelationKeySet;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.MessageRouteDAO;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.memdao.BpelDAOConnectionFactoryImpl;
+import org.apache.ode.il.MockScheduler;
+
+/**
+ * Test case for {@link CorrelationRouteIndex}.
+ */
+public class CorrelationRouteIndexTest extends TestCase {
+    private static final String PID = "{urn:test}process-1";
+
+    CorrelationRouteIndex _index;
+
+    MockScheduler _scheduler;
+
+    BpelDAOConnection _conn;
+
+    public void setUp() {
+        _index = new CorrelationRouteIndex(2);
+        _scheduler = new MockScheduler();
+        _conn = new BpelDAOConnectionFactoryImpl(_scheduler).getConnection();
+    }
+
+    public void testClaim() {
+        _index.add(PID, "pl.op", keySet("order", "1"), 1L, "g1", 0, "one");
+        CorrelationRouteIndex.Route route = _index.claim(PID, "pl.op", keySet("order", "1"));
+        assertNotNull(route);
+        assertEquals(Long.valueOf(1L), route.iid);
+        assertEquals("g1", route.groupId);
+        // claimed routes are no longer indexed
+        assertNull(_index.claim(PID, "pl.op", keySet("order", "1")));
+        assertNull(_index.claim(PID, "other.op", keySet("order", "1")));
+        assertEquals(0, _index.getSize());
+        assertEquals(2, _index.getMisses());
+    }
+
+    public void testSubSet() {
+        _index.add(PID, "pl.op", keySet("order", "1"), 1L, "g1", 0, "one");
+        CorrelationKeySet keySet = keySet("order", "1").add(new CorrelationKey("customer", new String[] { "2" }));
+        assertNotNull(_index.claim(PID, "pl.op", keySet));
+    }
+
+    public void testRemoveGroup() {
+        _index.add(PID, "pl.op", keySet("order", "1"), 1L, "g1", 0, "one");
+        _index.add(PID, "pl.cancel", keySet("order", "1"), 1L, "g1", 1, "one");
+        assertEquals(2, _index.getSize());
+        assertNotNull(_index.claim(PID, "pl.op", keySet("order", "1")));
+        // the other selector of the pick went with it
+        assertEquals(0, _index.getSize());
+
+        _index.add(PID, "pl.op", keySet("order", "2"), 2L, "g2", 0, "one");
+        _index.add(PID, "pl.op", keySet("order", "3"), 2L, "g3", 0, "one");
+        _index.removeGroup(2L, "g2");
+        assertNull(_index.claim(PID, "pl.op", keySet("order", "2")));
+        _index.removeGroup(2L, null);
+        assertEquals(0, _index.getSize());
+    }
+
+    public void testLeastRecentlyUsedEviction() {
+        _index.add(PID, "pl.op", keySet("order", "1"), 1L, "g1", 0, "one");
+        _index.add(PID, "pl.op", keySet("order", "2"), 2L, "g2", 0, "one");
+        _index.add(PID, "pl.op", keySet("order", "3"), 3L, "g3", 0, "one");
+        assertEquals(2, _index.getSize());
+        assertNull(_index.claim(PID, "pl.op", keySet("order", "1")));
+        assertNotNull(_index.claim(PID, "pl.op", keySet("order", "3")));
+
+        _index.setMaximumSize(0);
+        assertEquals(0, _index.getSize());
+    }
+
+    public void testBroadcastRoutes() {
+        _index.add(PID, "pl.op", keySet("order", "1"), 2L, "g2", 0, "all");
+        assertEquals(0, _index.getSize());
+        assertNull(_index.claim(PID, "pl.op", keySet("order", "1")));
+    }
+
+    public void testOldestRouteFirst() {
+        _index.setMaximumSize(10);
+        CorrelationRouteIndex.Update first = _index.new Update(PID, "pl.op", keySet("order", "1"), 1L, "g1", 0, "one");
+        CorrelationRouteIndex.Update second = _index.new Update(PID, "pl.op", keySet("order", "1"), 2L, "g2", 0, "one");
+        // the transaction of the second route commits first
+        second.afterCompletion(true);
+        first.afterCompletion(true);
+        assertEquals(2, _index.getSize());
+        assertEquals(Long.valueOf(1L), _index.claim(PID, "pl.op", keySet("order", "1")).iid);
+        assertEquals(Long.valueOf(2L), _index.claim(PID, "pl.op", keySet("order", "1")).iid);
+        assertNull(_index.claim(PID, "pl.op", keySet("order", "1")));
+        assertEquals(0, _index.getSize());
+    }
+
+    public void testUpdateOnCommit() {
+        _scheduler.beginTransaction();
+        _scheduler.registerSynchronizer(_index.new Update(PID, "pl.op", keySet("order", "1"), 1L, "g1", 0, "one"));
+        assertEquals(0, _index.getSize());
+        _scheduler.commitTransaction();
+        assertEquals(1, _index.getSize());
+    }
+
+    public void testUpdateOnRollback() {
+        _scheduler.beginTransaction();
+        _scheduler.registerSynchronizer(_index.new Update(PID, "pl.op", keySet("order", "1"), 1L, "g1", 0, "one"));
+        _scheduler.rollbackTransaction();
+        assertEquals(0, _index.getSize());
+        assertNull(_index.claim(PID, "pl.op", keySet("order", "1")));
+    }
+
+    public void testFindRoute() {
+        QName pid = new QName("urn:test", "findRoute");
+        _scheduler.beginTransaction();
+        ProcessDAO process = _conn.createProcess(pid, pid, "guid", 1);
+        CorrelatorDAO correlator = process.addCorrelator("pl.op");
+        ProcessInstanceDAO instance = process.createInstance(correlator);
+        correlator.addRoute("g1", instance, 0, keySet("order", "1"), "one");
+        _scheduler.registerSynchronizer(_index.new Update(pid.toString(), "pl.op", keySet("order", "1"),
+                instance.getInstanceId(), "g1", 0, "one"));
+        _scheduler.commitTransaction();
+
+        MessageRouteDAO route = _index.findRoute(pid.toString(), correlator, keySet("order", "1"), _conn);
+        assertNotNull(route);
+        assertSame(instance, route.getTargetInstance());
+        assertEquals("g1", route.getGroupId());
+        assertEquals(keySet("order", "1").toCanonicalString(), route.getCorrelationKeySet().toCanonicalString());
+        assertEquals(new CorrelationKey("order", new String[] { "1" }), route.getCorrelationKey());
+        route.setCorrelationKey(new CorrelationKey("order", new String[] { "2" }));
+        assertEquals(new CorrelationKey("order", new String[] { "2" }), route.getCorrelationKey());
+        // claimed from the database as well
+        assertTrue(correlator.findRoute(keySet("order", "1")).isEmpty());
+        assertEquals(1, _index.getHits());
+    }
+
+    public void testStaleRoute() {
+        QName pid = new QName("urn:test", "staleRoute");
+        _scheduler.beginTransaction();
+        ProcessDAO process = _conn.createProcess(pid, pid, "guid", 1);
+        CorrelatorDAO correlator = process.addCorrelator("pl.op");
+        ProcessInstanceDAO instance = process.createInstance(correlator);
+        correlator.addRoute("g1", instance, 0, keySet("order", "1"), "one");
+        _scheduler.commitTransaction();
+        _index.add(pid.toString(), "pl.op", keySet("order", "1"), instance.getInstanceId(), "g1", 0, "one");
+
+        // another node matched the route
+        _scheduler.beginTransaction();
+        correlator.removeRoutes("g1", instance);
+        _scheduler.commitTransaction();
+
+        assertNull(_index.findRoute(pid.toString(), correlator, keySet("order", "1"), _conn));
+        assertEquals(1, _index.getStaleHits());
+        assertEquals(0, _index.getSize());
+    }
+
+    public void testDisabled() {
+        _index.setMaximumSize(0);
+        assertFalse(_index.isEnabled());
+        _index.add(PID, "pl.op", keySet("order", "1"), 1L, "g1", 0, "one");
+        assertNull(_index.claim(PID, "pl.op", keySet("order", "1")));
+    }
+
+    public void testStatistics() {
+        _index.add(PID, "pl.op", keySet("order", "1"), 1L, "g1", 0, "one");
+        _index.hit();
+        _index.stale(_index.claim(PID, "pl.op", keySet("order", "1")));
+        assertEquals(1, _index.getHits());
+        assertEquals(1, _index.getMisses());
+        assertEquals(1, _index.getStaleHits());
+        assertEquals(0.5, _index.getHitRatio(), 0.001);
+        _index.reset();
+        assertEquals(0.0, _index.getHitRatio(), 0.001);
+    }
+
+    private CorrelationKeySet keySet(String cset, String value) {
+        return new CorrelationKeySet().add(new CorrelationKey(cset, new String[] { value }));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
+import javax.transaction.TransactionManager;
+
+import org.apache.ode.dao.jpa.BPELDAOConnectionFactoryImpl;
+import org.apache.ode.il.EmbeddedGeronimoFactory;
+import org.apache.ode.il.MockScheduler;
+import org.apache.ode.utils.GUID;
+import org.hsqldb.jdbc.jdbcDataSource;
+
+/**
+ * Engine contexts for the tests whose behaviour depends on the persistence: the JPA DAO over an in-memory
+ * HSQL database, and a scheduler running the transactions on a real transaction manager.
+ */
+public class DAOTestContexts extends Contexts {
+    private final BPELDAOConnectionFactoryImpl _daoCF;
+
+    public DAOTestContexts() throws Exception {
+        TransactionManager txm = new EmbeddedGeronimoFactory().getTransactionManager();
+
+        jdbcDataSource hsqlds = new jdbcDataSource();
+        hsqlds.setDatabase("jdbc:hsqldb:mem:" + new GUID().toString());
+        hsqlds.setUser("sa");
+        hsqlds.setPassword("");
+
+        _daoCF = new BPELDAOConnectionFactoryImpl();
+        _daoCF.setDataSource(hsqlds);
+        _daoCF.setTransactionManager(txm);
+        Properties props = new Properties();
+        props.put("openjpa.jdbc.SynchronizeMappings", "buildSchema(ForeignKeys=false)");
+        _daoCF.init(props);
+
+        dao = _daoCF;
+        scheduler = new MockScheduler(txm);
+    }
+
+    /**
+     * Runs the given callable in its own transaction.
+     */
+    public <T> T execTransaction(Callable<T> transaction) throws Exception {
+        return scheduler.execTransaction(transaction);
+    }
+
+    public void shutdown() {
+        _daoCF.shutdown();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.jacob.vpu.ExecutionQueueImpl;
+
+/**
+ * Test case for {@link ExecutionQueueCache}.
+ */
+public class ExecutionQueueCacheTest extends TestCase {
+    private static final QName PID = new QName("urn:test", "process");
+
+    ExecutionQueueCache _cache;
+
+    public void setUp() {
+        _cache = new ExecutionQueueCache(2);
+    }
+
+    public void testCheckout() {
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(null);
+        _cache.checkin(1L, PID, 10L, null, soup);
+        assertSame(soup, _cache.checkout(1L, 10L, null));
+        // checked out entries are no longer cached
+        assertNull(_cache.checkout(1L, 10L, null));
+        assertEquals(1, _cache.getHits());
+        assertEquals(1, _cache.getMisses());
+    }
+
+    public void testStaleStamp() {
+        _cache.checkin(1L, PID, 10L, null, new ExecutionQueueImpl(null));
+        assertNull(_cache.checkout(1L, 11L, null));
+        assertNull(_cache.checkout(1L, 10L, null));
+    }
+
+    public void testLeastRecentlyUsedEviction() {
+        ExecutionQueueImpl soup1 = new ExecutionQueueImpl(null);
+        ExecutionQueueImpl soup3 = new ExecutionQueueImpl(null);
+        _cache.checkin(1L, PID, 1L, null, soup1);
+        _cache.checkin(2L, PID, 2L, null, new ExecutionQueueImpl(null));
+        _cache.checkin(3L, PID, 3L, null, soup3);
+        assertNull(_cache.checkout(1L, 1L, null));
+        assertSame(soup3, _cache.checkout(3L, 3L, null));
+    }
+
+    public void testRemoveProcess() {
+        _cache.checkin(1L, PID, 1L, null, new ExecutionQueueImpl(null));
+        _cache.checkin(2L, new QName("urn:test", "other"), 2L, null, new ExecutionQueueImpl(null));
+        _cache.removeProcess(PID);
+        assertNull(_cache.checkout(1L, 1L, null));
+        assertNotNull(_cache.checkout(2L, 2L, null));
+    }
+
+    public void testRollback() throws Exception {
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(null);
+        soup.setGlobalData("committed");
+        byte[] committed = write(soup);
+        ExecutionQueueCache.Checkin checkin = _cache.new Checkin(1L, PID, null, soup);
+        checkin.written(stamp(committed));
+        checkin.afterCompletion(true);
+
+        // the next execution mutates the cached soup and writes it, then its transaction rolls back
+        ExecutionQueueImpl live = _cache.checkout(1L, stamp(committed), null);
+        assertSame(soup, live);
+        live.setGlobalData("aborted");
+        checkin = _cache.new Checkin(1L, PID, null, live);
+        checkin.written(stamp(write(live)));
+        // meanwhile checked in under the committed stamp, e.g. by a job that started from the same state
+        _cache.checkin(1L, PID, stamp(committed), null, live);
+        checkin.afterCompletion(false);
+
+        // the instance is rehydrated from the committed state in the DAO
+        assertNull(_cache.checkout(1L, stamp(committed), null));
+        ExecutionQueueImpl rehydrated = new ExecutionQueueImpl(null);
+        rehydrated.read(new ByteArrayInputStream(committed));
+        assertEquals("committed", rehydrated.getGlobalData());
+    }
+
+    public void testLastWriteStamp() throws Exception {
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(null);
+        ExecutionQueueCache.Checkin checkin = _cache.new Checkin(1L, PID, null, soup);
+        checkin.written(1L);
+        checkin.written(2L);
+        checkin.afterCompletion(true);
+        // cached with the stamp of the state last written in the transaction
+        assertSame(soup, _cache.checkout(1L, 2L, null));
+    }
+
+    public void testDisabled() {
+        _cache.setMaximumSize(0);
+        assertFalse(_cache.isEnabled());
+        _cache.checkin(1L, PID, 1L, null, new ExecutionQueueImpl(null));
+        assertNull(_cache.checkout(1L, 1L, null));
+    }
+
+    private static byte[] write(ExecutionQueueImpl soup) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        soup.write(bos);
+        return bos.toByteArray();
+    }
+
+    private static long stamp(byte[] state) {
+        CRC32 crc = new CRC32();
+        crc.update(state);
+        return ExecutionQueueCache.stamp(crc, state.length);
+    }
+}
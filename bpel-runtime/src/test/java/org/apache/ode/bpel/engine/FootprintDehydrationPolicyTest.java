@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.iapi.ProcessConf;
+
+/**
+ * Test case for {@link FootprintDehydrationPolicy}.
+ */
+public class FootprintDehydrationPolicyTest extends TestCase {
+
+    FootprintDehydrationPolicy _policy;
+
+    public void setUp() {
+        _policy = new FootprintDehydrationPolicy();
+        _policy.setProcessMaxAge(60000);
+        _policy.setProcessMaxFootprint(1000);
+    }
+
+    public void testUnderBudget() {
+        List<BpelProcess> running = new ArrayList<BpelProcess>();
+        running.add(new Process("p1", 400, 100));
+        running.add(new Process("p2", 500, 100));
+        assertTrue(_policy.markForDehydration(running).isEmpty());
+    }
+
+    public void testOldiesFirst() {
+        Process old = new Process("old", 100, 100);
+        old.lastUsed -= 120000;
+        List<BpelProcess> running = new ArrayList<BpelProcess>();
+        running.add(old);
+        running.add(new Process("p1", 100, 100));
+        List<BpelProcess> ripped = _policy.markForDehydration(running);
+        assertEquals(1, ripped.size());
+        assertSame(old, ripped.get(0));
+    }
+
+    public void testFrequentlyUsedStay() {
+        Process hot = new Process("hot", 600, 100);
+        Process cold = new Process("cold", 600, 100);
+        List<BpelProcess> running = new ArrayList<BpelProcess>();
+        running.add(hot);
+        running.add(cold);
+        _policy.setProcessMaxFootprint(0);
+        assertTrue(_policy.markForDehydration(running).isEmpty());
+
+        hot.useCount += 50;
+        cold.useCount += 1;
+        _policy.setProcessMaxFootprint(1000);
+        List<BpelProcess> ripped = _policy.markForDehydration(new ArrayList<BpelProcess>(running));
+        assertEquals(1, ripped.size());
+        assertSame(cold, ripped.get(0));
+    }
+
+    public void testCheapToRehydrateGoFirst() {
+        Process cheap = new Process("cheap", 600, 10);
+        Process costly = new Process("costly", 600, 500);
+        List<BpelProcess> running = new ArrayList<BpelProcess>();
+        running.add(costly);
+        running.add(cheap);
+        List<BpelProcess> ripped = _policy.markForDehydration(running);
+        assertEquals(1, ripped.size());
+        assertSame(cheap, ripped.get(0));
+    }
+
+    public void testInUseStay() {
+        Process busy = new Process("busy", 600, 10);
+        busy.inUse = 1;
+        Process idle = new Process("idle", 600, 500);
+        List<BpelProcess> running = new ArrayList<BpelProcess>();
+        running.add(busy);
+        running.add(idle);
+        List<BpelProcess> ripped = _policy.markForDehydration(running);
+        assertEquals(1, ripped.size());
+        assertSame(idle, ripped.get(0));
+    }
+
+    public void testPressure() {
+        List<BpelProcess> running = new ArrayList<BpelProcess>();
+        for (int i = 0; i < 4; ++i)
+            running.add(new Process("p" + i, 200, 100));
+        _policy.setUnderPressure(true);
+        assertEquals(2, _policy.markForDehydration(new ArrayList<BpelProcess>(running)).size());
+        assertFalse(_policy.isUnderPressure());
+        assertTrue(_policy.markForDehydration(running).isEmpty());
+    }
+
+    public void testPriority() {
+        assertTrue(FootprintDehydrationPolicy.priority(0, 10, 100, 100) > FootprintDehydrationPolicy.priority(0, 1, 100, 100));
+        assertTrue(FootprintDehydrationPolicy.priority(0, 1, 100, 100) > FootprintDehydrationPolicy.priority(0, 1, 100, 1000));
+        assertTrue(FootprintDehydrationPolicy.priority(5, 1, 100, 100) > FootprintDehydrationPolicy.priority(0, 1, 100, 100));
+    }
+
+    static class Process extends BpelProcess {
+        long footprint;
+        long cbpSize;
+        long useCount;
+        long lastUsed = System.currentTimeMillis();
+        int inUse;
+
+        Process(String name, long footprint, long cbpSize) {
+            super(Stubs.stub(ProcessConf.class, "getProcessId", new QName("urn:test", name)));
+            this.footprint = footprint;
+            this.cbpSize = cbpSize;
+        }
+
+        public long getFootprint() {
+            return footprint;
+        }
+
+        public long getCBPFileSize() {
+            return cbpSize;
+        }
+
+        public long getUseCount() {
+            return useCount;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        public int getInstanceInUseCount() {
+            return inUse;
+        }
+    }
+}
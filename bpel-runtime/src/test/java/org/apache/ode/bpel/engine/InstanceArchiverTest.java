@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.common.CorrelationKey;
+import org.apache.ode.bpel.common.ProcessState;
+import org.apache.ode.bpel.dao.ArchivedInstanceDAO;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.CorrelationSetDAO;
+import org.apache.ode.bpel.dao.FaultDAO;
+import org.apache.ode.bpel.dao.InstanceArchivable;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.dao.ScopeDAO;
+import org.apache.ode.bpel.dao.ScopeStateEnum;
+import org.apache.ode.bpel.dao.XmlDataDAO;
+import org.apache.ode.utils.DOMUtils;
+import org.w3c.dom.Element;
+
+/**
+ * Test case for the archives built by {@link InstanceArchiver} and stored by {@link InstanceArchiveRunnable}.
+ */
+public class InstanceArchiverTest extends TestCase {
+    static final QName PROPERTY = new QName("urn:test", "orderId");
+
+    ProcessInstanceDAO _instance;
+
+    public void setUp() throws Exception {
+        Map<String, Object> process = new HashMap<String, Object>();
+        process.put("getProcessId", new QName("urn:test", "Order-1"));
+        process.put("getType", new QName("urn:test", "Order"));
+
+        Map<String, Object> fault = new HashMap<String, Object>();
+        fault.put("getName", new QName("urn:test", "invalidOrder"));
+        fault.put("getExplanation", "Unknown product");
+        fault.put("getLineNo", 42);
+        fault.put("getActivityId", 7);
+
+        Map<String, Object> cset = new HashMap<String, Object>();
+        cset.put("getCorrelationSetId", 3L);
+        cset.put("getName", "order");
+        cset.put("getValue", new CorrelationKey("order", new String[] { "A-12" }));
+        cset.put("getProperties", Collections.singletonMap(PROPERTY, "A-12"));
+
+        Map<String, Object> instance = new HashMap<String, Object>();
+        instance.put("getInstanceId", 1L);
+        instance.put("getProcess", Stubs.stub(ProcessDAO.class, process));
+        instance.put("getState", ProcessState.STATE_COMPLETED_WITH_FAULT);
+        instance.put("getCreateTime", new Date(1000L));
+        instance.put("getLastActiveTime", new Date(2000L));
+        instance.put("getFault", Stubs.stub(FaultDAO.class, fault));
+        instance.put("getCorrelationSets", Collections.singleton(Stubs.stub(CorrelationSetDAO.class, cset)));
+        _instance = Stubs.stub(ProcessInstanceDAO.class, instance);
+    }
+
+    public void testRoundTrip() throws Exception {
+        Element archive = InstanceArchiver.read(InstanceArchiver.archive(_instance));
+        assertEquals("1", archive.getAttribute("iid"));
+
+        Element fault = DOMUtils.getFirstChildElement(archive);
+        assertEquals(InstanceArchiver.FAULT, fault.getNodeName());
+        assertEquals("{urn:test}invalidOrder", fault.getAttribute("name"));
+        assertEquals("42", fault.getAttribute("line"));
+        assertEquals("Unknown product", DOMUtils.getFirstChildElement(fault).getTextContent());
+    }
+
+    public void testScopesAndVariables() throws Exception {
+        Map<String, Object> root = new HashMap<String, Object>();
+        root.put("getScopeInstanceId", 5L);
+        root.put("getName", "__PROCESS_SCOPE:Order");
+        root.put("getModelId", 2);
+        root.put("getState", ScopeStateEnum.COMPLETED);
+        ScopeDAO rootScope = Stubs.stub(ScopeDAO.class, root);
+
+        Element value = DOMUtils.stringToDOM("<order xmlns=\"urn:test\">A-12</order>");
+        Map<String, Object> order = new HashMap<String, Object>();
+        order.put("getName", "order");
+        order.put("isNull", false);
+        order.put("get", value);
+        Map<String, Object> empty = new HashMap<String, Object>();
+        empty.put("getName", "reply");
+        empty.put("isNull", true);
+        Map<String, Object> child = new HashMap<String, Object>();
+        child.put("getScopeInstanceId", 6L);
+        child.put("getName", "handling");
+        child.put("getModelId", 9);
+        child.put("getParentScope", rootScope);
+        child.put("getVariables", Arrays.asList(Stubs.stub(XmlDataDAO.class, order), Stubs.stub(XmlDataDAO.class, empty)));
+
+        Map<String, Object> instance = new HashMap<String, Object>();
+        instance.put("getInstanceId", 3L);
+        instance.put("getScopes", Arrays.asList(rootScope, Stubs.stub(ScopeDAO.class, child)));
+        Element archive = InstanceArchiver.read(InstanceArchiver.archive(Stubs.stub(ProcessInstanceDAO.class, instance)));
+
+        Element scope = DOMUtils.getFirstChildElement(archive);
+        assertEquals(InstanceArchiver.SCOPE, scope.getNodeName());
+        assertEquals("5", scope.getAttribute("siid"));
+        assertEquals("COMPLETED", scope.getAttribute("state"));
+        assertFalse(scope.hasAttribute("parent"));
+        assertNull(DOMUtils.getFirstChildElement(scope));
+
+        scope = DOMUtils.getNextSiblingElement(scope);
+        assertEquals("6", scope.getAttribute("siid"));
+        assertEquals("handling", scope.getAttribute("name"));
+        assertEquals("9", scope.getAttribute("modelId"));
+        assertEquals("5", scope.getAttribute("parent"));
+        Element variable = DOMUtils.getFirstChildElement(scope);
+        assertEquals("order", variable.getAttribute("name"));
+        assertEquals("A-12", DOMUtils.getFirstChildElement(variable).getTextContent());
+        variable = DOMUtils.getNextSiblingElement(variable);
+        assertEquals("reply", variable.getAttribute("name"));
+        assertNull(DOMUtils.getFirstChildElement(variable));
+    }
+
+    public void testCorrelationProperties() throws Exception {
+        Element properties = InstanceArchiver.readCorrelationProperties(InstanceArchiver.archiveCorrelationProperties(_instance));
+        Element property = DOMUtils.getFirstChildElement(properties);
+        assertEquals("3", property.getAttribute("csetid"));
+        assertEquals(PROPERTY.toString(), property.getAttribute("name"));
+        assertEquals("A-12", property.getTextContent());
+        assertNull(DOMUtils.getNextSiblingElement(property));
+    }
+
+    public void testNothingToArchive() throws Exception {
+        Map<String, Object> instance = new HashMap<String, Object>();
+        instance.put("getInstanceId", 2L);
+        ProcessInstanceDAO completed = Stubs.stub(ProcessInstanceDAO.class, instance);
+        assertNull(InstanceArchiver.archive(completed));
+        assertNull(InstanceArchiver.archiveCorrelationProperties(completed));
+    }
+
+    public void testArchiveAndPurge() throws Exception {
+        final DAOTestContexts contexts = new DAOTestContexts();
+        try {
+            ProcessInstanceDAO created = contexts.execTransaction(new Callable<ProcessInstanceDAO>() {
+                public ProcessInstanceDAO call() throws Exception {
+                    BpelDAOConnection conn = contexts.dao.getConnection();
+                    ProcessDAO process = conn.createProcess(new QName("urn:test", "Order-1"), new QName("urn:test", "Order"), "GUID1", 1);
+                    ProcessInstanceDAO instance = process.createInstance(process.addCorrelator("pl.op"));
+                    instance.setFault(new QName("urn:test", "invalidOrder"), "Unknown product", 42, 7, null);
+                    instance.setState(ProcessState.STATE_COMPLETED_WITH_FAULT);
+                    return instance;
+                }
+            });
+            // assigned when the transaction commits
+            final Long iid = created.getInstanceId();
+            InstanceArchiveRunnable runnable = new InstanceArchiveRunnable(iid);
+            runnable.setContexts(contexts);
+            runnable.run();
+
+            contexts.execTransaction(new Callable<Void>() {
+                public Void call() throws Exception {
+                    BpelDAOConnection conn = contexts.dao.getConnection();
+                    ArchivedInstanceDAO archive = ((InstanceArchivable) conn).getArchivedInstance(iid);
+                    assertNotNull(archive);
+                    assertEquals(ProcessState.STATE_COMPLETED_WITH_FAULT, archive.getState());
+                    Element fault = DOMUtils.getFirstChildElement(InstanceArchiver.read(archive.getData()));
+                    assertEquals("{urn:test}invalidOrder", fault.getAttribute("name"));
+                    assertNull(conn.getInstance(iid));
+                    return null;
+                }
+            });
+
+            // the job runs again, or the clean up on completion deleted the instance first
+            runnable.run();
+        } finally {
+            contexts.shutdown();
+        }
+    }
+}
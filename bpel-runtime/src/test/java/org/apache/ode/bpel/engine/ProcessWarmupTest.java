@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.engine.FootprintDehydrationPolicyTest.Process;
+
+/**
+ * Test case for {@link ProcessWarmup}.
+ */
+public class ProcessWarmupTest extends TestCase {
+
+    File _trafficFile;
+
+    public void setUp() throws Exception {
+        _trafficFile = File.createTempFile("process-traffic", ".properties");
+        _trafficFile.delete();
+    }
+
+    public void tearDown() {
+        _trafficFile.delete();
+    }
+
+    public void testTraffic() {
+        Process p1 = new Process("p1", 100, 100);
+        Process p2 = new Process("p2", 100, 100);
+        Process p3 = new Process("p3", 100, 100);
+        List<BpelProcess> processes = new ArrayList<BpelProcess>();
+        processes.add(p1);
+        processes.add(p2);
+        processes.add(p3);
+
+        ProcessWarmup warmup = new ProcessWarmup(2, false, _trafficFile);
+        assertEquals(0, warmup.getTraffic(p1.getPID()));
+        p2.useCount = 10;
+        p3.useCount = 4;
+        warmup.saveTraffic(processes);
+
+        warmup = new ProcessWarmup(2, false, _trafficFile);
+        assertEquals(0, warmup.getTraffic(p1.getPID()));
+        assertEquals(10, warmup.getTraffic(p2.getPID()));
+        assertEquals(4, warmup.getTraffic(p3.getPID()));
+
+        // Old traffic fades away
+        p2.useCount = 0;
+        p3.useCount = 1;
+        warmup.saveTraffic(processes);
+        warmup = new ProcessWarmup(2, false, _trafficFile);
+        assertEquals(5, warmup.getTraffic(p2.getPID()));
+        assertEquals(3, warmup.getTraffic(p3.getPID()));
+    }
+
+    public void testSelect() {
+        Process p1 = new Process("p1", 100, 100);
+        Process p2 = new Process("p2", 100, 100);
+        Process p3 = new Process("p3", 100, 100);
+        List<BpelProcess> processes = new ArrayList<BpelProcess>();
+        processes.add(p1);
+        processes.add(p2);
+        processes.add(p3);
+        p3.useCount = 7;
+        p2.useCount = 3;
+        new ProcessWarmup(1, false, _trafficFile).saveTraffic(processes);
+
+        ProcessWarmup warmup = new ProcessWarmup(1, false, _trafficFile);
+        List<BpelProcess> selected = warmup.select(processes, Collections.<BpelProcess>emptySet());
+        assertEquals(3, selected.size());
+        assertSame(p3, selected.get(0));
+        assertSame(p2, selected.get(1));
+        assertSame(p1, selected.get(2));
+
+        // Lazy processes without traffic stay dehydrated
+        Set<BpelProcess> lazy = new HashSet<BpelProcess>(processes);
+        selected = warmup.select(processes, lazy);
+        assertEquals(2, selected.size());
+        assertFalse(selected.contains(p1));
+    }
+
+    public void testStart() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        WarmedProcess p1 = new WarmedProcess("p1", false, done);
+        WarmedProcess p2 = new WarmedProcess("p2", false, done);
+        WarmedProcess p3 = new WarmedProcess("p3", false, done);
+        List<BpelProcess> processes = new ArrayList<BpelProcess>();
+        processes.add(p1);
+        processes.add(p2);
+        processes.add(p3);
+        // p3 was undeployed meanwhile
+        Set<BpelProcess> registered = new HashSet<BpelProcess>(processes);
+        registered.remove(p3);
+
+        ProcessWarmup warmup = new ProcessWarmup(2, false, _trafficFile);
+        warmup.start(processes, new ReentrantReadWriteLock(), registered);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        warmup.stop();
+        assertEquals(1, p1.hydrated);
+        assertEquals(1, p2.hydrated);
+        assertEquals(0, p3.hydrated);
+        assertEquals(0, p1.precompiled);
+        assertEquals(0, p2.precompiled);
+    }
+
+    public void testPrecompile() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        WarmedProcess p1 = new WarmedProcess("p1", true, done);
+
+        ProcessWarmup warmup = new ProcessWarmup(1, true, _trafficFile);
+        warmup.start(Collections.<BpelProcess>singletonList(p1), new ReentrantReadWriteLock(),
+                Collections.<BpelProcess>singleton(p1));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        warmup.stop();
+        assertEquals(1, p1.hydrated);
+        assertEquals(1, p1.precompiled);
+    }
+
+    public void testNoTrafficFile() {
+        ProcessWarmup warmup = new ProcessWarmup(1, false, null);
+        Process p1 = new Process("p1", 100, 100);
+        p1.useCount = 3;
+        warmup.saveTraffic(Collections.<BpelProcess>singletonList(p1));
+        assertEquals(0, warmup.getTraffic(p1.getPID()));
+    }
+
+    static class WarmedProcess extends Process {
+        final CountDownLatch done;
+        final boolean precompile;
+        volatile int hydrated;
+        volatile int precompiled;
+
+        WarmedProcess(String name, boolean precompile, CountDownLatch done) {
+            super(name, 100, 100);
+            this.precompile = precompile;
+            this.done = done;
+        }
+
+        void hydrate() {
+            hydrated++;
+            if (!precompile) done.countDown();
+        }
+
+        int precompileExpressions() {
+            precompiled++;
+            done.countDown();
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.BpelDAOConnectionFactory;
+
+/**
+ * Stubs of the interfaces of the engine, for the tests that only need a few of their methods to answer.
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * @param type type of the stub
+     * @param handler answers the invocations
+     * @param otherTypes other interfaces implemented by the stub
+     * @return a stub implementing the given interfaces
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T stub(Class<T> type, InvocationHandler handler, Class<?>... otherTypes) {
+        Class<?>[] types = new Class<?>[otherTypes.length + 1];
+        types[0] = type;
+        System.arraycopy(otherTypes, 0, types, 1, otherTypes.length);
+        return (T) Proxy.newProxyInstance(Stubs.class.getClassLoader(), types, handler);
+    }
+
+    /**
+     * @param type type of the stub
+     * @param values return values, by method name
+     * @return a stub returning the value of the invoked method; the methods without a value return an empty
+     *         collection if they return a collection, null otherwise
+     */
+    public static <T> T stub(Class<T> type, final Map<String, ?> values) {
+        return stub(type, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (values.containsKey(method.getName()))
+                    return values.get(method.getName());
+                if (method.getReturnType() == List.class)
+                    return Collections.emptyList();
+                if (Collection.class.isAssignableFrom(method.getReturnType()))
+                    return Collections.emptySet();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @param type type of the stub
+     * @param method name of the only method that answers
+     * @param value return value of the method
+     * @return a stub returning the given value from the given method
+     */
+    public static <T> T stub(Class<T> type, String method, Object value) {
+        return stub(type, Collections.singletonMap(method, value));
+    }
+
+    /**
+     * @param connection the connection
+     * @return a connection factory handing out the given connection
+     */
+    public static BpelDAOConnectionFactory connectionFactory(final BpelDAOConnection connection) {
+        return stub(BpelDAOConnectionFactory.class, "getConnection", connection);
+    }
+}
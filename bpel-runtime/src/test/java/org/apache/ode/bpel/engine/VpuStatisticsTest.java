@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.jacob.vpu.Statistics;
+
+/**
+ * Test case for {@link VpuStatistics}.
+ */
+public class VpuStatisticsTest extends TestCase {
+    private static final QName PID = new QName("urn:test", "process-1");
+
+    VpuStatistics _stats;
+
+    public void setUp() {
+        _stats = new VpuStatistics();
+    }
+
+    public void testActivityType() {
+        assertEquals("SEQUENCE", VpuStatistics.activityType("org.apache.ode.bpel.runtime.SEQUENCE$ACTIVE"));
+        assertEquals("ASSIGN", VpuStatistics.activityType("org.apache.ode.bpel.runtime.ASSIGN"));
+        assertEquals("BpelRuntimeContextImpl", VpuStatistics.activityType("org.apache.ode.bpel.engine.BpelRuntimeContextImpl$3"));
+        assertEquals("Foo", VpuStatistics.activityType("Foo"));
+    }
+
+    public void testRecord() {
+        _stats.record(PID, vpuStatistics(2000000L));
+        _stats.record(PID, vpuStatistics(3000000L));
+
+        String pid = PID.toString();
+        assertEquals(1, _stats.getProcesses().length);
+        assertEquals(2, _stats.getExecutions(pid));
+        assertEquals(20, _stats.getCycles(pid));
+        assertEquals(20, _stats.getTotalCycles());
+        assertEquals(5000000L, _stats.getRunTimeNs(pid));
+        assertEquals(6, _stats.getMessagesSent(pid));
+        assertEquals(2, _stats.getActivityTypes(pid).length);
+        assertEquals(4, _stats.getActivityInvocations(pid, "SEQUENCE"));
+        assertEquals(400000L, _stats.getActivityRunTimeNs(pid, "SEQUENCE"));
+        assertEquals(0, _stats.getCycles("{urn:test}unknown-1"));
+
+        _stats.reset();
+        assertEquals(0, _stats.getProcesses().length);
+    }
+
+    public void testHistogram() {
+        VpuStatistics.Histogram h = new VpuStatistics.Histogram();
+        h.observe(0L);
+        h.observe(VpuStatistics.BUCKETS_NS[0]);
+        h.observe(VpuStatistics.BUCKETS_NS[0] + 1);
+        h.observe(Long.MAX_VALUE / 2);
+        assertEquals(2, h.buckets.get(0));
+        assertEquals(1, h.buckets.get(1));
+        assertEquals(1, h.buckets.get(VpuStatistics.BUCKETS_NS.length));
+        assertEquals(4, h.count());
+    }
+
+    public void testExportMetrics() {
+        _stats.record(PID, vpuStatistics(2000000L));
+        String metrics = _stats.exportMetrics();
+        assertTrue(metrics.indexOf("# TYPE ode_vpu_cycles_total counter\n") >= 0);
+        assertTrue(metrics.indexOf("ode_vpu_cycles_total{process=\"{urn:test}process-1\"} 10\n") >= 0);
+        assertTrue(metrics.indexOf("ode_vpu_execution_seconds_bucket{process=\"{urn:test}process-1\",le=\"0.0025\"} 1\n") >= 0);
+        assertTrue(metrics.indexOf("ode_vpu_execution_seconds_bucket{process=\"{urn:test}process-1\",le=\"0.001\"} 0\n") >= 0);
+        assertTrue(metrics.indexOf("ode_vpu_execution_seconds_count{process=\"{urn:test}process-1\"} 1\n") >= 0);
+        assertTrue(metrics.indexOf("ode_vpu_activity_invocations_total{process=\"{urn:test}process-1\",activity=\"ASSIGN\"} 1\n") >= 0);
+    }
+
+    private Statistics vpuStatistics(long runTimeNs) {
+        Statistics stats = new Statistics();
+        stats.numCycles = 10;
+        stats.messagesSent = 3;
+        stats.totalRunTimeNs = runTimeNs;
+        stats.incRunTime("org.apache.ode.bpel.runtime.SEQUENCE$ACTIVE", 100000L);
+        stats.incRunTime("org.apache.ode.bpel.runtime.SEQUENCE", 100000L);
+        stats.incRunTime("org.apache.ode.bpel.runtime.ASSIGN", 50000L);
+        return stats;
+    }
+}
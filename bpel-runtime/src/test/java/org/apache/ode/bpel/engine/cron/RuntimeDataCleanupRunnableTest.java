@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.engine.cron;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.common.InstanceFilter;
+import org.apache.ode.bpel.common.ProcessState;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.engine.DAOTestContexts;
+import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
+import org.apache.ode.bpel.iapi.ProcessConf.CleanupInfo;
+
+/**
+ * Test case for the instance id ranges walked by {@link RuntimeDataCleanupRunnable}, against the JPA DAO.
+ */
+public class RuntimeDataCleanupRunnableTest extends TestCase {
+
+    DAOTestContexts _contexts;
+
+    RuntimeDataCleanupRunnable _runnable;
+
+    public void setUp() throws Exception {
+        _contexts = new DAOTestContexts();
+        _runnable = new RuntimeDataCleanupRunnable();
+        _runnable.setContexts(_contexts);
+    }
+
+    public void tearDown() {
+        _contexts.shutdown();
+    }
+
+    public void testInstancesDeleted() throws Exception {
+        createInstances(25);
+        assertEquals(25, _runnable.cleanInstances("status=completed", categories(CLEANUP_CATEGORY.EVENTS, CLEANUP_CATEGORY.INSTANCE), 10));
+        assertEquals(0, countInstances());
+    }
+
+    public void testInstancesKept() throws Exception {
+        createInstances(25);
+        // the instances still match the filter once cleaned, each of them must be visited only once
+        assertEquals(25, _runnable.cleanInstances("status=completed", categories(CLEANUP_CATEGORY.EVENTS), 10));
+        assertEquals(25, countInstances());
+    }
+
+    public void testExactMultiple() throws Exception {
+        createInstances(20);
+        // the last range is found empty
+        assertEquals(20, _runnable.cleanInstances("status=completed", categories(CLEANUP_CATEGORY.INSTANCE), 10));
+        assertEquals(0, countInstances());
+    }
+
+    public void testRun() throws Exception {
+        createInstances(15);
+        CleanupInfo cleanupInfo = new CleanupInfo();
+        cleanupInfo.getFilters().add("status=completed");
+        cleanupInfo.getCategories().addAll(categories(CLEANUP_CATEGORY.values()));
+        Map<String, Object> details = new HashMap<String, Object>();
+        details.put("cleanupInfo", cleanupInfo);
+        details.put("transactionSize", 10);
+        _runnable.restoreFromDetailsMap(details);
+        _runnable.run();
+        assertEquals(0, countInstances());
+    }
+
+    private void createInstances(final int count) throws Exception {
+        _contexts.execTransaction(new Callable<Void>() {
+            public Void call() {
+                BpelDAOConnection conn = _contexts.dao.getConnection();
+                ProcessDAO process = conn.createProcess(new QName("urn:test", "Cleanup-1"), new QName("urn:test", "Cleanup"), "GUID1", 1);
+                CorrelatorDAO correlator = process.addCorrelator("pl.op");
+                for (int i = 0; i < count; i++) {
+                    process.createInstance(correlator).setState(ProcessState.STATE_COMPLETED_OK);
+                }
+                return null;
+            }
+        });
+    }
+
+    private int countInstances() throws Exception {
+        return _contexts.execTransaction(new Callable<Integer>() {
+            public Integer call() {
+                return _contexts.dao.getConnection().instanceQuery(new InstanceFilter("", null, Integer.MAX_VALUE)).size();
+            }
+        });
+    }
+
+    private static Set<CLEANUP_CATEGORY> categories(CLEANUP_CATEGORY... categories) {
+        return EnumSet.copyOf(Arrays.asList(categories));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.bpel.runtime;
+
+import java.io.File;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.ResultSet;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.utils.DOMUtils;
+
+/**
+ * Tests the asynchronously persisted events of instances cleaned up on completion: the event writer must not
+ * insert the events that the clean up deleted, or that belong to a deleted instance.
+ */
+public class AsyncEventCleanupTest extends TestCase {
+    private static final String NAMESPACE = "http://ode.apache.org/bpel/unit-test";
+
+    MockBpelServer _server;
+
+    protected void setUp() throws Exception {
+        _server = new MockBpelServer();
+        _server.deploy(new File(new URI(this.getClass().getResource("/events").toString())));
+    }
+
+    protected void tearDown() throws Exception {
+        if (_server != null)
+            _server.shutdown();
+    }
+
+    public void testEventsKept() throws Exception {
+        execute("EventsKept");
+        assertTrue(countEvents() > 0);
+    }
+
+    public void testEventsCleanedUp() throws Exception {
+        execute("EventsCleanedUp");
+        assertEquals(0, countEvents());
+    }
+
+    public void testInstanceCleanedUp() throws Exception {
+        execute("InstanceCleanedUp");
+        assertEquals(0, countEvents());
+    }
+
+    private void execute(String process) throws Exception {
+        _server.invoke(new QName(NAMESPACE, process), "instantiate",
+                DOMUtils.newDocument().createElementNS(NAMESPACE, "tns:RequestElement"));
+        _server.waitForBlocking();
+    }
+
+    /**
+     * Count the persisted events, once the server stopped and the event writer wrote all it was handed.
+     */
+    private int countEvents() throws Exception {
+        _server.shutdown();
+        assertEquals(0, _server._server.getEventWriter().getFailed());
+        Connection conn = _server._dataSource.getConnection();
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("select count(*) from ODE_EVENT");
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            conn.close();
+            _server = null;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.FileFilter;
+import java.math.BigInteger;
 import java.net.URI;
 import java.text.ParseException;
 import java.util.*;
@@ -33,9 +34,11 @@ import javax.xml.namespace.QName;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.ode.bpel.dd.TArchive;
 import org.apache.ode.bpel.dd.TCleanup;
 import org.apache.ode.bpel.dd.TDeployment;
 import org.apache.ode.bpel.dd.TInvoke;
+import org.apache.ode.bpel.dd.TJobScheduling;
 import org.apache.ode.bpel.dd.TMexInterceptor;
 import org.apache.ode.bpel.dd.TProcessEvents;
 import org.apache.ode.bpel.dd.TProvide;
@@ -68,6 +71,9 @@ import org.w3c.dom.Node;
 public class ProcessConfImpl implements ProcessConf {
     private static final Log __log = LogFactory.getLog(ProcessConfImpl.class);
 
+    /** Largest weight of the jobs of a process, as bounded in the deployment descriptor schema. */
+    private static final int MAX_JOB_WEIGHT = 1000;
+
     private final Date _deployDate;
     private File _configDir;
     private final Map<QName, Node> _props;
@@ -357,6 +363,13 @@ public class ProcessConfImpl implements ProcessConf {
         return false;
     }
 
+    public EVENT_PERSISTENCE getEventPersistence() {
+        TProcessEvents processEvents = _pinfo.getProcessEvents();
+        if (processEvents == null || !processEvents.isSetPersistence())
+            return EVENT_PERSISTENCE.IMMEDIATE;
+        return EVENT_PERSISTENCE.fromString(processEvents.getPersistence().toString());
+    }
+
     private void initEventList() {
         TProcessEvents processEvents = _pinfo.getProcessEvents();
         // No filtering, using defaults
@@ -488,6 +501,31 @@ public class ProcessConfImpl implements ProcessConf {
         return processCleanupConfImpl.getCleanupCategories(instanceSucceeded);
     }
     
+    public JOB_PRIORITY getJobPriority() {
+        TJobScheduling scheduling = _pinfo.getJobScheduling();
+        if (scheduling == null || !scheduling.isSetPriority())
+            return JOB_PRIORITY.NORMAL;
+        return JOB_PRIORITY.fromString(scheduling.getPriority().toString());
+    }
+
+    public int getJobWeight() {
+        TJobScheduling scheduling = _pinfo.getJobScheduling();
+        if (scheduling == null || !scheduling.isSetWeight())
+            return 1;
+        // the descriptor may not have been validated
+        BigInteger weight = scheduling.xgetWeight().getBigIntegerValue();
+        return weight.max(BigInteger.ONE).min(BigInteger.valueOf(MAX_JOB_WEIGHT)).intValue();
+    }
+
+    public boolean isArchiveEnabled(boolean instanceSucceeded) {
+        TArchive archive = _pinfo.getArchive();
+        if (archive == null)
+            return false;
+        if (!archive.isSetOn() || archive.getOn() == TArchive.On.ALWAYS)
+            return true;
+        return archive.getOn() == (instanceSucceeded ? TArchive.On.SUCCESS : TArchive.On.FAILURE);
+    }
+
     private void initSchedules() {
         for(TSchedule schedule : _pinfo.getScheduleList()) {
             for(TCleanup cleanup : schedule.getCleanupList()) {
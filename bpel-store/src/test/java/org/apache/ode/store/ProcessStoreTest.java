@@ -28,6 +28,7 @@ import javax.xml.namespace.QName;
 
 import junit.framework.TestCase;
 
+import org.apache.ode.bpel.evt.BpelEvent;
 import org.apache.ode.bpel.iapi.ProcessConf;
 import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
 
@@ -107,5 +108,13 @@ public class ProcessStoreTest extends TestCase {
         assertEquals(2, pconf.getCronJobs().size());
         assertNotNull(pconf.getCronJobs().get(0).getCronExpression());
         assertEquals(3, pconf.getCronJobs().get(0).getRunnableDetailList().size());
+
+        assertEquals(ProcessConf.JOB_PRIORITY.HIGH, pconf.getJobPriority());
+        assertEquals(3, pconf.getJobWeight());
+        assertTrue(pconf.isArchiveEnabled(true));
+        assertFalse(pconf.isArchiveEnabled(false));
+
+        assertEquals(ProcessConf.EVENT_PERSISTENCE.ASYNC, pconf.getEventPersistence());
+        assertTrue(pconf.isEventEnabled(null, BpelEvent.TYPE.scopeHandling));
     } 
 }
@@ -11,9 +11,31 @@ CREATE TABLE ode_job (
   scheduled int  NOT NULL DEFAULT 0,
   transacted int  NOT NULL DEFAULT 0,
   details blob(4096),
+  instanceid BIGINT,
+  jobtype VARCHAR(32),
   PRIMARY KEY(jobid));
 
 CREATE INDEX IDX_ODE_JOB_TS ON ode_job(ts);
 CREATE INDEX IDX_ODE_JOB_NODEID ON ode_job(nodeid);
+CREATE INDEX IDX_ODE_JOB_INSTANCEID ON ode_job(instanceid);
 
+CREATE TABLE ode_node (
+  nodeid char(64)  NOT NULL DEFAULT '',
+  lease BIGINT  NOT NULL DEFAULT 0,
+  PRIMARY KEY(nodeid));
+
+
+CREATE TABLE ode_dead_job (
+  jobid CHAR(64)  NOT NULL DEFAULT '',
+  ts BIGINT  NOT NULL DEFAULT 0,
+  nodeid char(64),
+  transacted int  NOT NULL DEFAULT 0,
+  details blob(4096),
+  instanceid BIGINT,
+  jobtype VARCHAR(32),
+  failed BIGINT  NOT NULL DEFAULT 0,
+  reason VARCHAR(255),
+  PRIMARY KEY(jobid));
+
+CREATE INDEX IDX_ODE_DEAD_JOB_FAILED ON ode_dead_job(failed);
 
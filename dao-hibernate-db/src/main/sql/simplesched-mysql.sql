@@ -12,11 +12,40 @@ CREATE TABLE ODE_JOB (
   scheduled int  NOT NULL DEFAULT 0,
   transacted int  NOT NULL DEFAULT 0,
   details blob(4096)  NULL,
+  instanceid BIGINT  NULL,
+  jobtype VARCHAR(32)  NULL,
   PRIMARY KEY(jobid),
   INDEX IDX_ODE_JOB_TS(ts),
-  INDEX IDX_ODE_JOB_NODEID(nodeid)
+  INDEX IDX_ODE_JOB_NODEID(nodeid),
+  INDEX IDX_ODE_JOB_INSTANCEID(instanceid)
+)
+TYPE=InnoDB;
+
+DROP TABLE IF EXISTS ODE_NODE;
+
+CREATE TABLE ODE_NODE (
+  nodeid char(64)  NOT NULL DEFAULT '',
+  lease BIGINT  NOT NULL DEFAULT 0,
+  PRIMARY KEY(nodeid)
 )
 TYPE=InnoDB;
 
 COMMIT;
 
+DROP TABLE IF EXISTS ODE_DEAD_JOB;
+
+CREATE TABLE ODE_DEAD_JOB (
+  jobid CHAR(64)  NOT NULL DEFAULT '',
+  ts BIGINT  NOT NULL DEFAULT 0,
+  nodeid char(64)  NULL,
+  transacted int  NOT NULL DEFAULT 0,
+  details blob(4096)  NULL,
+  instanceid BIGINT  NULL,
+  jobtype VARCHAR(32)  NULL,
+  failed BIGINT  NOT NULL DEFAULT 0,
+  reason VARCHAR(255)  NULL,
+  PRIMARY KEY(jobid),
+  INDEX IDX_ODE_DEAD_JOB_FAILED(failed)
+)
+TYPE=InnoDB;
+
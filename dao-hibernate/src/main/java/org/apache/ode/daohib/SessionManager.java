@@ -139,6 +139,8 @@ public class SessionManager {
                 .addClass(HBpelEvent.class)
                 .addClass(HFaultData.class)
                 .addClass(HActivityRecovery.class)
+                .addClass(HExecutionStateDelta.class)
+                .addClass(HArchivedInstance.class)
                 .addClass(HLargeData.class)
                 .addClass(HMessageExchangeProperty.class);
     }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.daohib.bpel;
+
+import java.util.Date;
+
+import javax.xml.namespace.QName;
+
+import org.apache.ode.bpel.dao.ArchivedInstanceDAO;
+import org.apache.ode.daohib.SessionManager;
+import org.apache.ode.daohib.bpel.hobj.HArchivedInstance;
+
+/**
+ * Hibernate based {@link ArchivedInstanceDAO} implementation
+ */
+public class ArchivedInstanceDaoImpl extends HibernateDao implements ArchivedInstanceDAO {
+    HArchivedInstance _self;
+
+    public ArchivedInstanceDaoImpl(SessionManager sm, HArchivedInstance archive) {
+        super(sm, archive);
+        entering("ArchivedInstanceDaoImpl.ArchivedInstanceDaoImpl");
+        _self = archive;
+    }
+
+    public Long getInstanceId() {
+        return _self.getInstanceId();
+    }
+
+    public QName getProcessId() {
+        return QName.valueOf(_self.getProcessId());
+    }
+
+    public QName getProcessType() {
+        return QName.valueOf(_self.getProcessType());
+    }
+
+    public short getState() {
+        return _self.getState();
+    }
+
+    public Date getCreateTime() {
+        return _self.getInstanceCreated();
+    }
+
+    public Date getLastActiveTime() {
+        return _self.getLastActiveTime();
+    }
+
+    public Date getArchiveTime() {
+        return _self.getCreated();
+    }
+
+    public byte[] getCorrelationProperties() {
+        return _self.getCorrelationProperties();
+    }
+
+    public byte[] getData() {
+        return _self.getData();
+    }
+}
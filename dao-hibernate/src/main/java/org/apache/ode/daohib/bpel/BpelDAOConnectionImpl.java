@@ -39,18 +39,22 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.ode.bpel.common.BpelEventFilter;
 import org.apache.ode.bpel.common.InstanceFilter;
 import org.apache.ode.bpel.common.ProcessState;
+import org.apache.ode.bpel.dao.ArchivedInstanceDAO;
 import org.apache.ode.bpel.dao.BpelDAOConnection;
 import org.apache.ode.bpel.dao.CorrelationSetDAO;
 import org.apache.ode.bpel.dao.FilteredInstanceDeletable;
+import org.apache.ode.bpel.dao.InstanceArchivable;
 import org.apache.ode.bpel.dao.MessageExchangeDAO;
 import org.apache.ode.bpel.dao.ProcessDAO;
 import org.apache.ode.bpel.dao.ProcessInstanceDAO;
 import org.apache.ode.bpel.dao.ProcessManagementDAO;
 import org.apache.ode.bpel.dao.ScopeDAO;
 import org.apache.ode.bpel.evt.BpelEvent;
+import org.apache.ode.bpel.evt.ProcessInstanceEvent;
 import org.apache.ode.bpel.evt.ScopeEvent;
 import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
 import org.apache.ode.daohib.SessionManager;
+import org.apache.ode.daohib.bpel.hobj.HArchivedInstance;
 import org.apache.ode.daohib.bpel.hobj.HBpelEvent;
 import org.apache.ode.daohib.bpel.hobj.HCorrelationSet;
 import org.apache.ode.daohib.bpel.hobj.HLargeData;
@@ -71,12 +75,13 @@ import org.hibernate.FetchMode;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.criterion.Expression;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 
 /**
  * Hibernate-based {@link BpelDAOConnection} implementation.
  */
-public class BpelDAOConnectionImpl implements BpelDAOConnection, FilteredInstanceDeletable {
+public class BpelDAOConnectionImpl implements BpelDAOConnection, FilteredInstanceDeletable, InstanceArchivable {
     private static final Log __log = LogFactory.getLog(BpelDAOConnectionImpl.class);
 
     protected SessionManager _sm;
@@ -175,15 +180,68 @@ public class BpelDAOConnectionImpl implements BpelDAOConnection, FilteredInstanc
             return 0;
         }
 
-        List<HProcessInstance> instances = _instanceQueryForList(getSession(), false, criteria);
-        if( __log.isDebugEnabled() ) __log.debug("Collected " + instances.size() + " instances to delete.");
-        
-        if( !instances.isEmpty() ) {
-            ProcessDaoImpl process = (ProcessDaoImpl)createTransientProcess(instances.get(0).getProcessId());
-            return process.deleteInstances(instances, categories);
+        List<Long> iids = findInstanceIds(criteria, 0);
+        if( __log.isDebugEnabled() ) __log.debug("Collected " + iids.size() + " instances to delete.");
+
+        return deleteInstances(iids, categories);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Long> findInstanceIds(InstanceFilter criteria, long afterIid) {
+        if (criteria.getLimit() == 0) {
+            return Collections.emptyList();
         }
-        
-        return 0;
+
+        Criteria crit = getSession().createCriteria(HProcessInstance.class);
+        new CriteriaBuilder().buildCriteria(crit, criteria);
+        crit.add(Expression.gt("id", afterIid));
+        // the property joins may return an instance more than once
+        crit.setProjection(Projections.distinct(Projections.id()));
+        crit.addOrder(Order.asc("id"));
+        return crit.list();
+    }
+
+    public int deleteInstances(List<Long> iids, Set<CLEANUP_CATEGORY> categories) {
+        if (iids.isEmpty()) {
+            return 0;
+        }
+        return InstanceBulkDelete.delete(getSession(), iids, categories);
+    }
+
+    public ArchivedInstanceDAO archiveInstance(ProcessInstanceDAO instance, byte[] correlationProperties, byte[] data) {
+        HArchivedInstance archive = new HArchivedInstance();
+        archive.setInstanceId(instance.getInstanceId());
+        archive.setProcessId(instance.getProcess().getProcessId().toString());
+        archive.setProcessType(instance.getProcess().getType().toString());
+        archive.setState(instance.getState());
+        archive.setInstanceCreated(instance.getCreateTime());
+        archive.setLastActiveTime(instance.getLastActiveTime());
+        archive.setCreated(new Date());
+        archive.setCorrelationProperties(correlationProperties);
+        archive.setData(data);
+        getSession().save(archive);
+        return new ArchivedInstanceDaoImpl(_sm, archive);
+    }
+
+    public ArchivedInstanceDAO getArchivedInstance(Long iid) {
+        HArchivedInstance archive = (HArchivedInstance) getSession().getNamedQuery(HArchivedInstance.SELECT_ARCHIVE_BY_INSTANCE_ID)
+                .setParameter("iid", iid).uniqueResult();
+        return archive == null ? null : new ArchivedInstanceDaoImpl(_sm, archive);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Collection<ArchivedInstanceDAO> archivedInstanceQuery(InstanceFilter criteria) {
+        if (criteria.getLimit() == 0) {
+            return Collections.emptyList();
+        }
+
+        Criteria crit = getSession().createCriteria(HArchivedInstance.class);
+        new CriteriaBuilder().buildArchiveCriteria(crit, criteria);
+        List<ArchivedInstanceDAO> daos = new ArrayList<ArchivedInstanceDAO>();
+        for (HArchivedInstance archive : (List<HArchivedInstance>) crit.list()) {
+            daos.add(new ArchivedInstanceDaoImpl(_sm, archive));
+        }
+        return daos;
     }
 
     static Iterator<HProcessInstance> _instanceQuery(Session session, boolean countOnly, InstanceFilter filter) {
@@ -215,6 +273,30 @@ public class BpelDAOConnectionImpl implements BpelDAOConnection, FilteredInstanc
         _insertBpelEvent(_sm.getSession(), event, process, instance);
     }
 
+    public void insertBpelEvents(List<ProcessInstanceEvent> events) {
+        Session sess = _sm.getSession();
+        // Batches mostly hold runs of events of the same process
+        Map<QName, ProcessDAO> processes = new HashMap<QName, ProcessDAO>();
+        for (ProcessInstanceEvent event : events) {
+            ProcessDAO process = null;
+            QName processId = event.getProcessId();
+            if (processId != null) {
+                process = processes.get(processId);
+                if (process == null && !processes.containsKey(processId)) {
+                    process = getProcess(processId);
+                    processes.put(processId, process);
+                }
+            }
+            // A proxy is enough to reference the instance, there's no need to load it
+            ProcessInstanceDAO instance = null;
+            if (event.getProcessInstanceId() != null)
+                instance = new ProcessInstanceDaoImpl(_sm, (HProcessInstance) sess.load(HProcessInstance.class,
+                        event.getProcessInstanceId()));
+            _insertBpelEvent(sess, event, process, instance);
+        }
+        sess.flush();
+    }
+
     /**
      * Helper method for inserting bpel events into the database.
      *
@@ -32,7 +32,6 @@ import org.apache.ode.daohib.bpel.hobj.HCorrelatorSelector;
 import org.apache.ode.daohib.bpel.hobj.HMessageExchange;
 import org.apache.ode.daohib.bpel.hobj.HProcess;
 import org.apache.ode.daohib.bpel.hobj.HProcessInstance;
-import org.hibernate.Hibernate;
 import org.hibernate.LockMode;
 import org.hibernate.Query;
 import org.hibernate.Session;
@@ -73,27 +72,25 @@ class CorrelatorDaoImpl extends HibernateDao implements CorrelatorDAO {
 
         List<CorrelationKeySet> subSets = keySet.findSubSets();
         Query qry = getSession().createFilter(_hobj.getMessageCorrelations(),
-                generateUnmatchedQuery(subSets));
+                generateUnmatchedQuery(subSets) + " order by this.id");
         for( int i = 0; i < subSets.size(); i++ ) {
             qry.setString("s" + i, subSets.get(i).toCanonicalString());
         }
 
         // We really should consider the possibility of multiple messages matching a criteria.
         // When the message is handled, its not too convenient to attempt to determine if the
-        // received message conflicts with one already received.
-        Iterator mcors = qry.iterate();
-        try {
-            if (!mcors.hasNext()) {
-                if (__log.isDebugEnabled())
-                    __log.debug(hdr + "did not find a MESSAGE entry.");
-            } else {
-                HCorrelatorMessage mcor = (HCorrelatorMessage) mcors.next();
-                if (__log.isDebugEnabled())
-                    __log.debug(hdr + "found MESSAGE entry " + mcor.getMessageExchange());
-                mex = new MessageExchangeDaoImpl(_sm, mcor.getMessageExchange());
-            }
-        } finally {
-            Hibernate.close(mcors);
+        // received message conflicts with one already received. The oldest one wins, and it's
+        // the only one loaded, whatever the length of the queue.
+        qry.setMaxResults(1);
+        List<HCorrelatorMessage> mcors = qry.list();
+        if (mcors.isEmpty()) {
+            if (__log.isDebugEnabled())
+                __log.debug(hdr + "did not find a MESSAGE entry.");
+        } else {
+            HCorrelatorMessage mcor = mcors.get(0);
+            if (__log.isDebugEnabled())
+                __log.debug(hdr + "found MESSAGE entry " + mcor.getMessageExchange());
+            mex = new MessageExchangeDaoImpl(_sm, mcor.getMessageExchange());
         }
 
         return mex;
@@ -237,7 +234,7 @@ class CorrelatorDaoImpl extends HibernateDao implements CorrelatorDAO {
         _hobj.setCorrelatorId(newId);
     }
 
-    public void removeRoutes(String routeGroupId, ProcessInstanceDAO target) {
+    public int removeRoutes(String routeGroupId, ProcessInstanceDAO target) {
         entering("CorrelatorDaoImpl.removeRoutes");
         String hdr = "removeRoutes(" + routeGroupId + ", iid=" + target.getInstanceId() + "): ";
         __log.debug(hdr);
@@ -249,6 +246,7 @@ class CorrelatorDaoImpl extends HibernateDao implements CorrelatorDAO {
         session.flush(); // explicit flush to ensure route removed
         if (__log.isDebugEnabled())
             __log.debug(hdr + "deleted " + updates + " rows");
+        return updates;
     }
 
     public Collection<CorrelatorMessageDAO> getAllMessages() {
@@ -157,6 +157,68 @@ class CriteriaBuilder {
     if (filter.getLimit() > 0) crit.setMaxResults(filter.getLimit());
   }
 
+  /**
+   * Build a Hibernate {@link Criteria} on instance archives from an instance filter. The process
+   * and the correlation properties of archived instances aren't available, and the archives are
+   * always ordered by instance id.
+   * @param crit target (destination) criteria
+   * @param filter filter
+   */
+  void buildArchiveCriteria(Criteria crit, InstanceFilter filter) {
+    List<String> pids = filter.getPidFilter();
+    if (pids != null && pids.size() > 0) {
+        Disjunction disj = Restrictions.disjunction();
+        for (String pid: pids) {
+            if( !filter.arePidsNegative() ) {
+                disj.add(Restrictions.eq("processId", pid));
+            } else {
+                disj.add(Restrictions.ne("processId", pid));
+            }
+        }
+        crit.add(disj);
+    }
+
+    List<String> iids = filter.getIidFilter();
+    if (iids != null && iids.size() > 0) {
+        Disjunction disj = Restrictions.disjunction();
+        for (String iid: iids) {
+            disj.add(Restrictions.eq("instanceId", new Long(iid)));
+        }
+        crit.add(disj);
+    }
+
+    // The process type is stored as {namespace}name
+    if (filter.getNameFilter() != null) {
+      crit.add(Restrictions.like("processType", "%" + filter.getNameFilter().replaceAll("\\*", "%")));
+    }
+    if (filter.getNamespaceFilter() != null) {
+      crit.add(Restrictions.like("processType", "{" + filter.getNamespaceFilter().replaceAll("\\*", "%") + "}%"));
+    }
+
+    if (filter.getStatusFilter() != null) {
+      List<Short> statuses = filter.convertFilterState();
+      Disjunction disj = Restrictions.disjunction();
+      for (short status : statuses) {
+        disj.add(Restrictions.eq("state", status));
+      }
+      crit.add(disj);
+    }
+
+    if (filter.getStartedDateFilter() != null) {
+      for (String sdf : filter.getStartedDateFilter()) {
+        addFilterOnPrefixedDate(crit, sdf, "instanceCreated");
+      }
+    }
+    if (filter.getLastActiveDateFilter() != null) {
+      for (String ladf : filter.getLastActiveDateFilter()) {
+        addFilterOnPrefixedDate(crit, ladf,  "lastActiveTime");
+      }
+    }
+
+    crit.addOrder(Property.forName("instanceId").asc());
+    if (filter.getLimit() > 0) crit.setMaxResults(filter.getLimit());
+  }
+
   /**
    * Build criteria for an event filter.
    * @param crit target criteria
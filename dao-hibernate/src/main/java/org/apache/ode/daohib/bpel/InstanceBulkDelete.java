@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.daohib.bpel;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.ode.bpel.dao.AbstractInstanceBulkDelete;
+import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
+import org.hibernate.Session;
+
+/**
+ * Set-based deletion of process instances and their runtime data with bulk HQL statements, instead of
+ * loading the entities or selecting the row ids of every table first.
+ */
+class InstanceBulkDelete extends AbstractInstanceBulkDelete {
+    private static final String MEX_IDS = "select x.id from HMessageExchange as x where x.instance.id in (:iids)";
+    private static final String UNMATCHED_MEX_IDS = "select cm.messageExchange.id from HCorrelatorMessage as cm "
+        + "where cm.messageExchange.instance.id in (:iids)";
+    private static final String SCOPE_IDS = "select s.id from HScope as s where s.instance.id in (:iids)";
+
+    static final String[] EVENTS = {
+        "delete from HLargeData where id in (select e.data.id from HBpelEvent as e where e.instance.id in (:iids))",
+        "delete from HBpelEvent as e where e.instance.id in (:iids)"
+    };
+
+    static final String[] CORRELATIONS = {
+        "delete from HCorrelationProperty as p where p.correlationSet.id in "
+            + "(select c.id from HCorrelationSet as c where c.instance.id in (:iids))",
+        "delete from HCorrelationSet as c where c.instance.id in (:iids)"
+    };
+
+    static final String[] MESSAGES = {
+        "delete from HCorrelatorMessageKey as k where k.owner.id in "
+            + "(select cm.id from HCorrelatorMessage as cm where cm.messageExchange.id in (" + MEX_IDS + "))",
+        "delete from HCorrelatorMessage as cm where cm.messageExchange.id in (" + MEX_IDS + ")",
+        "delete from HLargeData where id in (select m.messageData.id from HMessage as m where m.messageExchange.instance.id in (:iids))",
+        "delete from HLargeData where id in (select m.header.id from HMessage as m where m.messageExchange.instance.id in (:iids))",
+        "delete from HMessage as m where m.messageExchange.id in (" + MEX_IDS + ")",
+        "delete from HLargeData where id in (select x.endpoint.id from HMessageExchange as x where x.instance.id in (:iids))",
+        "delete from HLargeData where id in (select x.callbackEndpoint.id from HMessageExchange as x where x.instance.id in (:iids))",
+        "delete from HMessageExchangeProperty as p where p.mex.id in (" + MEX_IDS + ")",
+        "delete from HMessageExchange as x where x.instance.id in (:iids)",
+        "delete from HCorrelatorSelector as r where r.instance.id in (:iids)"
+    };
+
+    /**
+     * The messages category when the my-role exchanges are kept: only the exchanges still waiting in a
+     * correlator queue go, with their messages; the correlator messages and the exchanges themselves are
+     * deleted by {@link #deleteUnmatchedMessages(List)}.
+     */
+    static final String[] UNMATCHED_MESSAGES = {
+        "delete from HMessageExchangeProperty as p where p.mex.id in (" + MEX_IDS + ")",
+        "delete from HCorrelatorMessageKey as k where k.owner.id in "
+            + "(select cm.id from HCorrelatorMessage as cm where cm.messageExchange.id in (" + MEX_IDS + "))",
+        "delete from HLargeData where id in (select m.messageData.id from HMessage as m where m.messageExchange.id in (" + UNMATCHED_MEX_IDS + "))",
+        "delete from HLargeData where id in (select m.header.id from HMessage as m where m.messageExchange.id in (" + UNMATCHED_MEX_IDS + "))",
+        "delete from HMessage as m where m.messageExchange.id in (" + UNMATCHED_MEX_IDS + ")",
+        "delete from HLargeData where id in (select x.endpoint.id from HMessageExchange as x where x.id in (" + UNMATCHED_MEX_IDS + "))",
+        "delete from HLargeData where id in (select x.callbackEndpoint.id from HMessageExchange as x where x.id in (" + UNMATCHED_MEX_IDS + "))",
+        "delete from HCorrelatorSelector as r where r.instance.id in (:iids)"
+    };
+
+    static final String[] VARIABLES = {
+        // the correlation sets hang off the scopes
+        CORRELATIONS[0],
+        CORRELATIONS[1],
+        "delete from HVariableProperty as p where p.xmlData.id in "
+            + "(select x.id from HXmlData as x where x.instance.id in (:iids))",
+        "delete from HLargeData where id in (select x.data.id from HXmlData as x where x.instance.id in (:iids))",
+        "delete from HXmlData as x where x.instance.id in (:iids)",
+        "delete from HLargeData where id in (select l.myEPR.id from HPartnerLink as l where l.scope.instance.id in (:iids))",
+        "delete from HLargeData where id in (select l.partnerEPR.id from HPartnerLink as l where l.scope.instance.id in (:iids))",
+        "delete from HPartnerLink as l where l.scope.id in (" + SCOPE_IDS + ")",
+        "delete from HScope as s where s.instance.id in (:iids)"
+    };
+
+    static final String[] INSTANCE = {
+        "delete from HLargeData where id in (select a.details.id from HActivityRecovery as a where a.instance.id in (:iids))",
+        "delete from HActivityRecovery as a where a.instance.id in (:iids)",
+        "delete from HLargeData where id in (select i.fault.data.id from HProcessInstance as i where i.id in (:iids))",
+        "delete from HFaultData where id in (select i.fault.id from HProcessInstance as i where i.id in (:iids))",
+        "delete from HLargeData where id in (select i.jacobState.id from HProcessInstance as i where i.id in (:iids))",
+        "delete from HExecutionStateDelta as d where d.instance.id in (:iids)",
+        "delete from HCorrelatorSelector as r where r.instance.id in (:iids)",
+        "delete from HProcessInstance as i where i.id in (:iids)"
+    };
+
+    private final Session _session;
+
+    private final boolean _deleteMyRoleMex;
+
+    InstanceBulkDelete(Session session, boolean deleteMyRoleMex) {
+        _session = session;
+        _deleteMyRoleMex = deleteMyRoleMex;
+    }
+
+    /**
+     * Deletes the data of the given categories for the given instances.
+     *
+     * @param session current session
+     * @param iids instance ids
+     * @param categories clean up categories
+     * @return the number of instances processed
+     */
+    static int delete(Session session, List<Long> iids, Set<CLEANUP_CATEGORY> categories) {
+        return new InstanceBulkDelete(session, true).delete(iids, categories);
+    }
+
+    @Override
+    protected void delete(CLEANUP_CATEGORY category, List<Long> iids) {
+        if (category == CLEANUP_CATEGORY.MESSAGES && !_deleteMyRoleMex) {
+            deleteUnmatchedMessages(iids);
+        } else {
+            super.delete(category, iids);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deleteUnmatchedMessages(List<Long> iids) {
+        for (String statement : UNMATCHED_MESSAGES) {
+            execute(statement, iids);
+        }
+        // the correlator messages are what tells the unmatched exchanges apart, remember them before
+        List<Long> mexIds = _session.createQuery(UNMATCHED_MEX_IDS).setParameterList("iids", iids).list();
+        execute("delete from HCorrelatorMessage as cm where cm.messageExchange.id in (" + MEX_IDS + ")", iids);
+        for (int index = 0; index < mexIds.size(); index += MAX_IDS_PER_STATEMENT) {
+            List<Long> subList = mexIds.subList(index, Math.min(index + MAX_IDS_PER_STATEMENT, mexIds.size()));
+            _session.createQuery("delete from HMessageExchange as x where x.id in (:mexIds)")
+                .setParameterList("mexIds", subList).executeUpdate();
+        }
+    }
+
+    @Override
+    protected String[] getStatements(CLEANUP_CATEGORY category) {
+        switch (category) {
+        case EVENTS:
+            return EVENTS;
+        case CORRELATIONS:
+            return CORRELATIONS;
+        case MESSAGES:
+            return MESSAGES;
+        case VARIABLES:
+            return VARIABLES;
+        default:
+            return INSTANCE;
+        }
+    }
+
+    @Override
+    protected void execute(String statement, List<Long> iids) {
+        _session.createQuery(statement).setParameterList("iids", iids).executeUpdate();
+    }
+}
@@ -28,25 +28,11 @@ import org.apache.ode.bpel.dao.ProcessDAO;
 import org.apache.ode.bpel.dao.ProcessInstanceDAO;
 import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
 import org.apache.ode.daohib.SessionManager;
-import org.apache.ode.daohib.bpel.hobj.HActivityRecovery;
-import org.apache.ode.daohib.bpel.hobj.HBpelEvent;
-import org.apache.ode.daohib.bpel.hobj.HCorrelationProperty;
 import org.apache.ode.daohib.bpel.hobj.HCorrelationSet;
 import org.apache.ode.daohib.bpel.hobj.HCorrelator;
-import org.apache.ode.daohib.bpel.hobj.HCorrelatorMessage;
 import org.apache.ode.daohib.bpel.hobj.HCorrelatorSelector;
-import org.apache.ode.daohib.bpel.hobj.HFaultData;
-import org.apache.ode.daohib.bpel.hobj.HLargeData;
-import org.apache.ode.daohib.bpel.hobj.HMessage;
-import org.apache.ode.daohib.bpel.hobj.HMessageExchange;
-import org.apache.ode.daohib.bpel.hobj.HMessageExchangeProperty;
-import org.apache.ode.daohib.bpel.hobj.HObject;
-import org.apache.ode.daohib.bpel.hobj.HPartnerLink;
 import org.apache.ode.daohib.bpel.hobj.HProcess;
 import org.apache.ode.daohib.bpel.hobj.HProcessInstance;
-import org.apache.ode.daohib.bpel.hobj.HScope;
-import org.apache.ode.daohib.bpel.hobj.HVariableProperty;
-import org.apache.ode.daohib.bpel.hobj.HXmlData;
 import org.hibernate.Criteria;
 import org.hibernate.Hibernate;
 import org.hibernate.Query;
@@ -57,10 +43,10 @@ import javax.xml.namespace.QName;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Hibernate-based {@link ProcessDAO} implementation.
@@ -171,91 +157,12 @@ public class ProcessDaoImpl extends HibernateDao implements ProcessDAO, Deferred
                transactionSize = 1;
         }
 
-        Collection<HProcessInstance> instances = getSession().getNamedQuery(HProcessInstance.SELECT_INSTANCES_BY_PROCESS).setParameter("process", _process).setMaxResults(transactionSize).list();
-        if( !instances.isEmpty() ) {
-            deleteEvents(instances);
-            deleteCorrelations(instances);
-            deleteMessages(instances);
-            deleteVariables(instances);
-            deleteProcessInstances(instances);
+        List<Long> iids = getSession().getNamedQuery(HProcessInstance.SELECT_INSTANCE_IDS_BY_PROCESS).setParameter("process", _process).setMaxResults(transactionSize).list();
+        if( !iids.isEmpty() ) {
+            InstanceBulkDelete.delete(getSession(), iids, EnumSet.allOf(CLEANUP_CATEGORY.class));
         }
 
-        return instances.size();
-    }
-
-    public int deleteInstances(Collection<HProcessInstance> instances, Set<CLEANUP_CATEGORY> categories) {
-        entering("ProcessDaoImpl.deleteInstances");
-
-        if( !instances.isEmpty() ) {
-            if( categories.contains(CLEANUP_CATEGORY.EVENTS)) {
-                deleteEvents(instances);
-            }
-            if( categories.contains(CLEANUP_CATEGORY.CORRELATIONS)) {
-                deleteCorrelations(instances);
-            }
-            if( categories.contains(CLEANUP_CATEGORY.MESSAGES)) {
-                deleteMessages(instances);
-            }
-            if( categories.contains(CLEANUP_CATEGORY.VARIABLES)) {
-                deleteVariables(instances);
-            }
-            if( categories.contains(CLEANUP_CATEGORY.INSTANCE)) {
-                deleteProcessInstances(instances);
-            }
-        }
-
-        return instances.size();
-    }
-
-    @SuppressWarnings("unchecked")
-    private void deleteProcessInstances(Collection<HProcessInstance> instances) {
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_ACTIVITY_RECOVERY_LDATA_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HActivityRecovery.class, getSession().getNamedQuery(HActivityRecovery.SELECT_ACTIVITY_RECOVERY_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_FAULT_LDATA_IDS_BY_INSTANCE_IDS).setParameterList("instanceIds", HObject.toIdArray(instances)).list());
-        deleteByIds(HFaultData.class, getSession().getNamedQuery(HFaultData.SELECT_FAULT_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_JACOB_LDATA_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        
-        List<Long> instanceIds = new ArrayList<Long>();
-        for( HProcessInstance instance : instances ) {
-            instanceIds.add(instance.getId());
-        }
-        deleteByIds(HProcessInstance.class, instanceIds);
-    }
-
-    @SuppressWarnings("unchecked")
-    private void deleteVariables(Collection<HProcessInstance> instances) {
-        deleteByIds(HVariableProperty.class, getSession().getNamedQuery(HVariableProperty.SELECT_VARIABLE_PROPERTY_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_XMLDATA_LDATA_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HXmlData.class, getSession().getNamedQuery(HXmlData.SELECT_XMLDATA_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_PARTNER_LINK_LDATA_IDS_BY_INSTANCES_1).setParameterList("instances", instances).list());
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_PARTNER_LINK_LDATA_IDS_BY_INSTANCES_2).setParameterList("instances", instances).list());
-        deleteByIds(HPartnerLink.class, getSession().getNamedQuery(HPartnerLink.SELECT_PARTNER_LINK_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HScope.class, getSession().getNamedQuery(HScope.SELECT_SCOPE_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-    }
-
-    @SuppressWarnings("unchecked")
-    private void deleteMessages(Collection<HProcessInstance> instances) {
-        deleteByIds(HActivityRecovery.class, getSession().getNamedQuery(HCorrelatorMessage.SELECT_CORMESSAGE_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_MESSAGE_LDATA_IDS_BY_INSTANCES_1).setParameterList("instances", instances).list());
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_MESSAGE_LDATA_IDS_BY_INSTANCES_2).setParameterList("instances", instances).list());
-        deleteByIds(HMessage.class, getSession().getNamedQuery(HMessage.SELECT_MESSAGE_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_MEX_LDATA_IDS_BY_INSTANCES_1).setParameterList("instances", instances).list());
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_MEX_LDATA_IDS_BY_INSTANCES_2).setParameterList("instances", instances).list());
-        List<Long> mex = getSession().getNamedQuery(HMessageExchange.SELECT_MEX_IDS_BY_INSTANCES).setParameterList("instances", instances).list();
-        deleteByColumn(HMessageExchangeProperty.class, "mex.id", mex);
-        deleteByIds(HMessageExchange.class, mex);
-    }
-    
-    @SuppressWarnings("unchecked")
-    private void deleteCorrelations(Collection<HProcessInstance> instances) {
-        deleteByIds(HCorrelationProperty.class, getSession().getNamedQuery(HCorrelationProperty.SELECT_CORPROP_IDS_BY_INSTANCES).setParameterList ("instances", instances).list());
-        deleteByIds(HCorrelationSet.class, getSession().getNamedQuery(HCorrelationSet.SELECT_CORSET_IDS_BY_INSTANCES).setParameterList ("instances", instances).list());
-    }
-
-    @SuppressWarnings("unchecked")
-    private void deleteEvents(Collection<HProcessInstance> instances) {
-        deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_EVENT_LDATA_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-        deleteByIds(HBpelEvent.class, getSession().getNamedQuery(HBpelEvent.SELECT_EVENT_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
+        return iids.size();
     }
 
     public QName getType() {
@@ -137,6 +137,39 @@ public class ProcessInstanceDaoImpl extends HibernateDao implements ProcessInsta
     getSession().update(_instance);
   }
 
+  /**
+   * @see org.apache.ode.bpel.dao.ProcessInstanceDAO#getExecutionStateDeltas()
+   */
+  @SuppressWarnings("unchecked")
+  public List<byte[]> getExecutionStateDeltas() {
+    entering("ProcessInstanceDaoImpl.getExecutionStateDeltas");
+    List<HExecutionStateDelta> deltas = getSession().getNamedQuery(HExecutionStateDelta.SELECT_DELTAS_BY_INSTANCE)
+      .setParameter("instance", _instance).list();
+    List<byte[]> ret = new ArrayList<byte[]>(deltas.size());
+    for (HExecutionStateDelta delta : deltas)
+      ret.add(delta.getData());
+    return ret;
+  }
+
+  /**
+   * @see org.apache.ode.bpel.dao.ProcessInstanceDAO#addExecutionStateDelta(byte[])
+   */
+  public void addExecutionStateDelta(byte[] delta) {
+    entering("ProcessInstanceDaoImpl.addExecutionStateDelta");
+    Number max = (Number) getSession().getNamedQuery(HExecutionStateDelta.SELECT_MAX_DELTA_SEQUENCE_BY_INSTANCE)
+      .setParameter("instance", _instance).uniqueResult();
+    getSession().save(new HExecutionStateDelta(_instance, max == null ? 0 : max.intValue() + 1, delta));
+  }
+
+  /**
+   * @see org.apache.ode.bpel.dao.ProcessInstanceDAO#clearExecutionStateDeltas()
+   */
+  public void clearExecutionStateDeltas() {
+    entering("ProcessInstanceDaoImpl.clearExecutionStateDeltas");
+    getSession().getNamedQuery(HExecutionStateDelta.DELETE_DELTAS_BY_INSTANCE)
+      .setParameter("instance", _instance).executeUpdate();
+  }
+
   /**
    * @see org.apache.ode.bpel.dao.ProcessInstanceDAO#getProcess()
    */
@@ -337,107 +370,18 @@ public class ProcessInstanceDaoImpl extends HibernateDao implements ProcessInsta
       getSession().delete(_instance.getJacobState());
       _instance.setJacobState(null);
     }
+    clearExecutionStateDeltas();
 
-    HProcessInstance[] instances = new HProcessInstance[] {_instance};
-    
-    if( cleanupCategories.contains(CLEANUP_CATEGORY.EVENTS) ) {
-      deleteEvents(instances);
-    }
-      
-    if( cleanupCategories.contains(CLEANUP_CATEGORY.CORRELATIONS) ) {
-      deleteCorrelations(instances);
-    }
-
-    if( cleanupCategories.contains(CLEANUP_CATEGORY.MESSAGES) ) {
-      deleteMessages(instances, deleteMyRoleMex);
-    }
-      
-    if( cleanupCategories.contains(CLEANUP_CATEGORY.VARIABLES) ) {
-      deleteVariables(instances);
-    }
-      
+    // the bulk statements bypass the session, push whatever is pending for this instance first
+    getSession().flush();
+    new InstanceBulkDelete(getSession(), deleteMyRoleMex).delete(Collections.singletonList(_instance.getId()), cleanupCategories);
     if( cleanupCategories.contains(CLEANUP_CATEGORY.INSTANCE) ) {
-      deleteInstances(instances);
+      // the row is gone, the session must not try to write it back
+      getSession().evict(_instance);
     }
-
-    getSession().flush();
       
     if(__log.isDebugEnabled()) __log.debug("Instance data cleaned up and flushed.");
   }
-  
-  @SuppressWarnings("unchecked")
-  private void deleteInstances(HProcessInstance[] instances) {
-    deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_FAULT_LDATA_IDS_BY_INSTANCE_IDS).setParameterList("instanceIds", HObject.toIdArray(instances)).list());
-    deleteByIds(HFaultData.class, getSession().getNamedQuery(HFaultData.SELECT_FAULT_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-
-    getSession().delete(_instance); // this deletes JcobState, HActivityRecovery -> ActivityRecovery-LData
-  }
-
-  @SuppressWarnings("unchecked")
-  private void deleteVariables(HProcessInstance[] instances) {
-      deleteByIds(HCorrelationProperty.class, getSession().getNamedQuery(HCorrelationProperty.SELECT_CORPROP_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-      deleteByIds(HCorrelationSet.class, getSession().getNamedQuery(HCorrelationSet.SELECT_CORSET_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-
-      deleteByIds(HVariableProperty.class, getSession().getNamedQuery(HVariableProperty.SELECT_VARIABLE_PROPERTY_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-      deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_XMLDATA_LDATA_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-      deleteByIds(HXmlData.class, getSession().getNamedQuery(HXmlData.SELECT_XMLDATA_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-
-      deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_PARTNER_LINK_LDATA_IDS_BY_INSTANCES_1).setParameterList("instances", instances).list());
-      deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_PARTNER_LINK_LDATA_IDS_BY_INSTANCES_2).setParameterList("instances", instances).list());
-      deleteByIds(HPartnerLink.class, getSession().getNamedQuery(HPartnerLink.SELECT_PARTNER_LINK_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-
-      deleteByIds(HScope.class, getSession().getNamedQuery(HScope.SELECT_SCOPE_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-  }
-
-  @SuppressWarnings("unchecked")
-  private void deleteMessages(HProcessInstance[] instances, boolean deleteMyRoleMex) {
-      // Let's delete ALL mex properties here
-      List<Long> allMexes = getSession().getNamedQuery(HMessageExchange.SELECT_MEX_IDS_BY_INSTANCES).setParameterList("instances", instances).list();
-      deleteByColumn(HMessageExchangeProperty.class, "mex.id", allMexes);
-
-      if( deleteMyRoleMex ) { // Delete my role mex and partner role mexes
-          // delete message data
-          deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_MESSAGE_LDATA_IDS_BY_INSTANCES_1).setParameterList("instances", instances).list());
-          deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_MESSAGE_LDATA_IDS_BY_INSTANCES_2).setParameterList("instances", instances).list());
-
-          // delete messages
-          deleteByIds(HMessage.class, getSession().getNamedQuery(HMessage.SELECT_MESSAGE_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-          
-          // delete all mexes
-          deleteByIds(HMessageExchange.class, allMexes);
-      } else { // Delete only the unmatched mexes, there are chances that some unmatched messages are still there
-          // delete message data 
-          deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_UNMATCHED_MESSAGE_LDATA_IDS_BY_INSTANCES_1).setParameterList("instances", instances).list());
-          deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_UNMATCHED_MESSAGE_LDATA_IDS_BY_INSTANCES_2).setParameterList("instances", instances).list());
-
-          Collection<HMessageExchange> unmatchedMex = getSession().getNamedQuery(HMessageExchange.SELECT_UNMATCHED_MEX_BY_INSTANCES).setParameterList("instances", instances).list();
-          if( !unmatchedMex.isEmpty() ) {
-              List<Long> mexIdList = new ArrayList<Long>();
-              for( HMessageExchange mex : unmatchedMex ) {
-                  mexIdList.add(mex.getId());
-              }
-
-              // delete unmatched mexes
-              getSession().delete(unmatchedMex);
-          }
-      }
-
-      // Delete routes and unmatched messages
-      deleteByIds(HCorrelatorMessage.class, getSession().getNamedQuery(HCorrelatorMessage.SELECT_CORMESSAGE_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-      deleteByIds(HCorrelatorSelector.class, getSession().getNamedQuery(HCorrelatorSelector.SELECT_MESSAGE_ROUTE_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-  }
-
-  @SuppressWarnings("unchecked")
-  private void deleteCorrelations(HProcessInstance[] instances) {
-      deleteByIds(HCorrelationProperty.class, getSession().getNamedQuery(HCorrelationProperty.SELECT_CORPROP_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-      deleteByIds(HCorrelationSet.class, getSession().getNamedQuery(HCorrelationSet.SELECT_CORSET_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-  }
-
-  @SuppressWarnings("unchecked")
-  private void deleteEvents(HProcessInstance[] instances) {
-      deleteByIds(HLargeData.class, getSession().getNamedQuery(HLargeData.SELECT_EVENT_LDATA_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-      deleteByIds(HBpelEvent.class, getSession().getNamedQuery(HBpelEvent.SELECT_EVENT_IDS_BY_INSTANCES).setParameterList("instances", instances).list());
-  }
 
   public void insertBpelEvent(ProcessInstanceEvent event) {
       entering("ProcessInstanceDaoImpl.insertBpelEvent");
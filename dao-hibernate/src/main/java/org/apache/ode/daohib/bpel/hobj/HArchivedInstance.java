@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.daohib.bpel.hobj;
+
+import java.util.Date;
+
+/**
+ * Archive of a completed process instance. The creation timestamp is the archive time.
+ * @hibernate.class table="BPEL_INSTANCE_ARCHIVE"
+ * @hibernate.query name="SELECT_ARCHIVE_BY_INSTANCE_ID" query="from HArchivedInstance as a where a.instanceId = :iid"
+ */
+public class HArchivedInstance extends HObject {
+    public static final String SELECT_ARCHIVE_BY_INSTANCE_ID = "SELECT_ARCHIVE_BY_INSTANCE_ID";
+
+    private Long _instanceId;
+    private String _processId;
+    private String _processType;
+    private short _state;
+    private Date _instanceCreated;
+    private Date _lastActiveTime;
+    private byte[] _correlationProperties;
+    private byte[] _data;
+
+    /**
+     * @hibernate.property
+     *
+     * @hibernate.column name="IID" not-null="true" unique="true"
+     */
+    public Long getInstanceId() {
+        return _instanceId;
+    }
+
+    public void setInstanceId(Long instanceId) {
+        _instanceId = instanceId;
+    }
+
+    /**
+     * @hibernate.property
+     *
+     * @hibernate.column name="PROCID" index="IDX_BPEL_INSTANCE_ARCHIVE_PROCID"
+     */
+    public String getProcessId() {
+        return _processId;
+    }
+
+    public void setProcessId(String processId) {
+        _processId = processId;
+    }
+
+    /**
+     * @hibernate.property column="PROCESS_TYPE"
+     */
+    public String getProcessType() {
+        return _processType;
+    }
+
+    public void setProcessType(String processType) {
+        _processType = processType;
+    }
+
+    /**
+     * @hibernate.property column="STATE"
+     */
+    public short getState() {
+        return _state;
+    }
+
+    public void setState(short state) {
+        _state = state;
+    }
+
+    /**
+     * @hibernate.property column="INSTANCE_CREATED" type="timestamp"
+     */
+    public Date getInstanceCreated() {
+        return _instanceCreated;
+    }
+
+    public void setInstanceCreated(Date instanceCreated) {
+        _instanceCreated = instanceCreated;
+    }
+
+    /**
+     * @hibernate.property column="LAST_ACTIVE_DT" type="timestamp"
+     */
+    public Date getLastActiveTime() {
+        return _lastActiveTime;
+    }
+
+    public void setLastActiveTime(Date lastActiveTime) {
+        _lastActiveTime = lastActiveTime;
+    }
+
+    /**
+     * @hibernate.property
+     *
+     * @hibernate.column name="CORRELATION_PROPS" sql-type="blob(2G)"
+     */
+    public byte[] getCorrelationProperties() {
+        return _correlationProperties;
+    }
+
+    public void setCorrelationProperties(byte[] correlationProperties) {
+        _correlationProperties = correlationProperties;
+    }
+
+    /**
+     * @hibernate.property
+     *
+     * @hibernate.column name="DATA" sql-type="blob(2G)"
+     */
+    public byte[] getData() {
+        return _data;
+    }
+
+    public void setData(byte[] data) {
+        _data = data;
+    }
+}
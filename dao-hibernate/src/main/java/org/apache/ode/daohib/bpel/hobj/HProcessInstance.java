@@ -30,11 +30,13 @@ import java.util.Set;
  * @hibernate.class table="BPEL_INSTANCE" dynamic-update="true" lazy="true"
  * @hibernate.query name="COUNT_FAILED_INSTANCES_BY_PROCESS_IDS_AND_STATES" query="select count(i.id) as cnt, max(i.activityFailureDateTime) as lastFailureDt from HProcessInstance as i where i.process.processId in (:processIds) and i.state in(:states) and i.activityFailureCount > 0"
  * @hibernate.query name="SELECT_INSTANCES_BY_PROCESS" query="from HProcessInstance as i where i.process = :process)"
+ * @hibernate.query name="SELECT_INSTANCE_IDS_BY_PROCESS" query="select i.id from HProcessInstance as i where i.process = :process"
  * @hibernate.query name="SELECT_INSTANCES_BY_PROCESS_AND_STATES" query="from HProcessInstance as i where i.process = :process and i.state in (:states)"
  */
 public class HProcessInstance extends HObject {
     public static final String COUNT_FAILED_INSTANCES_BY_PROCESS_IDS_AND_STATES="COUNT_FAILED_INSTANCES_BY_PROCESS_IDS_AND_STATES";
     public static final String SELECT_INSTANCES_BY_PROCESS="SELECT_INSTANCES_BY_PROCESS";
+    public static final String SELECT_INSTANCE_IDS_BY_PROCESS="SELECT_INSTANCE_IDS_BY_PROCESS";
     public static final String SELECT_INSTANCES_BY_PROCESS_AND_STATES="SELECT_INSTANCES_BY_PROCESS_AND_STATES";
 
 	/** Foreign key to owner {@link HProcess}. */
@@ -73,6 +75,7 @@ public class HProcessInstance extends HObject {
 
     private Collection<HActivityRecovery> _activityRecoveries = new HashSet<HActivityRecovery>();
 
+
     private long _seq;
 
     /**
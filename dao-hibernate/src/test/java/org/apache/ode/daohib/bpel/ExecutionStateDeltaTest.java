@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.daohib.bpel;
+
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+
+/**
+ * Testing the storage of the execution state deltas of an instance: deltas are read back in the order
+ * they were added, across transactions, and compacting them starts the sequence over.
+ */
+public class ExecutionStateDeltaTest extends BaseTestDAO {
+    private static final String TEST_NS = "http://org.apache.ode.daohib.test";
+
+    private Long _iid;
+
+    protected void setUp() throws Exception {
+        initTM();
+        ProcessDAO process = daoConn.createProcess(new QName(TEST_NS, "deltas"), new QName(TEST_NS, "type"), "GUID1", 1);
+        CorrelatorDAO correlator = process.addCorrelator("pl.op");
+        _iid = process.createInstance(correlator).getInstanceId();
+    }
+
+    protected void tearDown() throws Exception {
+        stopTM();
+    }
+
+    public void testStoreDeltas() throws Exception {
+        ProcessInstanceDAO instance = daoConn.getInstance(_iid);
+        assertTrue(instance.getExecutionStateDeltas().isEmpty());
+        instance.addExecutionStateDelta("d0".getBytes());
+        instance.addExecutionStateDelta("d1".getBytes());
+        assertDeltas(instance, "d0", "d1");
+        commit();
+
+        instance = daoConn.getInstance(_iid);
+        instance.addExecutionStateDelta("d2".getBytes());
+        commit();
+
+        assertDeltas(daoConn.getInstance(_iid), "d0", "d1", "d2");
+    }
+
+    public void testCompactDeltas() throws Exception {
+        ProcessInstanceDAO instance = daoConn.getInstance(_iid);
+        instance.addExecutionStateDelta("d0".getBytes());
+        instance.addExecutionStateDelta("d1".getBytes());
+        commit();
+
+        // A new snapshot replaces the deltas
+        instance = daoConn.getInstance(_iid);
+        instance.setExecutionState("snapshot".getBytes());
+        instance.clearExecutionStateDeltas();
+        assertDeltas(instance);
+        instance.addExecutionStateDelta("d2".getBytes());
+        commit();
+
+        instance = daoConn.getInstance(_iid);
+        assertEquals("snapshot", new String(instance.getExecutionState()));
+        assertDeltas(instance, "d2");
+        instance.addExecutionStateDelta("d3".getBytes());
+        assertDeltas(instance, "d2", "d3");
+    }
+
+    private void commit() throws Exception {
+        getTransactionManager().commit();
+        getTransactionManager().begin();
+    }
+
+    private void assertDeltas(ProcessInstanceDAO instance, String... expected) {
+        List<byte[]> deltas = instance.getExecutionStateDeltas();
+        assertEquals(expected.length, deltas.size());
+        for (int i = 0; i < expected.length; ++i)
+            assertEquals(expected[i], new String(deltas.get(i)));
+    }
+}
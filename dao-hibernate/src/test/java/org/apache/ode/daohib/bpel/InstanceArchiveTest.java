@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.daohib.bpel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.ode.bpel.common.InstanceFilter;
+import org.apache.ode.bpel.common.ProcessState;
+import org.apache.ode.bpel.dao.ArchivedInstanceDAO;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.InstanceArchivable;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+
+/**
+ * Testing the instance archive: archives keep the attributes of the instance and are found
+ * with the instance filters.
+ */
+public class InstanceArchiveTest extends BaseTestDAO {
+    private static final String TEST_NS = "http://org.apache.ode.daohib.test";
+
+    private InstanceArchivable _archivable;
+    private Long _completed;
+    private Long _faulted;
+
+    protected void setUp() throws Exception {
+        initTM();
+        _archivable = (InstanceArchivable) daoConn;
+
+        ProcessDAO process = daoConn.createProcess(new QName(TEST_NS, "Archive-1"), new QName(TEST_NS, "Archive"), "GUID1", 1);
+        CorrelatorDAO correlator = process.addCorrelator("pl.op");
+        _completed = archive(process.createInstance(correlator), ProcessState.STATE_COMPLETED_OK, "props".getBytes(), null);
+        _faulted = archive(process.createInstance(correlator), ProcessState.STATE_COMPLETED_WITH_FAULT, null, "fault".getBytes());
+        getTransactionManager().commit();
+        getTransactionManager().begin();
+    }
+
+    protected void tearDown() throws Exception {
+        stopTM();
+    }
+
+    public void testGetArchivedInstance() throws Exception {
+        ArchivedInstanceDAO archive = _archivable.getArchivedInstance(_completed);
+        assertNotNull(archive);
+        assertEquals(_completed, archive.getInstanceId());
+        assertEquals(new QName(TEST_NS, "Archive-1"), archive.getProcessId());
+        assertEquals(new QName(TEST_NS, "Archive"), archive.getProcessType());
+        assertEquals(ProcessState.STATE_COMPLETED_OK, archive.getState());
+        assertNotNull(archive.getCreateTime());
+        assertNotNull(archive.getArchiveTime());
+        assertEquals("props", new String(archive.getCorrelationProperties()));
+        assertNull(archive.getData());
+
+        archive = _archivable.getArchivedInstance(_faulted);
+        assertNull(archive.getCorrelationProperties());
+        assertEquals("fault", new String(archive.getData()));
+
+        assertNull(_archivable.getArchivedInstance(_faulted + 1000));
+    }
+
+    public void testArchivedInstanceQuery() throws Exception {
+        assertArchives("", _completed, _faulted);
+        assertArchives("iid=" + _faulted, _faulted);
+        assertArchives("name=Arch*", _completed, _faulted);
+        assertArchives("name=Other");
+        assertArchives("namespace=" + TEST_NS, _completed, _faulted);
+        assertArchives("status=completed", _completed);
+        assertArchives("status=failed", _faulted);
+        assertEquals(1, _archivable.archivedInstanceQuery(new InstanceFilter("", null, 1)).size());
+    }
+
+    private Long archive(ProcessInstanceDAO instance, short state, byte[] properties, byte[] data) {
+        instance.setState(state);
+        _archivable.archiveInstance(instance, properties, data);
+        return instance.getInstanceId();
+    }
+
+    private void assertArchives(String filter, Long... expected) {
+        Collection<ArchivedInstanceDAO> archives = _archivable.archivedInstanceQuery(new InstanceFilter(filter, null, Integer.MAX_VALUE));
+        List<Long> iids = new ArrayList<Long>();
+        for (ArchivedInstanceDAO archive : archives)
+            iids.add(archive.getInstanceId());
+        List<Long> expectedIids = new ArrayList<Long>();
+        for (Long iid : expected)
+            expectedIids.add(iid);
+        assertEquals(expectedIids, iids);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.daohib.bpel;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+
+import javax.xml.namespace.QName;
+
+import org.apache.ode.bpel.common.CorrelationKey;
+import org.apache.ode.bpel.common.CorrelationKeySet;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.FilteredInstanceDeletable;
+import org.apache.ode.bpel.dao.MessageExchangeDAO;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.dao.ScopeDAO;
+import org.apache.ode.bpel.evt.ProcessInstanceStartedEvent;
+import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
+import org.apache.ode.utils.DOMUtils;
+
+/**
+ * Testing the set-based deletion of instances: the bulk HQL statements of each clean up category
+ * remove the data of the given instances only.
+ */
+public class InstanceBulkDeleteTest extends BaseTestDAO {
+    private static final String TEST_NS = "http://org.apache.ode.daohib.test";
+
+    private ProcessDAO _process;
+    private CorrelatorDAO _correlator;
+    private Long _deleted;
+    private Long _kept;
+    private String _unmatchedMex;
+    private String _matchedMex;
+    private String _keptMex;
+
+    protected void setUp() throws Exception {
+        initTM();
+        _process = daoConn.createProcess(new QName(TEST_NS, "Delete-1"), new QName(TEST_NS, "Delete"), "GUID1", 1);
+        _correlator = _process.addCorrelator("pl.op");
+
+        ProcessInstanceDAO deleted = createInstance();
+        _matchedMex = createMessageExchange(deleted, false);
+        _unmatchedMex = createMessageExchange(deleted, true);
+        _deleted = deleted.getInstanceId();
+        ProcessInstanceDAO kept = createInstance();
+        _keptMex = createMessageExchange(kept, true);
+        _kept = kept.getInstanceId();
+        commit();
+    }
+
+    protected void tearDown() throws Exception {
+        stopTM();
+    }
+
+    public void testDeleteAll() throws Exception {
+        assertEquals(1, deletable().deleteInstances(Collections.singletonList(_deleted), EnumSet.allOf(CLEANUP_CATEGORY.class)));
+        commit();
+
+        assertNull(daoConn.getInstance(_deleted));
+        assertNull(daoConn.getMessageExchange(_matchedMex));
+        assertNull(daoConn.getMessageExchange(_unmatchedMex));
+        assertKept();
+    }
+
+    public void testDeleteCategories() throws Exception {
+        deletable().deleteInstances(Collections.singletonList(_deleted), EnumSet.of(CLEANUP_CATEGORY.EVENTS, CLEANUP_CATEGORY.VARIABLES));
+        commit();
+
+        ProcessInstanceDAO instance = daoConn.getInstance(_deleted);
+        assertNotNull(instance);
+        assertEquals(0, instance.getEventsFirstLastCount().count);
+        assertTrue(instance.getScopes().isEmpty());
+        assertTrue(instance.getCorrelationSets().isEmpty());
+        assertNotNull(daoConn.getMessageExchange(_matchedMex));
+        assertKept();
+    }
+
+    public void testDeleteOnCompletion() throws Exception {
+        daoConn.getInstance(_deleted).delete(EnumSet.of(CLEANUP_CATEGORY.MESSAGES, CLEANUP_CATEGORY.VARIABLES), false);
+        commit();
+
+        // the my-role exchange stays around for its client, the one still queued in the correlator goes
+        assertNotNull(daoConn.getInstance(_deleted));
+        assertNotNull(daoConn.getMessageExchange(_matchedMex));
+        assertNull(daoConn.getMessageExchange(_unmatchedMex));
+        assertTrue(daoConn.getInstance(_deleted).getScopes().isEmpty());
+        assertKept();
+
+        daoConn.getInstance(_deleted).delete(EnumSet.allOf(CLEANUP_CATEGORY.class));
+        commit();
+
+        assertNull(daoConn.getInstance(_deleted));
+        assertNull(daoConn.getMessageExchange(_matchedMex));
+        assertKept();
+    }
+
+    private void assertKept() {
+        ProcessInstanceDAO kept = daoConn.getInstance(_kept);
+        assertNotNull(kept);
+        assertEquals(1, kept.getEventsFirstLastCount().count);
+        assertEquals(1, kept.getScopes().size());
+        assertEquals(1, kept.getCorrelationSets().size());
+        assertNotNull(daoConn.getMessageExchange(_keptMex));
+    }
+
+    private ProcessInstanceDAO createInstance() throws Exception {
+        ProcessInstanceDAO instance = _process.createInstance(_correlator);
+        instance.setExecutionState("state".getBytes());
+        instance.setFault(new QName(TEST_NS, "fault"), "explanation", 1, 1, DOMUtils.stringToDOM("<fault/>"));
+        instance.createActivityRecovery("channel", 1, "reason", new Date(), DOMUtils.stringToDOM("<details/>"), new String[] { "retry" }, 0);
+        daoConn.insertBpelEvent(new ProcessInstanceStartedEvent(), _process, instance);
+
+        ScopeDAO scope = instance.createScope(null, "Root", 1);
+        scope.getVariable("var").set(DOMUtils.stringToDOM("<var/>"));
+        scope.getVariable("var").setProperty("prop", "value");
+        scope.getCorrelationSet("cset").setValue(new QName[] { new QName(TEST_NS, "prop") }, new CorrelationKey("cset", new String[] { "value" }));
+        scope.createPartnerLink(1, "pl", "myRole", "partnerRole").setMyEPR(DOMUtils.stringToDOM("<epr/>"));
+        _correlator.addRoute("route", instance, 0, new CorrelationKeySet().add(new CorrelationKey("cset", new String[] { "value" })), "one");
+        return instance;
+    }
+
+    private String createMessageExchange(ProcessInstanceDAO instance, boolean queued) throws Exception {
+        MessageExchangeDAO mex = daoConn.createMessageExchange(MessageExchangeDAO.DIR_PARTNER_INVOKES_MYROLE);
+        mex.setInstance(instance);
+        mex.setProcess(_process);
+        mex.setProperty("prop", "value");
+        mex.setRequest(mex.createMessage(new QName(TEST_NS, "request")));
+        mex.getRequest().setData(DOMUtils.stringToDOM("<request/>"));
+        if (queued)
+            _correlator.enqueueMessage(mex, new CorrelationKeySet().add(new CorrelationKey("cset", new String[] { "other" })));
+        return mex.getMessageExchangeId();
+    }
+
+    private FilteredInstanceDeletable deletable() {
+        return (FilteredInstanceDeletable) daoConn;
+    }
+
+    private void commit() throws Exception {
+        getTransactionManager().commit();
+        getTransactionManager().begin();
+    }
+}
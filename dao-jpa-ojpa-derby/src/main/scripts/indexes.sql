@@ -0,0 +1,5 @@
+-- Indexes the OpenJPA mapping tool doesn't generate
+
+create index IDX_ODE_CMK_CKEY on ODE_CORRELATOR_MESSAGE_KEY (CORR_ID, CORRELATION_KEY);
+create index IDX_ODE_CMK_MEX on ODE_CORRELATOR_MESSAGE_KEY (MESSAGE_EXCHANGE_ID);
+create index IDX_ODE_INSTANCE_ARCHIVE_PID on ODE_INSTANCE_ARCHIVE (PROCESS_ID);
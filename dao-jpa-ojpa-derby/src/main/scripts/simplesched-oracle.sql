@@ -1,6 +1,13 @@
-CREATE TABLE ODE_JOB (jobid varchar2(64 char) DEFAULT '' NOT NULL, ts number(19,0) DEFAULT 0 NOT NULL, nodeid varchar2(64 char) NULL, scheduled number(12,0) DEFAULT 0 NOT NULL, transacted number(12,0) DEFAULT 0 NOT NULL, details BLOB, PRIMARY KEY(jobid));
+CREATE TABLE ODE_JOB (jobid varchar2(64 char) DEFAULT '' NOT NULL, ts number(19,0) DEFAULT 0 NOT NULL, nodeid varchar2(64 char) NULL, scheduled number(12,0) DEFAULT 0 NOT NULL, transacted number(12,0) DEFAULT 0 NOT NULL, details BLOB, instanceid number(19,0) NULL, jobtype varchar2(32 char) NULL, PRIMARY KEY(jobid));
 
 CREATE INDEX IDX_ODE_JOB_TS ON ode_job(ts);
 CREATE INDEX IDX_ODE_JOB_NODEID ON ode_job(nodeid);
+CREATE INDEX IDX_ODE_JOB_INSTANCEID ON ode_job(instanceid);
 
+CREATE TABLE ODE_NODE (nodeid varchar2(64 char) DEFAULT '' NOT NULL, lease number(19,0) DEFAULT 0 NOT NULL, PRIMARY KEY(nodeid));
+
+
+CREATE TABLE ODE_DEAD_JOB (jobid varchar2(64 char) DEFAULT '' NOT NULL, ts number(19,0) DEFAULT 0 NOT NULL, nodeid varchar2(64 char) NULL, transacted number(12,0) DEFAULT 0 NOT NULL, details BLOB, instanceid number(19,0) NULL, jobtype varchar2(32 char) NULL, failed number(19,0) DEFAULT 0 NOT NULL, reason varchar2(255 char) NULL, PRIMARY KEY(jobid));
+
+CREATE INDEX IDX_ODE_DEAD_JOB_FAILED ON ode_dead_job(failed);
 
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.dao.jpa.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.transaction.TransactionManager;
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.common.CorrelationKey;
+import org.apache.ode.bpel.common.CorrelationKeySet;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.CorrelatorMessageDAO;
+import org.apache.ode.bpel.dao.MessageExchangeDAO;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.dao.jpa.BPELDAOConnectionFactoryImpl;
+import org.apache.ode.il.EmbeddedGeronimoFactory;
+import org.apache.ode.utils.GUID;
+import org.hsqldb.jdbc.jdbcDataSource;
+
+/**
+ * Tests the correlator message queue: messages are dequeued by any of their correlation keys, in
+ * arrival order, and the queue content is consistent with the keys.
+ */
+public class CorrelatorDAOTest extends TestCase {
+    private static final String TEST_NS = "http://org.apache.ode.jpa.test";
+    private static final QName PID = new QName(TEST_NS, "correlator");
+
+    TransactionManager _txm;
+    BPELDAOConnectionFactoryImpl factory;
+    List<String> _mexIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        jdbcDataSource hsqlds = new jdbcDataSource();
+        hsqlds.setDatabase("jdbc:hsqldb:mem:" + new GUID().toString());
+        hsqlds.setUser("sa");
+        hsqlds.setPassword("");
+
+        _txm = new EmbeddedGeronimoFactory().getTransactionManager();
+
+        factory = new BPELDAOConnectionFactoryImpl();
+        factory.setDataSource(hsqlds);
+        factory.setTransactionManager(_txm);
+        Properties props = new Properties();
+        props.put("openjpa.jdbc.SynchronizeMappings", "buildSchema(ForeignKeys=false)");
+        factory.init(props);
+
+        _txm.begin();
+        BpelDAOConnection conn = factory.getConnection();
+        ProcessDAO process = conn.createProcess(PID, new QName(TEST_NS, "type"), "GUID1", 1);
+        CorrelatorDAO correlator = process.addCorrelator("pl.op");
+        _mexIds = new ArrayList<String>();
+        _mexIds.add(enqueue(conn, process, correlator, keySet("a", "1")));
+        _mexIds.add(enqueue(conn, process, correlator, keySet("a", "1")));
+        _mexIds.add(enqueue(conn, process, correlator, keySet("a", "2").add(new CorrelationKey("b", new String[] { "3" }))));
+        commit();
+    }
+
+    public void testGetAllMessages() throws Exception {
+        assertEquals(3, correlator().getAllMessages().size());
+
+        BpelDAOConnection conn = factory.getConnection();
+        ProcessDAO process = conn.getProcess(PID);
+        enqueue(conn, process, correlator(), keySet("a", "4"));
+        assertEquals(4, correlator().getAllMessages().size());
+        commit();
+
+        assertEquals(4, correlator().getAllMessages().size());
+    }
+
+    public void testDequeueInArrivalOrder() throws Exception {
+        assertEquals(_mexIds.get(0), correlator().dequeueMessage(keySet("a", "1")).getMessageExchangeId());
+        assertEquals(2, correlator().getAllMessages().size());
+        commit();
+
+        assertEquals(_mexIds.get(1), correlator().dequeueMessage(keySet("a", "1")).getMessageExchangeId());
+        assertNull(correlator().dequeueMessage(keySet("a", "1")));
+        assertEquals(1, correlator().getAllMessages().size());
+    }
+
+    public void testDequeueBySubSet() throws Exception {
+        assertNull(correlator().dequeueMessage(keySet("b", "1")));
+        assertEquals(_mexIds.get(2), correlator().dequeueMessage(keySet("b", "3")).getMessageExchangeId());
+        assertNull(correlator().dequeueMessage(keySet("a", "2")));
+        assertEquals(2, correlator().getAllMessages().size());
+    }
+
+    public void testSetCorrelationKey() throws Exception {
+        for (CorrelatorMessageDAO message : correlator().getAllMessages()) {
+            if (((MessageExchangeDAO) message).getMessageExchangeId().equals(_mexIds.get(0)))
+                message.setCorrelationKey(new CorrelationKey("c", new String[] { "5" }));
+        }
+        commit();
+
+        assertEquals(_mexIds.get(1), correlator().dequeueMessage(keySet("a", "1")).getMessageExchangeId());
+        assertNull(correlator().dequeueMessage(keySet("a", "1")));
+        assertEquals(_mexIds.get(0), correlator().dequeueMessage(keySet("c", "5")).getMessageExchangeId());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _txm.commit();
+        _txm = null;
+    }
+
+    private String enqueue(BpelDAOConnection conn, ProcessDAO process, CorrelatorDAO correlator, CorrelationKeySet keySet) {
+        MessageExchangeDAO mex = conn.createMessageExchange(MessageExchangeDAO.DIR_PARTNER_INVOKES_MYROLE);
+        mex.setProcess(process);
+        correlator.enqueueMessage(mex, keySet);
+        return mex.getMessageExchangeId();
+    }
+
+    private static CorrelationKeySet keySet(String cset, String value) {
+        return new CorrelationKeySet().add(new CorrelationKey(cset, new String[] { value }));
+    }
+
+    private CorrelatorDAO correlator() {
+        return factory.getConnection().getProcess(PID).getCorrelator("pl.op");
+    }
+
+    private void commit() throws Exception {
+        _txm.commit();
+        _txm.begin();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.dao.jpa.test;
+
+import java.sql.Connection;
+import java.util.Properties;
+import java.util.Random;
+
+import javax.transaction.TransactionManager;
+import javax.xml.namespace.QName;
+
+import org.apache.ode.bpel.common.CorrelationKey;
+import org.apache.ode.bpel.common.CorrelationKeySet;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.MessageExchangeDAO;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.dao.jpa.BPELDAOConnectionFactoryImpl;
+import org.apache.ode.il.EmbeddedGeronimoFactory;
+import org.apache.ode.utils.GUID;
+import org.hsqldb.jdbc.jdbcDataSource;
+
+/**
+ * Micro-benchmark of the correlator message queue: latency of dequeuing a message by correlation key as the
+ * number of messages queued on the correlator grows. Not a test case, run it with:
+ * <code>java org.apache.ode.dao.jpa.test.CorrelatorQueueBenchmark [largest queue] [dequeues]</code>
+ */
+public class CorrelatorQueueBenchmark {
+    private static final String TEST_NS = "http://org.apache.ode.jpa.test";
+
+    public static void main(String[] args) throws Exception {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int dequeues = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        for (int size = 100; size <= largest; size *= 10) {
+            run(size, dequeues);
+        }
+    }
+
+    static void run(int size, int dequeues) throws Exception {
+        jdbcDataSource ds = new jdbcDataSource();
+        ds.setDatabase("jdbc:hsqldb:mem:" + new GUID().toString());
+        ds.setUser("sa");
+        ds.setPassword("");
+        TransactionManager txm = new EmbeddedGeronimoFactory().getTransactionManager();
+        BPELDAOConnectionFactoryImpl factory = new BPELDAOConnectionFactoryImpl();
+        factory.setDataSource(ds);
+        factory.setTransactionManager(txm);
+        Properties props = new Properties();
+        props.put("openjpa.jdbc.SynchronizeMappings", "buildSchema(ForeignKeys=false)");
+        factory.init(props);
+
+        QName pid = new QName(TEST_NS, "queue-" + size);
+        txm.begin();
+        BpelDAOConnection conn = factory.getConnection();
+        ProcessDAO process = conn.createProcess(pid, new QName(TEST_NS, "queue"), "GUID1", 1);
+        CorrelatorDAO correlator = process.addCorrelator("pl.op");
+        for (int i = 0; i < size; ++i) {
+            MessageExchangeDAO mex = conn.createMessageExchange(MessageExchangeDAO.DIR_PARTNER_INVOKES_MYROLE);
+            mex.setProcess(process);
+            correlator.enqueueMessage(mex, keySet(i));
+        }
+        txm.commit();
+        createIndexes(ds);
+
+        // Each dequeue is rolled back, the queue keeps its size
+        Random random = new Random(size);
+        long start = System.nanoTime();
+        for (int i = 0; i < dequeues; ++i) {
+            txm.begin();
+            try {
+                CorrelatorDAO corr = factory.getConnection().getProcess(pid).getCorrelator("pl.op");
+                if (corr.dequeueMessage(keySet(random.nextInt(size))) == null)
+                    throw new IllegalStateException("Queued message not found");
+            } finally {
+                txm.rollback();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("queue of " + size + ": " + dequeues + " dequeues in " + (elapsed / 1000000) + "ms, "
+                + (elapsed / dequeues / 1000) + "us per dequeue");
+    }
+
+    static CorrelationKeySet keySet(int i) {
+        return new CorrelationKeySet().add(new CorrelationKey("order", new String[] { "order-" + i }));
+    }
+
+    /**
+     * The indexes of the database scripts, the runtime schema synchronization doesn't create them.
+     */
+    static void createIndexes(jdbcDataSource ds) throws Exception {
+        Connection c = ds.getConnection();
+        try {
+            c.createStatement().executeUpdate("CREATE INDEX IDX_ODE_CMK_CKEY ON ODE_CORRELATOR_MESSAGE_KEY (CORR_ID, CORRELATION_KEY)");
+            c.createStatement().executeUpdate("CREATE INDEX IDX_ODE_CMK_MEX ON ODE_CORRELATOR_MESSAGE_KEY (MESSAGE_EXCHANGE_ID)");
+        } finally {
+            c.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.dao.jpa.test;
+
+import java.util.List;
+import java.util.Properties;
+
+import javax.transaction.TransactionManager;
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.dao.jpa.BPELDAOConnectionFactoryImpl;
+import org.apache.ode.il.EmbeddedGeronimoFactory;
+import org.apache.ode.utils.GUID;
+import org.hsqldb.jdbc.jdbcDataSource;
+
+/**
+ * Tests the storage of the execution state deltas of an instance: deltas are read back in the order
+ * they were added, across transactions, and compacting them starts the sequence over.
+ */
+public class ExecutionStateDeltaTest extends TestCase {
+    private static final String TEST_NS = "http://org.apache.ode.jpa.test";
+
+    TransactionManager _txm;
+    BPELDAOConnectionFactoryImpl factory;
+    Long _iid;
+
+    @Override
+    protected void setUp() throws Exception {
+        jdbcDataSource hsqlds = new jdbcDataSource();
+        hsqlds.setDatabase("jdbc:hsqldb:mem:" + new GUID().toString());
+        hsqlds.setUser("sa");
+        hsqlds.setPassword("");
+
+        _txm = new EmbeddedGeronimoFactory().getTransactionManager();
+
+        factory = new BPELDAOConnectionFactoryImpl();
+        factory.setDataSource(hsqlds);
+        factory.setTransactionManager(_txm);
+        Properties props = new Properties();
+        props.put("openjpa.jdbc.SynchronizeMappings", "buildSchema(ForeignKeys=false)");
+        factory.init(props);
+
+        _txm.begin();
+        BpelDAOConnection conn = factory.getConnection();
+        ProcessDAO process = conn.createProcess(new QName(TEST_NS, "deltas"), new QName(TEST_NS, "type"), "GUID1", 1);
+        CorrelatorDAO correlator = process.addCorrelator("pl.op");
+        ProcessInstanceDAO instance = process.createInstance(correlator);
+        commit();
+        _iid = instance.getInstanceId();
+    }
+
+    public void testStoreDeltas() throws Exception {
+        ProcessInstanceDAO instance = instance();
+        assertTrue(instance.getExecutionStateDeltas().isEmpty());
+        instance.addExecutionStateDelta("d0".getBytes());
+        instance.addExecutionStateDelta("d1".getBytes());
+        assertDeltas(instance, "d0", "d1");
+        commit();
+
+        instance = instance();
+        instance.addExecutionStateDelta("d2".getBytes());
+        commit();
+
+        assertDeltas(instance(), "d0", "d1", "d2");
+    }
+
+    public void testCompactDeltas() throws Exception {
+        ProcessInstanceDAO instance = instance();
+        instance.addExecutionStateDelta("d0".getBytes());
+        instance.addExecutionStateDelta("d1".getBytes());
+        commit();
+
+        // A new snapshot replaces the deltas
+        instance = instance();
+        instance.setExecutionState("snapshot".getBytes());
+        instance.clearExecutionStateDeltas();
+        assertDeltas(instance);
+        instance.addExecutionStateDelta("d2".getBytes());
+        commit();
+
+        instance = instance();
+        assertEquals("snapshot", new String(instance.getExecutionState()));
+        assertDeltas(instance, "d2");
+        instance.addExecutionStateDelta("d3".getBytes());
+        assertDeltas(instance, "d2", "d3");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _txm.commit();
+        _txm = null;
+    }
+
+    private ProcessInstanceDAO instance() {
+        return factory.getConnection().getInstance(_iid);
+    }
+
+    private void commit() throws Exception {
+        _txm.commit();
+        _txm.begin();
+    }
+
+    private void assertDeltas(ProcessInstanceDAO instance, String... expected) {
+        List<byte[]> deltas = instance.getExecutionStateDeltas();
+        assertEquals(expected.length, deltas.size());
+        for (int i = 0; i < expected.length; ++i)
+            assertEquals(expected[i], new String(deltas.get(i)));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.dao.jpa.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import javax.transaction.TransactionManager;
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.common.InstanceFilter;
+import org.apache.ode.bpel.common.ProcessState;
+import org.apache.ode.bpel.dao.ArchivedInstanceDAO;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.InstanceArchivable;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.dao.jpa.BPELDAOConnectionFactoryImpl;
+import org.apache.ode.il.EmbeddedGeronimoFactory;
+import org.apache.ode.utils.GUID;
+import org.hsqldb.jdbc.jdbcDataSource;
+
+/**
+ * Tests the instance archive: archives keep the attributes of the instance and are found
+ * with the instance filters.
+ */
+public class InstanceArchiveTest extends TestCase {
+    private static final String TEST_NS = "http://org.apache.ode.jpa.test";
+
+    TransactionManager _txm;
+    BPELDAOConnectionFactoryImpl factory;
+    Long _completed;
+    Long _faulted;
+
+    @Override
+    protected void setUp() throws Exception {
+        jdbcDataSource hsqlds = new jdbcDataSource();
+        hsqlds.setDatabase("jdbc:hsqldb:mem:" + new GUID().toString());
+        hsqlds.setUser("sa");
+        hsqlds.setPassword("");
+
+        _txm = new EmbeddedGeronimoFactory().getTransactionManager();
+
+        factory = new BPELDAOConnectionFactoryImpl();
+        factory.setDataSource(hsqlds);
+        factory.setTransactionManager(_txm);
+        Properties props = new Properties();
+        props.put("openjpa.jdbc.SynchronizeMappings", "buildSchema(ForeignKeys=false)");
+        factory.init(props);
+
+        _txm.begin();
+        ProcessDAO process = factory.getConnection().createProcess(new QName(TEST_NS, "Archive-1"),
+                new QName(TEST_NS, "Archive"), "GUID1", 1);
+        CorrelatorDAO correlator = process.addCorrelator("pl.op");
+        ProcessInstanceDAO completed = process.createInstance(correlator);
+        ProcessInstanceDAO faulted = process.createInstance(correlator);
+        commit();
+        _completed = completed.getInstanceId();
+        _faulted = faulted.getInstanceId();
+
+        BpelDAOConnection conn = factory.getConnection();
+        archive(conn, _completed, ProcessState.STATE_COMPLETED_OK, "props".getBytes(), null);
+        archive(conn, _faulted, ProcessState.STATE_COMPLETED_WITH_FAULT, null, "fault".getBytes());
+        commit();
+    }
+
+    public void testGetArchivedInstance() throws Exception {
+        InstanceArchivable archivable = (InstanceArchivable) factory.getConnection();
+        ArchivedInstanceDAO archive = archivable.getArchivedInstance(_completed);
+        assertNotNull(archive);
+        assertEquals(_completed, archive.getInstanceId());
+        assertEquals(new QName(TEST_NS, "Archive-1"), archive.getProcessId());
+        assertEquals(new QName(TEST_NS, "Archive"), archive.getProcessType());
+        assertEquals(ProcessState.STATE_COMPLETED_OK, archive.getState());
+        assertNotNull(archive.getCreateTime());
+        assertNotNull(archive.getArchiveTime());
+        assertEquals("props", new String(archive.getCorrelationProperties()));
+        assertNull(archive.getData());
+
+        archive = archivable.getArchivedInstance(_faulted);
+        assertNull(archive.getCorrelationProperties());
+        assertEquals("fault", new String(archive.getData()));
+
+        assertNull(archivable.getArchivedInstance(_faulted + 1000));
+    }
+
+    public void testArchivedInstanceQuery() throws Exception {
+        assertArchives("", _completed, _faulted);
+        assertArchives("iid=" + _faulted, _faulted);
+        assertArchives("name=Arch*", _completed, _faulted);
+        assertArchives("name=Other");
+        assertArchives("namespace=" + TEST_NS, _completed, _faulted);
+        assertArchives("status=completed", _completed);
+        assertArchives("status=failed", _faulted);
+        InstanceArchivable archivable = (InstanceArchivable) factory.getConnection();
+        assertEquals(1, archivable.archivedInstanceQuery(new InstanceFilter("", null, 1)).size());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _txm.commit();
+        _txm = null;
+    }
+
+    private void archive(BpelDAOConnection conn, Long iid, short state, byte[] properties, byte[] data) {
+        ProcessInstanceDAO instance = conn.getInstance(iid);
+        instance.setState(state);
+        ((InstanceArchivable) conn).archiveInstance(instance, properties, data);
+    }
+
+    private void commit() throws Exception {
+        _txm.commit();
+        _txm.begin();
+    }
+
+    private void assertArchives(String filter, Long... expected) {
+        InstanceArchivable archivable = (InstanceArchivable) factory.getConnection();
+        Collection<ArchivedInstanceDAO> archives = archivable.archivedInstanceQuery(new InstanceFilter(filter, null, Integer.MAX_VALUE));
+        List<Long> iids = new ArrayList<Long>();
+        for (ArchivedInstanceDAO archive : archives)
+            iids.add(archive.getInstanceId());
+        List<Long> expectedIids = new ArrayList<Long>();
+        for (Long iid : expected)
+            expectedIids.add(iid);
+        assertEquals(expectedIids, iids);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.dao.jpa.test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Properties;
+
+import javax.transaction.TransactionManager;
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.ode.bpel.common.CorrelationKey;
+import org.apache.ode.bpel.common.CorrelationKeySet;
+import org.apache.ode.bpel.dao.BpelDAOConnection;
+import org.apache.ode.bpel.dao.CorrelatorDAO;
+import org.apache.ode.bpel.dao.FilteredInstanceDeletable;
+import org.apache.ode.bpel.dao.MessageExchangeDAO;
+import org.apache.ode.bpel.dao.ProcessDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+import org.apache.ode.bpel.dao.ScopeDAO;
+import org.apache.ode.bpel.evt.ProcessInstanceStartedEvent;
+import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
+import org.apache.ode.dao.jpa.BPELDAOConnectionFactoryImpl;
+import org.apache.ode.il.EmbeddedGeronimoFactory;
+import org.apache.ode.utils.DOMUtils;
+import org.apache.ode.utils.GUID;
+import org.hsqldb.jdbc.jdbcDataSource;
+
+/**
+ * Tests the set-based deletion of instances: the bulk JPQL statements of each clean up category
+ * remove the data of the given instances only.
+ */
+public class InstanceBulkDeleteTest extends TestCase {
+    private static final String TEST_NS = "http://org.apache.ode.jpa.test";
+
+    TransactionManager _txm;
+    BPELDAOConnectionFactoryImpl factory;
+    Long _deleted;
+    Long _kept;
+    String _deletedMex;
+    String _keptMex;
+
+    @Override
+    protected void setUp() throws Exception {
+        jdbcDataSource hsqlds = new jdbcDataSource();
+        hsqlds.setDatabase("jdbc:hsqldb:mem:" + new GUID().toString());
+        hsqlds.setUser("sa");
+        hsqlds.setPassword("");
+
+        _txm = new EmbeddedGeronimoFactory().getTransactionManager();
+
+        factory = new BPELDAOConnectionFactoryImpl();
+        factory.setDataSource(hsqlds);
+        factory.setTransactionManager(_txm);
+        Properties props = new Properties();
+        props.put("openjpa.jdbc.SynchronizeMappings", "buildSchema(ForeignKeys=false)");
+        factory.init(props);
+
+        _txm.begin();
+        BpelDAOConnection conn = factory.getConnection();
+        ProcessDAO process = conn.createProcess(new QName(TEST_NS, "delete"), new QName(TEST_NS, "type"), "GUID1", 1);
+        CorrelatorDAO correlator = process.addCorrelator("pl.op");
+        ProcessInstanceDAO deleted = createInstance(conn, process, correlator);
+        _deletedMex = createMessageExchange(conn, process, correlator, deleted);
+        ProcessInstanceDAO kept = createInstance(conn, process, correlator);
+        _keptMex = createMessageExchange(conn, process, correlator, kept);
+        commit();
+        _deleted = deleted.getInstanceId();
+        _kept = kept.getInstanceId();
+    }
+
+    public void testDeleteAll() throws Exception {
+        assertEquals(1, deletable().deleteInstances(Collections.singletonList(_deleted), EnumSet.allOf(CLEANUP_CATEGORY.class)));
+        commit();
+
+        assertNull(conn().getInstance(_deleted));
+        assertNull(conn().getMessageExchange(_deletedMex));
+        assertKept();
+    }
+
+    public void testDeleteCategories() throws Exception {
+        deletable().deleteInstances(Collections.singletonList(_deleted),
+                EnumSet.of(CLEANUP_CATEGORY.EVENTS, CLEANUP_CATEGORY.CORRELATIONS, CLEANUP_CATEGORY.VARIABLES));
+        commit();
+
+        ProcessInstanceDAO instance = conn().getInstance(_deleted);
+        assertNotNull(instance);
+        assertTrue(instance.getScopes().isEmpty());
+        assertNotNull(conn().getMessageExchange(_deletedMex));
+        assertKept();
+
+        deletable().deleteInstances(Collections.singletonList(_deleted), EnumSet.of(CLEANUP_CATEGORY.MESSAGES));
+        commit();
+
+        assertNotNull(conn().getInstance(_deleted));
+        assertNull(conn().getMessageExchange(_deletedMex));
+        assertKept();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _txm.commit();
+        _txm = null;
+    }
+
+    private void assertKept() {
+        ProcessInstanceDAO kept = conn().getInstance(_kept);
+        assertNotNull(kept);
+        assertEquals(1, kept.getScopes().size());
+        assertNotNull(kept.getScopes().iterator().next().getVariable("var").get());
+        assertNotNull(conn().getMessageExchange(_keptMex));
+    }
+
+    private ProcessInstanceDAO createInstance(BpelDAOConnection conn, ProcessDAO process, CorrelatorDAO correlator) throws Exception {
+        ProcessInstanceDAO instance = process.createInstance(correlator);
+        instance.setExecutionState("state".getBytes());
+        instance.setFault(new QName(TEST_NS, "fault"), "explanation", 1, 1, DOMUtils.stringToDOM("<fault/>"));
+        instance.createActivityRecovery("channel", 1, "reason", new Date(), DOMUtils.stringToDOM("<details/>"), new String[] { "retry" }, 0);
+        conn.insertBpelEvent(new ProcessInstanceStartedEvent(), process, instance);
+
+        ScopeDAO scope = instance.createScope(null, "Root", 1);
+        scope.getVariable("var").set(DOMUtils.stringToDOM("<var/>"));
+        scope.getVariable("var").setProperty("prop", "value");
+        scope.getCorrelationSet("cset").setValue(new QName[] { new QName(TEST_NS, "prop") }, new CorrelationKey("cset", new String[] { "value" }));
+        scope.createPartnerLink(1, "pl", "myRole", "partnerRole").setMyEPR(DOMUtils.stringToDOM("<epr/>"));
+        correlator.addRoute("route", instance, 0, new CorrelationKeySet().add(new CorrelationKey("cset", new String[] { "value" })), "one");
+        return instance;
+    }
+
+    private String createMessageExchange(BpelDAOConnection conn, ProcessDAO process, CorrelatorDAO correlator,
+                                         ProcessInstanceDAO instance) throws Exception {
+        MessageExchangeDAO mex = conn.createMessageExchange(MessageExchangeDAO.DIR_PARTNER_INVOKES_MYROLE);
+        mex.setInstance(instance);
+        mex.setProcess(process);
+        mex.setProperty("prop", "value");
+        mex.setRequest(mex.createMessage(new QName(TEST_NS, "request")));
+        mex.getRequest().setData(DOMUtils.stringToDOM("<request/>"));
+        correlator.enqueueMessage(mex, new CorrelationKeySet().add(new CorrelationKey("cset", new String[] { "other" })));
+        return mex.getMessageExchangeId();
+    }
+
+    private BpelDAOConnection conn() {
+        return factory.getConnection();
+    }
+
+    private FilteredInstanceDeletable deletable() {
+        return (FilteredInstanceDeletable) conn();
+    }
+
+    private void commit() throws Exception {
+        _txm.commit();
+        _txm.begin();
+    }
+}
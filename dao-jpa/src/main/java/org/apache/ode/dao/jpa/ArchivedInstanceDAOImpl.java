@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.dao.jpa;
+
+import java.util.Date;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.xml.namespace.QName;
+
+import org.apache.ode.bpel.dao.ArchivedInstanceDAO;
+import org.apache.ode.bpel.dao.ProcessInstanceDAO;
+
+/**
+ * Archive of a completed process instance, keyed by the id the instance had while it was live.
+ */
+@Entity
+@Table(name="ODE_INSTANCE_ARCHIVE")
+public class ArchivedInstanceDAOImpl implements ArchivedInstanceDAO {
+
+    @Id @Column(name="INSTANCE_ID")
+    private Long _instanceId;
+    @Basic @Column(name="PROCESS_ID")
+    private String _processId;
+    @Basic @Column(name="PROCESS_TYPE")
+    private String _processType;
+    @Basic @Column(name="STATE")
+    private short _state;
+    @Basic @Column(name="DATE_CREATED")
+    private Date _dateCreated;
+    @Basic @Column(name="LAST_ACTIVE_TIME")
+    private Date _lastActive;
+    @Basic @Column(name="ARCHIVE_TIME")
+    private Date _archived;
+    @Lob @Column(name="CORRELATION_PROPERTIES")
+    private byte[] _correlationProperties;
+    @Lob @Column(name="DATA")
+    private byte[] _data;
+
+    public ArchivedInstanceDAOImpl() {}
+    public ArchivedInstanceDAOImpl(ProcessInstanceDAO instance, byte[] correlationProperties, byte[] data) {
+        _instanceId = instance.getInstanceId();
+        _processId = instance.getProcess().getProcessId().toString();
+        _processType = instance.getProcess().getType().toString();
+        _state = instance.getState();
+        _dateCreated = instance.getCreateTime();
+        _lastActive = instance.getLastActiveTime();
+        _archived = new Date();
+        _correlationProperties = correlationProperties;
+        _data = data;
+    }
+
+    public Long getInstanceId() {
+        return _instanceId;
+    }
+
+    public QName getProcessId() {
+        return QName.valueOf(_processId);
+    }
+
+    public QName getProcessType() {
+        return QName.valueOf(_processType);
+    }
+
+    public short getState() {
+        return _state;
+    }
+
+    public Date getCreateTime() {
+        return _dateCreated;
+    }
+
+    public Date getLastActiveTime() {
+        return _lastActive;
+    }
+
+    public Date getArchiveTime() {
+        return _archived;
+    }
+
+    public byte[] getCorrelationProperties() {
+        return _correlationProperties;
+    }
+
+    public byte[] getData() {
+        return _data;
+    }
+}
@@ -35,9 +35,12 @@ import javax.transaction.Synchronization;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * @author Matthieu Riou <mriou at apache dot org>
@@ -52,6 +55,9 @@ public class BPELDAOConnectionFactoryImpl implements BpelDAOConnectionFactoryJDB
 
     static ThreadLocal<BPELDAOConnectionImpl> _connections = new ThreadLocal<BPELDAOConnectionImpl>();
 
+    /** Correlators whose messages queued by older versions, without keys, were already keyed. */
+    private final Set<Long> _keyedCorrelators = Collections.synchronizedSet(new HashSet<Long>());
+
     public BPELDAOConnectionFactoryImpl() {
     }
 
@@ -79,6 +85,7 @@ public class BPELDAOConnectionFactoryImpl implements BpelDAOConnectionFactoryJDB
             propMap2.put("openjpa.TransactionMode", "managed");
             EntityManager em = _emf.createEntityManager(propMap2);
             BPELDAOConnectionImpl conn = createBPELDAOConnection(em);
+            conn.setKeyedCorrelators(_keyedCorrelators);
             _connections.set(conn);
             return conn;
         }
@@ -24,11 +24,13 @@ import java.sql.Timestamp;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
@@ -40,15 +42,20 @@ import org.apache.ode.bpel.common.BpelEventFilter;
 import org.apache.ode.bpel.common.Filter;
 import org.apache.ode.bpel.common.InstanceFilter;
 import org.apache.ode.bpel.common.ProcessState;
+import org.apache.ode.bpel.dao.ArchivedInstanceDAO;
 import org.apache.ode.bpel.dao.BpelDAOConnection;
 import org.apache.ode.bpel.dao.CorrelationSetDAO;
+import org.apache.ode.bpel.dao.FilteredInstanceDeletable;
+import org.apache.ode.bpel.dao.InstanceArchivable;
 import org.apache.ode.bpel.dao.MessageExchangeDAO;
 import org.apache.ode.bpel.dao.ProcessDAO;
 import org.apache.ode.bpel.dao.ProcessInstanceDAO;
 import org.apache.ode.bpel.dao.ProcessManagementDAO;
 import org.apache.ode.bpel.dao.ScopeDAO;
 import org.apache.ode.bpel.evt.BpelEvent;
+import org.apache.ode.bpel.evt.ProcessInstanceEvent;
 import org.apache.ode.bpel.evt.ScopeEvent;
+import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
 import org.apache.ode.utils.ISO8601DateParser;
 import org.apache.openjpa.persistence.OpenJPAPersistence;
 import org.apache.openjpa.persistence.OpenJPAQuery;
@@ -56,15 +63,29 @@ import org.apache.openjpa.persistence.OpenJPAQuery;
 /**
  * @author Matthieu Riou <mriou at apache dot org>
  */
-public class BPELDAOConnectionImpl implements BpelDAOConnection {
+public class BPELDAOConnectionImpl implements BpelDAOConnection, FilteredInstanceDeletable, InstanceArchivable {
     static final Log __log = LogFactory.getLog(BPELDAOConnectionImpl.class);
 
     protected EntityManager _em;
 
+    /**
+     * Correlators whose queued messages all have their keys, shared by the connections of a factory;
+     * <code>null</code> for a connection created outside of the factory.
+     */
+    private Set<Long> _keyedCorrelators;
+
     public BPELDAOConnectionImpl(EntityManager em) {
         _em = em;
     }
 
+    Set<Long> getKeyedCorrelators() {
+        return _keyedCorrelators;
+    }
+
+    void setKeyedCorrelators(Set<Long> keyedCorrelators) {
+        _keyedCorrelators = keyedCorrelators;
+    }
+
     public List<BpelEvent> bpelEventQuery(InstanceFilter ifilter,
                                           BpelEventFilter efilter) {
         // TODO
@@ -141,6 +162,28 @@ public class BPELDAOConnectionImpl implements BpelDAOConnection {
         _em.persist(eventDao);
     }
 
+    public void insertBpelEvents(List<ProcessInstanceEvent> events) {
+        // Batches mostly hold runs of events of the same process
+        Map<QName, ProcessDAO> processes = new HashMap<QName, ProcessDAO>();
+        for (ProcessInstanceEvent event : events) {
+            ProcessDAO process = null;
+            QName processId = event.getProcessId();
+            if (processId != null) {
+                process = processes.get(processId);
+                if (process == null && !processes.containsKey(processId)) {
+                    process = getProcess(processId);
+                    processes.put(processId, process);
+                }
+            }
+            // A reference is enough for the foreign key, there's no need to load the instance
+            ProcessInstanceDAO instance = null;
+            if (event.getProcessInstanceId() != null)
+                instance = _em.getReference(ProcessInstanceDAOImpl.class, event.getProcessInstanceId());
+            insertBpelEvent(event, process, instance);
+        }
+        _em.flush();
+    }
+
     private static String dateFilter(String filter) {
         String date = Filter.getDateWithoutOp(filter);
         String op = filter.substring(0,filter.indexOf(date));
@@ -160,94 +203,7 @@ public class BPELDAOConnectionImpl implements BpelDAOConnection {
         query.append("select pi from ProcessInstanceDAOImpl as pi left join fetch pi._fault ");
 
         if (criteria != null) {
-            // Building each clause
-            ArrayList<String> clauses = new ArrayList<String>();
-
-            // iid filter
-            if ( criteria.getIidFilter() != null ) {
-                StringBuffer filters = new StringBuffer();
-                List<String> iids = criteria.getIidFilter();
-                for (int m = 0; m < iids.size(); m++) {
-                    filters.append(" pi._instanceId = ").append(iids.get(m));
-                    if (m < iids.size() - 1) filters.append(" or");
-                }
-                clauses.add(" (" + filters + ")");
-            }
-
-            // pid filter
-            if (criteria.getPidFilter() != null) {
-                StringBuffer filters = new StringBuffer();
-                List<String> pids = criteria.getPidFilter();
-                for (int m = 0; m < pids.size(); m++) {
-                    filters.append(" pi._process._processId = '").append(pids.get(m)).append("'");
-                    if (m < pids.size() - 1) filters.append(" or");
-                }
-                clauses.add(" (" + filters + ")");
-            }
-
-            // name filter
-            if (criteria.getNameFilter() != null) {
-                String val = criteria.getNameFilter();
-                if (val.endsWith("*")) {
-                    val = val.substring(0, val.length()-1) + "%";
-                }
-                //process type string begins with name space
-                //this could possibly match more than you want
-                //because the name space and name are stored together 
-                clauses.add(" pi._process._processType like '%" + val + "'");
-            }
-
-            // name space filter
-            if (criteria.getNamespaceFilter() != null) {
-                //process type string begins with name space
-                //this could possibly match more than you want
-                //because the name space and name are stored together
-                clauses.add(" pi._process._processType like '{" +
-                        criteria.getNamespaceFilter() + "%'");
-            }
-
-            // started filter
-            if (criteria.getStartedDateFilter() != null) {
-                for ( String ds : criteria.getStartedDateFilter() ) {
-                    clauses.add(" pi._dateCreated " + dateFilter(ds));
-                }
-            }
-
-            // last-active filter
-            if (criteria.getLastActiveDateFilter() != null) {
-                for ( String ds : criteria.getLastActiveDateFilter() ) {
-                    clauses.add(" pi._lastActive " + dateFilter(ds));
-                }
-            }
-
-            // status filter
-            if (criteria.getStatusFilter() != null) {
-                StringBuffer filters = new StringBuffer();
-                List<Short> states = criteria.convertFilterState();
-                for (int m = 0; m < states.size(); m++) {
-                    filters.append(" pi._state = ").append(states.get(m));
-                    if (m < states.size() - 1) filters.append(" or");
-                }
-                clauses.add(" (" + filters.toString() + ")");
-            }
-
-            // $property filter
-            if (criteria.getPropertyValuesFilter() != null) {
-                Map<String,String> props = criteria.getPropertyValuesFilter();
-                // join to correlation sets
-                query.append(" inner join pi._rootScope._correlationSets as cs");
-                int i = 0;
-                for (String propKey : props.keySet()) {
-                    i++;
-                    // join to props for each prop
-                    query.append(" inner join cs._props as csp"+i);
-                    // add clause for prop key and value
-                    clauses.add(" csp"+i+".propertyKey = '"+propKey+
-                            "' and csp"+i+".propertyValue = '"+
-                            // spaces have to be escaped, might be better handled in InstanceFilter
-                            props.get(propKey).replaceAll("&#32;", " ")+"'");
-                }
-            }
+            ArrayList<String> clauses = instanceClauses(query, criteria, "pi._process.", true);
 
             // order by
             StringBuffer orderby = new StringBuffer("");
@@ -315,6 +271,186 @@ public class BPELDAOConnectionImpl implements BpelDAOConnection {
         return list;
     }
 
+    /**
+     * Builds the where clauses of an instance query from the filter, joins needed by the clauses are
+     * appended to the query.
+     *
+     * @param process path of the process attributes, <code>_processId</code> and <code>_processType</code>
+     * @param properties whether the property criteria apply
+     */
+    private ArrayList<String> instanceClauses(StringBuffer query, InstanceFilter criteria, String process, boolean properties) {
+        // Building each clause
+        ArrayList<String> clauses = new ArrayList<String>();
+
+        // iid filter
+        if ( criteria.getIidFilter() != null ) {
+            StringBuffer filters = new StringBuffer();
+            List<String> iids = criteria.getIidFilter();
+            for (int m = 0; m < iids.size(); m++) {
+                filters.append(" pi._instanceId = ").append(iids.get(m));
+                if (m < iids.size() - 1) filters.append(" or");
+            }
+            clauses.add(" (" + filters + ")");
+        }
+
+        // pid filter
+        if (criteria.getPidFilter() != null) {
+            StringBuffer filters = new StringBuffer();
+            List<String> pids = criteria.getPidFilter();
+            for (int m = 0; m < pids.size(); m++) {
+                filters.append(" " + process + "_processId = '").append(pids.get(m)).append("'");
+                if (m < pids.size() - 1) filters.append(" or");
+            }
+            clauses.add(" (" + filters + ")");
+        }
+
+        // name filter
+        if (criteria.getNameFilter() != null) {
+            String val = criteria.getNameFilter();
+            if (val.endsWith("*")) {
+                val = val.substring(0, val.length()-1) + "%";
+            }
+            //process type string begins with name space
+            //this could possibly match more than you want
+            //because the name space and name are stored together 
+            clauses.add(" " + process + "_processType like '%" + val + "'");
+        }
+
+        // name space filter
+        if (criteria.getNamespaceFilter() != null) {
+            //process type string begins with name space
+            //this could possibly match more than you want
+            //because the name space and name are stored together
+            clauses.add(" " + process + "_processType like '{" +
+                    criteria.getNamespaceFilter() + "%'");
+        }
+
+        // started filter
+        if (criteria.getStartedDateFilter() != null) {
+            for ( String ds : criteria.getStartedDateFilter() ) {
+                clauses.add(" pi._dateCreated " + dateFilter(ds));
+            }
+        }
+
+        // last-active filter
+        if (criteria.getLastActiveDateFilter() != null) {
+            for ( String ds : criteria.getLastActiveDateFilter() ) {
+                clauses.add(" pi._lastActive " + dateFilter(ds));
+            }
+        }
+
+        // status filter
+        if (criteria.getStatusFilter() != null) {
+            StringBuffer filters = new StringBuffer();
+            List<Short> states = criteria.convertFilterState();
+            for (int m = 0; m < states.size(); m++) {
+                filters.append(" pi._state = ").append(states.get(m));
+                if (m < states.size() - 1) filters.append(" or");
+            }
+            clauses.add(" (" + filters.toString() + ")");
+        }
+
+        // $property filter
+        if (properties && criteria.getPropertyValuesFilter() != null) {
+            Map<String,String> props = criteria.getPropertyValuesFilter();
+            // join to correlation sets
+            query.append(" inner join pi._rootScope._correlationSets as cs");
+            int i = 0;
+            for (String propKey : props.keySet()) {
+                i++;
+                // join to props for each prop
+                query.append(" inner join cs._props as csp"+i);
+                // add clause for prop key and value
+                clauses.add(" csp"+i+".propertyKey = '"+propKey+
+                        "' and csp"+i+".propertyValue = '"+
+                        // spaces have to be escaped, might be better handled in InstanceFilter
+                        props.get(propKey).replaceAll("&#32;", " ")+"'");
+            }
+        }
+
+        return clauses;
+    }
+
+    public int deleteInstances(InstanceFilter criteria, Set<CLEANUP_CATEGORY> categories) {
+        if (criteria.getLimit() == 0) {
+            return 0;
+        }
+
+        List<Long> iids = findInstanceIds(criteria, 0);
+        if (__log.isDebugEnabled()) __log.debug("Collected " + iids.size() + " instances to delete.");
+
+        return deleteInstances(iids, categories);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Long> findInstanceIds(InstanceFilter criteria, long afterIid) {
+        if (criteria.getLimit() == 0) {
+            return Collections.emptyList();
+        }
+
+        // the property joins may return an instance more than once
+        StringBuffer query = new StringBuffer("select distinct pi._instanceId from ProcessInstanceDAOImpl as pi");
+        ArrayList<String> clauses = instanceClauses(query, criteria, "pi._process.", true);
+        clauses.add(" pi._instanceId > " + afterIid);
+        query.append(" where");
+        for (int m = 0; m < clauses.size(); m++) {
+            query.append(clauses.get(m));
+            if (m < clauses.size() - 1) query.append(" and");
+        }
+        query.append(" order by pi._instanceId");
+
+        if (__log.isDebugEnabled()) {
+            __log.debug(query.toString());
+        }
+
+        Query pq = _em.createQuery(query.toString());
+        if (criteria.getLimit() > 0) pq.setMaxResults(criteria.getLimit());
+        return pq.getResultList();
+    }
+
+    public int deleteInstances(List<Long> iids, Set<CLEANUP_CATEGORY> categories) {
+        if (iids.isEmpty()) {
+            return 0;
+        }
+        return InstanceBulkDelete.delete(_em, iids, categories);
+    }
+
+    public ArchivedInstanceDAO archiveInstance(ProcessInstanceDAO instance, byte[] correlationProperties, byte[] data) {
+        ArchivedInstanceDAOImpl archive = new ArchivedInstanceDAOImpl(instance, correlationProperties, data);
+        _em.persist(archive);
+        return archive;
+    }
+
+    public ArchivedInstanceDAO getArchivedInstance(Long iid) {
+        return _em.find(ArchivedInstanceDAOImpl.class, iid);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Collection<ArchivedInstanceDAO> archivedInstanceQuery(InstanceFilter criteria) {
+        if (criteria.getLimit() == 0) {
+            return Collections.emptyList();
+        }
+
+        // the archive has the attributes of the instance and its process under the same names
+        StringBuffer query = new StringBuffer("select pi from ArchivedInstanceDAOImpl as pi");
+        ArrayList<String> clauses = instanceClauses(query, criteria, "pi.", false);
+        if (clauses.size() > 0) {
+            query.append(" where");
+            for (int m = 0; m < clauses.size(); m++) {
+                query.append(clauses.get(m));
+                if (m < clauses.size() - 1) query.append(" and");
+            }
+        }
+        query.append(" order by pi._instanceId");
+
+        if (__log.isDebugEnabled()) {
+            __log.debug(query.toString());
+        }
+
+        Query pq = _em.createQuery(query.toString());
+        if (criteria.getLimit() > 0) pq.setMaxResults(criteria.getLimit());
+        return pq.getResultList();
+    }
 
     public Collection<ProcessInstanceDAO> instanceQuery(String expression) {
         return instanceQuery(new InstanceFilter(expression));
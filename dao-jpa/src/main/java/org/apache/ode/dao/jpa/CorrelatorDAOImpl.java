@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 @Entity
 @Table(name = "ODE_CORRELATOR")
@@ -37,11 +38,13 @@ public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
     private static Log __log = LogFactory.getLog(CorrelatorDAOImpl.class);
     public final static String DELETE_CORRELATORS_BY_PROCESS = "DELETE_CORRELATORS_BY_PROCESS";
     private final static String ROUTE_BY_CKEY_HEADER = "select route from MessageRouteDAOImpl as route where route._correlator._process._processType = :ptype and route._correlator._correlatorKey = :corrkey";
+    private final static String MESSAGE_BY_CKEY_HEADER = "select k._mex from CorrelatorMessageKey as k where k._correlator = :correlator";
+    private final static String UNKEYED_MESSAGES = "select m from MessageExchangeDAOImpl as m where m._correlator = :correlator and not exists (select k._id from CorrelatorMessageKey as k where k._mexId = m._id)";
+    private final static String QUEUED_MESSAGES = "select m from MessageExchangeDAOImpl as m where m._correlator = :correlator";
 
     @Id
     @Column(name = "CORRELATOR_ID")
     @GeneratedValue(strategy = GenerationType.AUTO)
-    @SuppressWarnings("unused")
     private Long _correlatorId;
     @Basic
     @Column(name = "CORRELATOR_KEY")
@@ -71,12 +74,29 @@ public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
         getEM().flush();
     }
 
+    @SuppressWarnings("unchecked")
     public MessageExchangeDAO dequeueMessage(CorrelationKeySet correlationKeySet) {
-        // TODO: this thing does not seem to be scalable: loading up based on a correlator???
-        for (Iterator<MessageExchangeDAOImpl> itr = _exchanges.iterator(); itr.hasNext();) {
-            MessageExchangeDAOImpl mex = itr.next();
+        if (__log.isDebugEnabled()) {
+            __log.debug("dequeueMessage " + correlationKeySet);
+        }
+        keyQueuedMessages();
+
+        // Look the queued messages up by key, in arrival order, rather than loading all the messages of the correlator
+        List<CorrelationKeySet> subSets = correlationKeySet.findSubSets();
+        Query qry = getEM().createQuery(generateSelectorQuery(MESSAGE_BY_CKEY_HEADER, "k._correlationKey", subSets) + " order by k._id");
+        qry.setParameter("correlator", this);
+        for (int i = 0; i < subSets.size(); i++) {
+            qry.setParameter("s" + i, subSets.get(i).toCanonicalString());
+        }
+
+        for (MessageExchangeDAOImpl mex : (List<MessageExchangeDAOImpl>) qry.getResultList()) {
             if (mex.getCorrelationKeySet().isRoutableTo(correlationKeySet, false)) {
-                itr.remove();
+                getEM().createNamedQuery(CorrelatorMessageKey.DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX)
+                        .setParameter("mexId", mex.getMessageExchangeId()).executeUpdate();
+                mex.setCorrelator(null);
+                if (__log.isDebugEnabled()) {
+                    __log.debug("dequeueMessage found " + mex.getMessageExchangeId());
+                }
                 return mex;
             }
         }
@@ -86,12 +106,54 @@ public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
     public void enqueueMessage(MessageExchangeDAO mex, CorrelationKeySet correlationKeySet) {
         MessageExchangeDAOImpl mexImpl = (MessageExchangeDAOImpl) mex;
         mexImpl.setCorrelationKeySet(correlationKeySet);
-        _exchanges.add(mexImpl);
         mexImpl.setCorrelator(this);
+        keyMessage(mexImpl);
     }
 
+    /**
+     * Replace the keys of a queued message, once its correlation key changed.
+     */
+    void rekeyMessage(MessageExchangeDAOImpl mex) {
+        // the bulk delete doesn't see the keys that are still pending
+        getEM().flush();
+        getEM().createNamedQuery(CorrelatorMessageKey.DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX)
+                .setParameter("mexId", mex.getMessageExchangeId()).executeUpdate();
+        keyMessage(mex);
+    }
+
+    private void keyMessage(MessageExchangeDAOImpl mex) {
+        for (CorrelationKeySet subSet : mex.getCorrelationKeySet().findSubSets()) {
+            getEM().persist(new CorrelatorMessageKey(this, mex, subSet.toCanonicalString()));
+        }
+    }
+
+    /**
+     * Add the missing keys of the messages queued before they were looked up by key, once per correlator
+     * and connection factory.
+     */
+    @SuppressWarnings("unchecked")
+    private void keyQueuedMessages() {
+        BPELDAOConnectionImpl conn = getConn();
+        Set<Long> keyedCorrelators = conn == null ? null : conn.getKeyedCorrelators();
+        if (_correlatorId == null || (keyedCorrelators != null && keyedCorrelators.contains(_correlatorId)))
+            return;
+        Query qry = getEM().createQuery(UNKEYED_MESSAGES);
+        qry.setParameter("correlator", this);
+        for (MessageExchangeDAOImpl mex : (List<MessageExchangeDAOImpl>) qry.getResultList()) {
+            keyMessage(mex);
+        }
+        getEM().flush();
+        if (keyedCorrelators != null)
+            keyedCorrelators.add(_correlatorId);
+    }
+
+    @SuppressWarnings("unchecked")
     public Collection<CorrelatorMessageDAO> getAllMessages() {
-        return new ArrayList<CorrelatorMessageDAO>(_exchanges);
+        // queried rather than read from _exchanges, which the queue operations don't load
+        getEM().flush();
+        Query qry = getEM().createQuery(QUEUED_MESSAGES);
+        qry.setParameter("correlator", this);
+        return new ArrayList<CorrelatorMessageDAO>((List<MessageExchangeDAOImpl>) qry.getResultList());
     }
 
     @SuppressWarnings("unchecked")
@@ -100,7 +162,7 @@ public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
             __log.debug("findRoute " + correlationKeySet);
         }
         List<CorrelationKeySet> subSets = correlationKeySet.findSubSets();
-        Query qry = getEM().createQuery(generateSelectorQuery(ROUTE_BY_CKEY_HEADER, subSets));
+        Query qry = getEM().createQuery(generateSelectorQuery(ROUTE_BY_CKEY_HEADER, "route._correlationKey", subSets));
         qry.setParameter("ptype", _process.getType().toString());
         qry.setParameter("corrkey", _correlatorKey);
         for (int i = 0; i < subSets.size(); i++) {
@@ -134,13 +196,13 @@ public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
         }
     }
 
-    private String generateSelectorQuery(String header, List<CorrelationKeySet> subSets) {
+    private String generateSelectorQuery(String header, String keyField, List<CorrelationKeySet> subSets) {
         StringBuffer filterQuery = new StringBuffer(header);
 
         if (subSets.size() == 1) {
-            filterQuery.append(" and route._correlationKey = :s0");
+            filterQuery.append(" and ").append(keyField).append(" = :s0");
         } else if (subSets.size() > 1) {
-            filterQuery.append(" and route._correlationKey in(");
+            filterQuery.append(" and ").append(keyField).append(" in(");
             for (int i = 0; i < subSets.size(); i++) {
                 if (i > 0) {
                     filterQuery.append(", ");
@@ -161,16 +223,16 @@ public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
         _correlatorKey = newId;
     }
 
-    public void removeRoutes(String routeGroupId, ProcessInstanceDAO target) {
+    public int removeRoutes(String routeGroupId, ProcessInstanceDAO target) {
         // remove route across all correlators of the process
-        ((ProcessInstanceDAOImpl) target).removeRoutes(routeGroupId);
+        return ((ProcessInstanceDAOImpl) target).removeRoutes(routeGroupId);
     }
 
-    void removeLocalRoutes(String routeGroupId, ProcessInstanceDAO target) {
+    int removeLocalRoutes(String routeGroupId, ProcessInstanceDAO target) {
         if (__log.isDebugEnabled()) {
             __log.debug("removeLocalRoutes " + routeGroupId);
         }
-        boolean flush = false;
+        int removed = 0;
         for (Iterator<MessageRouteDAOImpl> itr = _routes.iterator(); itr.hasNext();) {
             MessageRouteDAOImpl mr = itr.next();
             if (mr.getGroupId().equals(routeGroupId) && mr.getTargetInstance().equals(target)) {
@@ -179,12 +241,13 @@ public class CorrelatorDAOImpl extends OpenJPADAO implements CorrelatorDAO {
                 }
                 itr.remove();
                 getEM().remove(mr);
-                flush = true;
+                removed++;
             }
         }
-        if (flush) {
+        if (removed > 0) {
             getEM().flush();
         }
+        return removed;
     }
 
     public Collection<MessageRouteDAO> getAllRoutes() {
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.dao.jpa;
+
+import javax.persistence.Basic;
+import javax.persistence.CascadeType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Correlation key of a message exchange queued on a correlator, one per subset of the correlation key set of
+ * the message, so that the message matching a route can be dequeued with an indexed query.
+ */
+@Entity
+@Table(name="ODE_CORRELATOR_MESSAGE_KEY")
+@NamedQueries({
+    @NamedQuery(name=CorrelatorMessageKey.DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX, query="delete from CorrelatorMessageKey as k where k._mexId = :mexId"),
+    @NamedQuery(name=CorrelatorMessageKey.DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX_IDS, query="delete from CorrelatorMessageKey as k where k._mexId in(:mexIds)")
+})
+public class CorrelatorMessageKey {
+    public final static String DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX = "DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX";
+    public final static String DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX_IDS = "DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX_IDS";
+
+    @Id @Column(name="ID")
+    @GeneratedValue(strategy=GenerationType.AUTO)
+    @SuppressWarnings("unused")
+    private Long _id;
+    @Basic @Column(name="CORRELATION_KEY")
+    private String _correlationKey;
+
+    @SuppressWarnings("unused")
+    @Basic @Column(name="MESSAGE_EXCHANGE_ID", insertable=false, updatable=false, nullable=true)
+    private String _mexId;
+
+    @ManyToOne(fetch=FetchType.LAZY,cascade={CascadeType.PERSIST}) @Column(name="MESSAGE_EXCHANGE_ID")
+    private MessageExchangeDAOImpl _mex;
+
+    @ManyToOne(fetch=FetchType.LAZY,cascade={CascadeType.PERSIST}) @Column(name="CORR_ID")
+    @SuppressWarnings("unused")
+    private CorrelatorDAOImpl _correlator;
+
+    public CorrelatorMessageKey() {
+    }
+    public CorrelatorMessageKey(CorrelatorDAOImpl correlator, MessageExchangeDAOImpl mex, String correlationKey) {
+        _correlator = correlator;
+        _mex = mex;
+        _correlationKey = correlationKey;
+    }
+
+    public String getCorrelationKey() {
+        return _correlationKey;
+    }
+
+    public MessageExchangeDAOImpl getMessageExchange() {
+        return _mex;
+    }
+}
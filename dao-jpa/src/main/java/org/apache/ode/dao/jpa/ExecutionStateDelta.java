@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.dao.jpa;
+
+import javax.persistence.Basic;
+import javax.persistence.CascadeType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Execution state delta of a process instance, applied on top of the instance execution state in
+ * {@link #getSequence()} order.
+ */
+@Entity
+@Table(name="ODE_EXEC_STATE_DELTA")
+@NamedQueries({
+    @NamedQuery(name=ExecutionStateDelta.SELECT_DELTAS_BY_INSTANCE, query="select d from ExecutionStateDelta as d where d._instance = :instance order by d._sequence"),
+    @NamedQuery(name=ExecutionStateDelta.SELECT_MAX_SEQUENCE_BY_INSTANCE, query="select max(d._sequence) from ExecutionStateDelta as d where d._instance = :instance"),
+    @NamedQuery(name=ExecutionStateDelta.DELETE_DELTAS_BY_INSTANCE, query="delete from ExecutionStateDelta as d where d._instance = :instance"),
+    @NamedQuery(name=ExecutionStateDelta.DELETE_DELTAS_BY_INSTANCE_IDS, query="delete from ExecutionStateDelta as d where d._instanceId in(:ids)")
+})
+public class ExecutionStateDelta {
+    public final static String SELECT_DELTAS_BY_INSTANCE = "SELECT_DELTAS_BY_INSTANCE";
+    public final static String SELECT_MAX_SEQUENCE_BY_INSTANCE = "SELECT_MAX_SEQUENCE_BY_INSTANCE";
+    public final static String DELETE_DELTAS_BY_INSTANCE = "DELETE_DELTAS_BY_INSTANCE";
+    public final static String DELETE_DELTAS_BY_INSTANCE_IDS = "DELETE_DELTAS_BY_INSTANCE_IDS";
+
+    @Id @Column(name="ID")
+    @GeneratedValue(strategy=GenerationType.AUTO)
+    @SuppressWarnings("unused")
+    private Long _id;
+    @Basic @Column(name="SEQUENCE")
+    private int _sequence;
+    @Lob @Column(name="DATA")
+    private byte[] _data;
+
+    @SuppressWarnings("unused")
+    @Basic @Column(name="INSTANCE_ID", insertable=false, updatable=false, nullable=true)
+    private Long _instanceId;
+
+    @ManyToOne(fetch=FetchType.LAZY,cascade={CascadeType.PERSIST}) @Column(name="INSTANCE_ID")
+    private ProcessInstanceDAOImpl _instance;
+
+    public ExecutionStateDelta() {
+    }
+    public ExecutionStateDelta(ProcessInstanceDAOImpl instance, int sequence, byte[] data) {
+        _instance = instance;
+        _sequence = sequence;
+        _data = data;
+    }
+
+    public int getSequence() {
+        return _sequence;
+    }
+
+    public byte[] getData() {
+        return _data;
+    }
+
+    public ProcessInstanceDAOImpl getInstance() {
+        return _instance;
+    }
+}
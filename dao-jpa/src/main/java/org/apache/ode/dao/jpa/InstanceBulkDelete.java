@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.dao.jpa;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.apache.ode.bpel.dao.AbstractInstanceBulkDelete;
+import org.apache.ode.bpel.iapi.ProcessConf.CLEANUP_CATEGORY;
+
+/**
+ * Set-based deletion of process instances and their runtime data with bulk JPQL statements, instead of
+ * removing the entities one by one.
+ */
+class InstanceBulkDelete extends AbstractInstanceBulkDelete {
+    private static final String MEX_IDS = "select x._id from MessageExchangeDAOImpl as x where x._processInst._instanceId in (:iids)";
+    private static final String SCOPE_IDS = "select s._scopeInstanceId from ScopeDAOImpl as s where s._processInstance._instanceId in (:iids)";
+
+    static final String[] EVENTS = {
+        "delete from EventDAOImpl as e where e._instance._instanceId in (:iids)"
+    };
+
+    static final String[] CORRELATIONS = {
+        "delete from CorrSetProperty as p where p.corrSetId in (select c._correlationSetId from CorrelationSetDAOImpl as c "
+            + "where c._scope._processInstance._instanceId in (:iids))",
+        "delete from CorrelationSetDAOImpl as c where c._scope._scopeInstanceId in (" + SCOPE_IDS + ")"
+    };
+
+    static final String[] MESSAGES = {
+        "delete from MessageRouteDAOImpl as r where r._processInst._instanceId in (:iids)",
+        "delete from CorrelatorMessageKey as k where k._mexId in (" + MEX_IDS + ")",
+        "delete from MexProperty as p where p._mexId in (" + MEX_IDS + ")",
+        "delete from MessageDAOImpl as m where m._messageExchange._id in (" + MEX_IDS + ")",
+        "delete from MessageExchangeDAOImpl as x where x._processInst._instanceId in (:iids)"
+    };
+
+    static final String[] VARIABLES = {
+        "delete from XmlDataProperty as p where p._xmlDataId in (select x._id from XmlDataDAOImpl as x "
+            + "where x._scope._processInstance._instanceId in (:iids))",
+        "delete from XmlDataDAOImpl as x where x._scopeId in (" + SCOPE_IDS + ")",
+        "delete from PartnerLinkDAOImpl as l where l._scopeId in (" + SCOPE_IDS + ")",
+        "delete from ScopeDAOImpl as s where s._processInstance._instanceId in (:iids)"
+    };
+
+    static final String[] INSTANCE = {
+        "delete from ExecutionStateDelta as d where d._instanceId in (:iids)",
+        "delete from ActivityRecoveryDAOImpl as a where a._instanceId in (:iids)",
+        "delete from FaultDAOImpl as f where f._id in (select i._faultId from ProcessInstanceDAOImpl as i where i._instanceId in (:iids))",
+        "delete from MessageRouteDAOImpl as r where r._processInst._instanceId in (:iids)",
+        "delete from ProcessInstanceDAOImpl as i where i._instanceId in (:iids)"
+    };
+
+    private final EntityManager _em;
+
+    InstanceBulkDelete(EntityManager em) {
+        _em = em;
+    }
+
+    /**
+     * Deletes the data of the given categories for the given instances.
+     *
+     * @param em entity manager
+     * @param iids instance ids
+     * @param categories clean up categories
+     * @return the number of instances processed
+     */
+    static int delete(EntityManager em, List<Long> iids, Set<CLEANUP_CATEGORY> categories) {
+        // bulk statements bypass the persistence context, make sure it has nothing pending for these rows
+        em.flush();
+        return new InstanceBulkDelete(em).delete(iids, categories);
+    }
+
+    @Override
+    protected String[] getStatements(CLEANUP_CATEGORY category) {
+        switch (category) {
+        case EVENTS:
+            return EVENTS;
+        case CORRELATIONS:
+            return CORRELATIONS;
+        case MESSAGES:
+            return MESSAGES;
+        case VARIABLES:
+            return VARIABLES;
+        default:
+            return INSTANCE;
+        }
+    }
+
+    @Override
+    protected void execute(String statement, List<Long> iids) {
+        _em.createQuery(statement).setParameter("iids", iids).executeUpdate();
+    }
+}
@@ -334,6 +334,10 @@ public class MessageExchangeDAOImpl extends OpenJPADAO implements MessageExchang
 
     public void setCorrelationKey(CorrelationKey ckey) {
         _correlationKeys = ckey.toCanonicalString();
+        if (_correlator != null) {
+            // still queued, it is looked up by the new key from now on
+            _correlator.rekeyMessage(this);
+        }
     }
 
 
@@ -350,6 +354,10 @@ public class MessageExchangeDAOImpl extends OpenJPADAO implements MessageExchang
     public void deleteMessages() {
         if( __log.isDebugEnabled() ) __log.debug("Deleting message on MEX release.");
         
+        if (_correlator != null) {
+            // still queued on its correlator
+            getEM().createNamedQuery(CorrelatorMessageKey.DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX).setParameter("mexId", _id).executeUpdate();
+        }
         getEM().remove(this); // This deletes MexProperty, REQUEST MessageDAO, RESPONSE MessageDAO
     }
 
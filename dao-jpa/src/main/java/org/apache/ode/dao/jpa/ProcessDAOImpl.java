@@ -160,6 +160,7 @@ public class ProcessDAOImpl extends OpenJPADAO implements ProcessDAO {
         batchUpdateByIds(faultIds.iterator(), getEM().createNamedQuery(FaultDAOImpl.DELETE_FAULTS_BY_IDS), "ids");
         Collection instanceIds = getEM().createNamedQuery(ProcessInstanceDAOImpl.SELECT_INSTANCE_IDS_BY_PROCESS).setParameter("process", this).getResultList();
         batchUpdateByIds(instanceIds.iterator(), getEM().createNamedQuery(ActivityRecoveryDAOImpl.DELETE_ACTIVITY_RECOVERIES_BY_IDS), "ids");
+        batchUpdateByIds(instanceIds.iterator(), getEM().createNamedQuery(ExecutionStateDelta.DELETE_DELTAS_BY_INSTANCE_IDS), "ids");
         getEM().createNamedQuery(ProcessInstanceDAOImpl.DELETE_INSTANCES_BY_PROCESS).setParameter("process", this).executeUpdate();
     }
 
@@ -180,6 +181,7 @@ public class ProcessDAOImpl extends OpenJPADAO implements ProcessDAO {
         getEM().createNamedQuery(MessageDAOImpl.DELETE_MESSAGES_BY_PROCESS).setParameter("process", this).executeUpdate();
         Collection mexIds = getEM().createNamedQuery(MessageExchangeDAOImpl.SELECT_MEX_IDS_BY_PROCESS).setParameter("process", this).getResultList();
         batchUpdateByIds(mexIds.iterator(), getEM().createNamedQuery(MexProperty.DELETE_MEX_PROPERTIES_BY_MEX_IDS), "mexIds");
+        batchUpdateByIds(mexIds.iterator(), getEM().createNamedQuery(CorrelatorMessageKey.DELETE_CORRELATOR_MESSAGE_KEYS_BY_MEX_IDS), "mexIds");
         getEM().createNamedQuery(MessageExchangeDAOImpl.DELETE_MEXS_BY_PROCESS).setParameter("process", this).executeUpdate();
     }
 
@@ -210,9 +212,15 @@ public class ProcessDAOImpl extends OpenJPADAO implements ProcessDAO {
     }
 
     public void removeRoutes(String routeId, ProcessInstanceDAO target) {
+        removeLocalRoutes(routeId, target);
+    }
+
+    int removeLocalRoutes(String routeId, ProcessInstanceDAO target) {
+        int removed = 0;
         for (CorrelatorDAO c : _correlators) {
-            ((CorrelatorDAOImpl)c).removeLocalRoutes(routeId, target);
+            removed += ((CorrelatorDAOImpl)c).removeLocalRoutes(routeId, target);
         }
+        return removed;
     }
 
     public String getGuid() {
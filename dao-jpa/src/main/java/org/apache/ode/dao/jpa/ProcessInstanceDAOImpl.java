@@ -120,6 +120,9 @@ public class ProcessInstanceDAOImpl extends OpenJPADAO implements ProcessInstanc
     private Collection<MessageExchangeDAO> _messageExchanges = new ArrayList<MessageExchangeDAO>();
     
     private transient int _activityFailureCount = -1;
+
+    /** Sequence of the next execution state delta, read from the database when the first delta is added. */
+    private transient int _nextDeltaSequence = -1;
     
     public ProcessInstanceDAOImpl() {}
     public ProcessInstanceDAOImpl(CorrelatorDAOImpl correlator, ProcessDAOImpl process) {
@@ -162,6 +165,7 @@ public class ProcessInstanceDAOImpl extends OpenJPADAO implements ProcessInstanc
         // remove jacob state
         setExecutionState(null);
         if (getEM() != null) {
+            clearExecutionStateDeltas();
             if( !cleanupCategories.isEmpty() ) {
                 // by default, we do not flush before select; flush it, so we can delete no matter if an entity is loaded up
                 // or not; more importantly, OpenJPA will secretly load from the entire table if some entities reside only
@@ -371,6 +375,34 @@ public class ProcessInstanceDAOImpl extends OpenJPADAO implements ProcessInstanc
         _executionState = execState;
     }
 
+    @SuppressWarnings("unchecked")
+    public List<byte[]> getExecutionStateDeltas() {
+        // by default, we do not flush before select; deltas added in this transaction must be seen
+        getEM().flush();
+        List<ExecutionStateDelta> deltas = getEM().createNamedQuery(ExecutionStateDelta.SELECT_DELTAS_BY_INSTANCE)
+                .setParameter("instance", this).getResultList();
+        List<byte[]> ret = new ArrayList<byte[]>(deltas.size());
+        for (ExecutionStateDelta delta : deltas) {
+            ret.add(delta.getData());
+        }
+        return ret;
+    }
+
+    public void addExecutionStateDelta(byte[] delta) {
+        if (_nextDeltaSequence < 0) {
+            Number max = (Number) getEM().createNamedQuery(ExecutionStateDelta.SELECT_MAX_SEQUENCE_BY_INSTANCE)
+                    .setParameter("instance", this).getSingleResult();
+            _nextDeltaSequence = max == null ? 0 : max.intValue() + 1;
+        }
+        getEM().persist(new ExecutionStateDelta(this, _nextDeltaSequence++, delta));
+    }
+
+    public void clearExecutionStateDeltas() {
+        getEM().flush();
+        getEM().createNamedQuery(ExecutionStateDelta.DELETE_DELTAS_BY_INSTANCE).setParameter("instance", this).executeUpdate();
+        _nextDeltaSequence = 0;
+    }
+
     public void setFault(FaultDAO fault) {
         _fault = (FaultDAOImpl)fault;
     }
@@ -389,8 +421,8 @@ public class ProcessInstanceDAOImpl extends OpenJPADAO implements ProcessInstanc
         _state = state;
     }
     
-    void removeRoutes(String routeGroupId) {
-        _process.removeRoutes(routeGroupId, this);
+    int removeRoutes(String routeGroupId) {
+        return _process.removeLocalRoutes(routeGroupId, this);
     }
 
     public BpelDAOConnection getConnection() {
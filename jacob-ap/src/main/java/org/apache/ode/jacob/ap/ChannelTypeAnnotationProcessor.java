@@ -22,12 +22,19 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.sun.mirror.apt.AnnotationProcessor;
 import com.sun.mirror.apt.AnnotationProcessorEnvironment;
 import com.sun.mirror.declaration.AnnotationTypeDeclaration;
 import com.sun.mirror.declaration.InterfaceDeclaration;
+import com.sun.mirror.declaration.MethodDeclaration;
+import com.sun.mirror.declaration.ParameterDeclaration;
 import com.sun.mirror.type.InterfaceType;
+import com.sun.mirror.type.PrimitiveType;
+import com.sun.mirror.type.TypeMirror;
+import com.sun.mirror.type.VoidType;
 import com.sun.mirror.util.DeclarationFilter;
 
 class ChannelTypeAnnotationProcessor implements AnnotationProcessor {
@@ -63,6 +70,16 @@ class ChannelTypeAnnotationProcessor implements AnnotationProcessor {
                 if (pw != null) pw.close();
                 pw = null;
             }
+
+            try {
+                pw = _env.getFiler().createSourceFile(c.getQualifiedName() + "ChannelProxy");
+                writeChannelProxyClass(pw, c);
+            } catch (IOException e) {
+                _env.getMessager().printError(c.getPosition(), "IO Error: " + e.getMessage());
+            } finally {
+                if (pw != null) pw.close();
+                pw = null;
+            }
             
         }
     }
@@ -137,8 +154,127 @@ class ChannelTypeAnnotationProcessor implements AnnotationProcessor {
         pw.println("    protected " + c.getSimpleName() + "ChannelListener(" + c.getQualifiedName() + "Channel channel) {");
         pw.println("       super(channel);");
         pw.println("    }");
+        pw.println();
+        pw.println("    @SuppressWarnings(\"unchecked\")");
+        pw.println("    public boolean dispatch(java.lang.reflect.Method method, Object[] args) {");
+        pw.println("        String name = method.getName();");
+        for (MethodDeclaration m : getChannelMethods(c).values()) {
+            pw.println("        if (\"" + m.getSimpleName() + "\".equals(name)) {");
+            pw.print("            " + m.getSimpleName() + "(");
+            int i = 0;
+            for (ParameterDeclaration p : m.getParameters()) {
+                if (i > 0) pw.print(", ");
+                pw.print(unbox(p.getType(), "args[" + i + "]"));
+                ++i;
+            }
+            pw.println(");");
+            pw.println("            return true;");
+            pw.println("        }");
+        }
+        pw.println("        return false;");
+        pw.println("    }");
         pw.println("}");
         pw.flush();
     }
 
+    private void writeChannelProxyClass(PrintWriter pw, InterfaceDeclaration c) {
+        pw.println("/*");
+        pw.println(" * SOURCE FILE GENERATATED BY JACOB CHANNEL CLASS GENERATOR");
+        pw.println(" * ");
+        pw.println(" *               !!! DO NOT EDIT !!!! ");
+        pw.println(" * ");
+        pw.println(" * Generated On  : "  + new Date());
+        pw.println(" * For Interface : "  + c.getQualifiedName());
+        pw.println(" */");
+        pw.println();
+        pw.println("package " + c.getPackage().getQualifiedName() + ";");
+        pw.println();
+        pw.println("/**");
+        pw.println(" * An auto-generated channel proxy class for the ");
+        pw.println(" * {@link " + c.getQualifiedName() + "} channel type. ");
+        pw.println(" * @see " + c.getQualifiedName() );
+        pw.println(" * @see " + c.getQualifiedName() + "Channel");
+        pw.println(" */");
+        pw.println("public final class " + c.getSimpleName() + "ChannelProxy");
+        pw.println("    extends org.apache.ode.jacob.vpu.ChannelProxy");
+        pw.println("    implements " + c.getQualifiedName() + "Channel");
+        pw.println("{");
+        pw.println();
+        pw.println("    private static final long serialVersionUID = 1L;");
+        pw.println();
+        Map<String, MethodDeclaration> methods = getChannelMethods(c);
+        for (MethodDeclaration m : methods.values()) {
+            pw.print("    private static final java.lang.reflect.Method __" + m.getSimpleName()
+                    + " = getMethod(" + c.getQualifiedName() + "Channel.class, \"" + m.getSimpleName()
+                    + "\", new Class[] { ");
+            int i = 0;
+            for (ParameterDeclaration p : m.getParameters()) {
+                if (i++ > 0) pw.print(", ");
+                pw.print(_env.getTypeUtils().getErasure(p.getType()) + ".class");
+            }
+            pw.println(" });");
+        }
+        pw.println();
+        pw.println("    public " + c.getSimpleName() + "ChannelProxy(org.apache.ode.jacob.soup.CommChannel backend) {");
+        pw.println("       super(backend);");
+        pw.println("    }");
+        for (MethodDeclaration m : methods.values()) {
+            boolean synch = !(m.getReturnType() instanceof VoidType);
+            pw.println();
+            pw.print("    public " + m.getReturnType() + " " + m.getSimpleName() + "(");
+            StringBuffer args = new StringBuffer();
+            for (ParameterDeclaration p : m.getParameters()) {
+                if (args.length() > 0) {
+                    pw.print(", ");
+                    args.append(", ");
+                }
+                pw.print(p.getType() + " " + p.getSimpleName());
+                args.append(p.getSimpleName());
+            }
+            pw.println(") {");
+            pw.println("        " + (synch ? "return (" + m.getReturnType() + ") " : "") + "send(__" + m.getSimpleName()
+                    + ", new Object[] { " + args + " });");
+            pw.println("    }");
+        }
+        pw.println("}");
+        pw.flush();
+    }
+
+    /**
+     * Collect the methods of a channel type and of the channel types it extends, by name (JACOB does not
+     * support overloaded channel methods).
+     */
+    private Map<String, MethodDeclaration> getChannelMethods(InterfaceDeclaration c) {
+        Map<String, MethodDeclaration> methods = new LinkedHashMap<String, MethodDeclaration>();
+        collectChannelMethods(c, methods);
+        return methods;
+    }
+
+    private void collectChannelMethods(InterfaceDeclaration c, Map<String, MethodDeclaration> methods) {
+        for (MethodDeclaration m : c.getMethods())
+            if (!methods.containsKey(m.getSimpleName()))
+                methods.put(m.getSimpleName(), m);
+        for (InterfaceType s : c.getSuperinterfaces())
+            collectChannelMethods(s.getDeclaration(), methods);
+    }
+
+    /**
+     * Source expression converting an argument from the <code>Object[]</code> of a message to the parameter type.
+     */
+    private String unbox(TypeMirror type, String arg) {
+        if (type instanceof PrimitiveType) {
+            switch (((PrimitiveType) type).getKind()) {
+            case BOOLEAN: return "((java.lang.Boolean) " + arg + ").booleanValue()";
+            case BYTE: return "((java.lang.Byte) " + arg + ").byteValue()";
+            case SHORT: return "((java.lang.Short) " + arg + ").shortValue()";
+            case INT: return "((java.lang.Integer) " + arg + ").intValue()";
+            case LONG: return "((java.lang.Long) " + arg + ").longValue()";
+            case CHAR: return "((java.lang.Character) " + arg + ").charValue()";
+            case FLOAT: return "((java.lang.Float) " + arg + ").floatValue()";
+            case DOUBLE: return "((java.lang.Double) " + arg + ").doubleValue()";
+            }
+        }
+        return "(" + type + ") " + arg;
+    }
+
 }
@@ -90,6 +90,19 @@ public abstract class ChannelListener<CT extends Channel> extends JacobObject {
         return methods;
     }
 
+    /**
+     * Invoke one of the channel methods on this listener without going through reflection. The listener
+     * classes generated by the JACOB annotation processor override this method; other listeners are
+     * invoked reflectively.
+     *
+     * @param method channel method
+     * @param args method arguments
+     * @return <code>true</code> if the method was invoked, <code>false</code> if it should be invoked reflectively
+     */
+    public boolean dispatch(Method method, Object[] args) {
+        return false;
+    }
+
     /**
      * Get a description of the object for debugging purposes.
      * 
@@ -18,17 +18,29 @@
  */
 package org.apache.ode.jacob.vpu;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ode.jacob.Channel;
 import org.apache.ode.jacob.soup.CommChannel;
 import org.apache.ode.utils.CollectionUtils;
 
+/**
+ * Creates the channel objects handed out to JACOB processes. Channel types processed by the JACOB annotation
+ * processor come with a generated {@link ChannelProxy} subclass (<code>XChannelProxy</code> for the channel
+ * interface <code>XChannel</code>), which is used when available; other channel types get a
+ * {@link java.lang.reflect.Proxy}.
+ */
 public class ChannelFactory {
     private static final Method METHOD_OBJECT_EQUALS;
 
+    /** Constructors of the generated channel proxies, by channel type; <code>null</code> if there is none. */
+    private static final Map<Class, ProxyConstructor> __proxyConstructors = new ConcurrentHashMap<Class, ProxyConstructor>();
+
     private static final Method METHOD_CHANNEL_EXPORT;
 
     static {
@@ -46,17 +58,59 @@ public class ChannelFactory {
     }
 
     public static Object getBackend(Channel channel) {
+        if (channel instanceof ChannelProxy) {
+            return ((ChannelProxy) channel).getBackend();
+        }
         ChannelInvocationHandler cih = (ChannelInvocationHandler) Proxy.getInvocationHandler(channel);
         return cih._backend;
     }
 
     public static Channel createChannel(CommChannel backend, Class type) {
+        if (JacobVPU.isGeneratedDispatch()) {
+            Constructor ctor = getProxyConstructor(type);
+            if (ctor != null) {
+                try {
+                    return (Channel) ctor.newInstance(new Object[] { backend });
+                } catch (Exception e) {
+                    throw new IllegalStateException("Unable to instantiate channel proxy for " + type.getName(), e);
+                }
+            }
+        }
+
         InvocationHandler h = new ChannelInvocationHandler(backend);
         Class[] ifaces = new Class[] { Channel.class, type };
         Object proxy = Proxy.newProxyInstance(Channel.class.getClassLoader(), ifaces, h);
         return (Channel) proxy;
     }
 
+    private static Constructor getProxyConstructor(Class type) {
+        ProxyConstructor pc = __proxyConstructors.get(type);
+        if (pc == null) {
+            Constructor ctor = null;
+            try {
+                Class proxyClass = Class.forName(type.getName() + "Proxy", true, type.getClassLoader());
+                if (ChannelProxy.class.isAssignableFrom(proxyClass) && type.isAssignableFrom(proxyClass)) {
+                    ctor = proxyClass.getConstructor(new Class[] { CommChannel.class });
+                }
+            } catch (ClassNotFoundException cnfe) {
+                // Not processed by the annotation processor, use a dynamic proxy.
+            } catch (NoSuchMethodException nsme) {
+                // Not a generated proxy, use a dynamic proxy.
+            }
+            pc = new ProxyConstructor(ctor);
+            __proxyConstructors.put(type, pc);
+        }
+        return pc.ctor;
+    }
+
+    private static final class ProxyConstructor {
+        final Constructor ctor;
+
+        ProxyConstructor(Constructor ctor) {
+            this.ctor = ctor;
+        }
+    }
+
     public static final class ChannelInvocationHandler implements InvocationHandler {
         private CommChannel _backend;
 
@@ -79,7 +133,8 @@ public class ChannelFactory {
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
             if (method.getDeclaringClass() == Object.class) {
                 if (method.equals(METHOD_OBJECT_EQUALS)) {
-                    return Boolean.valueOf(this.equals(Proxy.getInvocationHandler(args[0])));
+                    return Boolean.valueOf(args[0] instanceof Channel
+                            && _backend.equals(getBackend((Channel) args[0])));
                 }
                 return method.invoke(this, args);
             }
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+import java.lang.reflect.Method;
+
+import org.apache.ode.jacob.Channel;
+import org.apache.ode.jacob.soup.CommChannel;
+
+/**
+ * Base class of the channel proxies generated by the JACOB annotation processor: a generated proxy implements
+ * the methods of its channel interface by sending the message directly to the active JACOB thread, instead of
+ * going through a {@link java.lang.reflect.Proxy} and its invocation handler.
+ *
+ * @see ChannelFactory#createChannel(CommChannel, Class)
+ */
+public abstract class ChannelProxy implements Channel {
+    private final CommChannel _backend;
+
+    protected ChannelProxy(CommChannel backend) {
+        _backend = backend;
+    }
+
+    CommChannel getBackend() {
+        return _backend;
+    }
+
+    public String export() {
+        return JacobVPU.activeJacobThread().exportChannel(this);
+    }
+
+    /**
+     * Send a message on this channel.
+     * @return the reply channel of synchronous methods, <code>null</code> otherwise
+     */
+    protected Channel send(Method method, Object[] args) {
+        return JacobVPU.activeJacobThread().message(this, method, args);
+    }
+
+    /**
+     * Look up a channel method, for the static initializers of the generated proxies.
+     */
+    protected static Method getMethod(Class type, String name, Class[] parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError("No method " + name + " on channel type " + type.getName());
+        }
+    }
+
+    public boolean equals(Object other) {
+        return other instanceof Channel && ChannelFactory.getBackend((Channel) other).equals(_backend);
+    }
+
+    public int hashCode() {
+        return _backend.hashCode();
+    }
+
+    public String toString() {
+        return _backend.toString();
+    }
+}
@@ -46,28 +46,126 @@ import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * A fast, in-memory {@link org.apache.ode.jacob.soup.ExecutionQueue} implementation.
+ * <p>
+ * The queue is persisted in a compact, versioned binary format: a four byte header (magic, version and
+ * {@link Compression} code) followed by the (optionally compressed) channel table, in which channel types and
+ * method names are interned and communication groups are written by reference. Blobs written in the legacy
+ * format (GZIP'd Java serialization of the frame graph) are detected on {@link #read(InputStream)} and still
+ * accepted, so existing instances are migrated the next time they are written.
+ * </p>
+ * <p>
+ * Besides full snapshots, the queue can write a delta ({@link #writeDelta(OutputStream)}) holding only the
+ * channels touched since the last read or write. A snapshot followed by its deltas, replayed in order with
+ * {@link #readDelta(InputStream)}, restores the queue. Deltas do not garbage collect channels, and objects shared
+ * between channels written in different deltas are no longer shared once read back; the snapshot should
+ * therefore be rewritten periodically.
+ * </p>
  */
 public class ExecutionQueueImpl implements ExecutionQueue {
     /** Class-level logger. */
     private static final Log __log = LogFactory.getLog(ExecutionQueueImpl.class);
 
+    /** Magic bytes of the compact format; cannot collide with the GZIP magic (0x1f 0x8b) of the legacy format. */
+    private static final int COMPACT_MAGIC_0 = 'J';
+
+    private static final int COMPACT_MAGIC_1 = 'Q';
+
+    /** Second magic byte of a delta, see {@link #writeDelta(OutputStream)}. */
+    private static final int DELTA_MAGIC_1 = 'D';
+
+    /**
+     * Version of the compact format written by this implementation. Version 2 identifies communication groups
+     * by a stable id rather than a stream-local index, so that deltas can refer to them. Version 3 draws those
+     * ids from a counter of their own, leaving channel ids numbered as in the legacy format. Version 4 flags the
+     * channel descriptions that are <code>null</code>, earlier versions write those as empty strings.
+     */
+    private static final int COMPACT_VERSION = 4;
+
+    /**
+     * Compression applied to the body of the compact format.
+     */
+    public enum Compression {
+        /** No compression; cheapest on CPU, largest blobs. */
+        NONE(0),
+
+        /** Deflate at {@link Deflater#BEST_SPEED}, without the GZIP framing and CRC. */
+        FAST(1),
+
+        /** GZIP at the default level; same ratio as the legacy format. */
+        GZIP(2);
+
+        private final int _code;
+
+        private Compression(int code) {
+            _code = code;
+        }
+
+        static Compression valueOf(int code) throws IOException {
+            for (Compression c : values()) {
+                if (c._code == code)
+                    return c;
+            }
+            throw new IOException("Unknown execution queue compression code: " + code);
+        }
+
+        OutputStream compress(OutputStream out) throws IOException {
+            switch (this) {
+            case NONE:
+                return out;
+            case FAST:
+                return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED)) {
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            def.end();
+                        }
+                    }
+                };
+            default:
+                return new GZIPOutputStream(out);
+            }
+        }
+
+        InputStream decompress(InputStream in) throws IOException {
+            switch (this) {
+            case NONE:
+                return in;
+            case FAST:
+                return new InflaterInputStream(in);
+            default:
+                return new GZIPInputStream(in);
+            }
+        }
+    }
+
     private ClassLoader _classLoader;
 
+    private Compression _compression = Compression.FAST;
+
     public static ConcurrentHashMap<String, ObjectStreamClass> _classDescriptors
         = new ConcurrentHashMap<String, ObjectStreamClass>();
 
@@ -84,9 +182,15 @@ public class ExecutionQueueImpl implements ExecutionQueue {
      * forward progress; this scenario would occur if a maximum processign
      * time-per-instance policy were in effect.
      */
-    private Set<Continuation> _reactions = new HashSet<Continuation>();
+    private final Collection<Continuation> _reactions;
+
+    private final Map<Integer, ChannelFrame> _channels;
 
-    private Map<Integer, ChannelFrame> _channels = new HashMap<Integer, ChannelFrame>();
+    /** Pending communication groups, by id; used to resolve group references when replaying deltas. */
+    private final Map<Integer, CommGroupFrame> _groups;
+
+    /** Ids of the channels modified since the queue was last read or written. */
+    private Set<Integer> _dirtyChannels = new HashSet<Integer>();
 
     /**
      * The "expected" cycle counter, use to detect database serialization
@@ -96,6 +200,9 @@ public class ExecutionQueueImpl implements ExecutionQueue {
 
     private int _objIdCounter;
 
+    /** Source of the communication group ids, kept apart from {@link #_objIdCounter} (channel ids). */
+    private int _groupIdCounter;
+
     private ExecutionQueueStatistics _statistics = new ExecutionQueueStatistics();
 
     private ReplacementMap _replacementMap;
@@ -105,7 +212,25 @@ public class ExecutionQueueImpl implements ExecutionQueue {
     private Map<Object, LinkedList<IndexedObject>> _index = new HashMap<Object, LinkedList<IndexedObject>>();
 
     public ExecutionQueueImpl(ClassLoader classLoader) {
+        this(classLoader, false);
+    }
+
+    /**
+     * @param classLoader class loader of the continuations
+     * @param compact use int-keyed tables for the channels and groups and a FIFO run queue for the reactions,
+     *                see {@link FastExecutionQueueImpl}
+     */
+    protected ExecutionQueueImpl(ClassLoader classLoader, boolean compact) {
         _classLoader = classLoader;
+        if (compact) {
+            _reactions = new RunQueue<Continuation>();
+            _channels = new IntHashMap<ChannelFrame>();
+            _groups = new IntHashMap<CommGroupFrame>();
+        } else {
+            _reactions = new HashSet<Continuation>();
+            _channels = new HashMap<Integer, ChannelFrame>();
+            _groups = new HashMap<Integer, CommGroupFrame>();
+        }
     }
 
     public void setClassLoader(ClassLoader classLoader) {
@@ -116,6 +241,22 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         _replacementMap = replacementMap;
     }
 
+    ReplacementMap getReplacementMap() {
+        return _replacementMap;
+    }
+
+    public Compression getCompression() {
+        return _compression;
+    }
+
+    /**
+     * Set the compression used by subsequent {@link #write(OutputStream)} calls; {@link #read(InputStream)}
+     * always uses the compression recorded in the blob.
+     */
+    public void setCompression(Compression compression) {
+        _compression = compression == null ? Compression.FAST : compression;
+    }
+
     public Map<Object, LinkedList<IndexedObject>> getIndex() {
         return _index;
     }
@@ -128,6 +269,7 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         ChannelFrame cframe = new ChannelFrame(channel.getType(), ++_objIdCounter, channel.getType().getName(), channel
                 .getDescription());
         _channels.put(cframe.getId(), cframe);
+        _dirtyChannels.add(cframe.getId());
         assignId(channel, cframe.getId());
     }
 
@@ -146,7 +288,9 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         }
 
         Continuation continuation = null;
-        if (!_reactions.isEmpty()) {
+        if (_reactions instanceof Queue) {
+            continuation = ((Queue<Continuation>) _reactions).poll();
+        } else if (!_reactions.isEmpty()) {
             Iterator it = _reactions.iterator();
             continuation = (Continuation) it.next();
             it.remove();
@@ -159,10 +303,12 @@ public class ExecutionQueueImpl implements ExecutionQueue {
             __log.trace(ObjectPrinter.stringifyMethodEnter("add", new Object[] { "group", group }));
 
         verifyNew(group);
-        CommGroupFrame commGroupFrame = new CommGroupFrame(group.isReplicated());
+        CommGroupFrame commGroupFrame = new CommGroupFrame(++_groupIdCounter, group.isReplicated());
+        _groups.put(commGroupFrame.getId(), commGroupFrame);
         for (Iterator i = group.getElements(); i.hasNext();) {
             Comm comm = (Comm) i.next();
             ChannelFrame chnlFrame = findChannelFrame(comm.getChannel().getId());
+            _dirtyChannels.add(chnlFrame.getId());
             if (comm instanceof CommSend) {
                 if (chnlFrame.replicatedSend) {
                     // TODO: JACOB "bad-process" ex
@@ -207,6 +353,13 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         return chnlFrame;
     }
 
+    /**
+     * Get the description of a channel of the queue.
+     */
+    String getChannelDescription(Object id) {
+        return findChannelFrame(id).description;
+    }
+
     public int cycle() {
         if (__log.isTraceEnabled()) {
             __log.trace(ObjectPrinter.stringifyMethodEnter("cycle", CollectionUtils.EMPTY_OBJECT_ARRAY));
@@ -220,6 +373,7 @@ public class ExecutionQueueImpl implements ExecutionQueue {
             __log.trace(ObjectPrinter.stringifyMethodEnter("createExport", new Object[] { "channel", channel }));
         ChannelFrame cframe = findChannelFrame(channel.getId());
         cframe.refCount++;
+        _dirtyChannels.add(cframe.getId());
         return channel.getId().toString();
     }
 
@@ -231,6 +385,7 @@ public class ExecutionQueueImpl implements ExecutionQueue {
         Integer id = Integer.valueOf(exportId);
         ChannelFrame cframe = findChannelFrame(id);
         cframe.refCount--;
+        _dirtyChannels.add(id);
         CommChannel commChannel = new CommChannel(cframe.type);
         commChannel.setId(id);
         commChannel.setDescription("EXPORTED CHANNEL");
@@ -249,11 +404,197 @@ public class ExecutionQueueImpl implements ExecutionQueue {
 
     public void read(InputStream iis) throws IOException, ClassNotFoundException {
         _channels.clear();
+        _groups.clear();
+        _dirtyChannels.clear();
         _reactions.clear();
         _index.clear();
+        _groupIdCounter = 0;
+
+        PushbackInputStream pis = new PushbackInputStream(iis, 4);
+        byte[] header = readHeader(pis);
+
+        if (header != null && header[0] == COMPACT_MAGIC_0 && header[1] == COMPACT_MAGIC_1) {
+            if (header[2] < 1 || header[2] > COMPACT_VERSION) {
+                throw new IOException("Unsupported execution queue format version: " + header[2]);
+            }
+            ExecutionQueueInputStream sis = new ExecutionQueueInputStream(Compression.valueOf(header[3]).decompress(pis));
+            readCompact(sis, header[2]);
+            sis.close();
+        } else {
+            // Legacy format: GZIP'd Java serialization of the frames.
+            if (header != null)
+                pis.unread(header);
+            ExecutionQueueInputStream sis = new ExecutionQueueInputStream(new GZIPInputStream(pis));
+            readLegacy(sis);
+            sis.close();
+        }
+    }
+
+    /**
+     * Apply a delta written by {@link #writeDelta(OutputStream)} on top of the state obtained by a previous
+     * {@link #read(InputStream)} (and the deltas preceding this one): the channels present in the delta replace
+     * their current frames, the reactions, counters and global data are replaced as a whole.
+     */
+    public void readDelta(InputStream iis) throws IOException, ClassNotFoundException {
+        PushbackInputStream pis = new PushbackInputStream(iis, 4);
+        byte[] header = readHeader(pis);
+        if (header == null || header[0] != COMPACT_MAGIC_0 || header[1] != DELTA_MAGIC_1) {
+            throw new IOException("Not an execution queue delta.");
+        }
+        if (header[2] < 2 || header[2] > COMPACT_VERSION) {
+            throw new IOException("Unsupported execution queue delta version: " + header[2]);
+        }
+
+        ExecutionQueueInputStream sis = new ExecutionQueueInputStream(Compression.valueOf(header[3]).decompress(pis));
+        _reactions.clear();
+        readCounters(sis, header[2]);
+        ChannelFrame[] cframes = readChannelHeaders(sis, header[2]);
+        for (ChannelFrame cframe : cframes) {
+            ChannelFrame old = _channels.put(cframe.getId(), cframe);
+            if (old != null) {
+                detachFrames(old.objFrames);
+                detachFrames(old.msgFrames);
+            }
+        }
+        readChannelFrames(sis, cframes, null);
+        _gdata = (Serializable) sis.readObject();
+        sis.close();
+        _dirtyChannels.clear();
+    }
+
+    private void detachFrames(Set<? extends CommFrame> frames) {
+        for (CommFrame frame : frames) {
+            frame.commGroupFrame.commFrames.remove(frame);
+            if (frame.commGroupFrame.commFrames.isEmpty())
+                _groups.remove(frame.commGroupFrame.getId());
+        }
+    }
+
+    /**
+     * Read the four byte header of the compact format, or <code>null</code> if the stream is shorter than that.
+     */
+    private byte[] readHeader(PushbackInputStream pis) throws IOException {
+        byte[] header = new byte[4];
+        int hlen = 0;
+        while (hlen < header.length) {
+            int r = pis.read(header, hlen, header.length - hlen);
+            if (r == -1) {
+                pis.unread(header, 0, hlen);
+                return null;
+            }
+            hlen += r;
+        }
+        return header;
+    }
+
+    private void readCompact(ExecutionQueueInputStream sis, int version) throws IOException, ClassNotFoundException {
+        readCounters(sis, version);
+        ChannelFrame[] cframes = readChannelHeaders(sis, version);
+        Map<Integer, ChannelFrame> byId = new HashMap<Integer, ChannelFrame>();
+        for (ChannelFrame cframe : cframes) {
+            byId.put(cframe.getId(), cframe);
+        }
+        readChannelFrames(sis, cframes, version == 1 ? new ArrayList<CommGroupFrame>() : null);
+
+        // Only channels that survived garbage collection on write are live.
+        int numLive = sis.readInt();
+        for (int i = 0; i < numLive; ++i) {
+            Integer id = Integer.valueOf(sis.readInt());
+            ChannelFrame cframe = byId.get(id);
+            if (cframe == null) {
+                throw new IOException("Corrupt execution queue, unknown live channel: " + id);
+            }
+            _channels.put(id, cframe);
+        }
+        _gdata = (Serializable) sis.readObject();
+    }
+
+    private void readCounters(ExecutionQueueInputStream sis, int version) throws IOException, ClassNotFoundException {
+        _objIdCounter = sis.readInt();
+        if (version >= 3) {
+            _groupIdCounter = sis.readInt();
+        } else if (version == 2) {
+            // Version 2 drew the group ids from the channel counter.
+            _groupIdCounter = _objIdCounter;
+        }
+        _currentCycle = sis.readInt();
+        int reactions = sis.readInt();
+        for (int i = 0; i < reactions; ++i) {
+            JacobObject closure = (JacobObject) sis.readObject();
+            Method method = closure.getMethod(sis.readSymbol());
+            _reactions.add(new Continuation(closure, method, readArgs(sis)));
+        }
+    }
+
+    private ChannelFrame[] readChannelHeaders(ExecutionQueueInputStream sis, int version)
+            throws IOException, ClassNotFoundException {
+        int numChannels = sis.readInt();
+        ChannelFrame[] cframes = new ChannelFrame[numChannels];
+        for (int i = 0; i < numChannels; ++i) {
+            Class type = loadClass(sis.readSymbol());
+            int id = sis.readInt();
+            // Before version 4 a null description was written, and is read back, as an empty string.
+            String description = version < 4 || sis.readBoolean() ? sis.readUTF() : null;
+            ChannelFrame cframe = new ChannelFrame(type, id, null, description);
+            cframe.refCount = sis.readInt();
+            cframe.replicatedSend = sis.readBoolean();
+            cframe.replicatedRecv = sis.readBoolean();
+            cframes[i] = cframe;
+        }
+        return cframes;
+    }
+
+    /**
+     * Read the frames pending on each of the given channels.
+     * @param v1Groups stream-local group table when reading version 1 of the format, <code>null</code> otherwise
+     */
+    private void readChannelFrames(ExecutionQueueInputStream sis, ChannelFrame[] cframes, List<CommGroupFrame> v1Groups)
+            throws IOException, ClassNotFoundException {
+        for (ChannelFrame cframe : cframes) {
+            int objFrames = sis.readInt();
+            for (int j = 0; j < objFrames; ++j) {
+                CommGroupFrame group = v1Groups == null ? sis.readGroup() : readV1Group(sis, v1Groups);
+                ObjectFrame oframe = new ObjectFrame(group, cframe, (ChannelListener) sis.readObject());
+                group.commFrames.add(oframe);
+                cframe.objFrames.add(oframe);
+            }
+            int msgFrames = sis.readInt();
+            for (int j = 0; j < msgFrames; ++j) {
+                CommGroupFrame group = v1Groups == null ? sis.readGroup() : readV1Group(sis, v1Groups);
+                String method = sis.readSymbol();
+                MessageFrame mframe = new MessageFrame(group, cframe, method, readArgs(sis));
+                group.commFrames.add(mframe);
+                cframe.msgFrames.add(mframe);
+            }
+        }
+    }
 
-        ExecutionQueueInputStream sis = new ExecutionQueueInputStream(iis);
+    private CommGroupFrame readV1Group(ExecutionQueueInputStream sis, List<CommGroupFrame> groups) throws IOException {
+        int idx = sis.readInt();
+        if (idx == groups.size()) {
+            CommGroupFrame group = new CommGroupFrame(++_groupIdCounter, sis.readBoolean());
+            _groups.put(group.getId(), group);
+            groups.add(group);
+        } else if (idx < 0 || idx > groups.size()) {
+            throw new IOException("Corrupt execution queue, bad comm group reference: " + idx);
+        }
+        return groups.get(idx);
+    }
 
+    private Object[] readArgs(ObjectInput in) throws IOException, ClassNotFoundException {
+        int numArgs = in.readInt();
+        Object[] args = new Object[numArgs];
+        for (int j = 0; j < numArgs; ++j) {
+            args[j] = in.readObject();
+        }
+        return args;
+    }
+
+    private Class loadClass(String name) throws ClassNotFoundException {
+        return Class.forName(name, true, _classLoader == null ? getClass().getClassLoader() : _classLoader);
+    }
+
+    private void readLegacy(ExecutionQueueInputStream sis) throws IOException, ClassNotFoundException {
         _objIdCounter = sis.readInt();
         _currentCycle = sis.readInt();
         int reactions = sis.readInt();
@@ -287,7 +628,18 @@ public class ExecutionQueueImpl implements ExecutionQueue {
             _channels.put(cframe.getId(), cframe);
         }
         _gdata = (Serializable) sis.readObject();
-        sis.close();
+
+        // The groups were numbered as they were read, see ExecutionQueueInputStream#resolveObject(Object).
+        for (ChannelFrame cframe : _channels.values()) {
+            for (CommFrame frame : cframe.objFrames)
+                registerLegacyGroup(frame.commGroupFrame);
+            for (CommFrame frame : cframe.msgFrames)
+                registerLegacyGroup(frame.commGroupFrame);
+        }
+    }
+
+    private void registerLegacyGroup(CommGroupFrame group) {
+        _groups.put(group.getId(), group);
     }
 
     private void index(IndexedObject object) {
@@ -302,60 +654,128 @@ public class ExecutionQueueImpl implements ExecutionQueue {
     public void write(OutputStream oos) throws IOException {
         flush();
 
-        ExecutionQueueOutputStream sos = new ExecutionQueueOutputStream(oos);
-//        XQXMLOutputStream sos = createObjectOutputStream(new OutputStreamWriter(oos));
-
-        sos.writeInt(_objIdCounter);
-        sos.writeInt(_currentCycle);
-
-        // Write out the reactions.
-        sos.writeInt(_reactions.size());
-        for (Continuation c : _reactions) {
-            sos.writeObject(c.getClosure());
-            sos.writeUTF(c.getMethod().getName());
-            sos.writeInt(c.getArgs() == null ? 0 : c.getArgs().length);
-            for (int j = 0; c.getArgs() != null && j < c.getArgs().length; ++j)
-                sos.writeObject(c.getArgs()[j]);
-        }
-
-        sos.writeInt(_channels.values().size());
-        for (Iterator i = _channels.values().iterator(); i.hasNext();) {
-            ChannelFrame cframe = (ChannelFrame) i.next();
-            sos.writeInt(cframe.objFrames.size());
-            for (Iterator j = cframe.objFrames.iterator(); j.hasNext();) {
-                sos.writeObject(j.next());
-            }
-            sos.writeInt(cframe.msgFrames.size());
-            for (Iterator j = cframe.msgFrames.iterator(); j.hasNext();) {
-                sos.writeObject(j.next());
-            }
-        }
+        ExecutionQueueOutputStream sos = writeHeader(oos, COMPACT_MAGIC_1);
+        writeCounters(sos);
+        writeChannels(sos, _channels.values());
 
         Set referencedChannels = sos.getSerializedChannels();
-        for (Iterator i = _channels.values().iterator(); i.hasNext();) {
-            ChannelFrame cframe = (ChannelFrame) i.next();
+        List<Integer> garbage = new ArrayList<Integer>();
+        for (ChannelFrame cframe : _channels.values()) {
             if (referencedChannels.contains(Integer.valueOf(cframe.id)) || cframe.refCount > 0) {
                 // skip
             } else {
                 if (__log.isDebugEnabled())
                     __log.debug("GC Channel: " + cframe);
-                i.remove();
+                garbage.add(cframe.getId());
             }
 
         }
+        for (Integer id : garbage)
+            _channels.remove(id);
 
-        sos.writeInt(_channels.values().size());
-        for (Iterator i = _channels.values().iterator(); i.hasNext();) {
-            ChannelFrame cframe = (ChannelFrame) i.next();
+        // Write out the ids of the channels that survived GC.
+        sos.writeInt(_channels.size());
+        for (ChannelFrame cframe : _channels.values()) {
             if (__log.isDebugEnabled()) {
                 __log.debug("Writing Channel: " + cframe);
             }
-            sos.writeObject(cframe);
+            sos.writeInt(cframe.id);
         }
 
         // Write the global data.
         sos.writeObject(_gdata);
         sos.close();
+        _dirtyChannels.clear();
+    }
+
+    /**
+     * Write the changes made since the queue was last read or written: the reactions, counters and global data,
+     * and the channels that have been created or modified. No garbage collection is performed, see
+     * {@link #write(OutputStream)}.
+     */
+    public void writeDelta(OutputStream oos) throws IOException {
+        flush();
+
+        List<ChannelFrame> dirty = new ArrayList<ChannelFrame>(_dirtyChannels.size());
+        for (Integer id : _dirtyChannels) {
+            ChannelFrame cframe = _channels.get(id);
+            if (cframe != null)
+                dirty.add(cframe);
+        }
+
+        ExecutionQueueOutputStream sos = writeHeader(oos, DELTA_MAGIC_1);
+        writeCounters(sos);
+        writeChannels(sos, dirty);
+        sos.writeObject(_gdata);
+        sos.close();
+        _dirtyChannels.clear();
+    }
+
+    /**
+     * Number of channels modified since the queue was last read or written, i.e. the number of channels a
+     * {@link #writeDelta(OutputStream)} would currently write.
+     */
+    public int getDirtyChannelCount() {
+        return _dirtyChannels.size();
+    }
+
+    private ExecutionQueueOutputStream writeHeader(OutputStream oos, int magic1) throws IOException {
+        oos.write(COMPACT_MAGIC_0);
+        oos.write(magic1);
+        oos.write(COMPACT_VERSION);
+        oos.write(_compression._code);
+        return new ExecutionQueueOutputStream(_compression.compress(oos));
+    }
+
+    private void writeCounters(ExecutionQueueOutputStream sos) throws IOException {
+        sos.writeInt(_objIdCounter);
+        sos.writeInt(_groupIdCounter);
+        sos.writeInt(_currentCycle);
+
+        // Write out the reactions.
+        sos.writeInt(_reactions.size());
+        for (Continuation c : _reactions) {
+            sos.writeObject(c.getClosure());
+            sos.writeSymbol(c.getMethod().getName());
+            writeArgs(sos, c.getArgs());
+        }
+    }
+
+    /**
+     * Write out the channel table, then the frames pending on each channel.
+     */
+    private void writeChannels(ExecutionQueueOutputStream sos, Collection<ChannelFrame> cframes) throws IOException {
+        sos.writeInt(cframes.size());
+        for (ChannelFrame cframe : cframes) {
+            sos.writeSymbol(cframe.type.getName());
+            sos.writeInt(cframe.id);
+            sos.writeBoolean(cframe.description != null);
+            if (cframe.description != null)
+                sos.writeUTF(cframe.description);
+            sos.writeInt(cframe.refCount);
+            sos.writeBoolean(cframe.replicatedSend);
+            sos.writeBoolean(cframe.replicatedRecv);
+        }
+
+        for (ChannelFrame cframe : cframes) {
+            sos.writeInt(cframe.objFrames.size());
+            for (ObjectFrame oframe : cframe.objFrames) {
+                sos.writeGroup(oframe.commGroupFrame);
+                sos.writeObject(oframe._continuation);
+            }
+            sos.writeInt(cframe.msgFrames.size());
+            for (MessageFrame mframe : cframe.msgFrames) {
+                sos.writeGroup(mframe.commGroupFrame);
+                sos.writeSymbol(mframe.method);
+                writeArgs(sos, mframe.args);
+            }
+        }
+    }
+
+    private void writeArgs(ObjectOutput out, Object[] args) throws IOException {
+        out.writeInt(args == null ? 0 : args.length);
+        for (int j = 0; args != null && j < args.length; ++j)
+            out.writeObject(args[j]);
     }
 
     public boolean isComplete() {
@@ -437,9 +857,11 @@ public class ExecutionQueueImpl implements ExecutionQueue {
     }
 
     private void removeCommGroup(CommGroupFrame groupFrame) {
+        _groups.remove(groupFrame.getId());
         // Add all channels reference in the group to the GC candidate set.
         for (Iterator i = groupFrame.commFrames.iterator(); i.hasNext();) {
             CommFrame frame = (CommFrame) i.next();
+            _dirtyChannels.add(frame.channelFrame.getId());
             if (frame instanceof ObjectFrame) {
                 assert frame.channelFrame.objFrames.contains(frame);
                 frame.channelFrame.objFrames.remove(frame);
@@ -549,14 +971,22 @@ public class ExecutionQueueImpl implements ExecutionQueue {
     }
 
     private static class CommGroupFrame implements Serializable {
+        /** Stable id of the group; transient, as it is not part of the legacy (serialized) format. */
+        transient int id;
+
         boolean replicated;
 
         public Set<CommFrame> commFrames = new HashSet<CommFrame>();
 
-        public CommGroupFrame(boolean replicated) {
+        public CommGroupFrame(int id, boolean replicated) {
+            this.id = id;
             this.replicated = replicated;
         }
 
+        public Integer getId() {
+            return Integer.valueOf(id);
+        }
+
     }
 
     private static class CommFrame implements Externalizable {
@@ -655,8 +1085,14 @@ public class ExecutionQueueImpl implements ExecutionQueue {
     private class ExecutionQueueOutputStream extends ObjectOutputStream {
         private Set<Object> _serializedChannels = new HashSet<Object>();
 
+        /** Interned symbols (channel type and method names), by index of first occurrence. */
+        private Map<String, Integer> _symbols = new HashMap<String, Integer>();
+
+        /** Ids of the communication groups already written to this stream. */
+        private Set<Integer> _groupIds = new HashSet<Integer>();
+
         public ExecutionQueueOutputStream(OutputStream outputStream) throws IOException {
-            super(new GZIPOutputStream(outputStream));
+            super(outputStream);
             enableReplaceObject(true);
         }
 
@@ -664,6 +1100,31 @@ public class ExecutionQueueImpl implements ExecutionQueue {
             return _serializedChannels;
         }
 
+        /**
+         * Write an interned symbol: the first occurrence is written as its (new) index followed by the
+         * string, subsequent occurrences as the index only.
+         */
+        public void writeSymbol(String symbol) throws IOException {
+            Integer idx = _symbols.get(symbol);
+            if (idx != null) {
+                writeInt(idx.intValue());
+            } else {
+                writeInt(_symbols.size());
+                writeUTF(symbol);
+                _symbols.put(symbol, Integer.valueOf(_symbols.size()));
+            }
+        }
+
+        /**
+         * Write a reference to a communication group: its id, followed by the group attributes on the first
+         * occurrence in this stream.
+         */
+        public void writeGroup(CommGroupFrame group) throws IOException {
+            writeInt(group.id);
+            if (_groupIds.add(group.getId()))
+                writeBoolean(group.replicated);
+        }
+
         protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
             if (Serializable.class.isAssignableFrom(desc.forClass())) {
                 writeBoolean(true);
@@ -707,8 +1168,12 @@ public class ExecutionQueueImpl implements ExecutionQueue {
     public class ExecutionQueueInputStream extends ObjectInputStream {
         private Set<CommChannel> _deserializedChannels = new HashSet<CommChannel>();
 
+        private List<String> _symbols = new ArrayList<String>();
+
+        private Set<Integer> _groupIds = new HashSet<Integer>();
+
         public ExecutionQueueInputStream(InputStream in) throws IOException {
-            super(new GZIPInputStream(in));
+            super(in);
             enableResolveObject(true);
         }
 
@@ -716,6 +1181,41 @@ public class ExecutionQueueImpl implements ExecutionQueue {
             return _deserializedChannels;
         }
 
+        /**
+         * Read a symbol written by {@link ExecutionQueueOutputStream#writeSymbol(String)}.
+         */
+        public String readSymbol() throws IOException {
+            int idx = readInt();
+            if (idx == _symbols.size()) {
+                _symbols.add(readUTF());
+            } else if (idx < 0 || idx > _symbols.size()) {
+                throw new IOException("Corrupt execution queue, bad symbol reference: " + idx);
+            }
+            return _symbols.get(idx);
+        }
+
+        /**
+         * Read a group reference written by {@link ExecutionQueueOutputStream#writeGroup(CommGroupFrame)},
+         * resolving it against the groups already known to the queue.
+         */
+        CommGroupFrame readGroup() throws IOException {
+            Integer id = Integer.valueOf(readInt());
+            if (_groupIds.add(id)) {
+                boolean replicated = readBoolean();
+                CommGroupFrame group = _groups.get(id);
+                if (group == null) {
+                    group = new CommGroupFrame(id.intValue(), replicated);
+                    _groups.put(id, group);
+                }
+                return group;
+            }
+            CommGroupFrame group = _groups.get(id);
+            if (group == null) {
+                throw new IOException("Corrupt execution queue, bad comm group reference: " + id);
+            }
+            return group;
+        }
+
         protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
             return Class.forName(desc.getName(), true, _classLoader);
         }
@@ -745,6 +1245,14 @@ public class ExecutionQueueImpl implements ExecutionQueue {
                 channel.setId(oref._id);
                 _deserializedChannels.add(channel);
                 resolved = ChannelFactory.createChannel(channel, channel.getType());
+            } else if (obj instanceof CommGroupFrame) {
+                // Group ids are not part of the legacy format. Number the groups in stream order, without
+                // touching the channel counter: re-reading the same state gives the same ids, which the
+                // deltas written on top of it refer to.
+                CommGroupFrame group = (CommGroupFrame) obj;
+                if (group.id == 0)
+                    group.id = ++_groupIdCounter;
+                resolved = group;
             } else if (_replacementMap != null && _replacementMap.isReplacement(obj)) {
                 resolved = _replacementMap.getOriginal(obj);
                 if (__log.isDebugEnabled()) {
@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+/**
+ * {@link ExecutionQueueImpl} variant tuned for allocation: channels and communication groups are kept in
+ * int-keyed open-addressing tables, and reactions in an array-backed FIFO run queue, so that reactions are
+ * dequeued in the order they were enqueued. The persistent format is the same, a state written by either
+ * implementation can be read by the other.
+ */
+public class FastExecutionQueueImpl extends ExecutionQueueImpl {
+
+    public FastExecutionQueueImpl(ClassLoader classLoader) {
+        super(classLoader, true);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map keyed by <code>int</code>s, using open addressing with linear probing: no entry objects are allocated
+ * and keys are not hashed through {@link Integer#hashCode()}. Lookups with a non-{@link Integer} key find
+ * nothing. The iterators do not support removal.
+ */
+class IntHashMap<V> extends AbstractMap<Integer, V> {
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private int[] _keys;
+
+    private Object[] _values;
+
+    private int _size;
+
+    IntHashMap() {
+        _keys = new int[MINIMUM_CAPACITY];
+        _values = new Object[MINIMUM_CAPACITY];
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && indexOf(((Integer) key).intValue()) >= 0;
+    }
+
+    public V get(Object key) {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) _values[i];
+    }
+
+    public V put(Integer key, V value) {
+        return put(key.intValue(), value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+        int mask = _keys.length - 1;
+        int i = hash(key) & mask;
+        while (_values[i] != null) {
+            if (_keys[i] == key) {
+                V old = (V) _values[i];
+                _values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        _keys[i] = key;
+        _values[i] = value;
+        // Keep the load factor at or below 1/2.
+        if (++_size * 2 > _keys.length) {
+            resize(_keys.length * 2);
+        }
+        return null;
+    }
+
+    public V remove(Object key) {
+        return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) _values[i];
+        --_size;
+
+        // Shift the following entries of the probe sequence back, so that lookups need no tombstones.
+        int mask = _keys.length - 1;
+        int gap = i;
+        for (int j = (i + 1) & mask; _values[j] != null; j = (j + 1) & mask) {
+            int home = hash(_keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                _keys[gap] = _keys[j];
+                _values[gap] = _values[j];
+                gap = j;
+            }
+        }
+        _values[gap] = null;
+        return old;
+    }
+
+    public void clear() {
+        if (_size > 0) {
+            _keys = new int[MINIMUM_CAPACITY];
+            _values = new Object[MINIMUM_CAPACITY];
+            _size = 0;
+        }
+    }
+
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            public Iterator<V> iterator() {
+                return new SlotIterator<V>() {
+                    @SuppressWarnings("unchecked")
+                    V get(int slot) {
+                        return (V) _values[slot];
+                    }
+                };
+            }
+
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    public Set<Map.Entry<Integer, V>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, V>>() {
+            public Iterator<Map.Entry<Integer, V>> iterator() {
+                return new SlotIterator<Map.Entry<Integer, V>>() {
+                    Map.Entry<Integer, V> get(int slot) {
+                        return new Entry(slot);
+                    }
+                };
+            }
+
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    private int indexOf(int key) {
+        int mask = _keys.length - 1;
+        for (int i = hash(key) & mask; _values[i] != null; i = (i + 1) & mask) {
+            if (_keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        int[] keys = _keys;
+        Object[] values = _values;
+        _keys = new int[capacity];
+        _values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < keys.length; ++j) {
+            if (values[j] != null) {
+                int i = hash(keys[j]) & mask;
+                while (_values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                _keys[i] = keys[j];
+                _values[i] = values[j];
+            }
+        }
+    }
+
+    /**
+     * Spread the (mostly sequential) ids over the table.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private final Object[] _table = _values;
+
+        private int _next = advance(0);
+
+        abstract T get(int slot);
+
+        public boolean hasNext() {
+            return _next < _table.length;
+        }
+
+        public T next() {
+            if (_table != _values) {
+                throw new IllegalStateException("Concurrent modification");
+            }
+            if (_next >= _table.length) {
+                throw new NoSuchElementException();
+            }
+            T ret = get(_next);
+            _next = advance(_next + 1);
+            return ret;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private int advance(int i) {
+            while (i < _table.length && _table[i] == null) {
+                ++i;
+            }
+            return i;
+        }
+    }
+
+    private final class Entry implements Map.Entry<Integer, V> {
+        private final int _slot;
+
+        Entry(int slot) {
+            _slot = slot;
+        }
+
+        public Integer getKey() {
+            return _keys[_slot];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) _values[_slot];
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
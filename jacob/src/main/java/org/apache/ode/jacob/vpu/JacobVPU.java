@@ -26,11 +26,25 @@ import org.apache.ode.utils.CollectionUtils;
 import org.apache.ode.utils.ObjectPrinter;
 import org.apache.ode.utils.msg.MessageBundle;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * The JACOB Virtual Processing Unit ("VPU").
@@ -52,6 +66,15 @@ public final class JacobVPU {
 
     private static final Method REDUCE_METHOD;
 
+    /** Instance fields of reference type of the classes visited by {@link #collectChannels}, by class. */
+    private static final Map<Class, Field[]> __referenceFields = new ConcurrentHashMap<Class, Field[]>();
+
+    /**
+     * Maximum number of objects visited to find the channels a continuation refers to; a continuation
+     * referring to more objects than that is reduced alone.
+     */
+    private static final int MAX_FOOTPRINT_OBJECTS = 1000;
+
     /**
      * Resolve the {@link JacobRunnable#run} method statically
      */
@@ -63,6 +86,13 @@ public final class JacobVPU {
         }
     }
 
+    /**
+     * Whether the channel proxies and listener dispatch generated by the JACOB annotation processor are used;
+     * when turned off, all channel messages and reductions go through reflection.
+     */
+    private static volatile boolean __generatedDispatch =
+        !Boolean.getBoolean("org.apache.ode.jacob.reflectiveDispatch");
+
     /**
      * Persisted cross-VPU state (state of the channels)
      */
@@ -79,6 +109,24 @@ public final class JacobVPU {
 
     private Statistics _statistics = new Statistics();
 
+    /** Whether the run and client times are measured; the counters are always maintained. */
+    private boolean _statisticsEnabled;
+
+    /** Thread object reused across cycles, <code>null</code> while a cycle is running. */
+    private JacobThreadImpl _idleThread;
+
+    /** Executor reducing independent continuations in parallel, <code>null</code> to reduce one at a time. */
+    private Executor _reductionExecutor;
+
+    /** Maximum number of continuations reduced in parallel in one cycle. */
+    private int _reductionBatchSize = 1;
+
+    /** Thread objects reused across the batches of parallel reductions. */
+    private final List<JacobThreadImpl> _batchThreads = new ArrayList<JacobThreadImpl>();
+
+    /** Batch of parallel reductions running, <code>null</code> when reducing one continuation at a time. */
+    private Batch _activeBatch;
+
     /**
      * The fault "register" of the VPU .
      */
@@ -132,9 +180,23 @@ public final class JacobVPU {
         _cycle = _executionQueue.cycle();
 
         Continuation rqe = _executionQueue.dequeueReaction();
-        JacobThreadImpl jt = new JacobThreadImpl(rqe);
+        if (_reductionExecutor != null && _executionQueue.hasReactions() && isParallelizable(rqe)) {
+            List<Continuation> batch = nextBatch(rqe);
+            if (batch.size() > 1) {
+                executeBatch(batch);
+                return true;
+            }
+        }
+
+        JacobThreadImpl jt = _idleThread;
+        if (jt == null) {
+            jt = new JacobThreadImpl();
+        } else {
+            _idleThread = null;
+        }
+        jt.init(rqe);
 
-        long ctime = System.currentTimeMillis();
+        long ctime = _statisticsEnabled ? System.nanoTime() : 0;
         try {
             jt.run();
         } catch (RuntimeException re) {
@@ -142,10 +204,14 @@ public final class JacobVPU {
             throw re;
         }
 
-        long rtime = System.currentTimeMillis() - ctime;
         ++_statistics.numCycles;
-        _statistics.totalRunTimeMs += rtime;
-        _statistics.incRunTime(jt._targetStr, rtime);
+        if (_statisticsEnabled) {
+            long rtime = System.nanoTime() - ctime;
+            _statistics.totalRunTimeNs += rtime;
+            _statistics.incRunTime(jt._methodBody.getClass().getName(), rtime);
+        }
+        jt.init(null);
+        _idleThread = jt;
         return true;
     }
 
@@ -172,6 +238,38 @@ public final class JacobVPU {
         _executionQueue.setClassLoader(_classLoader);
     }
 
+    public Statistics getStatistics() {
+        return _statistics;
+    }
+
+    public boolean isStatisticsEnabled() {
+        return _statisticsEnabled;
+    }
+
+    /**
+     * Enable the measurement of the run and client times of the cycles (off by default).
+     */
+    public void setStatisticsEnabled(boolean statisticsEnabled) {
+        _statisticsEnabled = statisticsEnabled;
+    }
+
+    /**
+     * Reduce independent continuations in parallel. Each cycle then takes up to <code>batchSize</code>
+     * continuations from the run queue, provided they have distinct closures and don't refer to the same
+     * channels, and reduces them on the given executor. Their effects on the execution queue are buffered,
+     * and applied in the order in which the continuations were dequeued once they have all been reduced.
+     * Calls to the (interface-typed) extensions are carried out on the thread calling {@link #execute()},
+     * one at a time, so extensions that depend on the calling thread (e.g. on its transaction) still work.
+     * Continuations declared within the class of an extension are always reduced alone.
+     *
+     * @param executor executor for the reductions, <code>null</code> to reduce one continuation at a time
+     * @param batchSize maximum number of continuations reduced in parallel
+     */
+    public void setParallelReduction(Executor executor, int batchSize) {
+        _reductionExecutor = batchSize > 1 ? executor : null;
+        _reductionBatchSize = batchSize;
+    }
+
     public void registerExtension(Class extensionClass, Object obj) {
         if (__log.isTraceEnabled()) {
             __log.trace(ObjectPrinter
@@ -192,8 +290,29 @@ public final class JacobVPU {
 
         Continuation continuation = new Continuation(jo, method, args);
         continuation.setDescription(desc);
-        _executionQueue.enqueueReaction(continuation);
-        ++_statistics.runQueueEntries;
+        JacobThreadImpl jt = batchThread();
+        if (jt != null) {
+            // Injected by an extension on behalf of a reduction of the batch: merged with its effects.
+            jt.submit(continuation);
+        } else {
+            _executionQueue.enqueueReaction(continuation);
+            ++_statistics.runQueueEntries;
+        }
+    }
+
+    /**
+     * The reduction of the running batch the current thread acts for, if any.
+     */
+    private JacobThreadImpl batchThread() {
+        if (_activeBatch == null) {
+            return null;
+        }
+        Stack<JacobThread> stack = __activeJacobThread.get();
+        if (stack == null || stack.isEmpty() || !(stack.peek() instanceof JacobThreadImpl)) {
+            return null;
+        }
+        JacobThreadImpl jt = (JacobThreadImpl) stack.peek();
+        return jt._batch == _activeBatch ? jt : null;
     }
 
     /**
@@ -218,6 +337,190 @@ public final class JacobVPU {
                 (__log.isInfoEnabled() ? concretion.toString() : null));
     }
 
+    public static boolean isGeneratedDispatch() {
+        return __generatedDispatch;
+    }
+
+    public static void setGeneratedDispatch(boolean generatedDispatch) {
+        __generatedDispatch = generatedDispatch;
+    }
+
+    /**
+     * Dequeue the continuations to reduce in parallel with the given one. The first continuation that can't
+     * join the batch is put back on the run queue.
+     */
+    private List<Continuation> nextBatch(Continuation first) {
+        List<Continuation> batch = new ArrayList<Continuation>(_reductionBatchSize);
+        Map<Object, Object> footprint = new IdentityHashMap<Object, Object>();
+        Map<Object, Object> channels = new HashMap<Object, Object>();
+        batch.add(first);
+        addFootprint(first, footprint, channels);
+        while (batch.size() < _reductionBatchSize && _executionQueue.hasReactions()) {
+            Continuation next = _executionQueue.dequeueReaction();
+            if (!isParallelizable(next) || !addFootprint(next, footprint, channels)) {
+                _executionQueue.enqueueReaction(next);
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    /**
+     * Add the closure of a continuation and the channels it refers to (the channel of a listener and the
+     * channels reachable from the closure and the arguments) to the footprint of a batch.
+     *
+     * @return <code>false</code> if the continuation overlaps the batch, in which case nothing is added
+     */
+    private boolean addFootprint(Continuation continuation, Map<Object, Object> closures, Map<Object, Object> channels) {
+        JacobObject closure = continuation.getClosure();
+        if (closures.containsKey(closure)) {
+            return false;
+        }
+        List<Object> ids = new ArrayList<Object>();
+        if (closure instanceof ChannelListener && ((ChannelListener) closure).getChannel() != null) {
+            // The channel of a listener is not persisted.
+            ids.add(channelId(((ChannelListener) closure).getChannel()));
+        }
+        Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+        if (!collectChannels(closure, ids, visited) || !collectChannels(continuation.getArgs(), ids, visited)) {
+            return false;
+        }
+        for (Object id : ids) {
+            if (channels.containsKey(id)) {
+                return false;
+            }
+        }
+        closures.put(closure, closure);
+        for (Object id : ids) {
+            channels.put(id, id);
+        }
+        return true;
+    }
+
+    /**
+     * Collect the ids of the channels reachable from an object through the fields of the objects and the
+     * elements of the arrays, collections and maps on the way. The objects of the replacement map (the
+     * immutable process model), DOM nodes, enums and the other JDK objects are not visited.
+     *
+     * @return <code>false</code> if too many objects are reachable to tell
+     */
+    private boolean collectChannels(Object root, List<Object> ids, Map<Object, Object> visited) {
+        ReplacementMap replacementMap = _executionQueue instanceof ExecutionQueueImpl
+                ? ((ExecutionQueueImpl) _executionQueue).getReplacementMap() : null;
+        LinkedList<Object> pending = new LinkedList<Object>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Object obj = pending.removeFirst();
+            if (obj == null || visited.containsKey(obj)) {
+                continue;
+            }
+            if (obj instanceof Channel) {
+                visited.put(obj, obj);
+                ids.add(channelId((Channel) obj));
+                continue;
+            }
+            boolean container = obj instanceof Object[] || obj instanceof Collection || obj instanceof Map;
+            if (!container && (isOpaque(obj) || (replacementMap != null && replacementMap.isReplaceable(obj)))) {
+                continue;
+            }
+            if (visited.size() >= MAX_FOOTPRINT_OBJECTS) {
+                return false;
+            }
+            visited.put(obj, obj);
+            if (obj instanceof Object[]) {
+                for (Object element : (Object[]) obj) {
+                    pending.add(element);
+                }
+            } else if (obj instanceof Collection) {
+                pending.addAll((Collection) obj);
+            } else if (obj instanceof Map) {
+                pending.addAll(((Map) obj).keySet());
+                pending.addAll(((Map) obj).values());
+            } else {
+                for (Field field : getReferenceFields(obj.getClass())) {
+                    try {
+                        pending.add(field.get(obj));
+                    } catch (IllegalAccessException e) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Objects that can't refer to channels, or whose content isn't visited.
+     */
+    private static boolean isOpaque(Object obj) {
+        if (obj instanceof Enum || obj instanceof org.w3c.dom.Node || obj.getClass().isArray()) {
+            return true;
+        }
+        String name = obj.getClass().getName();
+        return name.startsWith("java.") || name.startsWith("javax.");
+    }
+
+    private static Object channelId(Channel channel) {
+        CommChannel backend = (CommChannel) ChannelFactory.getBackend(channel);
+        return backend.getId() != null ? backend.getId() : backend;
+    }
+
+    private static Field[] getReferenceFields(Class clazz) {
+        Field[] fields = __referenceFields.get(clazz);
+        if (fields == null) {
+            List<Field> referenceFields = new ArrayList<Field>();
+            for (Class c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!field.getType().isPrimitive() && !Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        referenceFields.add(field);
+                    }
+                }
+            }
+            fields = referenceFields.toArray(new Field[referenceFields.size()]);
+            __referenceFields.put(clazz, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Continuations declared within the class of an extension may use it directly, rather than through the
+     * interface it is registered with; these are not reduced in parallel.
+     */
+    private boolean isParallelizable(Continuation continuation) {
+        for (Class c = continuation.getClosure().getClass(); c != null; c = c.getEnclosingClass()) {
+            for (Object extension : _extensions.values()) {
+                if (c.isInstance(extension)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void executeBatch(List<Continuation> continuations) {
+        long ctime = _statisticsEnabled ? System.nanoTime() : 0;
+        Batch batch = new Batch(continuations);
+        RuntimeException fault;
+        _activeBatch = batch;
+        try {
+            fault = batch.run();
+        } finally {
+            _activeBatch = null;
+            batch.release();
+        }
+        if (fault != null) {
+            _fault = fault;
+            throw fault;
+        }
+
+        _statistics.numCycles += continuations.size();
+        if (_statisticsEnabled) {
+            _statistics.totalRunTimeNs += System.nanoTime() - ctime;
+        }
+    }
+
     static String stringifyMethods(Class kind) {
         StringBuffer buf = new StringBuffer();
         Method[] methods = kind.getMethods();
@@ -278,32 +581,53 @@ public final class JacobVPU {
     }
 
     private class JacobThreadImpl implements Runnable, JacobThread {
-        private final JacobObject _methodBody;
+        private JacobObject _methodBody;
 
-        private final Object[] _args;
+        private Object[] _args;
 
-        private final Method _method;
+        private Method _method;
 
         /** Text string identifying the left side of the reduction (for debug). */
         private String _source;
 
-        /** Text string identifying the target class and method (for debug) . */
-        private String _targetStr = "Unknown";
-
-        JacobThreadImpl(Continuation rqe) {
-            assert rqe != null;
+        /** Batch of parallel reductions this thread belongs to, <code>null</code> when reducing alone. */
+        private Batch _batch;
+
+        /**
+         * Effects on the execution queue ({@link CommChannel}s, {@link CommGroup}s and {@link Continuation}s to
+         * add) not yet applied, when reducing in a batch.
+         */
+        private List<Object> _buffer;
+
+        /** Whether the reduction is over; guarded by the batch. */
+        private boolean _done;
+
+        /** Whether the reduction runs on the thread that owns the VPU, the executor having rejected it. */
+        private boolean _inline;
+
+        private RuntimeException _failure;
+
+        /** Counters of the reductions: those of the VPU, or the thread's own when reducing in a batch. */
+        private Statistics _stats = _statistics;
+
+        /**
+         * Load the thread with a reaction; the thread objects are reused across cycles.
+         *
+         * @param rqe reaction to run, <code>null</code> to release the previous one
+         */
+        void init(Continuation rqe) {
+            if (rqe == null) {
+                _methodBody = null;
+                _args = null;
+                _source = null;
+                _method = null;
+                return;
+            }
 
             _methodBody = rqe.getClosure();
             _args = rqe.getArgs();
             _source = rqe.getDescription();
             _method = rqe.getMethod();
-
-            if (__log.isDebugEnabled()) {
-                StringBuffer buf = new StringBuffer(_methodBody.getClass().getName());
-                buf.append('.');
-                buf.append(rqe.getMethod());
-                _targetStr = buf.toString();
-            }
         }
 
         public void instance(JacobRunnable template) {
@@ -312,8 +636,10 @@ public final class JacobVPU {
                 __log.trace(_cycle + ": " + template);
                 desc = template.toString();
             }
-            _statistics.numReductionsStruct++;
-            addReaction(template, REDUCE_METHOD, CollectionUtils.EMPTY_OBJECT_ARRAY, desc);
+            _stats.numReductionsStruct++;
+            Continuation continuation = new Continuation(template, REDUCE_METHOD, CollectionUtils.EMPTY_OBJECT_ARRAY);
+            continuation.setDescription(desc);
+            submit(continuation);
         }
 
         public Channel message(Channel channel, Method method, Object[] args) {
@@ -321,7 +647,7 @@ public final class JacobVPU {
                 __log.trace(_cycle + ": " + channel + " ! "
                         + method.getName() + "(" + stringify(args) + ")");
             }
-            _statistics.messagesSent++;
+            _stats.messagesSent++;
 
             SynchChannel replyChannel = null;
             // Check for synchronous methods; create a synchronization channel
@@ -340,20 +666,20 @@ public final class JacobVPU {
             CommGroup grp = new CommGroup(false);
             CommSend send = new CommSend(chnl, method, args);
             grp.add(send);
-            _executionQueue.add(grp);
+            submit(grp);
             return replyChannel;
         }
 
         public Channel newChannel(Class channelType, String creator, String description) {
             CommChannel chnl = new CommChannel(channelType);
             chnl.setDescription(description);
-            _executionQueue.add(chnl);
+            submit(chnl);
 
             Channel ret = ChannelFactory.createChannel(chnl, channelType);
             if (__log.isTraceEnabled())
                 __log.trace(_cycle + ": new " + ret);
 
-            _statistics.channelsCreated++;
+            _stats.channelsCreated++;
             return ret;
         }
 
@@ -361,12 +687,28 @@ public final class JacobVPU {
             if (__log.isTraceEnabled()) {
                 __log.trace(_cycle + ": export<" + channel + ">");
             }
-            CommChannel chnl = (CommChannel) ChannelFactory.getBackend(channel);
+            final CommChannel chnl = (CommChannel) ChannelFactory.getBackend(channel);
+            if (_batch != null) {
+                return (String) _batch.call(this, true, new Callable<Object>() {
+                    public Object call() {
+                        return _executionQueue.createExport(chnl);
+                    }
+                });
+            }
             return _executionQueue.createExport(chnl);
         }
 
-        public Channel importChannel(String channelId, Class channelType) {
-            CommChannel cframe = _executionQueue.consumeExport(channelId);
+        public Channel importChannel(final String channelId, Class channelType) {
+            CommChannel cframe;
+            if (_batch != null) {
+                cframe = (CommChannel) _batch.call(this, true, new Callable<Object>() {
+                    public Object call() {
+                        return _executionQueue.consumeExport(channelId);
+                    }
+                });
+            } else {
+                cframe = _executionQueue.consumeExport(channelId);
+            }
             return ChannelFactory.createChannel(cframe, channelType);
         }
 
@@ -385,7 +727,7 @@ public final class JacobVPU {
                 __log.debug(msg.toString());
             }
 
-            _statistics.numContinuations++;
+            _stats.numContinuations++;
 
             CommGroup grp = new CommGroup(replicate);
             for (int i = 0; i < ml.length; ++i) {
@@ -396,7 +738,7 @@ public final class JacobVPU {
                 CommRecv recv = new CommRecv(chnl, ml[i]);
                 grp.add(recv);
             }
-            _executionQueue.add(grp);
+            submit(grp);
         }
 
         public void object(boolean replicate, ChannelListener methodList)
@@ -423,7 +765,62 @@ public final class JacobVPU {
         */
 
         public Object getExtension(Class extensionClass) {
-            return _extensions.get(extensionClass);
+            Object extension = _extensions.get(extensionClass);
+            if (_batch != null && extension != null && extensionClass.isInterface()) {
+                // Run the calls on the thread that owns the VPU.
+                return Proxy.newProxyInstance(extensionClass.getClassLoader(), new Class[] { extensionClass },
+                        new ExtensionCall(this, extension));
+            }
+            return extension;
+        }
+
+        /**
+         * Apply an effect on the execution queue, or buffer it when reducing in a batch.
+         */
+        private void submit(Object effect) {
+            if (_buffer != null) {
+                _buffer.add(effect);
+            } else {
+                apply(effect);
+            }
+        }
+
+        private void apply(Object effect) {
+            if (effect instanceof CommChannel) {
+                _executionQueue.add((CommChannel) effect);
+            } else if (effect instanceof CommGroup) {
+                _executionQueue.add((CommGroup) effect);
+            } else {
+                _executionQueue.enqueueReaction((Continuation) effect);
+                ++_statistics.runQueueEntries;
+            }
+        }
+
+        /**
+         * Apply the buffered effects on the execution queue, and add the counters to those of the VPU.
+         */
+        void flushBuffer() {
+            for (Object effect : _buffer) {
+                apply(effect);
+            }
+            _buffer.clear();
+            _statistics.add(_stats);
+            _stats.reset();
+        }
+
+        /**
+         * Reduce as part of a batch, recording the outcome.
+         */
+        void reduce() {
+            try {
+                run();
+            } catch (RuntimeException re) {
+                _failure = re;
+            } catch (Error e) {
+                _failure = new RuntimeException(e);
+            } finally {
+                _batch.done(this);
+            }
         }
 
         public void run() {
@@ -446,9 +843,11 @@ public final class JacobVPU {
                 synchChannel = null;
             }
             stackThread();
-            long ctime = System.currentTimeMillis();
+            long ctime = _statisticsEnabled ? System.nanoTime() : 0;
             try {
-                _method.invoke(_methodBody, args);
+                if (!__generatedDispatch || !dispatch(args)) {
+                    _method.invoke(_methodBody, args);
+                }
                 if (synchChannel != null) {
                     synchChannel.ret();
                 }
@@ -463,17 +862,40 @@ public final class JacobVPU {
                 __log.error(msg, e.getTargetException());
                 throw new RuntimeException(e.getTargetException());
             } finally {
-                ctime = System.currentTimeMillis() - ctime;
-                _statistics.totalClientTimeMs += ctime;
+                if (_statisticsEnabled) {
+                    _stats.totalClientTimeNs += System.nanoTime() - ctime;
+                }
                 unstackThread();
             }
         }
 
+        /**
+         * Invoke the method directly: reductions of {@link JacobRunnable}s are plain calls, and channel
+         * methods go through the listener's generated {@link ChannelListener#dispatch(Method, Object[])}.
+         *
+         * @return <code>true</code> if the method was invoked, <code>false</code> if it needs reflection
+         */
+        private boolean dispatch(Object[] args) throws InvocationTargetException {
+            try {
+                if (_methodBody instanceof JacobRunnable && args.length == 0 && _method.getName().equals("run")) {
+                    ((JacobRunnable) _methodBody).run();
+                    return true;
+                }
+                if (_methodBody instanceof ChannelListener) {
+                    return ((ChannelListener) _methodBody).dispatch(_method, args);
+                }
+                return false;
+            } catch (Throwable t) {
+                // Same treatment as a failure of the reflective call.
+                throw new InvocationTargetException(t);
+            }
+        }
+
         public String toString() {
             return "PT[ " + _methodBody + " ]";
         }
 
-        private void stackThread() {
+        void stackThread() {
             Stack<JacobThread> currStack = __activeJacobThread.get();
             if (currStack == null) {
                 currStack = new Stack<JacobThread>();
@@ -482,11 +904,290 @@ public final class JacobVPU {
             currStack.push(this);
         }
 
-        private JacobThread unstackThread() {
+        JacobThread unstackThread() {
             Stack<JacobThread> currStack = __activeJacobThread.get();
             assert currStack != null;
             return currStack.pop();
         }
     }
 
+    /**
+     * Continuations reduced in parallel. The thread calling {@link JacobVPU#execute()} hands the reductions over
+     * to the executor, then serves their calls (see {@link #call}) and applies their effects on the execution
+     * queue, in order, as they complete. Every effect goes through this ordered merge, including those of the
+     * reductions the executor rejects, which are run by the owner thread when their turn to be merged comes.
+     */
+    private final class Batch {
+        private final Thread _owner = Thread.currentThread();
+
+        private final JacobThreadImpl[] _threads;
+
+        /** Pending calls; guarded by this. */
+        private final LinkedList<Call> _calls = new LinkedList<Call>();
+
+        /** Number of threads whose effects have been applied; guarded by this. */
+        private int _merged;
+
+        /** Failure of the first failed reduction; only used by the owner thread. */
+        private RuntimeException _fault;
+
+        private boolean _interrupted;
+
+        Batch(List<Continuation> continuations) {
+            _threads = new JacobThreadImpl[continuations.size()];
+            for (int i = 0; i < _threads.length; ++i) {
+                JacobThreadImpl jt;
+                if (_batchThreads.isEmpty()) {
+                    jt = new JacobThreadImpl();
+                    jt._buffer = new ArrayList<Object>();
+                    jt._stats = new Statistics();
+                } else {
+                    jt = _batchThreads.remove(_batchThreads.size() - 1);
+                }
+                jt.init(continuations.get(i));
+                jt._batch = this;
+                _threads[i] = jt;
+            }
+        }
+
+        /**
+         * Run the reductions and apply their effects.
+         *
+         * @return the failure of the first failed reduction, <code>null</code> if they all succeeded
+         */
+        RuntimeException run() {
+            for (final JacobThreadImpl jt : _threads) {
+                try {
+                    _reductionExecutor.execute(new Runnable() {
+                        public void run() {
+                            jt.reduce();
+                        }
+                    });
+                } catch (RejectedExecutionException ree) {
+                    jt._inline = true;
+                }
+            }
+            serve(null);
+            if (_interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return _fault;
+        }
+
+        /**
+         * Serve the calls of the reductions and merge their effects in order, on the owner thread, until all the
+         * reductions before the given one (all of them if <code>null</code>) have been merged.
+         */
+        private void serve(JacobThreadImpl until) {
+            while (true) {
+                Call call = null;
+                JacobThreadImpl completed = null;
+                JacobThreadImpl inline = null;
+                synchronized (this) {
+                    while (_merged < _threads.length && _threads[_merged] != until
+                            && call == null && completed == null && inline == null) {
+                        call = nextCall();
+                        if (call == null) {
+                            JacobThreadImpl next = _threads[_merged];
+                            if (next._done) {
+                                completed = next;
+                                ++_merged;
+                            } else if (next._inline) {
+                                // All the previous reductions are merged, its effects come next.
+                                next._inline = false;
+                                inline = next;
+                            } else {
+                                try {
+                                    wait();
+                                } catch (InterruptedException ie) {
+                                    // The reductions can't be abandoned half way.
+                                    _interrupted = true;
+                                }
+                            }
+                        }
+                    }
+                }
+                if (call != null) {
+                    call.execute();
+                } else if (inline != null) {
+                    inline.reduce();
+                } else if (completed != null) {
+                    if (_fault == null) {
+                        _fault = completed._failure;
+                    }
+                    if (_fault == null) {
+                        completed.flushBuffer();
+                    }
+                } else {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Next call to serve: calls that depend on the order of the reductions are only served once the
+         * effects of all the previous reductions have been applied.
+         */
+        private Call nextCall() {
+            for (Iterator<Call> i = _calls.iterator(); i.hasNext();) {
+                Call call = i.next();
+                if (!call.ordered || (_merged < _threads.length && call.thread == _threads[_merged])) {
+                    i.remove();
+                    return call;
+                }
+            }
+            return null;
+        }
+
+        synchronized void done(JacobThreadImpl jt) {
+            jt._done = true;
+            notifyAll();
+        }
+
+        /**
+         * Hand the thread objects back to the VPU for the next batches.
+         */
+        void release() {
+            for (JacobThreadImpl jt : _threads) {
+                jt.init(null);
+                jt._batch = null;
+                jt._done = false;
+                jt._inline = false;
+                jt._failure = null;
+                jt._buffer.clear();
+                jt._stats.reset();
+                _batchThreads.add(jt);
+            }
+        }
+
+        /**
+         * Run an action on the thread that owns the VPU, on behalf of a reduction.
+         *
+         * @param ordered whether the action depends on the effects of the previous reductions and of the
+         *                calling reduction so far
+         */
+        Object call(JacobThreadImpl jt, boolean ordered, Callable<Object> action) {
+            Call call = new Call(jt, ordered, action);
+            if (Thread.currentThread() == _owner) {
+                // A reduction run by the owner thread, or an extension calling back into the VPU: the owner
+                // can't wait for itself, it merges the previous reductions first instead.
+                if (ordered) {
+                    serve(jt);
+                }
+                call.execute();
+            } else {
+                boolean interrupted = false;
+                synchronized (this) {
+                    _calls.add(call);
+                    notifyAll();
+                    while (!call.done) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ie) {
+                            interrupted = true;
+                        }
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (call.failure instanceof RuntimeException) {
+                throw (RuntimeException) call.failure;
+            }
+            if (call.failure instanceof Error) {
+                throw (Error) call.failure;
+            }
+            if (call.failure != null) {
+                throw new RuntimeException(call.failure);
+            }
+            return call.result;
+        }
+
+        private final class Call {
+            final JacobThreadImpl thread;
+
+            final boolean ordered;
+
+            final Callable<Object> action;
+
+            Object result;
+
+            Throwable failure;
+
+            /** Guarded by the batch. */
+            boolean done;
+
+            Call(JacobThreadImpl thread, boolean ordered, Callable<Object> action) {
+                this.thread = thread;
+                this.ordered = ordered;
+                this.action = action;
+            }
+
+            /**
+             * Run the action, as the calling reduction.
+             */
+            void execute() {
+                if (ordered) {
+                    thread.flushBuffer();
+                }
+                thread.stackThread();
+                try {
+                    result = action.call();
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    thread.unstackThread();
+                }
+                synchronized (Batch.this) {
+                    done = true;
+                    Batch.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Extension handed out to the reductions of a batch: calls are carried out on the thread that owns the VPU.
+     */
+    private static final class ExtensionCall implements InvocationHandler {
+        private final JacobThreadImpl _thread;
+
+        private final Object _extension;
+
+        ExtensionCall(JacobThreadImpl thread, Object extension) {
+            _thread = thread;
+            _extension = extension;
+        }
+
+        public Object invoke(Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(_extension, args);
+            }
+            try {
+                return _thread._batch.call(_thread, false, new Callable<Object>() {
+                    public Object call() throws Exception {
+                        try {
+                            return method.invoke(_extension, args);
+                        } catch (InvocationTargetException ite) {
+                            throw new ExtensionException(ite.getTargetException());
+                        }
+                    }
+                });
+            } catch (ExtensionException ee) {
+                throw ee.getCause();
+            }
+        }
+    }
+
+    /**
+     * Carries the exception thrown by an extension back to the calling reduction.
+     */
+    private static final class ExtensionException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ExtensionException(Throwable cause) {
+            super(cause);
+        }
+    }
 }
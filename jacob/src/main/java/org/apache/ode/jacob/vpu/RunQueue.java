@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * First-in first-out queue over a circular array. The iterator, in queue order, does not support removal.
+ */
+class RunQueue<E> extends AbstractQueue<E> {
+    private Object[] _elements = new Object[16];
+
+    /** Index of the head element. */
+    private int _head;
+
+    private int _size;
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (_size == _elements.length) {
+            Object[] elements = new Object[_elements.length * 2];
+            for (int i = 0; i < _size; ++i) {
+                elements[i] = _elements[(_head + i) & (_elements.length - 1)];
+            }
+            _elements = elements;
+            _head = 0;
+        }
+        _elements[(_head + _size) & (_elements.length - 1)] = e;
+        ++_size;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        if (_size == 0) {
+            return null;
+        }
+        E e = (E) _elements[_head];
+        _elements[_head] = null;
+        _head = (_head + 1) & (_elements.length - 1);
+        --_size;
+        return e;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return _size == 0 ? null : (E) _elements[_head];
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < _size; ++i) {
+            _elements[(_head + i) & (_elements.length - 1)] = null;
+        }
+        _head = 0;
+        _size = 0;
+    }
+
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int _i;
+
+            public boolean hasNext() {
+                return _i < _size;
+            }
+
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (_i >= _size) {
+                    throw new NoSuchElementException();
+                }
+                return (E) _elements[(_head + _i++) & (_elements.length - 1)];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
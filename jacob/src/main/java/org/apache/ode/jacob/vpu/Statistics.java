@@ -33,8 +33,8 @@ public class Statistics {
   /** Number of VPU cycles. */
   public long numCycles;
 
-  /** Total VPU run time (in ms). */
-  public long totalRunTimeMs;
+  /** Total VPU run time (in ns), measured only when statistics are enabled on the VPU. */
+  public long totalRunTimeNs;
 
   /** Number of channels created. */
   public long channelsCreated;
@@ -60,11 +60,11 @@ public class Statistics {
   /** Total number of structural reductions. */
   public long numReductionsStruct;
 
-  /** Total time spent in client code (in ms). */
-  public long totalClientTimeMs;
+  /** Total time spent in client code (in ns), measured only when statistics are enabled on the VPU. */
+  public long totalClientTimeNs;
 
   /**
-   * Total time spent in each {@link org.apache.ode.jacob.JavaMethodBody} method.
+   * Run time of the reductions of each closure class, measured only when statistics are enabled on the VPU.
    */
   public final Map<String, PerTargetStatistics> byTarget = new HashMap<String, PerTargetStatistics>();
 
@@ -73,8 +73,8 @@ public class Statistics {
    *
    * @return DOCUMENTME
    */
-  public double getAvgClientTimeMs() {
-    return (double)totalClientTimeMs / (double)numCycles;
+  public double getAvgClientTimeNs() {
+    return (double)totalClientTimeNs / (double)numCycles;
   }
 
   /**
@@ -91,8 +91,8 @@ public class Statistics {
    *
    * @return DOCUMENTME
    */
-  public double getAvgKernelTimeMs() {
-    return (double)getKernelTimeMs() / (double)numCycles;
+  public double getAvgKernelTimeNs() {
+    return (double)getKernelTimeNs() / (double)numCycles;
   }
 
   /**
@@ -100,8 +100,8 @@ public class Statistics {
    *
    * @return DOCUMENTME
    */
-  public double getAvgRunTimeMs() {
-    return (double)totalRunTimeMs / (double)numCycles;
+  public double getAvgRunTimeNs() {
+    return (double)totalRunTimeNs / (double)numCycles;
   }
 
   /**
@@ -109,22 +109,67 @@ public class Statistics {
    *
    * @return DOCUMENTME
    */
-  public long getKernelTimeMs() {
-    return totalRunTimeMs - totalClientTimeMs;
+  public long getKernelTimeNs() {
+    return totalRunTimeNs - totalClientTimeNs;
   }
 
   /**
    * DOCUMENTME
    *
    * @param target DOCUMENTME
-   * @param runTimeMs DOCUMENTME
+   * @param runTimeNs DOCUMENTME
    */
-  public void incRunTime(String target, long runTimeMs) {
+  public void incRunTime(String target, long runTimeNs) {
     PerTargetStatistics pts = target(target);
     ++pts.invocations;
-    pts.totalRunTimeMs += runTimeMs;
-    pts.minRunTimeMs = Math.min(pts.minRunTimeMs, runTimeMs);
-    pts.maxRunTimeMs = Math.max(pts.maxRunTimeMs, runTimeMs);
+    pts.totalRunTimeNs += runTimeNs;
+    pts.minRunTimeNs = Math.min(pts.minRunTimeNs, runTimeNs);
+    pts.maxRunTimeNs = Math.max(pts.maxRunTimeNs, runTimeNs);
+  }
+
+  /**
+   * Add the counters of other statistics to these.
+   *
+   * @param other statistics to add
+   */
+  public void add(Statistics other) {
+    numCycles += other.numCycles;
+    totalRunTimeNs += other.totalRunTimeNs;
+    channelsCreated += other.channelsCreated;
+    messagesSent += other.messagesSent;
+    messagesRcvd += other.messagesRcvd;
+    numContinuations += other.numContinuations;
+    totalContinuationBytes += other.totalContinuationBytes;
+    runQueueEntries += other.runQueueEntries;
+    numReductionsComm += other.numReductionsComm;
+    numReductionsStruct += other.numReductionsStruct;
+    totalClientTimeNs += other.totalClientTimeNs;
+    for (Map.Entry<String, PerTargetStatistics> entry : other.byTarget.entrySet()) {
+      PerTargetStatistics pts = target(entry.getKey());
+      PerTargetStatistics o = entry.getValue();
+      pts.invocations += o.invocations;
+      pts.totalRunTimeNs += o.totalRunTimeNs;
+      pts.minRunTimeNs = Math.min(pts.minRunTimeNs, o.minRunTimeNs);
+      pts.maxRunTimeNs = Math.max(pts.maxRunTimeNs, o.maxRunTimeNs);
+    }
+  }
+
+  /**
+   * Reset all the counters, e.g. once they have been aggregated elsewhere.
+   */
+  public void reset() {
+    numCycles = 0;
+    totalRunTimeNs = 0;
+    channelsCreated = 0;
+    messagesSent = 0;
+    messagesRcvd = 0;
+    numContinuations = 0;
+    totalContinuationBytes = 0;
+    runQueueEntries = 0;
+    numReductionsComm = 0;
+    numReductionsStruct = 0;
+    totalClientTimeNs = 0;
+    byTarget.clear();
   }
 
   /**
@@ -179,18 +224,18 @@ public class Statistics {
 
   public static final class PerTargetStatistics {
     public long invocations;
-    public long totalRunTimeMs;
-    public long minRunTimeMs = Long.MAX_VALUE;
-    public long maxRunTimeMs = Long.MIN_VALUE;
+    public long totalRunTimeNs;
+    public long minRunTimeNs = Long.MAX_VALUE;
+    public long maxRunTimeNs = Long.MIN_VALUE;
 
     public double getAvgRunTimePerInvocation() {
-      return (double)totalRunTimeMs / (double)invocations;
+      return (double)totalRunTimeNs / (double)invocations;
     }
 
     public String toString() {
-      return "(n=" + invocations + ", total=" + totalRunTimeMs + "ms, avg="
-             + getAvgRunTimePerInvocation() + "ms, min=" + minRunTimeMs
-             + "ms, max=" + maxRunTimeMs + "ms)";
+      return "(n=" + invocations + ", total=" + totalRunTimeNs + "ns, avg="
+             + getAvgRunTimePerInvocation() + "ns, min=" + minRunTimeNs
+             + "ns, max=" + maxRunTimeNs + "ns)";
     }
   }
 }
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+import junit.framework.TestCase;
+import org.apache.ode.jacob.Channel;
+import org.apache.ode.jacob.JacobRunnable;
+import org.apache.ode.jacob.ValChannel;
+import org.apache.ode.jacob.ValChannelListener;
+import org.apache.ode.jacob.examples.cell.CELL_;
+import org.apache.ode.jacob.examples.cell.CellChannel;
+import org.apache.ode.jacob.examples.eratosthenes.Sieve;
+import org.apache.ode.jacob.soup.CommChannel;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Tests the generated channel proxies and listener dispatch against the reflective path. The {@link #main}
+ * method times both paths on the cell and sieve examples:
+ * <pre>
+ * java org.apache.ode.jacob.vpu.ChannelDispatchTest [iterations]
+ * </pre>
+ */
+public class ChannelDispatchTest extends TestCase {
+    private static Object _val;
+
+    private static Channel _channel;
+
+    public void testGeneratedProxy() throws Exception {
+        runCell(true);
+        assertTrue(_channel instanceof ChannelProxy);
+        assertEquals("foo", _val);
+    }
+
+    public void testReflectiveProxy() throws Exception {
+        runCell(false);
+        assertFalse(_channel instanceof ChannelProxy);
+        assertEquals("foo", _val);
+    }
+
+    public void testMixedEquality() throws Exception {
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(getClass().getClassLoader());
+        CommChannel backend = new CommChannel(ValChannel.class);
+        soup.add(backend);
+        boolean generated = JacobVPU.isGeneratedDispatch();
+        try {
+            JacobVPU.setGeneratedDispatch(true);
+            Channel generatedProxy = ChannelFactory.createChannel(backend, ValChannel.class);
+            JacobVPU.setGeneratedDispatch(false);
+            Channel dynamicProxy = ChannelFactory.createChannel(backend, ValChannel.class);
+            assertTrue(generatedProxy.equals(dynamicProxy));
+            assertTrue(dynamicProxy.equals(generatedProxy));
+            assertEquals(generatedProxy.hashCode(), dynamicProxy.hashCode());
+        } finally {
+            JacobVPU.setGeneratedDispatch(generated);
+        }
+    }
+
+    private static int runCell(boolean generated) {
+        boolean previous = JacobVPU.isGeneratedDispatch();
+        JacobVPU.setGeneratedDispatch(generated);
+        try {
+            _val = null;
+            JacobVPU vpu = new JacobVPU(new ExecutionQueueImpl(null), new CellRead());
+            int cycles = 0;
+            while (vpu.execute())
+                ++cycles;
+            return cycles;
+        } finally {
+            JacobVPU.setGeneratedDispatch(previous);
+        }
+    }
+
+    private static int runSieve(boolean generated, int cycles) {
+        boolean previous = JacobVPU.isGeneratedDispatch();
+        JacobVPU.setGeneratedDispatch(generated);
+        try {
+            JacobVPU vpu = new JacobVPU(new ExecutionQueueImpl(null), new Sieve());
+            int i = 0;
+            while (i < cycles && vpu.execute())
+                ++i;
+            return i;
+        } finally {
+            JacobVPU.setGeneratedDispatch(previous);
+        }
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        PrintStream out = System.out;
+        // The sieve prints every prime it finds.
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+        try {
+            for (int round = 0; round < 3; ++round) {
+                for (boolean generated : new boolean[] { false, true }) {
+                    long start = System.nanoTime();
+                    long cycles = 0;
+                    for (int i = 0; i < iterations; ++i)
+                        cycles += runCell(generated);
+                    long cell = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    long sieveCycles = runSieve(generated, iterations * 5);
+                    long sieve = System.nanoTime() - start;
+
+                    out.println((generated ? "generated " : "reflective") + " cell: " + (cell / cycles)
+                            + " ns/cycle, sieve: " + (sieve / sieveCycles) + " ns/cycle");
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    static class CellRead extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        public void run() {
+            CellChannel cellChannel = newChannel(CellChannel.class, "cell");
+            ValChannel retChannel = newChannel(ValChannel.class, "val");
+            _channel = cellChannel;
+
+            instance(new CELL_<String>(cellChannel, "foo"));
+            object(new ValChannelListener(retChannel) {
+                private static final long serialVersionUID = 1L;
+
+                public void val(Object retVal) {
+                    _val = retVal;
+                }
+            });
+            cellChannel.read(retChannel);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+import junit.framework.TestCase;
+import org.apache.ode.jacob.Channel;
+import org.apache.ode.jacob.JacobRunnable;
+import org.apache.ode.jacob.ValChannel;
+import org.apache.ode.jacob.ValChannelListener;
+import org.apache.ode.jacob.examples.cell.CELL_;
+import org.apache.ode.jacob.examples.cell.CellChannel;
+import org.apache.ode.jacob.soup.CommChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests the persistence of the {@link ExecutionQueueImpl}: the soup is written and read back into a fresh
+ * queue after every VPU cycle, with each of the supported compressions.
+ */
+public class ExecutionQueueImplTest extends TestCase {
+    private static Object _val;
+
+    private static List<Integer> _ids;
+
+    private static List<String> _fired;
+
+    public void testRoundTripNone() throws Exception {
+        roundTrip(ExecutionQueueImpl.Compression.NONE);
+    }
+
+    public void testRoundTripFast() throws Exception {
+        roundTrip(ExecutionQueueImpl.Compression.FAST);
+    }
+
+    public void testRoundTripGzip() throws Exception {
+        roundTrip(ExecutionQueueImpl.Compression.GZIP);
+    }
+
+    public void testCompactHeader() throws Exception {
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(getClass().getClassLoader());
+        new JacobVPU(soup, new CellRead());
+        byte[] state = write(soup, ExecutionQueueImpl.Compression.NONE);
+        assertEquals('J', state[0]);
+        assertEquals('Q', state[1]);
+        assertEquals(4, state[2]);
+        assertEquals(0, state[3]);
+    }
+
+    public void testDeltaReplay() throws Exception {
+        _val = null;
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(getClass().getClassLoader());
+        JacobVPU vpu = new JacobVPU(soup, new CellRead());
+        byte[] base = write(soup, ExecutionQueueImpl.Compression.NONE);
+        List<byte[]> deltas = new ArrayList<byte[]>();
+        int cycles = 0;
+        while (vpu.execute()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            soup.writeDelta(bos);
+            deltas.add(bos.toByteArray());
+            assertEquals(0, soup.getDirtyChannelCount());
+
+            soup = new ExecutionQueueImpl(getClass().getClassLoader());
+            soup.read(new ByteArrayInputStream(base));
+            for (byte[] delta : deltas)
+                soup.readDelta(new ByteArrayInputStream(delta));
+            vpu.setContext(soup);
+            ++cycles;
+        }
+        assertTrue(cycles > 1);
+        assertEquals("foo", _val);
+        assertTrue(soup.isComplete());
+    }
+
+    public void testGroupsKeepChannelIds() throws Exception {
+        _ids = new ArrayList<Integer>();
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(getClass().getClassLoader());
+        JacobVPU vpu = new JacobVPU(soup, new ChannelsAroundGroup());
+        while (vpu.execute()) {
+            byte[] state = write(soup, ExecutionQueueImpl.Compression.NONE);
+            soup = new ExecutionQueueImpl(getClass().getClassLoader());
+            soup.read(new ByteArrayInputStream(state));
+            vpu.setContext(soup);
+        }
+        // Channels are numbered consecutively, whatever the groups created in between or the soup round trips.
+        assertEquals(3, _ids.size());
+        assertEquals(_ids.get(0).intValue() + 1, _ids.get(1).intValue());
+        assertEquals(_ids.get(1).intValue() + 1, _ids.get(2).intValue());
+    }
+
+    public void testNullDescription() throws Exception {
+        _val = null;
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(getClass().getClassLoader());
+        JacobVPU vpu = new JacobVPU(soup, new LegacyCellRead());
+        vpu.execute();
+        soup = read(write(soup, ExecutionQueueImpl.Compression.NONE));
+        assertEquals("cell", soup.getChannelDescription(Integer.valueOf(1)));
+        assertNull(soup.getChannelDescription(Integer.valueOf(2)));
+    }
+
+    /**
+     * The soup of the legacy-cell.soup fixture was written by the legacy implementation after the first
+     * cycle of {@link LegacyCellRead}, which numbered the cell channel 1 and the result channel 2.
+     */
+    public void testReadLegacy() throws Exception {
+        _val = null;
+        _ids = new ArrayList<Integer>();
+        ExecutionQueueImpl soup = readLegacy("legacy-cell.soup", new ExecutionQueueImpl(getClass().getClassLoader()));
+        assertEquals("cell", soup.getChannelDescription(Integer.valueOf(1)));
+        // The legacy format wrote null descriptions as empty strings.
+        assertEquals("", soup.getChannelDescription(Integer.valueOf(2)));
+
+        JacobVPU vpu = new JacobVPU(soup);
+        while (vpu.execute()) {
+            soup = read(write(soup, ExecutionQueueImpl.Compression.FAST));
+            vpu.setContext(soup);
+        }
+        assertEquals("foo", _val);
+        assertTrue(soup.isComplete());
+        // Channels created after reading the legacy soup carry on from its numbering.
+        assertEquals(Collections.singletonList(Integer.valueOf(3)), _ids);
+    }
+
+    /**
+     * The soup of the legacy-pick.soup fixture was written by the legacy implementation after the first cycle
+     * of {@link LegacyPick}. The deltas written on top of it are replayed on re-reads of that state, by either
+     * queue implementation, with the comm groups of the legacy state numbered alike each time.
+     */
+    public void testLegacyDeltaReplay() throws Exception {
+        _fired = new ArrayList<String>();
+        ExecutionQueueImpl soup = readLegacy("legacy-pick.soup", new ExecutionQueueImpl(getClass().getClassLoader()));
+        JacobVPU vpu = new JacobVPU(soup);
+        List<byte[]> deltas = new ArrayList<byte[]>();
+        int cycles = 0;
+        while (vpu.execute()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            soup.writeDelta(bos);
+            deltas.add(bos.toByteArray());
+
+            soup = readLegacy("legacy-pick.soup", cycles++ % 2 == 0
+                    ? new FastExecutionQueueImpl(getClass().getClassLoader())
+                    : new ExecutionQueueImpl(getClass().getClassLoader()));
+            for (byte[] delta : deltas)
+                soup.readDelta(new ByteArrayInputStream(delta));
+            vpu.setContext(soup);
+        }
+        assertTrue(cycles > 1);
+        // y3, then one x, then the y of every other pick.
+        assertEquals(LegacyPick.PICKS, _fired.size());
+        assertTrue(_fired.contains("y3"));
+        for (int i = 0; i < LegacyPick.PICKS; ++i)
+            assertFalse("both branches of pick " + i, _fired.contains("x" + i) && _fired.contains("y" + i));
+    }
+
+    public void testDeltaRejectsSnapshot() throws Exception {
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(getClass().getClassLoader());
+        new JacobVPU(soup, new CellRead());
+        byte[] state = write(soup, ExecutionQueueImpl.Compression.NONE);
+        try {
+            soup.readDelta(new ByteArrayInputStream(state));
+            fail("Expected IOException");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    private void roundTrip(ExecutionQueueImpl.Compression compression) throws Exception {
+        _val = null;
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(getClass().getClassLoader());
+        JacobVPU vpu = new JacobVPU(soup, new CellRead());
+        int cycles = 0;
+        while (vpu.execute()) {
+            byte[] state = write(soup, compression);
+            soup = new ExecutionQueueImpl(getClass().getClassLoader());
+            soup.read(new ByteArrayInputStream(state));
+            vpu.setContext(soup);
+            ++cycles;
+        }
+        assertTrue(cycles > 1);
+        assertEquals("foo", _val);
+        assertTrue(soup.isComplete());
+    }
+
+    private ExecutionQueueImpl readLegacy(String fixture, ExecutionQueueImpl soup) throws Exception {
+        InputStream legacy = getClass().getResourceAsStream(fixture);
+        try {
+            soup.read(legacy);
+        } finally {
+            legacy.close();
+        }
+        return soup;
+    }
+
+    private ExecutionQueueImpl read(byte[] state) throws Exception {
+        ExecutionQueueImpl soup = new ExecutionQueueImpl(getClass().getClassLoader());
+        soup.read(new ByteArrayInputStream(state));
+        return soup;
+    }
+
+    private byte[] write(ExecutionQueueImpl soup, ExecutionQueueImpl.Compression compression) throws Exception {
+        soup.setCompression(compression);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        soup.write(bos);
+        bos.close();
+        return bos.toByteArray();
+    }
+
+    static int channelId(Channel channel) {
+        return ((Integer) ((CommChannel) ChannelFactory.getBackend(channel)).getId()).intValue();
+    }
+
+    static class ChannelsAroundGroup extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        public void run() {
+            ValChannel first = newChannel(ValChannel.class, "first");
+            _ids.add(Integer.valueOf(channelId(first)));
+            object(new ValChannelListener(first) {
+                private static final long serialVersionUID = 1L;
+
+                public void val(Object retVal) {
+                    ValChannel third = newChannel(ValChannel.class, "third");
+                    _ids.add(Integer.valueOf(channelId(third)));
+                }
+            });
+            ValChannel second = newChannel(ValChannel.class, "second");
+            _ids.add(Integer.valueOf(channelId(second)));
+            first.val("go");
+        }
+    }
+
+    /**
+     * Reads a cell into a channel without description, then creates a channel once the value is received.
+     */
+    static class LegacyCellRead extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        public void run() {
+            CellChannel cellChannel = newChannel(CellChannel.class, "cell");
+            ValChannel retChannel = newChannel(ValChannel.class, null);
+
+            instance(new CELL_<String>(cellChannel, "foo"));
+            object(new ValChannelListener(retChannel) {
+                private static final long serialVersionUID = 1L;
+
+                public void val(Object retVal) {
+                    _val = retVal;
+                    ValChannel after = newChannel(ValChannel.class, "after");
+                    if (_ids != null)
+                        _ids.add(Integer.valueOf(channelId(after)));
+                }
+            });
+            cellChannel.read(retChannel);
+        }
+    }
+
+    /**
+     * Picks between a shared channel x and a channel y of its own, in each of a few comm groups; the picks
+     * are then fired through y3, x, and the other ys, a cycle apart.
+     */
+    static class LegacyPick extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        static final int PICKS = 8;
+
+        public void run() {
+            ValChannel x = newChannel(ValChannel.class, "x");
+            ValChannel[] ys = new ValChannel[PICKS];
+            for (int i = 0; i < PICKS; ++i) {
+                ys[i] = newChannel(ValChannel.class, "y" + i);
+                object(false, new Fired(x, "x" + i).or(new Fired(ys[i], "y" + i)));
+            }
+            instance(new FirePicks(0, x, ys));
+        }
+    }
+
+    static class FirePicks extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        private int _step;
+
+        private ValChannel _x;
+
+        private ValChannel[] _ys;
+
+        FirePicks(int step, ValChannel x, ValChannel[] ys) {
+            _step = step;
+            _x = x;
+            _ys = ys;
+        }
+
+        public void run() {
+            if (_step == 0) {
+                _ys[3].val(null);
+            } else if (_step == 1) {
+                _x.val(null);
+            } else {
+                for (int i = 0; i < _ys.length; ++i) {
+                    if (i != 3)
+                        _ys[i].val(null);
+                }
+                return;
+            }
+            instance(new FirePicks(_step + 1, _x, _ys));
+        }
+    }
+
+    static class Fired extends ValChannelListener {
+        private static final long serialVersionUID = 1L;
+
+        private String _name;
+
+        Fired(ValChannel channel, String name) {
+            super(channel);
+            _name = name;
+        }
+
+        public void val(Object retVal) {
+            if (_fired != null)
+                _fired.add(_name);
+        }
+    }
+
+    static class CellRead extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        public void run() {
+            CellChannel cellChannel = newChannel(CellChannel.class, "cell");
+            ValChannel retChannel = newChannel(ValChannel.class, "val");
+
+            instance(new CELL_<String>(cellChannel, "foo"));
+            object(new ValChannelListener(retChannel) {
+                private static final long serialVersionUID = 1L;
+
+                public void val(Object retVal) {
+                    _val = retVal;
+                }
+            });
+            cellChannel.read(retChannel);
+        }
+    }
+}
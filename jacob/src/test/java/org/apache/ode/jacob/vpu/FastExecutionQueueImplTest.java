@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+import junit.framework.TestCase;
+import org.apache.ode.jacob.JacobRunnable;
+import org.apache.ode.jacob.ValChannel;
+import org.apache.ode.jacob.ValChannelListener;
+import org.apache.ode.jacob.examples.cell.CELL_;
+import org.apache.ode.jacob.examples.cell.CellChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests the {@link FastExecutionQueueImpl} and its int-keyed table and run queue.
+ */
+public class FastExecutionQueueImplTest extends TestCase {
+    private static Object _val;
+
+    public void testCell() throws Exception {
+        _val = null;
+        FastExecutionQueueImpl soup = new FastExecutionQueueImpl(getClass().getClassLoader());
+        JacobVPU vpu = new JacobVPU(soup, new CellRead());
+        while (vpu.execute())
+            ;
+        assertEquals("foo", _val);
+        assertTrue(soup.isComplete());
+    }
+
+    public void testInterchangeableFormat() throws Exception {
+        _val = null;
+        ExecutionQueueImpl soup = new FastExecutionQueueImpl(getClass().getClassLoader());
+        JacobVPU vpu = new JacobVPU(soup, new CellRead());
+        int cycles = 0;
+        while (vpu.execute()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            soup.write(bos);
+            // Alternate between the two implementations.
+            soup = (cycles++ % 2 == 0) ? new ExecutionQueueImpl(getClass().getClassLoader())
+                    : new FastExecutionQueueImpl(getClass().getClassLoader());
+            soup.read(new ByteArrayInputStream(bos.toByteArray()));
+            vpu.setContext(soup);
+        }
+        assertTrue(cycles > 1);
+        assertEquals("foo", _val);
+        assertTrue(soup.isComplete());
+    }
+
+    public void testIntHashMap() {
+        Random random = new Random(42);
+        IntHashMap<Integer> map = new IntHashMap<Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 20000; ++i) {
+            Integer key = random.nextInt(500) - 100;
+            Integer value = i;
+            switch (random.nextInt(3)) {
+            case 0:
+                assertEquals(expected.put(key, value), map.put(key, value));
+                break;
+            case 1:
+                assertEquals(expected.remove(key), map.remove(key));
+                break;
+            default:
+                assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertNull(map.get("1"));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.values().iterator().hasNext());
+    }
+
+    public void testRunQueueOrder() {
+        RunQueue<Integer> queue = new RunQueue<Integer>();
+        int head = 0;
+        int tail = 0;
+        for (int round = 0; round < 100; ++round) {
+            for (int i = 0; i < round % 7 + 3; ++i)
+                queue.offer(tail++);
+            for (int i = 0; i < round % 5 + 1 && head < tail; ++i)
+                assertEquals(Integer.valueOf(head++), queue.poll());
+            assertEquals(tail - head, queue.size());
+        }
+        int expected = head;
+        for (Integer i : queue)
+            assertEquals(Integer.valueOf(expected++), i);
+        queue.clear();
+        assertNull(queue.poll());
+    }
+
+    static class CellRead extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        public void run() {
+            CellChannel cellChannel = newChannel(CellChannel.class, "cell");
+            ValChannel retChannel = newChannel(ValChannel.class, "val");
+
+            instance(new CELL_<String>(cellChannel, "foo"));
+            object(new ValChannelListener(retChannel) {
+                private static final long serialVersionUID = 1L;
+
+                public void val(Object retVal) {
+                    _val = retVal;
+                }
+            });
+            cellChannel.read(retChannel);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.jacob.vpu;
+
+import junit.framework.TestCase;
+import org.apache.ode.jacob.JacobRunnable;
+import org.apache.ode.jacob.ValChannel;
+import org.apache.ode.jacob.ValChannelListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests the parallel reduction of independent continuations.
+ */
+public class ParallelReductionTest extends TestCase {
+    private static final int BRANCHES = 40;
+
+    private static final AtomicLong _total = new AtomicLong();
+
+    private static final AtomicInteger _received = new AtomicInteger();
+
+    /** Export of the result channel of each branch, which depends on the order the effects are applied in. */
+    private static final Map<Integer, String> _exports = new ConcurrentHashMap<Integer, String>();
+
+    private static Thread _owner;
+
+    private static volatile boolean _foreignCall;
+
+    private ExecutorService _executor;
+
+    protected void setUp() throws Exception {
+        _executor = Executors.newFixedThreadPool(4);
+    }
+
+    protected void tearDown() throws Exception {
+        _executor.shutdown();
+    }
+
+    public void testSequential() throws Exception {
+        assertEquals(expectedTotal(), run(null, 1));
+    }
+
+    public void testParallel() throws Exception {
+        assertEquals(expectedTotal(), run(new ExecutionQueueImpl(null), 8));
+    }
+
+    public void testParallelFifo() throws Exception {
+        assertEquals(expectedTotal(), run(new FastExecutionQueueImpl(null), 8));
+    }
+
+    public void testDeterministicMerge() throws Exception {
+        run(new FastExecutionQueueImpl(null), 1);
+        Map<Integer, String> sequential = new TreeMap<Integer, String>(_exports);
+        assertEquals(BRANCHES, sequential.size());
+        for (int i = 0; i < 5; ++i) {
+            run(new FastExecutionQueueImpl(null), 8);
+            assertEquals(sequential, new TreeMap<Integer, String>(_exports));
+        }
+    }
+
+    public void testPersistAcrossBatches() throws Exception {
+        reset();
+        ExecutionQueueImpl soup = new FastExecutionQueueImpl(getClass().getClassLoader());
+        JacobVPU vpu = newVPU(soup, 8);
+        while (vpu.execute()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            soup.write(bos);
+            soup = new FastExecutionQueueImpl(getClass().getClassLoader());
+            soup.read(new ByteArrayInputStream(bos.toByteArray()));
+            vpu.setContext(soup);
+        }
+        assertEquals(BRANCHES, _received.get());
+        assertEquals(expectedTotal(), _total.get());
+        assertTrue(soup.isComplete());
+    }
+
+    private long run(ExecutionQueueImpl soup, int batchSize) {
+        reset();
+        if (soup == null) {
+            soup = new ExecutionQueueImpl(null);
+        }
+        JacobVPU vpu = newVPU(soup, batchSize);
+        int executions = 0;
+        while (vpu.execute())
+            ++executions;
+        if (batchSize > 1)
+            assertTrue("No batch was reduced", executions < vpu.getStatistics().numCycles);
+        assertEquals(BRANCHES, _received.get());
+        assertFalse("Extension called from a reduction thread", _foreignCall);
+        assertTrue(soup.isComplete());
+        return _total.get();
+    }
+
+    private JacobVPU newVPU(ExecutionQueueImpl soup, int batchSize) {
+        JacobVPU vpu = new JacobVPU(soup, new Fanout());
+        vpu.setParallelReduction(_executor, batchSize);
+        vpu.registerExtension(Recorder.class, new Recorder() {
+            public int record(int value) {
+                if (Thread.currentThread() != _owner)
+                    _foreignCall = true;
+                return value;
+            }
+        });
+        return vpu;
+    }
+
+    private static void reset() {
+        _total.set(0);
+        _received.set(0);
+        _exports.clear();
+        _foreignCall = false;
+        _owner = Thread.currentThread();
+    }
+
+    private static long expectedTotal() {
+        long total = 0;
+        for (int i = 0; i < BRANCHES; ++i)
+            total += square(i);
+        return total;
+    }
+
+    private static long square(int i) {
+        return (long) i * i;
+    }
+
+    public interface Recorder {
+        int record(int value);
+    }
+
+    static class Fanout extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        public void run() {
+            for (int i = 0; i < BRANCHES; ++i) {
+                ValChannel result = newChannel(ValChannel.class, "result" + i);
+                instance(new Square(i, result));
+                object(new ValChannelListener(result) {
+                    private static final long serialVersionUID = 1L;
+
+                    public void val(Object retVal) {
+                        _total.addAndGet((Long) retVal);
+                        _received.incrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+
+    static class Square extends JacobRunnable {
+        private static final long serialVersionUID = 1L;
+
+        private final int _i;
+
+        private final ValChannel _result;
+
+        Square(int i, ValChannel result) {
+            _i = i;
+            _result = result;
+        }
+
+        public void run() {
+            int i = ((Recorder) getExtension(Recorder.class)).record(_i);
+            // Round trip through an export, which is applied in order.
+            String export = _result.export();
+            _exports.put(_i, export);
+            ValChannel result = importChannel(export, ValChannel.class);
+            result.val(square(i));
+        }
+    }
+}
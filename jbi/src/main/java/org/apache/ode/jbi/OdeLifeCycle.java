@@ -78,6 +78,8 @@ public class OdeLifeCycle implements ComponentLifeCycle {
 
     private ObjectName _mbeanName;
 
+    private ObjectName _statsMBeanName;
+
     ServiceUnitManager getSUManager() {
         return _suManager;
     }
@@ -237,6 +239,7 @@ public class OdeLifeCycle implements ComponentLifeCycle {
     _ode._server.setConfigProperties(_ode._config.getProperties());
 
         _ode._server.init();
+        _ode._server.setVpuStatisticsEnabled(_ode._config.isVpuStatisticsEnabled());
     }
 
     private void registerExternalVariableModules() {
@@ -294,6 +297,12 @@ public class OdeLifeCycle implements ComponentLifeCycle {
                     server.unregisterMBean(_mbeanName);
                 }
                 server.registerMBean(pmapi, _mbeanName);
+
+                _statsMBeanName = _ode.getContext().getMBeanNames().createCustomComponentMBeanName("VpuStatistics");
+                if (server.isRegistered(_statsMBeanName)) {
+                    server.unregisterMBean(_statsMBeanName);
+                }
+                server.registerMBean(_ode._server.getVpuStatistics(), _statsMBeanName);
             }
         } catch (Exception e) {
             throw new JBIException(e);
@@ -308,6 +317,9 @@ public class OdeLifeCycle implements ComponentLifeCycle {
                 if (server.isRegistered(_mbeanName)) {
                     server.unregisterMBean(_mbeanName);
                 }
+                if (_statsMBeanName != null && server.isRegistered(_statsMBeanName)) {
+                    server.unregisterMBean(_statsMBeanName);
+                }
             }
         } catch (Exception e) {
             throw new JBIException(e);
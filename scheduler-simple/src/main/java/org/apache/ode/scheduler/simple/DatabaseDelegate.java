@@ -20,6 +20,7 @@
 package org.apache.ode.scheduler.simple;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Database abstraction; provides all database access for the simple scheduler. 
@@ -52,6 +53,25 @@ public interface DatabaseDelegate {
      * @throws DatabaseException in case of error
      */
     boolean deleteJob(String jobid, String nodeId) throws DatabaseException;
+
+    /**
+     * Save several jobs in the database, in a single batch.
+     * @param jobs the jobs
+     * @param nodeId node assigned to the jobs (or null if no node has been asssigned)
+     * @param loaded whether the jobs have been loaded into memory
+     * @return number of jobs inserted
+     * @throws DatabaseException in case of error
+     */
+    int insertJobs(List<Job> jobs, String nodeId, boolean loaded) throws DatabaseException;
+
+    /**
+     * Delete several jobs from the database, in a single batch.
+     * @param jobids job identifiers
+     * @param nodeId node identifier
+     * @return number of jobs deleted
+     * @throws DatabaseException in case of error
+     */
+    int deleteJobs(List<String> jobids, String nodeId) throws DatabaseException;
     
     /**
      * Return a list of unique nodes identifiers found in the database. This is used
@@ -72,6 +92,17 @@ public interface DatabaseDelegate {
      */
     List<Job> dequeueImmediate(String nodeId, long maxtime, int maxjobs) throws DatabaseException ;
 
+    /**
+     * Load some specific jobs from the database, the ones another node has just scheduled for this one.
+     *
+     * @param nodeId node identifier of the jobs
+     * @param jobids identifiers of the jobs
+     * @param maxtime only jobs with scheduled time earlier than this will be loaded
+     * @return the jobs that met the criteria, the others have been run or reassigned meanwhile or are not due yet
+     * @throws DatabaseException in case of error
+     */
+    List<Job> dequeueJobs(String nodeId, List<String> jobids, long maxtime) throws DatabaseException;
+
     /**
      * Assign a particular node identifier to a fraction of jobs in the database that do not have one, 
      * and are up for execution within a certain time. Only a fraction of the jobs found are assigned
@@ -103,4 +134,95 @@ public interface DatabaseDelegate {
      * @throws DatabaseException
      */
     int updateReassign(String oldnode, String newnode) throws DatabaseException;
+
+    /**
+     * Reassign a share of the jobs of a node, up for execution within a certain time, to another node. The share
+     * is determined like for {@link #updateAssignToNode(String, int, int, long)}.
+     *
+     * @param oldnode node assigning from
+     * @param newnode new node asssigning to
+     * @param x the result of the mod-division
+     * @param y the dividend of the mod-division
+     * @param maxtime only jobs with scheduled time earlier than this will be reassigned
+     * @return number of rows changed
+     * @throws DatabaseException
+     */
+    int updateReassign(String oldnode, String newnode, int x, int y, long maxtime) throws DatabaseException;
+
+    /**
+     * Remove the node identifier of the jobs of a node scheduled at or after a certain time, for them to be
+     * assigned to one of the live nodes when upgraded.
+     *
+     * @param oldnode node identifier
+     * @param mintime only jobs with scheduled time later than this will be released
+     * @return number of rows changed
+     * @throws DatabaseException
+     */
+    int updateRelease(String oldnode, long mintime) throws DatabaseException;
+
+    /**
+     * Renew the lease of a node on its jobs, registering the node if it isn't yet.
+     *
+     * @param nodeId node identifier
+     * @param expiry time the lease expires at, unless renewed
+     * @return false if the database doesn't keep the leases of the nodes
+     * @throws DatabaseException in case of error
+     */
+    boolean renewLease(String nodeId, long expiry) throws DatabaseException;
+
+    /**
+     * @return the expiry time of the leases of the registered nodes, by node identifier
+     * @throws DatabaseException in case of error
+     */
+    Map<String, Long> getNodeLeases() throws DatabaseException;
+
+    /**
+     * Unregister a node, once its jobs have been taken over.
+     *
+     * @param nodeId node identifier
+     * @return whether the node was registered
+     * @throws DatabaseException in case of error
+     */
+    boolean deleteNode(String nodeId) throws DatabaseException;
+
+    /**
+     * Move a job that exhausted its retries from the job table to the table of the dead jobs, for it to be
+     * inspected and possibly replayed later on.
+     *
+     * @param job the job
+     * @param nodeId node identifier
+     * @param reason cause of the last failure of the job
+     * @return false if the database doesn't keep the dead jobs, in which case the job is left as is
+     * @throws DatabaseException in case of error
+     */
+    boolean deadLetterJob(Job job, String nodeId, String reason) throws DatabaseException;
+
+    /**
+     * @param maxjobs maximum number of dead jobs to return
+     * @return the dead jobs, the most recently failed first
+     * @throws DatabaseException in case of error
+     */
+    List<DeadJob> getDeadJobs(int maxjobs) throws DatabaseException;
+
+    /**
+     * @param jobid job identifier
+     * @return the dead job, or null if there is none with this identifier
+     * @throws DatabaseException in case of error
+     */
+    DeadJob getDeadJob(String jobid) throws DatabaseException;
+
+    /**
+     * Delete a dead job, once replayed or discarded.
+     *
+     * @param jobid job identifier
+     * @return whether the dead job existed
+     * @throws DatabaseException in case of error
+     */
+    boolean deleteDeadJob(String jobid) throws DatabaseException;
+
+    /**
+     * @return number of dead jobs
+     * @throws DatabaseException in case of error
+     */
+    int countDeadJobs() throws DatabaseException;
 }
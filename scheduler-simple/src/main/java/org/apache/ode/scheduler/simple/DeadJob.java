@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.Map;
+
+/**
+ * A job that exhausted its retries, as kept in the table of the dead jobs.
+ */
+class DeadJob extends Job {
+    /** Time of the last failure of the job. */
+    long failed;
+
+    /** Cause of the last failure of the job. */
+    String reason;
+
+    public DeadJob(long when, String jobId, boolean transacted, Map<String, Object> jobDetail, long failed, String reason) {
+        super(when, jobId, transacted, jobDetail);
+        this.failed = failed;
+        this.reason = reason;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + " failed: " + failed + " reason: " + reason;
+    }
+}
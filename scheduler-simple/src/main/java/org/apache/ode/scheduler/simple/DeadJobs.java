@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Access to the table of the jobs that exhausted their retries, to inspect them and replay them once the cause
+ * of their failure is fixed.
+ */
+public class DeadJobs implements DeadJobsMBean {
+
+    /** Number of jobs replayed per transaction by {@link #replayAllDeadJobs()}. */
+    private static final int REPLAY_BATCH = 100;
+
+    private final SimpleScheduler _scheduler;
+
+    private final DatabaseDelegate _db;
+
+    DeadJobs(SimpleScheduler scheduler, DatabaseDelegate db) {
+        _scheduler = scheduler;
+        _db = db;
+    }
+
+    public int getDeadJobCount() throws Exception {
+        return _scheduler.execTransaction(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return _db.countDeadJobs();
+            }
+        });
+    }
+
+    public String[] listDeadJobs(int max) throws Exception {
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");
+        List<DeadJob> jobs = getDeadJobs(max);
+        String[] ret = new String[jobs.size()];
+        for (int i = 0; i < ret.length; ++i) {
+            DeadJob job = jobs.get(i);
+            ret[i] = job.jobId + " failed: " + f.format(new Date(job.failed)) + " reason: " + job.reason
+                    + " details: " + job.detail;
+        }
+        return ret;
+    }
+
+    public boolean replayDeadJob(String jobId) throws Exception {
+        return _scheduler.replayDeadJob(jobId);
+    }
+
+    public int replayAllDeadJobs() throws Exception {
+        int replayed = 0;
+        while (true) {
+            List<DeadJob> jobs = getDeadJobs(REPLAY_BATCH);
+            int count = 0;
+            for (DeadJob job : jobs) {
+                if (_scheduler.replayDeadJob(job.jobId)) count++;
+            }
+            replayed += count;
+            if (jobs.size() < REPLAY_BATCH || count == 0)
+                return replayed;
+        }
+    }
+
+    public boolean deleteDeadJob(final String jobId) throws Exception {
+        return _scheduler.execTransaction(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return _db.deleteDeadJob(jobId);
+            }
+        });
+    }
+
+    private List<DeadJob> getDeadJobs(final int max) throws Exception {
+        return _scheduler.execTransaction(new Callable<List<DeadJob>>() {
+            public List<DeadJob> call() throws Exception {
+                return _db.getDeadJobs(max);
+            }
+        });
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+/**
+ * Management interface of the jobs that exhausted their retries, see {@link DeadJobs}.
+ */
+public interface DeadJobsMBean {
+
+    int getDeadJobCount() throws Exception;
+
+    /**
+     * @param max maximum number of jobs to list
+     * @return a description of the dead jobs, the most recently failed first
+     */
+    String[] listDeadJobs(int max) throws Exception;
+
+    /**
+     * Schedule a dead job again, to run right away with a fresh retry count.
+     *
+     * @return false if there is no dead job with this identifier
+     */
+    boolean replayDeadJob(String jobId) throws Exception;
+
+    /**
+     * @return the number of dead jobs scheduled again
+     */
+    int replayAllDeadJobs() throws Exception;
+
+    /**
+     * @return false if there is no dead job with this identifier
+     */
+    boolean deleteDeadJob(String jobId) throws Exception;
+}
@@ -20,14 +20,16 @@
 package org.apache.ode.scheduler.simple;
 
 import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -48,6 +50,12 @@ public class JdbcDelegate implements DatabaseDelegate {
 
     private static final Log __log = LogFactory.getLog(JdbcDelegate.class);
 
+    /**
+     * Write the job details as Java serialized maps, which nodes running a former version can read, rather
+     * than with the {@link JobDetailCodec}.
+     */
+    public static final String LEGACY_JOB_DETAILS_NAME = "org.apache.ode.scheduler.legacyJobDetails";
+
     private static final String DELETE_JOB = "delete from ODE_JOB where jobid = ? and nodeid = ?";
 
     private static final String UPDATE_REASSIGN = "update ODE_JOB set nodeid = ?, scheduled = 0 where nodeid = ?";
@@ -69,21 +77,89 @@ public class JdbcDelegate implements DatabaseDelegate {
     private static final String UPGRADE_JOB_SYBASE12 = "update ODE_JOB set nodeid = ? where nodeid is null "
             + "and -1 <> ? and -1 <> ? and ts < ?";
     
+    private static final String REASSIGN_JOB_DEFAULT = "update ODE_JOB set nodeid = ?, scheduled = 0 where nodeid = ? "
+            + "and mod(ts,?) = ? and ts < ?";
+
+    private static final String REASSIGN_JOB_DB2 = "update ODE_JOB set nodeid = ?, scheduled = 0 where nodeid = ? "
+            + "and mod(ts,CAST(? AS BIGINT)) = ? and ts < ?";
+
+    private static final String REASSIGN_JOB_SQLSERVER = "update ODE_JOB set nodeid = ?, scheduled = 0 where nodeid = ? "
+            + "and (ts % ?) = ? and ts < ?";
+
+    private static final String REASSIGN_JOB_SYBASE = "update ODE_JOB set nodeid = ?, scheduled = 0 where nodeid = ? "
+            + "and convert(int, ts) % ? = ? and ts < ?";
+
+    private static final String REASSIGN_JOB_SYBASE12 = "update ODE_JOB set nodeid = ?, scheduled = 0 where nodeid = ? "
+            + "and -1 <> ? and -1 <> ? and ts < ?";
+
+    private static final String RELEASE_JOB = "update ODE_JOB set nodeid = null, scheduled = 0 where nodeid = ? and ts >= ?";
+
+    private static final String UPDATE_LEASE = "update ODE_NODE set lease = ? where nodeid = ?";
+
+    private static final String SAVE_LEASE = "insert into ODE_NODE (nodeid, lease) values(?, ?)";
+
+    private static final String GET_LEASES = "select nodeid, lease from ODE_NODE";
+
+    private static final String DELETE_NODE = "delete from ODE_NODE where nodeid = ?";
+
+    private static final String HAS_NODE_TABLE = "select nodeid, lease from ODE_NODE where 1 = 0";
+
+    private static final String SAVE_DEAD_JOB = "insert into ODE_DEAD_JOB "
+            + " (jobid, nodeid, ts, transacted, details, instanceid, jobtype, failed, reason) values(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String GET_DEAD_JOBS = "select jobid, ts, transacted, failed, details, reason from ODE_DEAD_JOB "
+            + "order by failed desc";
+
+    private static final String GET_DEAD_JOB = "select jobid, ts, transacted, failed, details, reason from ODE_DEAD_JOB "
+            + "where jobid = ?";
+
+    private static final String DELETE_DEAD_JOB = "delete from ODE_DEAD_JOB where jobid = ?";
+
+    private static final String COUNT_DEAD_JOBS = "select count(*) from ODE_DEAD_JOB";
+
+    private static final String HAS_DEAD_JOB_TABLE = "select jobid, failed, reason from ODE_DEAD_JOB where 1 = 0";
+
+    private static final int REASON_LENGTH = 255;
+
     private static final String SAVE_JOB = "insert into ODE_JOB "
             + " (jobid, nodeid, ts, scheduled, transacted, details) values(?, ?, ?, ?, ?, ?)";
 
+    private static final String SAVE_JOB_PROMOTED = "insert into ODE_JOB "
+            + " (jobid, nodeid, ts, scheduled, transacted, details, instanceid, jobtype) values(?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String HAS_PROMOTED_COLUMNS = "select instanceid, jobtype from ODE_JOB where 1 = 0";
+
+    private static final int JOBTYPE_LENGTH = 32;
+
     private static final String GET_NODEIDS = "select distinct nodeid from ODE_JOB";
 
     private static final String SCHEDULE_IMMEDIATE = "select jobid, ts, transacted, scheduled, details from ODE_JOB "
             + "where nodeid = ? and ts < ? order by ts";
 
+    private static final String SCHEDULE_JOBS = "select jobid, ts, transacted, scheduled, details from ODE_JOB "
+            + "where nodeid = ? and ts < ? and jobid in ";
+
     private DataSource _ds;
 
     private Dialect _dialect;
-    
+
+    /** Whether the instance id and type of the jobs are copied in columns of their own, for filtering. */
+    private boolean _promotedColumns;
+
+    /** Whether the database has the table of the node leases. */
+    private boolean _nodeTable;
+
+    /** Whether the database has the table of the jobs that exhausted their retries. */
+    private boolean _deadJobTable;
+
+    private boolean _legacyDetails = Boolean.getBoolean(LEGACY_JOB_DETAILS_NAME);
+
     public JdbcDelegate(DataSource ds) {
         _ds = ds;
         _dialect = guessDialect();
+        _promotedColumns = hasPromotedColumns();
+        _nodeTable = hasNodeTable();
+        _deadJobTable = hasDeadJobTable();
     }
 
     public boolean deleteJob(String jobid, String nodeId) throws DatabaseException {
@@ -106,6 +182,31 @@ public class JdbcDelegate implements DatabaseDelegate {
         }
     }
 
+    public int deleteJobs(List<String> jobids, String nodeId) throws DatabaseException {
+        if (jobids.isEmpty())
+            return 0;
+        if (__log.isDebugEnabled())
+            __log.debug("deleteJobs " + jobids + " on node " + nodeId);
+
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(DELETE_JOB);
+            for (String jobid : jobids) {
+                ps.setString(1, jobid);
+                ps.setString(2, nodeId);
+                ps.addBatch();
+            }
+            return count(ps.executeBatch());
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
     public List<String> getNodeIds() throws DatabaseException {
         Connection con = null;
         PreparedStatement ps = null;
@@ -138,20 +239,8 @@ public class JdbcDelegate implements DatabaseDelegate {
         PreparedStatement ps = null;
         try {
             con = getConnection();
-            ps = con.prepareStatement(SAVE_JOB);
-            ps.setString(1, job.jobId);
-            ps.setString(2, nodeId);
-            ps.setLong(3, job.schedDate);
-            ps.setInt(4, asInteger(loaded));
-            ps.setInt(5, asInteger(job.transacted));
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            try {
-                StreamUtils.write(bos, (Serializable) job.detail);
-            } catch (Exception ex) {
-                __log.error("Error serializing job detail: " + job.detail);
-                throw new DatabaseException(ex);
-            }
-            ps.setBytes(6, bos.toByteArray());
+            ps = con.prepareStatement(_promotedColumns ? SAVE_JOB_PROMOTED : SAVE_JOB);
+            setInsertParameters(ps, job, nodeId, loaded);
             return ps.executeUpdate() == 1;
         } catch (SQLException se) {
             throw new DatabaseException(se);
@@ -161,6 +250,30 @@ public class JdbcDelegate implements DatabaseDelegate {
         }
     }
 
+    public int insertJobs(List<Job> jobs, String nodeId, boolean loaded) throws DatabaseException {
+        if (jobs.isEmpty())
+            return 0;
+        if (__log.isDebugEnabled())
+            __log.debug("insertJobs " + jobs.size() + " jobs on node " + nodeId + " loaded=" + loaded);
+
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(_promotedColumns ? SAVE_JOB_PROMOTED : SAVE_JOB);
+            for (Job job : jobs) {
+                setInsertParameters(ps, job, nodeId, loaded);
+                ps.addBatch();
+            }
+            return count(ps.executeBatch());
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
     public boolean updateJob(Job job) throws DatabaseException {
         if (__log.isDebugEnabled())
             __log.debug("updateJob " + job.jobId + " details=" + job);
@@ -171,14 +284,7 @@ public class JdbcDelegate implements DatabaseDelegate {
             con = getConnection();
             ps = con.prepareStatement(UPDATE_JOB);
             ps.setLong(1, job.schedDate);
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            try {
-                StreamUtils.write(bos, (Serializable) job.detail);
-            } catch (Exception ex) {
-                __log.error("Error serializing job detail: " + job.detail);
-                throw new DatabaseException(ex);
-            }
-            ps.setBytes(2, bos.toByteArray());
+            ps.setBytes(2, serializeDetails(job));
             ps.setString(3, job.jobId);
             return ps.executeUpdate() == 1;
         } catch (SQLException se) {
@@ -189,7 +295,6 @@ public class JdbcDelegate implements DatabaseDelegate {
         }
     }
 
-    @SuppressWarnings("unchecked")
     public List<Job> dequeueImmediate(String nodeId, long maxtime, int maxjobs) throws DatabaseException {
         ArrayList<Job> ret = new ArrayList<Job>(maxjobs);
         Connection con = null;
@@ -200,40 +305,123 @@ public class JdbcDelegate implements DatabaseDelegate {
             ps.setString(1, nodeId);
             ps.setLong(2, maxtime);
             ps.setMaxRows(maxjobs);
-            ResultSet rs = ps.executeQuery();
+            readJobs(ps.executeQuery(), ret);
+            ps.close();
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+        return ret;
+    }
+
+    public List<Job> dequeueJobs(String nodeId, List<String> jobids, long maxtime) throws DatabaseException {
+        ArrayList<Job> ret = new ArrayList<Job>(jobids.size());
+        if (jobids.isEmpty())
+            return ret;
+        StringBuilder sql = new StringBuilder(SCHEDULE_JOBS).append('(');
+        for (int i = 0; i < jobids.size(); ++i)
+            sql.append(i == 0 ? "?" : ", ?");
+        sql.append(") order by ts");
+
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(sql.toString());
+            ps.setString(1, nodeId);
+            ps.setLong(2, maxtime);
+            for (int i = 0; i < jobids.size(); ++i)
+                ps.setString(i + 3, jobids.get(i));
+            readJobs(ps.executeQuery(), ret);
+            ps.close();
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+        return ret;
+    }
+
+    private void readJobs(ResultSet rs, List<Job> jobs) throws SQLException, DatabaseException {
+        try {
             while (rs.next()) {
                 Map<String, Object> details;
                 try {
-                    ObjectInputStream is = new ObjectInputStream(rs.getBinaryStream(5));
-                    details = (Map<String, Object>) is.readObject();
-                    is.close();
+                    details = JobDetailCodec.decode(rs.getBinaryStream(5));
                 } catch (Exception e) {
                     throw new DatabaseException("Error deserializing job details", e);
                 }
-                Job job = new Job(rs.getLong(2), rs.getString(1), asBoolean(rs.getInt(3)), details);
-                ret.add(job);
+                jobs.add(new Job(rs.getLong(2), rs.getString(1), asBoolean(rs.getInt(3)), details));
             }
+        } finally {
             rs.close();
-            ps.close();
+        }
+    }
+
+    public int updateReassign(String oldnode, String newnode) throws DatabaseException {
+        if (__log.isDebugEnabled())
+            __log.debug("updateReassign from " + oldnode + " ---> " + newnode);
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(UPDATE_REASSIGN);
+            ps.setString(1, newnode);
+            ps.setString(2, oldnode);
+            return ps.executeUpdate();
         } catch (SQLException se) {
             throw new DatabaseException(se);
         } finally {
             close(ps);
             close(con);
         }
-        return ret;
     }
 
-    public int updateReassign(String oldnode, String newnode) throws DatabaseException {
+    public int updateReassign(String oldnode, String newnode, int i, int numNodes, long maxtime) throws DatabaseException {
         if (__log.isDebugEnabled())
-            __log.debug("updateReassign from " + oldnode + " ---> " + newnode);
+            __log.debug("updateReassign from " + oldnode + " ---> " + newnode + " " + i + "/" + numNodes + " maxtime=" + maxtime);
         Connection con = null;
         PreparedStatement ps = null;
         try {
             con = getConnection();
-            ps = con.prepareStatement(UPDATE_REASSIGN);
+            if (_dialect == Dialect.SQLSERVER) {
+                ps = con.prepareStatement(REASSIGN_JOB_SQLSERVER);
+            } else if (_dialect == Dialect.DB2) {
+                ps = con.prepareStatement(REASSIGN_JOB_DB2);
+            } else if (_dialect == Dialect.SYBASE) {
+                ps = con.prepareStatement(REASSIGN_JOB_SYBASE);
+            } else if (_dialect == Dialect.SYBASE12) {
+                ps = con.prepareStatement(REASSIGN_JOB_SYBASE12);
+            } else {
+                ps = con.prepareStatement(REASSIGN_JOB_DEFAULT);
+            }
             ps.setString(1, newnode);
             ps.setString(2, oldnode);
+            ps.setInt(3, numNodes);
+            ps.setInt(4, i);
+            ps.setLong(5, maxtime);
+            return ps.executeUpdate();
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    public int updateRelease(String oldnode, long mintime) throws DatabaseException {
+        if (__log.isDebugEnabled())
+            __log.debug("updateRelease " + oldnode + " mintime=" + mintime);
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(RELEASE_JOB);
+            ps.setString(1, oldnode);
+            ps.setLong(2, mintime);
             return ps.executeUpdate();
         } catch (SQLException se) {
             throw new DatabaseException(se);
@@ -243,6 +431,205 @@ public class JdbcDelegate implements DatabaseDelegate {
         }
     }
 
+    public boolean renewLease(String nodeId, long expiry) throws DatabaseException {
+        if (!_nodeTable)
+            return false;
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(UPDATE_LEASE);
+            ps.setLong(1, expiry);
+            ps.setString(2, nodeId);
+            if (ps.executeUpdate() == 0) {
+                ps.close();
+                ps = con.prepareStatement(SAVE_LEASE);
+                ps.setString(1, nodeId);
+                ps.setLong(2, expiry);
+                ps.executeUpdate();
+            }
+            return true;
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    public Map<String, Long> getNodeLeases() throws DatabaseException {
+        Map<String, Long> leases = new HashMap<String, Long>();
+        if (!_nodeTable)
+            return leases;
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(GET_LEASES, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next())
+                leases.put(rs.getString(1).trim(), rs.getLong(2));
+            rs.close();
+            return leases;
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    public boolean deleteNode(String nodeId) throws DatabaseException {
+        if (!_nodeTable)
+            return false;
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(DELETE_NODE);
+            ps.setString(1, nodeId);
+            return ps.executeUpdate() == 1;
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    public boolean deadLetterJob(Job job, String nodeId, String reason) throws DatabaseException {
+        if (!_deadJobTable)
+            return false;
+        if (__log.isDebugEnabled())
+            __log.debug("deadLetterJob " + job.jobId + " on node " + nodeId + " reason=" + reason);
+
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(SAVE_DEAD_JOB);
+            ps.setString(1, job.jobId);
+            ps.setString(2, nodeId);
+            ps.setLong(3, job.schedDate);
+            ps.setInt(4, asInteger(job.transacted));
+            ps.setBytes(5, serializeDetails(job));
+            setPromotedParameters(ps, job, 6);
+            ps.setLong(8, System.currentTimeMillis());
+            if (reason != null && reason.length() > REASON_LENGTH)
+                reason = reason.substring(0, REASON_LENGTH);
+            ps.setString(9, reason);
+            ps.executeUpdate();
+            ps.close();
+            ps = con.prepareStatement(DELETE_JOB);
+            ps.setString(1, job.jobId);
+            ps.setString(2, nodeId);
+            ps.executeUpdate();
+            return true;
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    public List<DeadJob> getDeadJobs(int maxjobs) throws DatabaseException {
+        ArrayList<DeadJob> ret = new ArrayList<DeadJob>();
+        if (!_deadJobTable)
+            return ret;
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(GET_DEAD_JOBS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setMaxRows(maxjobs);
+            readDeadJobs(ps.executeQuery(), ret);
+            return ret;
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    public DeadJob getDeadJob(String jobid) throws DatabaseException {
+        if (!_deadJobTable)
+            return null;
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(GET_DEAD_JOB, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setString(1, jobid);
+            ArrayList<DeadJob> ret = new ArrayList<DeadJob>(1);
+            readDeadJobs(ps.executeQuery(), ret);
+            return ret.isEmpty() ? null : ret.get(0);
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    public boolean deleteDeadJob(String jobid) throws DatabaseException {
+        if (!_deadJobTable)
+            return false;
+        if (__log.isDebugEnabled())
+            __log.debug("deleteDeadJob " + jobid);
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(DELETE_DEAD_JOB);
+            ps.setString(1, jobid);
+            return ps.executeUpdate() == 1;
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    public int countDeadJobs() throws DatabaseException {
+        if (!_deadJobTable)
+            return 0;
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(COUNT_DEAD_JOBS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ResultSet rs = ps.executeQuery();
+            int count = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            return count;
+        } catch (SQLException se) {
+            throw new DatabaseException(se);
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    private void readDeadJobs(ResultSet rs, List<DeadJob> jobs) throws SQLException, DatabaseException {
+        try {
+            while (rs.next()) {
+                Map<String, Object> details;
+                try {
+                    details = JobDetailCodec.decode(rs.getBinaryStream(5));
+                } catch (Exception e) {
+                    throw new DatabaseException("Error deserializing job details", e);
+                }
+                jobs.add(new DeadJob(rs.getLong(2), rs.getString(1).trim(), asBoolean(rs.getInt(3)), details,
+                        rs.getLong(4), rs.getString(6)));
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
     public int updateAssignToNode(String node, int i, int numNodes, long maxtime) throws DatabaseException {
         if (__log.isDebugEnabled())
             __log.debug("updateAsssignToNode node=" + node + " " + i + "/" + numNodes + " maxtime=" + maxtime);
@@ -280,6 +667,53 @@ public class JdbcDelegate implements DatabaseDelegate {
         return c;
     }
 
+    private void setInsertParameters(PreparedStatement ps, Job job, String nodeId, boolean loaded)
+            throws SQLException, DatabaseException {
+        ps.setString(1, job.jobId);
+        ps.setString(2, nodeId);
+        ps.setLong(3, job.schedDate);
+        ps.setInt(4, asInteger(loaded));
+        ps.setInt(5, asInteger(job.transacted));
+        ps.setBytes(6, serializeDetails(job));
+        if (_promotedColumns)
+            setPromotedParameters(ps, job, 7);
+    }
+
+    private void setPromotedParameters(PreparedStatement ps, Job job, int index) throws SQLException {
+        Object iid = job.detail.get("iid");
+        Object type = job.detail.get("type");
+        if (iid instanceof Number) ps.setLong(index, ((Number) iid).longValue());
+        else ps.setNull(index, Types.BIGINT);
+        if (type instanceof String && ((String) type).length() <= JOBTYPE_LENGTH) ps.setString(index + 1, (String) type);
+        else ps.setNull(index + 1, Types.VARCHAR);
+    }
+
+    private byte[] serializeDetails(Job job) throws DatabaseException {
+        try {
+            if (!_legacyDetails)
+                return JobDetailCodec.encode(job.detail);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            StreamUtils.write(bos, (Serializable) job.detail);
+            return bos.toByteArray();
+        } catch (Exception ex) {
+            __log.error("Error serializing job detail: " + job.detail);
+            throw new DatabaseException(ex);
+        }
+    }
+
+    /**
+     * Number of rows updated by a batch; drivers that don't report the count of each statement are assumed
+     * to have updated one row per statement.
+     */
+    private int count(int[] updateCounts) {
+        int count = 0;
+        for (int c : updateCounts) {
+            if (c > 0) count += c;
+            else if (c == Statement.SUCCESS_NO_INFO) count++;
+        }
+        return count;
+    }
+
     private int asInteger(boolean value) {
         return (value ? 1 : 0);
     }
@@ -308,6 +742,57 @@ public class JdbcDelegate implements DatabaseDelegate {
         }
     }
 
+    private boolean hasPromotedColumns() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(HAS_PROMOTED_COLUMNS);
+            ps.executeQuery().close();
+            return true;
+        } catch (SQLException e) {
+            __log.info("No instanceid and jobtype columns in the ODE_JOB table, jobs can only be filtered by their details.");
+            return false;
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    private boolean hasNodeTable() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(HAS_NODE_TABLE);
+            ps.executeQuery().close();
+            return true;
+        } catch (SQLException e) {
+            __log.info("No ODE_NODE table, the nodes of the cluster are only known through their jobs and heartbeats.");
+            return false;
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
+    private boolean hasDeadJobTable() {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getConnection();
+            ps = con.prepareStatement(HAS_DEAD_JOB_TABLE);
+            ps.executeQuery().close();
+            return true;
+        } catch (SQLException e) {
+            __log.info("No ODE_DEAD_JOB table, the jobs that exhaust their retries are deleted.");
+            return false;
+        } finally {
+            close(ps);
+            close(con);
+        }
+    }
+
     private Dialect guessDialect() {
         Dialect d = Dialect.UNKNOWN;
         Connection con = null;
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact encoding of the job details: a format marker followed by the number of entries and, for each entry,
+ * its key and a typed value. Strings, longs, integers and booleans are written as such, which covers the
+ * details of the engine's jobs; any other value is written with Java serialization.
+ * <p>
+ * Details written by former versions (a Java serialized map) are recognized by their stream header and still
+ * decoded.
+ * </p>
+ */
+public class JobDetailCodec {
+
+    /** Format marker, can't be mistaken for the header of a Java serialization stream (0xACED). */
+    static final byte[] MAGIC = { 'O', 'J', 'D', 1 };
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte SERIALIZED = 5;
+
+    public static byte[] encode(Map<String, Object> detail) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.write(MAGIC);
+        out.writeInt(detail.size());
+        for (Map.Entry<String, Object> e : detail.entrySet()) {
+            out.writeUTF(e.getKey());
+            Object value = e.getValue();
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeBytes(out, ((String) value).getBytes("UTF-8"));
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                out.writeByte(SERIALIZED);
+                ByteArrayOutputStream vos = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(vos);
+                oos.writeObject(value);
+                oos.close();
+                writeBytes(out, vos.toByteArray());
+            }
+        }
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> decode(InputStream is) throws IOException, ClassNotFoundException {
+        if (!is.markSupported())
+            is = new BufferedInputStream(is);
+        is.mark(MAGIC.length);
+        for (byte b : MAGIC) {
+            if (is.read() != b) {
+                // Java serialized map
+                is.reset();
+                ObjectInputStream ois = new ObjectInputStream(is);
+                try {
+                    return (Map<String, Object>) ois.readObject();
+                } finally {
+                    ois.close();
+                }
+            }
+        }
+
+        DataInputStream in = new DataInputStream(is);
+        int size = in.readInt();
+        Map<String, Object> detail = new HashMap<String, Object>(Math.max(16, size * 2));
+        for (int i = 0; i < size; ++i) {
+            String key = in.readUTF();
+            byte type = in.readByte();
+            switch (type) {
+            case NULL:
+                detail.put(key, null);
+                break;
+            case STRING:
+                detail.put(key, new String(readBytes(in), "UTF-8"));
+                break;
+            case LONG:
+                detail.put(key, in.readLong());
+                break;
+            case INTEGER:
+                detail.put(key, in.readInt());
+                break;
+            case BOOLEAN:
+                detail.put(key, in.readBoolean());
+                break;
+            case SERIALIZED:
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+                detail.put(key, ois.readObject());
+                ois.close();
+                break;
+            default:
+                throw new IOException("Unknown type " + type + " for job detail " + key);
+            }
+        }
+        return detail;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
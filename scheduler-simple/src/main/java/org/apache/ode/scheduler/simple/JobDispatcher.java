@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Hands the jobs over to the executor, no more than a given number at a time. The jobs waiting for a worker are
+ * queued in flows, one per priority class and process, and the flows share the workers in proportion to their
+ * weight (stride scheduling): the weight of the class times the weight of the process. A process flooding the
+ * scheduler with jobs only gets its share, and the lower classes still progress while the higher ones are busy.
+ */
+class JobDispatcher {
+    private static final Log __log = LogFactory.getLog(JobDispatcher.class);
+
+    static final int HIGH = 0;
+    static final int NORMAL = 1;
+    static final int LOW = 2;
+
+    /** Weights of the priority classes, by class. */
+    static final int[] CLASS_WEIGHTS = { 16, 4, 1 };
+
+    private static final int STRIDE = 1 << 20;
+
+    /** Largest weight of a process: the stride of a flow is at least 1, its pass always moves forward. */
+    private static final int MAX_WEIGHT = STRIDE / CLASS_WEIGHTS[HIGH];
+
+    private final Executor _exec;
+
+    /** Maximum number of jobs handed over to the executor at once, not bounded if zero or less. */
+    private final int _maxRunning;
+
+    /** Number of jobs handed over to the executor and not done yet. Guarded by this. */
+    private int _running;
+
+    /** Flows with jobs waiting, by class and process. Guarded by this. */
+    private final Map<String, Flow> _flows = new LinkedHashMap<String, Flow>();
+
+    /** Pass of the last flow picked, new flows start from there. Guarded by this. */
+    private long _pass;
+
+    JobDispatcher(Executor exec, int maxRunning) {
+        _exec = exec;
+        _maxRunning = maxRunning;
+    }
+
+    /**
+     * Runs the job as soon as a worker is available to its flow.
+     * @param job job to run
+     * @param priority priority class of the job, {@link #HIGH}, {@link #NORMAL} or {@link #LOW}
+     * @param pid process of the job, may be null
+     * @param weight weight of the process, taken within [1, 65536]
+     * @throws RejectedExecutionException if the executor doesn't take the job, a {@link Rejectable} job is told
+     * so first
+     */
+    void dispatch(Runnable job, int priority, String pid, int weight) {
+        synchronized (this) {
+            if (_maxRunning > 0 && (_running >= _maxRunning || !_flows.isEmpty())) {
+                String key = priority + " " + pid;
+                Flow flow = _flows.get(key);
+                if (flow == null) {
+                    flow = new Flow(CLASS_WEIGHTS[priority] * Math.max(1, Math.min(weight, MAX_WEIGHT)));
+                    flow.pass = _pass;
+                    _flows.put(key, flow);
+                }
+                flow.jobs.add(job);
+                if (_running >= _maxRunning)
+                    return;
+                // A worker is free while jobs are waiting, after an executor rejection
+                job = next();
+            }
+            _running++;
+        }
+        execute(job);
+    }
+
+    /**
+     * @return the number of jobs waiting for a worker
+     */
+    synchronized int getWaitingJobs() {
+        int waiting = 0;
+        for (Flow flow : _flows.values())
+            waiting += flow.jobs.size();
+        return waiting;
+    }
+
+    private void execute(final Runnable job) {
+        try {
+            _exec.execute(new Runnable() {
+                public void run() {
+                    try {
+                        job.run();
+                    } finally {
+                        done();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                _running--;
+            }
+            if (job instanceof Rejectable)
+                ((Rejectable) job).rejected();
+            throw e;
+        }
+    }
+
+    private void done() {
+        Runnable next;
+        synchronized (this) {
+            next = next();
+            if (next == null) {
+                _running--;
+                return;
+            }
+        }
+        try {
+            execute(next);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the jobs will be loaded again from the database
+            __log.warn("Jobs dropped, the executor rejected them.", e);
+            for (Runnable job : drain()) {
+                if (job instanceof Rejectable)
+                    ((Rejectable) job).rejected();
+            }
+        }
+    }
+
+    /**
+     * @return the jobs waiting for a worker, no longer waiting
+     */
+    private synchronized List<Runnable> drain() {
+        List<Runnable> jobs = new ArrayList<Runnable>();
+        for (Flow flow : _flows.values())
+            jobs.addAll(flow.jobs);
+        _flows.clear();
+        return jobs;
+    }
+
+    /**
+     * Picks the job of the flow with the lowest pass, the flow then moves forward by its stride.
+     */
+    private Runnable next() {
+        Flow min = null;
+        String minKey = null;
+        for (Map.Entry<String, Flow> entry : _flows.entrySet()) {
+            Flow flow = entry.getValue();
+            if (min == null || flow.pass < min.pass) {
+                min = flow;
+                minKey = entry.getKey();
+            }
+        }
+        if (min == null)
+            return null;
+        _pass = min.pass;
+        min.pass += min.stride;
+        Runnable job = min.jobs.removeFirst();
+        if (min.jobs.isEmpty())
+            _flows.remove(minKey);
+        return job;
+    }
+
+    /**
+     * A job told when the executor rejects it, for its owner to let go of it.
+     */
+    interface Rejectable extends Runnable {
+        void rejected();
+    }
+
+    static class Flow {
+        final LinkedList<Runnable> jobs = new LinkedList<Runnable>();
+        final long stride;
+        long pass;
+
+        Flow(int weight) {
+            stride = STRIDE / weight;
+        }
+    }
+}
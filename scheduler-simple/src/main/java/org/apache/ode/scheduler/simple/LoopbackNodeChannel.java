@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Channel between nodes living in the same JVM, e.g. several schedulers sharing a database in a test. The
+ * notifications are delivered in the thread of the sender.
+ */
+public class LoopbackNodeChannel implements NodeChannel {
+
+    private final ConcurrentHashMap<String, Listener> _listeners = new ConcurrentHashMap<String, Listener>();
+
+    public void register(String nodeId, Listener listener) {
+        _listeners.put(nodeId, listener);
+    }
+
+    public void unregister(String nodeId) {
+        _listeners.remove(nodeId);
+    }
+
+    public boolean isReachable(String nodeId) {
+        return _listeners.containsKey(nodeId);
+    }
+
+    public boolean notifyJobs(String nodeId, List<String> jobIds) {
+        Listener listener = _listeners.get(nodeId);
+        if (listener == null)
+            return false;
+        listener.onJobs(new ArrayList<String>(jobIds));
+        return true;
+    }
+}
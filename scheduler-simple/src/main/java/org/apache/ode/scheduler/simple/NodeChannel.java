@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.List;
+
+/**
+ * Channel between the nodes of a cluster, used by the scheduler to hand a job over to the node that owns it
+ * as soon as the job has been committed, rather than letting it wait for the next time that node loads its
+ * jobs from the database.
+ * <p>
+ * Notifications are a best effort: the database remains the reference, a lost notification only delays the
+ * job till its node polls the database.
+ * </p>
+ */
+public interface NodeChannel {
+
+    /**
+     * Start receiving the notifications sent to a node.
+     * @param nodeId identifier of the node
+     * @param listener listener of the notifications
+     */
+    void register(String nodeId, Listener listener);
+
+    /**
+     * Stop receiving the notifications sent to a node.
+     * @param nodeId identifier of the node
+     */
+    void unregister(String nodeId);
+
+    /**
+     * @param nodeId identifier of a node
+     * @return whether notifications can currently be sent to the node
+     */
+    boolean isReachable(String nodeId);
+
+    /**
+     * Let a node know that jobs have been committed for it. Must not block on the processing of the
+     * notification by the node.
+     * @param nodeId identifier of the node
+     * @param jobIds identifiers of the jobs
+     * @return whether the notification has been sent
+     */
+    boolean notifyJobs(String nodeId, List<String> jobIds);
+
+    interface Listener {
+        /**
+         * Jobs have been committed for this node.
+         * @param jobIds identifiers of the jobs
+         */
+        void onJobs(List<String> jobIds);
+    }
+}
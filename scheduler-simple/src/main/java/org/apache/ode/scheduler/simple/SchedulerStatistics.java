@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Completion rate and latency of the jobs run by the scheduler, by job type. Completions are counted as they
+ * happen; the rates and latencies are computed when the scheduler samples them, i.e. each time it loads jobs
+ * from the database, and smoothed with an exponentially weighted moving average.
+ */
+public class SchedulerStatistics implements SchedulerStatisticsMBean {
+
+    /** Weight of the last sampling period in the smoothed values. */
+    static final double ALPHA = 0.5;
+
+    private final ConcurrentMap<String, TypeStatistics> _types = new ConcurrentHashMap<String, TypeStatistics>();
+
+    private final TypeStatistics _total = new TypeStatistics();
+
+    private final Map<String, ?> _outstandingJobs;
+
+    /** Time of the last sample, guarded by this. */
+    private long _lastSample = System.currentTimeMillis();
+
+    volatile int loadBatchSize;
+
+    volatile long loadInterval;
+
+    /**
+     * @param outstandingJobs jobs of the scheduler waiting to be run, by job id
+     */
+    public SchedulerStatistics(Map<String, ?> outstandingJobs) {
+        _outstandingJobs = outstandingJobs;
+    }
+
+    /**
+     * Count a job that has been run.
+     * @param jobType type of the job
+     * @param latencyNs time it took to run the job
+     * @param failed whether the job failed
+     */
+    void jobCompleted(String jobType, long latencyNs, boolean failed) {
+        TypeStatistics ts = _types.get(jobType);
+        if (ts == null) {
+            ts = new TypeStatistics();
+            TypeStatistics previous = _types.putIfAbsent(jobType, ts);
+            if (previous != null) ts = previous;
+        }
+        ts.add(latencyNs, failed);
+        _total.add(latencyNs, failed);
+    }
+
+    /**
+     * Fold the completions since the previous sample into the smoothed rates and latencies.
+     * @return the smoothed completion rate of all the jobs, or a negative value if there's no sample yet
+     */
+    synchronized double sample() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - _lastSample;
+        if (elapsed <= 0)
+            return _total.rate;
+        _lastSample = now;
+        for (TypeStatistics ts : _types.values())
+            ts.sample(elapsed);
+        _total.sample(elapsed);
+        return _total.rate;
+    }
+
+    public String[] getJobTypes() {
+        String[] types = _types.keySet().toArray(new String[0]);
+        Arrays.sort(types);
+        return types;
+    }
+
+    public long getCompletedJobs(String jobType) {
+        TypeStatistics ts = _types.get(jobType);
+        return ts == null ? 0 : ts.completed.get();
+    }
+
+    public long getFailedJobs(String jobType) {
+        TypeStatistics ts = _types.get(jobType);
+        return ts == null ? 0 : ts.failed.get();
+    }
+
+    public double getCompletionRate(String jobType) {
+        TypeStatistics ts = _types.get(jobType);
+        return ts == null ? 0 : Math.max(0, ts.rate);
+    }
+
+    public double getAverageLatency(String jobType) {
+        TypeStatistics ts = _types.get(jobType);
+        return ts == null ? 0 : ts.latencyMs;
+    }
+
+    public long getTotalCompletedJobs() {
+        return _total.completed.get();
+    }
+
+    public double getTotalCompletionRate() {
+        return Math.max(0, _total.rate);
+    }
+
+    public double getTotalAverageLatency() {
+        return _total.latencyMs;
+    }
+
+    public int getOutstandingJobs() {
+        return _outstandingJobs.size();
+    }
+
+    public int getLoadBatchSize() {
+        return loadBatchSize;
+    }
+
+    public long getLoadInterval() {
+        return loadInterval;
+    }
+
+    public synchronized void reset() {
+        _types.clear();
+        _total.clear();
+        _lastSample = System.currentTimeMillis();
+    }
+
+    static class TypeStatistics {
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong latencyNs = new AtomicLong();
+
+        /** Counters at the last sample, guarded by the statistics. */
+        long sampledCompleted;
+        long sampledLatencyNs;
+
+        /** Smoothed completion rate, negative till the first sample. */
+        volatile double rate = -1;
+        volatile double latencyMs;
+
+        void add(long latency, boolean failure) {
+            completed.incrementAndGet();
+            latencyNs.addAndGet(latency);
+            if (failure) failed.incrementAndGet();
+        }
+
+        void sample(long elapsedMs) {
+            long c = completed.get();
+            long l = latencyNs.get();
+            long count = c - sampledCompleted;
+            double periodRate = count * 1000.0 / elapsedMs;
+            rate = rate < 0 ? periodRate : ALPHA * periodRate + (1 - ALPHA) * rate;
+            if (count > 0) {
+                double periodLatency = (l - sampledLatencyNs) / 1000000.0 / count;
+                latencyMs = latencyMs == 0 ? periodLatency : ALPHA * periodLatency + (1 - ALPHA) * latencyMs;
+            }
+            sampledCompleted = c;
+            sampledLatencyNs = l;
+        }
+
+        void clear() {
+            completed.set(0);
+            failed.set(0);
+            latencyNs.set(0);
+            sampledCompleted = 0;
+            sampledLatencyNs = 0;
+            rate = -1;
+            latencyMs = 0;
+        }
+    }
+}
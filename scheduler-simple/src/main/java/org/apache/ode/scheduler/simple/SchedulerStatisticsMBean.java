@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+/**
+ * Management interface of the job statistics of the scheduler, see {@link SchedulerStatistics}. Rates are in
+ * jobs per second and latencies in milliseconds, both smoothed over the last loads of jobs.
+ */
+public interface SchedulerStatisticsMBean {
+
+    /**
+     * @return the types of the jobs run so far (the <code>type</code> detail of the jobs)
+     */
+    String[] getJobTypes();
+
+    long getCompletedJobs(String jobType);
+
+    long getFailedJobs(String jobType);
+
+    double getCompletionRate(String jobType);
+
+    double getAverageLatency(String jobType);
+
+    long getTotalCompletedJobs();
+
+    double getTotalCompletionRate();
+
+    double getTotalAverageLatency();
+
+    /**
+     * @return the number of jobs loaded or scheduled in memory and not run yet
+     */
+    int getOutstandingJobs();
+
+    /**
+     * @return the maximum number of jobs the next load from the database will get
+     */
+    int getLoadBatchSize();
+
+    /**
+     * @return the time between the last two loads from the database, in milliseconds
+     */
+    long getLoadInterval();
+
+    void reset();
+}
@@ -19,18 +19,23 @@
 
 package org.apache.ode.scheduler.simple;
 
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.ode.utils.stl.CollectionsX;
-import org.apache.ode.utils.stl.MemberOfFunction;
 
 /**
  * Implements the "todo" queue and prioritized scheduling mechanism. 
+ *
+ * The tasks are kept in a {@link TimingWheel} that only the scheduler thread touches: the other threads
+ * hand their tasks over through a lock-free queue and cancel them by marking them, so neither enqueuing
+ * nor dequeuing contends with the scheduler thread or depends on the number of tasks.
  * 
  * @author mszefler
  * @author Maciej Szefler ( m s z e f l e r @ g m a i l . c o m )
@@ -40,25 +45,24 @@ class SchedulerThread implements Runnable {
 
     private static final Log __log = LogFactory.getLog(SchedulerThread.class);
 
-    private static final int TODO_QUEUE_INITIAL_CAPACITY = 200;
+    /** Tasks enqueued and not in the wheel yet. */
+    private final ConcurrentLinkedQueue<TimingWheel.Entry> _inbox = new ConcurrentLinkedQueue<TimingWheel.Entry>();
 
-    /** Jobs ready for immediate execution. */
-    private PriorityBlockingQueue<Task> _todo;
+    /** Entries of the tasks to run, by task; jobs are equal by id, so they can be dequeued with a copy. */
+    private final ConcurrentHashMap<Task, TimingWheel.Entry> _entries = new ConcurrentHashMap<Task, TimingWheel.Entry>();
 
-    /** Lock for managing the queue */
-    private ReentrantLock _lock = new ReentrantLock();
+    private final AtomicInteger _size = new AtomicInteger();
 
-    private Condition _activity = _lock.newCondition();
+    /** Time the scheduler thread will wake up at, if parked; earlier tasks have to wake it up. */
+    private volatile long _wakeup = Long.MIN_VALUE;
 
     private volatile boolean _done;
 
     private TaskRunner _taskrunner;
 
-    private Thread _thread;
+    private volatile Thread _thread;
 
     SchedulerThread(TaskRunner runner) {
-        _todo = new PriorityBlockingQueue<Task>(TODO_QUEUE_INITIAL_CAPACITY,
-                new JobComparatorByDate());
         _taskrunner = runner;
     }
 
@@ -75,21 +79,16 @@ class SchedulerThread implements Runnable {
      * Shutdown the thread.
      */
     void stop() {
-        if (_thread == null)
+        Thread thread = _thread;
+        if (thread == null)
             return;
 
         _done = true;
-        _lock.lock();
-        try {
-            _activity.signal();
-        } finally {
-            _lock.unlock();
-
-        }
+        LockSupport.unpark(thread);
 
         while (_thread != null)
             try {
-                _thread.join();
+                thread.join();
                 _thread = null;
             } catch (InterruptedException e) {
                 ;
@@ -103,13 +102,16 @@ class SchedulerThread implements Runnable {
      * @param job
      */
     void enqueue(Task task) {
-        _lock.lock();
-        try {
-            _todo.add(task);
-            _activity.signal();
-        } finally {
-            _lock.unlock();
-        }
+        TimingWheel.Entry entry = new TimingWheel.Entry(task);
+        TimingWheel.Entry replaced = _entries.put(task, entry);
+        if (replaced != null)
+            replaced.canceled = true;
+        else
+            _size.incrementAndGet();
+        _inbox.add(entry);
+        Thread thread = _thread;
+        if (thread != null && task.schedDate < _wakeup)
+            LockSupport.unpark(thread);
     }
 
     /**
@@ -118,12 +120,10 @@ class SchedulerThread implements Runnable {
      * @param job
      */
     void dequeue(Task task) {
-        _lock.lock();
-        try {
-            _todo.remove(task);
-            _activity.signal();
-        } finally {
-            _lock.unlock();
+        TimingWheel.Entry entry = _entries.remove(task);
+        if (entry != null) {
+            entry.canceled = true;
+            _size.decrementAndGet();
         }
     }
 
@@ -133,65 +133,71 @@ class SchedulerThread implements Runnable {
      * @return
      */
     public int size() {
-        return _todo.size();
+        return _size.get();
     }
 
     /**
      * Pop items off the todo queue, and send them to the task runner for processing.
      */
     public void run() {
-        while (!_done) {
-            _lock.lock();
-            try {
-                long nextjob;
-                while ((nextjob = nextJobTime()) > 0 && !_done)
-                    _activity.await(nextjob, TimeUnit.MILLISECONDS);
+        // The wheel starts from now, with the tasks left from a previous run
+        TimingWheel wheel = new TimingWheel(System.currentTimeMillis());
+        _inbox.clear();
+        for (TimingWheel.Entry entry : _entries.values()) {
+            entry.scheduled = false;
+            wheel.add(entry);
+        }
 
-                if (!_done && nextjob == 0) {
-                    Task task = _todo.take();
-                    _taskrunner.runTask(task);
+        List<TimingWheel.Entry> expired = new ArrayList<TimingWheel.Entry>();
+        while (!_done) {
+            TimingWheel.Entry entry;
+            while ((entry = _inbox.poll()) != null) {
+                if (!entry.canceled)
+                    wheel.add(entry);
+            }
 
+            wheel.advance(System.currentTimeMillis(), expired);
+            for (TimingWheel.Entry e : expired) {
+                // Lost to a concurrent dequeue otherwise
+                if (_entries.remove(e.task, e)) {
+                    _size.decrementAndGet();
+                    try {
+                        _taskrunner.runTask(e.task);
+                    } catch (RuntimeException ex) {
+                        __log.error("Error running task " + e.task, ex);
+                    }
+                }
+            }
+            expired.clear();
+
+            long now = System.currentTimeMillis();
+            long delay = _size.get() == 0 ? Long.MAX_VALUE : wheel.nextDelay(now);
+            if (delay > 0) {
+                _wakeup = delay == Long.MAX_VALUE ? Long.MAX_VALUE : now + delay;
+                // Tasks enqueued before the wakeup time was set are in the inbox
+                if (_inbox.isEmpty() && !_done) {
+                    if (delay == Long.MAX_VALUE)
+                        LockSupport.park();
+                    else
+                        LockSupport.parkNanos(delay * 1000000L);
+                    // Would not park anymore otherwise
+                    Thread.interrupted();
                 }
-            } catch (InterruptedException ex) {
-                ; // ignore
-            } finally {
-                _lock.unlock();
+                _wakeup = Long.MIN_VALUE;
             }
         }
     }
 
-    /**
-     * Calculate the time until the next available job.
-     * 
-     * @return time until next job, 0 if one is one is scheduled to go, and some
-     *         really large number if there are no jobs to speak of
-     */
-    private long nextJobTime() {
-        assert _lock.isLocked();
-
-        Task job = _todo.peek();
-        if (job == null)
-            return Long.MAX_VALUE;
-
-        return Math.max(0, job.schedDate - System.currentTimeMillis());
-    }
-
     /**
      * Remove the tasks of a given type from the list. 
      * @param tasktype type of task
      */
     public void clearTasks(final Class<? extends Task> tasktype) {
-        _lock.lock();
-        try {
-            CollectionsX.remove_if(_todo, new MemberOfFunction<Task>() {
-                @Override
-                public boolean isMember(Task o) {
-                    return tasktype.isAssignableFrom(o.getClass());
-                }
-
-            });
-        } finally {
-            _lock.unlock();
+        for (Map.Entry<Task, TimingWheel.Entry> e : _entries.entrySet()) {
+            if (tasktype.isAssignableFrom(e.getKey().getClass()) && _entries.remove(e.getKey(), e.getValue())) {
+                e.getValue().canceled = true;
+                _size.decrementAndGet();
+            }
         }
     }
 }
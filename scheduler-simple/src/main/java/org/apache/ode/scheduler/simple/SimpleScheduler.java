@@ -26,6 +26,7 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.Status;
@@ -33,10 +34,12 @@ import javax.transaction.Synchronization;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
+import javax.xml.namespace.QName;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.ode.bpel.iapi.ContextException;
+import org.apache.ode.bpel.iapi.ProcessConf;
 import org.apache.ode.bpel.iapi.Scheduler;
 import org.apache.log4j.helpers.AbsoluteTimeDateFormat;
 
@@ -78,6 +81,15 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
     /** 10s of no communication and you are deemed dead. */
     long _staleInterval = 10000;
 
+    /** Lower bound of the number of jobs loaded at once, when adaptive. */
+    static final int MIN_LOAD_BATCH = 10;
+
+    /**
+     * Lower bound of the time between two loads of jobs, when adaptive; keeps a backlog the executor can't
+     * drain from turning the loads into a tight polling loop.
+     */
+    static final long MIN_LOAD_INTERVAL = 1000;
+
     /** Duration used to log a warning if a job scheduled at a date D is queued at D'>D+_warningDelay */
     long _warningDelay = 5*60*1000;
 
@@ -137,6 +149,83 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
     /** Interval between immediate retries when the transaction fails **/
     private long _immediateTransactionRetryInterval = 1000;
 
+    /** Number of times a failed persisted job is retried before it is given up on. */
+    private int _retryLimit = 10;
+
+    /** Delay before the first retry of a failed persisted job. */
+    private long _retryBaseDelay = 1000;
+
+    /** Factor the delay grows by from one retry to the next. */
+    private double _retryMultiplier = 5;
+
+    /** Cap on the delay between two retries, before the jitter. */
+    private long _retryMaxDelay = 60 * 60 * 1000;
+
+    /**
+     * Random extra delay added to each retry, as a fraction of the delay, for the jobs that failed together
+     * not to be retried all at the same time.
+     */
+    private double _retryJitter = 0.5;
+
+    /** Whether the job inserts and deletes of a transaction are sent to the database in batches when it commits. */
+    private boolean _batchJobUpdates = true;
+
+    /** Job inserts and deletes deferred until the completion of their transaction. */
+    private ConcurrentHashMap<Transaction, JobBatch> _jobBatches = new ConcurrentHashMap<Transaction, JobBatch>();
+
+    /** Whether the jobs of a process instance are run one after the other in a lane of their own. */
+    private boolean _instanceLanes = true;
+
+    /** Lanes of the process instances with jobs running or waiting to run, by instance id. Guarded by itself. */
+    private final Map<Long, InstanceLane> _lanes = new HashMap<Long, InstanceLane>();
+
+    /** Channel to the other nodes, used to hand the jobs of process instances over to their node. Optional. */
+    private NodeChannel _nodeChannel;
+
+    /** Whether the nodes hold leases on their jobs, renewed in the ODE_NODE table, when the database has it. */
+    private boolean _nodeLeases = true;
+
+    /** Whether this node currently renews its lease. */
+    private volatile boolean _leasing;
+
+    /** Nodes known through their lease; their jobs are taken over by the live nodes, share by share. */
+    private CopyOnWriteArraySet<String> _leasedNodes = new CopyOnWriteArraySet<String>();
+
+    /**
+     * Whether the number of jobs loaded at once and the time between loads follow the measured completion
+     * rate, rather than being derived from {@link #_tps}, which then only gives the initial batch size.
+     */
+    private boolean _adaptiveLoading = true;
+
+    /** Maximum number of jobs of the next load, when adaptive. */
+    private volatile int _loadBatch;
+
+    /** Whether the previous load got as many jobs as it asked for, i.e. more are waiting in the database. */
+    private boolean _loadFull;
+
+    /** Delay until the next load. */
+    private long _nextLoadDelay;
+
+    /** Time of the last load. */
+    private long _lastLoad;
+
+    private final SchedulerStatistics _statistics = new SchedulerStatistics(_outstandingJobs);
+
+    /**
+     * Maximum number of jobs handed over to the executor at once, the others wait in the dispatcher. If zero,
+     * the size of the executor when it's bounded, no limit otherwise.
+     */
+    private int _maxRunningJobs = 0;
+
+    /** Shares the workers between the jobs, by priority class and process. */
+    private JobDispatcher _dispatcher;
+
+    /** Priority classes of the job types, {@link JobDispatcher#NORMAL} for the types not in there. */
+    private final Map<String, Integer> _typePriorities = new HashMap<String, Integer>();
+
+    /** Job priorities and weights of the processes, by process id. */
+    private final ConcurrentHashMap<String, ProcessShare> _processShares = new ConcurrentHashMap<String, ProcessShare>();
+
     public SimpleScheduler(String nodeId, DatabaseDelegate del, Properties conf) {
         _nodeId = nodeId;
         _db = del;
@@ -149,6 +238,29 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
 
         _immediateTransactionRetryLimit = getIntProperty(conf, "ode.scheduler.immediateTransactionRetryLimit", _immediateTransactionRetryLimit);
         _immediateTransactionRetryInterval = getLongProperty(conf, "ode.scheduler.immediateTransactionRetryInterval", _immediateTransactionRetryInterval);
+        _retryLimit = getIntProperty(conf, "ode.scheduler.retryLimit", _retryLimit);
+        _retryBaseDelay = getLongProperty(conf, "ode.scheduler.retryBaseDelay", _retryBaseDelay);
+        _retryMultiplier = getDoubleProperty(conf, "ode.scheduler.retryMultiplier", _retryMultiplier);
+        _retryMaxDelay = getLongProperty(conf, "ode.scheduler.retryMaxDelay", _retryMaxDelay);
+        _retryJitter = getDoubleProperty(conf, "ode.scheduler.retryJitter", _retryJitter);
+        _batchJobUpdates = getBooleanProperty(conf, "ode.scheduler.batchJobUpdates", _batchJobUpdates);
+        _instanceLanes = getBooleanProperty(conf, "ode.scheduler.instanceLanes", _instanceLanes);
+        _nodeLeases = getBooleanProperty(conf, "ode.scheduler.nodeLeases", _nodeLeases);
+        _adaptiveLoading = getBooleanProperty(conf, "ode.scheduler.adaptiveLoading", _adaptiveLoading);
+        _maxRunningJobs = getIntProperty(conf, "ode.scheduler.maxRunningJobs", _maxRunningJobs);
+
+        // Request/response traffic first, then the rest, then the timers and timeout checks
+        _typePriorities.put("MATCHER", JobDispatcher.HIGH);
+        _typePriorities.put("INVOKE_RESPONSE", JobDispatcher.HIGH);
+        _typePriorities.put("INVOKE_INTERNAL", JobDispatcher.HIGH);
+        _typePriorities.put("TIMER", JobDispatcher.LOW);
+        _typePriorities.put("INVOKE_CHECK", JobDispatcher.LOW);
+        for (Object key : conf.keySet()) {
+            String name = key.toString();
+            if (name.startsWith("ode.scheduler.priority."))
+                _typePriorities.put(name.substring("ode.scheduler.priority.".length()),
+                        ProcessConf.JOB_PRIORITY.fromString(conf.getProperty(name).trim()).ordinal());
+        }
 
         _todo = new SchedulerThread(this);
     }
@@ -169,6 +281,83 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         else return defaultValue;
     }
 
+    private double getDoubleProperty(Properties props, String propName, double defaultValue) {
+        String s = props.getProperty(propName);
+        if (s != null) return Double.parseDouble(s);
+        else return defaultValue;
+    }
+
+    private boolean getBooleanProperty(Properties props, String propName, boolean defaultValue) {
+        String s = props.getProperty(propName);
+        if (s != null) return Boolean.valueOf(s.trim());
+        else return defaultValue;
+    }
+
+    public void setBatchJobUpdates(boolean batchJobUpdates) {
+        _batchJobUpdates = batchJobUpdates;
+    }
+
+    public void setInstanceLanes(boolean instanceLanes) {
+        _instanceLanes = instanceLanes;
+    }
+
+    public void setAdaptiveLoading(boolean adaptiveLoading) {
+        _adaptiveLoading = adaptiveLoading;
+    }
+
+    /**
+     * @return the job statistics of the scheduler, also meant to be registered as an MBean
+     */
+    public SchedulerStatisticsMBean getStatistics() {
+        return _statistics;
+    }
+
+    /**
+     * @return the jobs that exhausted their retries, also meant to be registered as an MBean
+     */
+    public DeadJobsMBean getDeadJobs() {
+        return new DeadJobs(this, _db);
+    }
+
+    public void setRetryPolicy(int limit, long baseDelay, double multiplier, long maxDelay, double jitter) {
+        _retryLimit = limit;
+        _retryBaseDelay = baseDelay;
+        _retryMultiplier = multiplier;
+        _retryMaxDelay = maxDelay;
+        _retryJitter = jitter;
+    }
+
+    public void setMaxRunningJobs(int maxRunningJobs) {
+        _maxRunningJobs = maxRunningJobs;
+    }
+
+    /**
+     * Sets the priority and the weight of the jobs of a process, see {@link ProcessConf#getJobPriority()}
+     * and {@link ProcessConf#getJobWeight()}.
+     */
+    public void setProcessShare(QName pid, ProcessConf.JOB_PRIORITY priority, int weight) {
+        if (priority == ProcessConf.JOB_PRIORITY.NORMAL && weight == 1)
+            _processShares.remove(pid.toString());
+        else
+            _processShares.put(pid.toString(), new ProcessShare(priority.ordinal() - ProcessConf.JOB_PRIORITY.NORMAL.ordinal(), weight));
+    }
+
+    public void removeProcessShare(QName pid) {
+        _processShares.remove(pid.toString());
+    }
+
+    public void setNodeLeases(boolean nodeLeases) {
+        _nodeLeases = nodeLeases;
+    }
+
+    /**
+     * When set, the process instances are spread over the nodes reachable through the channel and their jobs are
+     * handed over to their node as soon as they're committed.
+     */
+    public void setNodeChannel(NodeChannel nodeChannel) {
+        _nodeChannel = nodeChannel;
+    }
+
     public void setNodeId(String nodeId) {
         _nodeId = nodeId;
     }
@@ -209,7 +398,7 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         _todo.dequeue(new Job(0, jobId, false, null));
         _outstandingJobs.remove(jobId);
         try {
-            _db.deleteJob(jobId, _nodeId);
+            deleteJob(jobId);
         } catch (DatabaseException e) {
             __log.debug("Job removal failed.", e);
             throw new ContextException("Job removal failed.", e);
@@ -351,9 +540,15 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         boolean immediate = when.getTime() <= ctime + _immediateInterval;
         boolean nearfuture = !immediate && when.getTime() <= ctime + _nearFutureInterval;
         try {
-            if (immediate) {
+            String owner = getOwnerNode(job);
+            if (immediate && !_nodeId.equals(owner)) {
+                // The instance is run by another node, let it know about the job once committed
+                insertJob(job, owner, false);
+                notifyOnCommit(owner, job.jobId);
+                __log.debug("scheduled immediate job: " + job.jobId + " for node " + owner);
+            } else if (immediate) {
                 // Immediate scheduling means we put it in the DB for safe keeping
-                _db.insertJob(job, _nodeId, true);
+                insertJob(job, _nodeId, true);
 
                 // And add it to our todo list .
                 if (_outstandingJobs.size() < _todoLimit) {
@@ -363,11 +558,11 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
             } else if (nearfuture) {
                 // Near future, assign the job to ourselves (why? -- this makes it very unlikely that we
                 // would get two nodes trying to process the same instance, which causes unsightly rollbacks).
-                _db.insertJob(job, _nodeId, false);
+                insertJob(job, owner, false);
                 __log.debug("scheduled near-future job: " + job.jobId);
             } else /* far future */ {
                 // Not the near future, we don't assign a node-id, we'll assign it later.
-                _db.insertJob(job, null, false);
+                insertJob(job, null, false);
                 __log.debug("scheduled far-future job: " + job.jobId);
             }
         } catch (DatabaseException dbe) {
@@ -377,6 +572,114 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         return job.jobId;
     }
 
+    /**
+     * Schedule a job that exhausted its retries again, to run right away with a fresh retry count.
+     *
+     * @return false if there is no dead job with this identifier
+     */
+    boolean replayDeadJob(final String jobId) throws Exception {
+        return execTransaction(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                DeadJob dead = _db.getDeadJob(jobId);
+                if (dead == null || !_db.deleteDeadJob(jobId))
+                    return false;
+                dead.detail.remove("retry");
+                long now = System.currentTimeMillis();
+                schedulePersistedJob(new Job(now, dead.jobId, dead.transacted, dead.detail), new Date(now), now);
+                __log.info("Replaying dead job " + jobId);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return the node that should run the given job: with a node channel, the instances are spread over this
+     * node and the reachable nodes by instance id; otherwise (or for jobs without instance) this node
+     */
+    private String getOwnerNode(Job job) {
+        NodeChannel channel = _nodeChannel;
+        Object iid = job.detail.get("iid");
+        if (channel == null || !(iid instanceof Long) || _knownNodes.isEmpty())
+            return _nodeId;
+        List<String> nodes = getLiveNodes();
+        for (Iterator<String> it = nodes.iterator(); it.hasNext();) {
+            String node = it.next();
+            if (!_nodeId.equals(node) && !channel.isReachable(node)) it.remove();
+        }
+        return nodes.get((int) Math.abs((Long) iid % nodes.size()));
+    }
+
+    /**
+     * @return this node and the nodes we heard from within the stale interval, sorted
+     */
+    private List<String> getLiveNodes() {
+        long now = System.currentTimeMillis();
+        TreeSet<String> nodes = new TreeSet<String>();
+        nodes.add(_nodeId);
+        for (String node : _knownNodes) {
+            Long lastSeen = _lastHeartBeat.get(node);
+            if (lastSeen != null && now - lastSeen <= _staleInterval) nodes.add(node);
+        }
+        return new ArrayList<String>(nodes);
+    }
+
+    private void notifyOnCommit(final String nodeId, final String jobId) {
+        final NodeChannel channel = _nodeChannel;
+        registerSynchronizer(new Synchronizer() {
+            public void afterCompletion(boolean success) {
+                if (!success)
+                    return;
+                try {
+                    if (!channel.notifyJobs(nodeId, Collections.singletonList(jobId)))
+                        __log.debug("Node " + nodeId + " unreachable, it will load job " + jobId + " from the db.");
+                } catch (RuntimeException e) {
+                    __log.warn("Couldn't notify node " + nodeId + " of job " + jobId + ", it will load it from the db.", e);
+                }
+            }
+
+            public void beforeCompletion() {
+            }
+        });
+    }
+
+    private void insertJob(Job job, String nodeId, boolean loaded) throws DatabaseException {
+        JobBatch batch = getJobBatch();
+        if (batch != null) batch.insert(job, nodeId, loaded);
+        else _db.insertJob(job, nodeId, loaded);
+    }
+
+    private void deleteJob(String jobId) throws DatabaseException {
+        JobBatch batch = getJobBatch();
+        if (batch != null) batch.delete(jobId);
+        else _db.deleteJob(jobId, _nodeId);
+    }
+
+    /**
+     * @return the batch of job updates of the current transaction, or null if the updates should go to the
+     * database right away
+     */
+    private JobBatch getJobBatch() {
+        TransactionManager txm = _txm;
+        if (!_batchJobUpdates || txm == null)
+            return null;
+        try {
+            Transaction tx = txm.getTransaction();
+            if (tx == null || tx.getStatus() != Status.STATUS_ACTIVE)
+                return null;
+            JobBatch batch = _jobBatches.get(tx);
+            if (batch == null) {
+                batch = new JobBatch(tx);
+                tx.registerSynchronization(batch);
+                _jobBatches.put(tx, batch);
+            }
+            // Updates made while completing the transaction can't be deferred anymore
+            return batch.flushed ? null : batch;
+        } catch (Exception e) {
+            __log.debug("Couldn't batch the job updates of the current transaction.", e);
+            return null;
+        }
+    }
+
     public String scheduleVolatileJob(boolean transacted, Map<String, Object> jobDetail) throws ContextException {
         Job job = new Job(System.currentTimeMillis(), transacted, jobDetail);
         job.persisted = false;
@@ -401,20 +704,31 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
 
         if (_exec == null)
             _exec = Executors.newCachedThreadPool();
+        _dispatcher = new JobDispatcher(_exec, getMaxRunningJobs());
 
         _todo.clearTasks(UpgradeJobsTask.class);
         _todo.clearTasks(LoadImmediateTask.class);
         _todo.clearTasks(CheckStaleNodes.class);
+        _todo.clearTasks(RenewLeaseTask.class);
         _processedSinceLastLoadTask.clear();
         _outstandingJobs.clear();
 
         _knownNodes.clear();
+        _leasedNodes.clear();
+
+        _loadBatch = initialLoadBatch();
+        _loadFull = false;
+        _lastLoad = 0;
 
+        final Map<String, Long> leases = new HashMap<String, Long>();
         try {
             execTransaction(new Callable<Void>() {
 
                 public Void call() throws Exception {
                     _knownNodes.addAll(_db.getNodeIds());
+                    _leasing = _nodeLeases && _db.renewLease(_nodeId, System.currentTimeMillis() + _staleInterval);
+                    if (_leasing)
+                        leases.putAll(_db.getNodeLeases());
                     return null;
                 }
 
@@ -426,8 +740,12 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
 
         long now = System.currentTimeMillis();
 
-        // Pretend we got a heartbeat...
+        // Pretend we got a heartbeat, unless the node has a lease telling otherwise
         for (String s : _knownNodes) _lastHeartBeat.put(s, now);
+        for (String s : leases.keySet()) _lastHeartBeat.remove(s);
+        updateLeases(leases);
+        if (_leasing)
+            _todo.enqueue(new RenewLeaseTask(now + _staleInterval / 3));
 
         // schedule immediate job loading for now!
         _todo.enqueue(new LoadImmediateTask(now));
@@ -438,10 +756,25 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         // do the upgrade sometime (random) in the immediate interval.
         _todo.enqueue(new UpgradeJobsTask(now + randomMean(_immediateInterval)));
 
+        if (_nodeChannel != null) {
+            _nodeChannel.register(_nodeId, new NodeChannel.Listener() {
+                public void onJobs(List<String> jobIds) {
+                    _todo.enqueue(new LoadJobsTask(System.currentTimeMillis(), jobIds));
+                }
+            });
+        }
+
         _todo.start();
         _running = true;
     }
 
+    private int getMaxRunningJobs() {
+        if (_maxRunningJobs > 0 || !(_exec instanceof ThreadPoolExecutor))
+            return _maxRunningJobs;
+        int poolSize = ((ThreadPoolExecutor) _exec).getMaximumPoolSize();
+        return poolSize == Integer.MAX_VALUE ? 0 : poolSize;
+    }
+
     private long randomMean(long mean) {
         return (long) _random.nextDouble() * mean + (mean/2);
     }
@@ -450,10 +783,28 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         if (!_running)
             return;
 
+        if (_nodeChannel != null)
+            _nodeChannel.unregister(_nodeId);
+
         _todo.stop();
         _todo.clearTasks(UpgradeJobsTask.class);
         _todo.clearTasks(LoadImmediateTask.class);
         _todo.clearTasks(CheckStaleNodes.class);
+        _todo.clearTasks(LoadJobsTask.class);
+        _todo.clearTasks(RenewLeaseTask.class);
+        if (_leasing) {
+            // Let the other nodes take our jobs over right away
+            _leasing = false;
+            try {
+                execTransaction(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        return _db.renewLease(_nodeId, System.currentTimeMillis());
+                    }
+                });
+            } catch (Exception ex) {
+                __log.warn("Couldn't give up the lease of node " + _nodeId + ", it will expire.", ex);
+            }
+        }
         _processedSinceLastLoadTask.clear();
         _outstandingJobs.clear();
 
@@ -464,16 +815,147 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         _running = false;
     }
 
+    /**
+     * Job inserts and deletes of a transaction, sent to the database in batches before it commits. Inserting
+     * and then deleting the same job in a transaction doesn't hit the database at all.
+     */
+    class JobBatch implements Synchronization {
+        final Transaction tx;
+        final Map<String, PendingInsert> inserts = new LinkedHashMap<String, PendingInsert>();
+        final List<String> deletes = new ArrayList<String>();
+        volatile boolean flushed;
+
+        JobBatch(Transaction tx) {
+            this.tx = tx;
+        }
+
+        void insert(Job job, String nodeId, boolean loaded) {
+            inserts.put(job.jobId, new PendingInsert(job, nodeId, loaded));
+        }
+
+        void delete(String jobId) {
+            if (inserts.remove(jobId) == null)
+                deletes.add(jobId);
+        }
+
+        public void beforeCompletion() {
+            flushed = true;
+            try {
+                _db.deleteJobs(deletes, _nodeId);
+                // One batch per node and loaded state
+                List<PendingInsert> pending = new ArrayList<PendingInsert>(inserts.values());
+                while (!pending.isEmpty()) {
+                    PendingInsert first = pending.get(0);
+                    List<Job> jobs = new ArrayList<Job>();
+                    for (Iterator<PendingInsert> it = pending.iterator(); it.hasNext();) {
+                        PendingInsert p = it.next();
+                        if (p.loaded == first.loaded && (p.nodeId == null ? first.nodeId == null : p.nodeId.equals(first.nodeId))) {
+                            jobs.add(p.job);
+                            it.remove();
+                        }
+                    }
+                    _db.insertJobs(jobs, first.nodeId, first.loaded);
+                }
+            } catch (DatabaseException dbe) {
+                __log.error("Database error.", dbe);
+                // Makes the transaction roll back
+                throw new ContextException("Database error.", dbe);
+            }
+        }
+
+        public void afterCompletion(int status) {
+            _jobBatches.remove(tx);
+        }
+    }
+
+    static class PendingInsert {
+        final Job job;
+        final String nodeId;
+        final boolean loaded;
+
+        PendingInsert(Job job, String nodeId, boolean loaded) {
+            this.job = job;
+            this.nodeId = nodeId;
+            this.loaded = loaded;
+        }
+    }
+
+    /**
+     * The jobs of a process instance, run one after the other: they would contend for the instance anyway,
+     * this way they wait in memory rather than being rescheduled by the engine. Consecutive RESUME jobs are
+     * merged into one, the instance being executed till it can't progress anymore.
+     */
+    class InstanceLane implements JobDispatcher.Rejectable {
+        final Long iid;
+        /** Jobs waiting to run, guarded by _lanes. */
+        final LinkedList<Job> jobs = new LinkedList<Job>();
+
+        InstanceLane(Long iid) {
+            this.iid = iid;
+        }
+
+        public void run() {
+            Job job;
+            List<Job> merged = new ArrayList<Job>();
+            synchronized (_lanes) {
+                job = jobs.removeFirst();
+                while (!jobs.isEmpty() && isMergeableResume(job, jobs.getFirst()))
+                    merged.add(jobs.removeFirst());
+            }
+            if (!merged.isEmpty() && __log.isDebugEnabled())
+                __log.debug("Merged " + merged.size() + " RESUME jobs of instance " + iid + " into " + job.jobId);
+            try {
+                new RunJob(job, _jobProcessor, merged).call();
+            } catch (Exception ex) {
+                __log.error("Error while running job " + job, ex);
+            } finally {
+                boolean more;
+                synchronized (_lanes) {
+                    more = !jobs.isEmpty();
+                    if (!more) _lanes.remove(iid);
+                }
+                // Give the other lanes a chance rather than looping
+                if (more) submit(this);
+            }
+        }
+
+        public void rejected() {
+            List<Job> dropped;
+            synchronized (_lanes) {
+                _lanes.remove(iid);
+                dropped = new ArrayList<Job>(jobs);
+                jobs.clear();
+            }
+            for (Job job : dropped)
+                _outstandingJobs.remove(job.jobId);
+        }
+    }
+
+    private boolean isMergeableResume(Job job, Job next) {
+        return "RESUME".equals(job.detail.get("type")) && "RESUME".equals(next.detail.get("type"))
+                && job.transacted == next.transacted
+                && String.valueOf(job.detail.get("inmem")).equals(String.valueOf(next.detail.get("inmem")));
+    }
+
     class RunJob implements Callable<Void> {
         final Job job;
         final JobProcessor processor;
+        /** Redundant jobs merged into this one, they go away with it. */
+        final List<Job> merged;
 
         RunJob(Job job, JobProcessor processor) {
+            this(job, processor, Collections.<Job>emptyList());
+        }
+
+        RunJob(Job job, JobProcessor processor, List<Job> merged) {
             this.job = job;
             this.processor = processor;
+            this.merged = merged;
         }
 
         public Void call() throws Exception {
+            long start = System.nanoTime();
+            boolean failed = false;
             try {
                 final Scheduler.JobInfo jobInfo = new Scheduler.JobInfo(job.jobId, job.detail,
                         (Integer) (job.detail.get("retry") != null ? job.detail.get("retry") : 0));
@@ -485,6 +967,9 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
                                 if (job.persisted)
                                     if (!_db.deleteJob(job.jobId, _nodeId))
                                         throw new JobNoLongerInDbException(job.jobId, _nodeId);
+                                for (Job m : merged) {
+                                    if (m.persisted) deleteJob(m.jobId);
+                                }
                                 try {
                                     processor.onScheduledJob(jobInfo);
                                     // If the job is a "runnable" job, schedule the next job occurence
@@ -496,7 +981,7 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
                                             _pollIntervalForPolledRunnable = 1000;
                                         }
                                         job.schedDate = System.currentTimeMillis() + _pollIntervalForPolledRunnable;
-                                        _db.insertJob(job, _nodeId, false);
+                                        insertJob(job, _nodeId, false);
                                     }
                                 } catch (JobProcessorException jpe) {
                                     if (!jpe.retry) {
@@ -514,6 +999,7 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
                         // it the synchronization is a best-effort but not perfect.
                         __log.debug("job no longer in db forced rollback.");
                     } catch (final Exception ex) {
+                        failed = true;
                         __log.error("Error while executing job: "+job, ex);
 
                         // We only get here if the above execTransaction fails, so that transaction got
@@ -523,18 +1009,19 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
                                 public Void call() throws Exception {
                                     if (needRetry[0]) {
                                         int retry = job.detail.get("retry") != null ? (((Integer) job.detail.get("retry")) + 1) : 0;
-                                        if (retry <= 10) {
+                                        if (retry <= _retryLimit) {
                                             job.detail.put("retry", retry);
-                                            long delay = (long)(Math.pow(5, retry));
-                                            job.schedDate = System.currentTimeMillis() + delay*1000;
+                                            long delay = getRetryDelay(retry);
+                                            job.schedDate = System.currentTimeMillis() + delay;
                                             _db.updateJob(job);
-                                            __log.error("Error while processing job, retrying in " + delay + "s");
+                                            __log.error("Error while processing job, retrying in " + delay + "ms");
                                         } else {
-                                            _db.deleteJob(job.jobId, _nodeId);
-                                            __log.error("Error while processing job after 10 retries, no more retries:" + job);
+                                            if (!_db.deadLetterJob(job, _nodeId, getFailureReason(ex)))
+                                                deleteJob(job.jobId);
+                                            __log.error("Error while processing job after " + _retryLimit + " retries, no more retries:" + job);
                                         }
                                     } else {
-                                        _db.deleteJob(job.jobId, _nodeId);
+                                        deleteJob(job.jobId);
                                     }
                                     return null;
                                 }
@@ -542,24 +1029,79 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
                         }
                     }
                 } else {
+                    failed = true;
                     processor.onScheduledJob(jobInfo);
+                    failed = false;
                 }
                 return null;
             } finally {
+                _statistics.jobCompleted(getJobType(job), System.nanoTime() - start, failed);
                 // the order of these 2 actions is crucial to avoid a race condition.
                 _processedSinceLastLoadTask.put(job.jobId, job.schedDate);
                 _outstandingJobs.remove(job.jobId);
+                for (Job m : merged) {
+                    _processedSinceLastLoadTask.put(m.jobId, m.schedDate);
+                    _outstandingJobs.remove(m.jobId);
+                }
             }
         }
     }
     
     /**
-     * Run a job in the current thread.
+     * Delay before a retry of a failed job: grows geometrically with the number of retries up to the cap,
+     * plus a random share of it. The jitter applies on top of the cap, or the jobs failing for a long time
+     * would all retry at once.
+     */
+    long getRetryDelay(int retry) {
+        double delay = Math.min(_retryBaseDelay * Math.pow(_retryMultiplier, retry), _retryMaxDelay);
+        return (long) (delay + delay * _retryJitter * _random.nextDouble());
+    }
+
+    private static String getFailureReason(Throwable t) {
+        while (t.getCause() != null && t.getCause() != t)
+            t = t.getCause();
+        return t.toString();
+    }
+
+    private String getJobType(Job job) {
+        Object type = job.detail.get("type");
+        if (type != null)
+            return type.toString();
+        return job.detail.get("runnable") != null ? "runnable" : "other";
+    }
+
+    /**
+     * Run a job in the current thread. Jobs of a process instance go through the lane of the instance.
      *
      * @param job job to run.
      */
     protected void runJob(final Job job) {
-        _exec.submit(new RunJob(job, _jobProcessor));
+        Object iid = job.detail.get("iid");
+        if (!_instanceLanes || !(iid instanceof Long)) {
+            dispatch(new RunJob(job, _jobProcessor), job);
+            return;
+        }
+        InstanceLane lane;
+        synchronized (_lanes) {
+            lane = _lanes.get(iid);
+            if (lane != null) {
+                // Queued behind the running job of the same instance
+                lane.jobs.add(job);
+                return;
+            }
+            lane = new InstanceLane((Long) iid);
+            lane.jobs.add(job);
+            _lanes.put((Long) iid, lane);
+        }
+        submit(lane);
+    }
+
+    private void submit(InstanceLane lane) {
+        Job next;
+        synchronized (_lanes) {
+            next = lane.jobs.getFirst();
+        }
+        dispatch(lane, next);
     }
 
      /**
@@ -585,7 +1127,52 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
      * @param job job to run.
      */
     protected void runPolledRunnable(final Job job) {
-         _exec.submit(new RunJob(job, _polledRunnableProcessor));
+         dispatch(new RunJob(job, _polledRunnableProcessor), job);
+    }
+
+    private void dispatch(final RunJob runJob, Job job) {
+        dispatch(new JobDispatcher.Rejectable() {
+            public void run() {
+                try {
+                    runJob.call();
+                } catch (Exception ex) {
+                    __log.error("Error while running job " + runJob.job, ex);
+                }
+            }
+
+            // loaded again from the database once the executor takes jobs again
+            public void rejected() {
+                _outstandingJobs.remove(runJob.job.jobId);
+            }
+        }, job);
+    }
+
+    /**
+     * Hands a job over to the dispatcher, in the priority class of its type moved up or down by the priority
+     * of its process.
+     */
+    private void dispatch(Runnable task, Job job) {
+        Integer priority = _typePriorities.get(getJobType(job));
+        int jobPriority = priority != null ? priority : JobDispatcher.NORMAL;
+        Object pid = job.detail.get("pid");
+        ProcessShare share = pid != null ? _processShares.get(pid.toString()) : null;
+        int weight = 1;
+        if (share != null) {
+            jobPriority = Math.max(JobDispatcher.HIGH, Math.min(JobDispatcher.LOW, jobPriority + share.shift));
+            weight = share.weight;
+        }
+        _dispatcher.dispatch(task, jobPriority, pid != null ? pid.toString() : null, weight);
+    }
+
+    static class ProcessShare {
+        /** Classes the jobs of the process are moved down by, up if negative. */
+        final int shift;
+        final int weight;
+
+        ProcessShare(int shift, int weight) {
+            this.shift = shift;
+            this.weight = weight;
+        }
     }
 
     private void addTodoOnCommit(final Job job) {
@@ -637,6 +1224,40 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         }
     }
 
+    /**
+     * Take the leases of the other nodes as heartbeats: a node was last seen a stale interval before its lease
+     * expires.
+     */
+    private void updateLeases(Map<String, Long> leases) {
+        for (Map.Entry<String, Long> lease : leases.entrySet()) {
+            String nodeId = lease.getKey();
+            if (_nodeId.equals(nodeId))
+                continue;
+            long heartBeat = lease.getValue() - _staleInterval;
+            Long lastSeen = _lastHeartBeat.get(nodeId);
+            if (lastSeen == null || lastSeen < heartBeat)
+                _lastHeartBeat.put(nodeId, heartBeat);
+            _knownNodes.add(nodeId);
+            _leasedNodes.add(nodeId);
+        }
+    }
+
+    boolean doRenewLease() {
+        try {
+            Map<String, Long> leases = execTransaction(new Callable<Map<String, Long>>() {
+                public Map<String, Long> call() throws Exception {
+                    _db.renewLease(_nodeId, System.currentTimeMillis() + _staleInterval);
+                    return _db.getNodeLeases();
+                }
+            });
+            updateLeases(leases);
+            return true;
+        } catch (Exception ex) {
+            __log.error("Error renewing the lease of node " + _nodeId + ".", ex);
+            return false;
+        }
+    }
+
     public void updateHeartBeat(String nodeId) {
         if (nodeId == null)
             return;
@@ -650,6 +1271,16 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
 
     boolean doLoadImmediate() {
         __log.debug("LOAD IMMEDIATE started");
+        _nextLoadDelay = (long) (_immediateInterval * .90);
+        long now = System.currentTimeMillis();
+        // the completion rate is sampled on every load, whether the batch adapts to it or not
+        double rate = _statistics.sample();
+        if (_adaptiveLoading)
+            adaptLoad(now, rate);
+        _statistics.loadBatchSize = _adaptiveLoading ? _loadBatch : fixedLoadBatch();
+        if (_lastLoad > 0)
+            _statistics.loadInterval = now - _lastLoad;
+        _lastLoad = now;
 
         // don't load anything if we're already half-full;  we've got plenty to do already
         if (_outstandingJobs.size() > _todoLimit/2) return true;
@@ -657,7 +1288,7 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         List<Job> jobs;
         try {
             // don't load more than we can chew
-            final int batch = Math.min((int) (_immediateInterval * _tps / 1000), _todoLimit-_outstandingJobs.size());
+            final int batch = Math.min(_adaptiveLoading ? _loadBatch : fixedLoadBatch(), _todoLimit-_outstandingJobs.size());
 
             // jobs might have been enqueued by #addTodoOnCommit meanwhile
             if (batch<=0) {
@@ -673,6 +1304,7 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
             });
             if (__log.isDebugEnabled()) __log.debug("loaded "+jobs.size()+" jobs from db");
 
+            int enqueued = 0;
             long delayedTime = System.currentTimeMillis() - _warningDelay;
             int delayedCount = 0;
             boolean runningLate;
@@ -689,14 +1321,19 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
                 }
                 if (__log.isDebugEnabled())
                     __log.debug("todo.enqueue job from db: " + j.jobId.trim() + " for " + j.schedDate + "(" + f.format(j.schedDate)+") "+(runningLate?" delayed=true":""));
-                enqueue(j);
+                if (enqueue(j))
+                    enqueued++;
             }
+            // the jobs re-read while still outstanding don't count, a backlog that isn't draining isn't a full load
+            _loadFull = enqueued >= batch;
             if (delayedCount > 0) {
                 __log.warn("Dispatching jobs with more than "+(_warningDelay/60000)+" minutes delay. Either the server was down for some time or the job load is greater than available capacity");
             }
 
             // clear only if the batch succeeded
             _processedSinceLastLoadTask.clear();
+            if (_adaptiveLoading && _loadFull)
+                _nextLoadDelay = drainTime(countDueJobs(System.currentTimeMillis()));
             return true;
         } catch (Exception ex) {
             __log.error("Error loading immediate jobs from database.", ex);
@@ -706,7 +1343,91 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         }
     }
 
-    void enqueue(Job job) {
+    /**
+     * @return the number of jobs loaded at once when adaptive loading is off
+     */
+    private int fixedLoadBatch() {
+        return (int) (_immediateInterval * _tps / 1000);
+    }
+
+    /**
+     * @return the number of jobs the adaptive loading starts from
+     */
+    private int initialLoadBatch() {
+        return Math.max(MIN_LOAD_BATCH, fixedLoadBatch());
+    }
+
+    /**
+     * Adapt the number of jobs loaded at once to the completion rate, AIMD style: if the jobs of the previous
+     * load are mostly done and more are waiting in the database, load some more this time; if most of them
+     * are due but still waiting to run, the executor can't keep up and we load half as many.
+     */
+    private void adaptLoad(long now, double rate) {
+        int outstanding = countDueJobs(now);
+        int batch = _loadBatch;
+        if (outstanding > batch / 2) {
+            batch = Math.max(MIN_LOAD_BATCH, batch / 2);
+            // check again once the backlog has mostly been run
+            _nextLoadDelay = drainTime(outstanding);
+        } else if (_loadFull) {
+            batch = Math.min(_todoLimit, batch + Math.max(MIN_LOAD_BATCH, initialLoadBatch() / 4));
+        }
+        if (batch != _loadBatch && __log.isDebugEnabled())
+            __log.debug("Job load batch " + _loadBatch + " -> " + batch + ", " + outstanding + " jobs due, "
+                    + rate + " jobs/s");
+        _loadBatch = batch;
+    }
+
+    /**
+     * @return the number of outstanding jobs that are due, i.e. waiting for a thread rather than for their time
+     */
+    private int countDueJobs(long now) {
+        int due = 0;
+        for (Long schedDate : _outstandingJobs.values()) {
+            if (schedDate <= now) due++;
+        }
+        return due;
+    }
+
+    /**
+     * @return the time it should take to run half of the given number of jobs at the measured
+     * completion rate, within [{@link #MIN_LOAD_INTERVAL}, 90% of the immediate interval]
+     */
+    private long drainTime(int jobs) {
+        long max = (long) (_immediateInterval * .90);
+        double rate = _statistics.getTotalCompletionRate();
+        if (rate <= 0)
+            rate = _tps;
+        long time = (long) (jobs * 500 / rate);
+        return Math.max(Math.min(MIN_LOAD_INTERVAL, max), Math.min(time, max));
+    }
+
+    /**
+     * Load the jobs another node has just committed for us.
+     * @param jobIds identifiers of the jobs
+     */
+    void doLoadJobs(final List<String> jobIds) {
+        try {
+            List<Job> jobs = execTransaction(new Callable<List<Job>>() {
+                public List<Job> call() throws Exception {
+                    return _db.dequeueJobs(_nodeId, jobIds, System.currentTimeMillis() + _immediateInterval);
+                }
+            });
+            if (__log.isDebugEnabled()) __log.debug("loaded " + jobs.size() + " notified jobs from db");
+            for (Job j : jobs) {
+                // the next LoadImmediate will get the others
+                if (_outstandingJobs.size() >= _todoLimit) break;
+                enqueue(j);
+            }
+        } catch (Exception ex) {
+            __log.error("Error loading jobs " + jobIds + " from database.", ex);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the job was run or queued, <code>false</code> if it is already being processed
+     */
+    boolean enqueue(Job job) {
         if (_processedSinceLastLoadTask.get(job.jobId) == null) {
             if (_outstandingJobs.putIfAbsent(job.jobId, job.schedDate) == null) {
                 if (job.schedDate <= System.currentTimeMillis()) {
@@ -714,20 +1435,20 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
                 } else {
                     _todo.enqueue(job);
                 }
+                return true;
             } else {
               if (__log.isDebugEnabled()) __log.debug("Job "+job.jobId+" is being processed (outstanding job)");
             }
         } else {
             if (__log.isDebugEnabled()) __log.debug("Job "+job.jobId+" is being processed (processed since last load)");
         }
+        return false;
     }
 
     boolean doUpgrade() {
         __log.debug("UPGRADE started");
-        final ArrayList<String> knownNodes = new ArrayList<String>(_knownNodes);
-        // Don't forget about self.
-        knownNodes.add(_nodeId);
-        Collections.sort(knownNodes);
+        // Don't forget about self, nor assign anything to the nodes we're about to recover.
+        final List<String> knownNodes = getLiveNodes();
 
         // We're going to try to upgrade near future jobs using the db only.
         // We assume that the distribution of the trailing digits in the
@@ -763,6 +1484,10 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
      * @param nodeId
      */
     void recoverStaleNode(final String nodeId) {
+        if (_leasing && _leasedNodes.contains(nodeId)) {
+            recoverExpiredLease(nodeId);
+            return;
+        }
         __log.debug("recovering stale node " + nodeId);
         try {
             int numrows = execTransaction(new Callable<Integer>() {
@@ -789,6 +1514,50 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
 
     }
 
+    /**
+     * Take over our share of the jobs of a node whose lease expired. The jobs due in the near future are spread
+     * over the live nodes like on upgrade, each node reassigning its share to itself; the later ones are released
+     * for the upgrade to assign them. A node that renews its lease in the meantime keeps the jobs not taken yet.
+     * Once every live node had the time to take its share, whatever is left is reassigned to self and the node
+     * unregistered.
+     * @param nodeId
+     */
+    void recoverExpiredLease(final String nodeId) {
+        final long now = System.currentTimeMillis();
+        Long lastSeen = _lastHeartBeat.get(nodeId);
+        final boolean unregister = lastSeen == null || now - lastSeen > 3 * _staleInterval;
+        final List<String> liveNodes = getLiveNodes();
+        __log.debug("recovering expired lease of node " + nodeId + ", live nodes " + liveNodes);
+        try {
+            int numrows = execTransaction(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    if (unregister) {
+                        _db.deleteNode(nodeId);
+                        return _db.updateReassign(nodeId, _nodeId);
+                    }
+                    int reassigned = _db.updateReassign(nodeId, _nodeId, liveNodes.indexOf(_nodeId), liveNodes.size(),
+                            now + _nearFutureInterval);
+                    _db.updateRelease(nodeId, now + _nearFutureInterval);
+                    return reassigned;
+                }
+            });
+
+            __log.debug("reassigned " + numrows + " jobs to self. ");
+
+            if (unregister) {
+                _knownNodes.remove(nodeId);
+                _lastHeartBeat.remove(nodeId);
+                _leasedNodes.remove(nodeId);
+            }
+            if (numrows > 0)
+                doLoadImmediate();
+        } catch (Exception ex) {
+            __log.error("Database error reassigning node.", ex);
+        } finally {
+            __log.debug("lease recovery complete");
+        }
+    }
+
     private abstract class SchedulerTask extends Task implements Runnable {
         SchedulerTask(long schedDate) {
             super(schedDate);
@@ -806,7 +1575,7 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
                 success = doLoadImmediate();
             } finally {
                 if (success)
-                    _todo.enqueue(new LoadImmediateTask(System.currentTimeMillis() + (long) (_immediateInterval * .90)));
+                    _todo.enqueue(new LoadImmediateTask(System.currentTimeMillis() + _nextLoadDelay));
                 else
                     _todo.enqueue(new LoadImmediateTask(System.currentTimeMillis() + 1000));
             }
@@ -814,6 +1583,22 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
 
     }
 
+    /**
+     * Load the jobs another node has notified us about.
+     */
+    private class LoadJobsTask extends SchedulerTask {
+        final List<String> jobIds;
+
+        LoadJobsTask(long schedDate, List<String> jobIds) {
+            super(schedDate);
+            this.jobIds = jobIds;
+        }
+
+        public void run() {
+            doLoadJobs(jobIds);
+        }
+    }
+
     /**
      * Upgrade jobs from far future to immediate future (basically, assign them to a node).
      * @author mszefler
@@ -849,6 +1634,24 @@ public class SimpleScheduler implements Scheduler, TaskRunner {
         }
     }
 
+    /**
+     * Renew the lease of this node and read the ones of the other nodes.
+     */
+    private class RenewLeaseTask extends SchedulerTask {
+        RenewLeaseTask(long schedDate) {
+            super(schedDate);
+        }
+
+        public void run() {
+            boolean success = false;
+            try {
+                success = doRenewLease();
+            } finally {
+                _todo.enqueue(new RenewLeaseTask(System.currentTimeMillis() + (success ? _staleInterval / 3 : 1000)));
+            }
+        }
+    }
+
     /**
      * Check if any of the nodes in our cluster are stale.
      */
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.List;
+
+/**
+ * Hashed hierarchical timing wheel with a resolution of one millisecond. The first wheel has a slot per
+ * millisecond for the next 256ms, each upper wheel has 64 slots covering a whole turn of the wheel below;
+ * the entries of an upper slot are cascaded down when the wheel below gets there. Adding an entry is O(1),
+ * canceling one is marking it, it gets dropped when its slot comes. Tasks due further than the last wheel
+ * (about 49 days) go in its last slot and are placed again each time they are cascaded.
+ *
+ * Not thread-safe: the wheel belongs to the scheduler thread, see {@link SchedulerThread}.
+ */
+class TimingWheel {
+    private static final int ROOT_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVELS = 5;
+    private static final int ROOT_MASK = (1 << ROOT_BITS) - 1;
+    private static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+    private static final long MAX_DELTA = (1L << (ROOT_BITS + LEVEL_BITS * (LEVELS - 1))) - 1;
+
+    private final Entry[][] _slots = new Entry[LEVELS][];
+
+    /** Next millisecond to expire, all the slots before have been expired. */
+    private long _tick;
+
+    TimingWheel(long now) {
+        _slots[0] = new Entry[1 << ROOT_BITS];
+        for (int level = 1; level < LEVELS; ++level)
+            _slots[level] = new Entry[1 << LEVEL_BITS];
+        _tick = now;
+    }
+
+    /**
+     * Adds an entry, unless it's in the wheel already.
+     */
+    void add(Entry entry) {
+        if (entry.scheduled)
+            return;
+        entry.scheduled = true;
+        long time = Math.max(entry.task.schedDate, _tick);
+        long delta = Math.min(time - _tick, MAX_DELTA);
+        time = _tick + delta;
+        int level = 0;
+        int index = (int) (time & ROOT_MASK);
+        if (delta > ROOT_MASK) {
+            int shift = ROOT_BITS;
+            level = 1;
+            while ((delta >>> (shift + LEVEL_BITS)) > 0) {
+                shift += LEVEL_BITS;
+                ++level;
+            }
+            index = (int) ((time >>> shift) & LEVEL_MASK);
+        }
+        entry.next = _slots[level][index];
+        _slots[level][index] = entry;
+    }
+
+    /**
+     * Expires the slots up to the given time.
+     * @param now current time
+     * @param expired receives the entries due, canceled ones left out
+     */
+    void advance(long now, List<Entry> expired) {
+        while (_tick <= now) {
+            int index = (int) (_tick & ROOT_MASK);
+            if (index == 0)
+                cascade(1, ROOT_BITS);
+            Entry entry = _slots[0][index];
+            _slots[0][index] = null;
+            for (; entry != null; entry = entry.next) {
+                entry.scheduled = false;
+                if (!entry.canceled)
+                    expired.add(entry);
+            }
+            ++_tick;
+        }
+    }
+
+    /**
+     * @param now current time
+     * @return time till the next slot with entries in the first wheel, or till the end of its turn when a
+     *         cascade is due, 0 when late
+     */
+    long nextDelay(long now) {
+        long tick = _tick;
+        // A cascade is due on the first slot
+        while ((tick & ROOT_MASK) != 0 && _slots[0][(int) (tick & ROOT_MASK)] == null)
+            ++tick;
+        return Math.max(0, tick - now);
+    }
+
+    private void cascade(int level, int shift) {
+        int index = (int) ((_tick >>> shift) & LEVEL_MASK);
+        if (index == 0 && level < LEVELS - 1)
+            cascade(level + 1, shift + LEVEL_BITS);
+        Entry entry = _slots[level][index];
+        _slots[level][index] = null;
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.scheduled = false;
+            if (!entry.canceled)
+                add(entry);
+            entry = next;
+        }
+    }
+
+    static class Entry {
+        final Task task;
+        volatile boolean canceled;
+        /** Whether the entry is in a slot of the wheel. */
+        boolean scheduled;
+        /** Next entry in the same slot. */
+        Entry next;
+
+        Entry(Task task) {
+            this.task = task;
+        }
+    }
+}
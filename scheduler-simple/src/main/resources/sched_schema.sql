@@ -8,8 +8,30 @@ CREATE TABLE `ODE_JOB` (
   `scheduled` int  NOT NULL DEFAULT 0,
   `transacted` int  NOT NULL DEFAULT 0,
   `details` blob(4096)  NULL,
+  `instanceid` BIGINT  NULL,
+  `jobtype` VARCHAR(32)  NULL,
   PRIMARY KEY(`jobid`),
   INDEX `IDX_ODE_JOB_TS`('ts'),
-  INDEX `IDX_ODE_JOB_NODEID`('nodeid')
+  INDEX `IDX_ODE_JOB_NODEID`('nodeid'),
+  INDEX `IDX_ODE_JOB_INSTANCEID`('instanceid')
 )
 
+CREATE TABLE `ODE_NODE` (
+  `nodeid` char(64)  NOT NULL DEFAULT '',
+  `lease` BIGINT  NOT NULL DEFAULT 0,
+  PRIMARY KEY(`nodeid`)
+)
+
+CREATE TABLE `ODE_DEAD_JOB` (
+  `jobid` CHAR(64)  NOT NULL DEFAULT '',
+  `ts` BIGINT  NOT NULL DEFAULT 0,
+  `nodeid` char(64)  NULL,
+  `transacted` int  NOT NULL DEFAULT 0,
+  `details` blob(4096)  NULL,
+  `instanceid` BIGINT  NULL,
+  `jobtype` VARCHAR(32)  NULL,
+  `failed` BIGINT  NOT NULL DEFAULT 0,
+  `reason` VARCHAR(255)  NULL,
+  PRIMARY KEY(`jobid`),
+  INDEX `IDX_ODE_DEAD_JOB_FAILED`('failed')
+)
@@ -65,8 +65,10 @@ public class DelegateSupport {
         Connection c = _ds.getConnection();
         try {
             c.createStatement().executeUpdate("CREATE ALIAS MOD FOR \"org.apache.ode.scheduler.simple.DelegateSupport.mod\";");
-            String sql = "CREATE TABLE \"ODE_JOB\" (\"JOBID\" CHAR(64) NOT NULL, \"TS\" NUMERIC  NOT NULL, \"NODEID\" char(64)  NULL, \"SCHEDULED\" int  NOT NULL, \"TRANSACTED\" int  NOT NULL, \"DETAILS\" BINARY(4096)  NULL, PRIMARY KEY(\"JOBID\"));";
+            String sql = "CREATE TABLE \"ODE_JOB\" (\"JOBID\" CHAR(64) NOT NULL, \"TS\" NUMERIC  NOT NULL, \"NODEID\" char(64)  NULL, \"SCHEDULED\" int  NOT NULL, \"TRANSACTED\" int  NOT NULL, \"DETAILS\" BINARY(4096)  NULL, \"INSTANCEID\" BIGINT NULL, \"JOBTYPE\" VARCHAR(32) NULL, PRIMARY KEY(\"JOBID\"));";
             c.createStatement().executeUpdate(sql);
+            c.createStatement().executeUpdate("CREATE TABLE \"ODE_NODE\" (\"NODEID\" char(64) NOT NULL, \"LEASE\" NUMERIC NOT NULL, PRIMARY KEY(\"NODEID\"));");
+            c.createStatement().executeUpdate("CREATE TABLE \"ODE_DEAD_JOB\" (\"JOBID\" CHAR(64) NOT NULL, \"TS\" NUMERIC  NOT NULL, \"NODEID\" char(64)  NULL, \"TRANSACTED\" int  NOT NULL, \"DETAILS\" BINARY(4096)  NULL, \"INSTANCEID\" BIGINT NULL, \"JOBTYPE\" VARCHAR(32) NULL, \"FAILED\" NUMERIC NOT NULL, \"REASON\" VARCHAR(255) NULL, PRIMARY KEY(\"JOBID\"));");
         } finally {
             c.close();
         }
@@ -19,8 +19,13 @@
 
 package org.apache.ode.scheduler.simple;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.ode.scheduler.simple.DatabaseDelegate;
 import org.apache.ode.scheduler.simple.Job;
@@ -116,6 +121,46 @@ public class JdbcDelegateTest extends TestCase {
         assertEquals("j2",jobs.get(0).jobId);
     }
 
+    public void testDequeueJobs() throws Exception {
+        _del.insertJob(new Job(100L,"j1",true,new HashMap<String, Object>()), "n1", false);
+        _del.insertJob(new Job(200L,"j2",true,new HashMap<String, Object>()), "n1", false);
+        _del.insertJob(new Job(300L,"j3",true,new HashMap<String, Object>()), "n1", false);
+        _del.insertJob(new Job(100L,"j4",true,new HashMap<String, Object>()), "n2", false);
+
+        List<Job> jobs = _del.dequeueJobs("n1", Arrays.asList("j3", "j1", "j4", "j5"), 1000L);
+        assertEquals(2, jobs.size());
+        assertEquals("j1",jobs.get(0).jobId.trim());
+        assertEquals("j3",jobs.get(1).jobId.trim());
+        assertEquals(1, _del.dequeueJobs("n1", Arrays.asList("j1", "j3"), 250L).size());
+        assertEquals(0, _del.dequeueJobs("n1", new ArrayList<String>(), 1000L).size());
+    }
+
+    public void testLeases() throws Exception {
+        assertTrue(_del.getNodeLeases().isEmpty());
+        assertTrue(_del.renewLease("n1", 1000L));
+        assertTrue(_del.renewLease("n2", 2000L));
+        assertTrue(_del.renewLease("n1", 3000L));
+        Map<String, Long> leases = _del.getNodeLeases();
+        assertEquals(2, leases.size());
+        assertEquals(3000L, (long) leases.get("n1"));
+        assertTrue(_del.deleteNode("n1"));
+        assertFalse(_del.deleteNode("n1"));
+        assertEquals(1, _del.getNodeLeases().size());
+    }
+
+    public void testReassignShare() throws Exception {
+        _del.insertJob(new Job(100L,"j1",true,new HashMap<String, Object>()), "n1", false);
+        _del.insertJob(new Job(101L,"j2",true,new HashMap<String, Object>()), "n1", false);
+        _del.insertJob(new Job(102L,"j3",true,new HashMap<String, Object>()), "n1", false);
+        _del.insertJob(new Job(500L,"j4",true,new HashMap<String, Object>()), "n1", false);
+
+        assertEquals(2, _del.updateReassign("n1", "n2", 0, 2, 400L));
+        assertEquals(1, _del.updateRelease("n1", 400L));
+        assertEquals(1, _del.dequeueImmediate("n1", 1000L, 1000).size());
+        assertEquals(2, _del.dequeueImmediate("n2", 1000L, 1000).size());
+        assertEquals(1, _del.updateAssignToNode("n3", 0, 1, 1000L));
+    }
+
     public void testDeleteJob() throws Exception {
         _del.insertJob(new Job(100L,"j1",true,new HashMap<String, Object>()), "n1", false);
         _del.insertJob(new Job(200L,"j2",true,new HashMap<String, Object>()), "n2", false);
@@ -133,6 +178,79 @@ public class JdbcDelegateTest extends TestCase {
         assertEquals(1,_del.getNodeIds().size());
     }
     
+    public void testBatch() throws Exception {
+        List<Job> batch = new ArrayList<Job>();
+        for (int i = 0; i < 3; ++i)
+            batch.add(new Job(100L + i, "j" + i, true, new HashMap<String, Object>()));
+        assertEquals(3, _del.insertJobs(batch, "n1", false));
+        assertEquals(0, _del.insertJobs(new ArrayList<Job>(), "n1", false));
+
+        assertEquals(1, _del.deleteJobs(Arrays.asList("j1", "jx"), "n1"));
+        assertEquals(0, _del.deleteJobs(Arrays.asList("j0"), "n2"));
+
+        List<Job> jobs = _del.dequeueImmediate("n1", 1000L, 1000);
+        assertEquals(2, jobs.size());
+        assertEquals("j0", jobs.get(0).jobId);
+        assertEquals("j2", jobs.get(1).jobId);
+        assertTrue(jobs.get(0).transacted);
+    }
+
+    public void testPromotedColumns() throws Exception {
+        HashMap<String, Object> detail = new HashMap<String, Object>();
+        detail.put("iid", 1234L);
+        detail.put("type", "RESUME");
+        _del.insertJob(new Job(100L, "j1", true, detail), "n1", false);
+        _del.insertJob(new Job(100L, "j2", true, new HashMap<String, Object>()), "n1", false);
+
+        Connection c = _ds._ds.getConnection();
+        try {
+            ResultSet rs = c.createStatement().executeQuery("select jobid, instanceid, jobtype from ODE_JOB where instanceid = 1234");
+            assertTrue(rs.next());
+            assertEquals("j1", rs.getString(1).trim());
+            assertEquals("RESUME", rs.getString(3));
+            assertFalse(rs.next());
+        } finally {
+            c.close();
+        }
+
+        List<Job> jobs = _del.dequeueImmediate("n1", 1000L, 1000);
+        assertEquals(2, jobs.size());
+        Job j1 = jobs.get(0).jobId.equals("j1") ? jobs.get(0) : jobs.get(1);
+        assertEquals(1234L, j1.detail.get("iid"));
+        assertEquals("RESUME", j1.detail.get("type"));
+    }
+
+    public void testDeadJobs() throws Exception {
+        HashMap<String, Object> detail = new HashMap<String, Object>();
+        detail.put("iid", 1234L);
+        detail.put("retry", 10);
+        Job job = new Job(100L, "j1", true, detail);
+        _del.insertJob(job, "n1", false);
+        _del.insertJob(new Job(100L, "j2", true, new HashMap<String, Object>()), "n1", false);
+        assertEquals(0, _del.countDeadJobs());
+
+        assertTrue(_del.deadLetterJob(job, "n1", "java.lang.IllegalStateException: boom"));
+        assertEquals(1, _del.countDeadJobs());
+        // Gone from the job table
+        assertEquals(1, _del.dequeueImmediate("n1", 1000L, 1000).size());
+
+        DeadJob dead = _del.getDeadJob("j1");
+        assertNotNull(dead);
+        assertEquals(100L, dead.schedDate);
+        assertEquals(1234L, dead.detail.get("iid"));
+        assertEquals("java.lang.IllegalStateException: boom", dead.reason);
+        assertTrue(dead.failed > 0);
+        assertNull(_del.getDeadJob("j2"));
+
+        List<DeadJob> deadJobs = _del.getDeadJobs(10);
+        assertEquals(1, deadJobs.size());
+        assertEquals("j1", deadJobs.get(0).jobId);
+
+        assertTrue(_del.deleteDeadJob("j1"));
+        assertFalse(_del.deleteDeadJob("j1"));
+        assertEquals(0, _del.countDeadJobs());
+    }
+
     public void testUpgrade() throws Exception {
         for (int i = 0; i < 200; ++i)
             _del.insertJob(new Job(i ,"j" +i,true,new HashMap<String, Object>()), null, false);
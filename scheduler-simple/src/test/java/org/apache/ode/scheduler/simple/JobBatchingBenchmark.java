@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.apache.ode.utils.GUID;
+
+/**
+ * Micro-benchmark of the job inserts and deletes of the JDBC delegate against an embedded Derby database,
+ * one statement per job versus JDBC batches. Not a test case, run it with:
+ * <code>java org.apache.ode.scheduler.simple.JobBatchingBenchmark [jobs] [batch size]</code>
+ */
+public class JobBatchingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        JdbcDelegate del = newDelegate();
+        // Warm up the database and the JIT
+        runSingle(del, jobs / 10);
+        runBatched(del, jobs / 10, batchSize);
+
+        long start = System.nanoTime();
+        runSingle(del, jobs);
+        report("single", jobs, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        runBatched(del, jobs, batchSize);
+        report("batches of " + batchSize, jobs, System.nanoTime() - start);
+    }
+
+    static void runSingle(JdbcDelegate del, int jobs) throws Exception {
+        for (int i = 0; i < jobs; ++i) {
+            Job job = newJob(i);
+            del.insertJob(job, "n1", true);
+            del.deleteJob(job.jobId, "n1");
+        }
+    }
+
+    static void runBatched(JdbcDelegate del, int jobs, int batchSize) throws Exception {
+        List<Job> batch = new ArrayList<Job>(batchSize);
+        List<String> ids = new ArrayList<String>(batchSize);
+        for (int i = 0; i < jobs; ++i) {
+            Job job = newJob(i);
+            batch.add(job);
+            ids.add(job.jobId);
+            if (batch.size() == batchSize || i == jobs - 1) {
+                del.insertJobs(batch, "n1", true);
+                del.deleteJobs(ids, "n1");
+                batch.clear();
+                ids.clear();
+            }
+        }
+    }
+
+    static Job newJob(int i) {
+        HashMap<String, Object> detail = new HashMap<String, Object>();
+        detail.put("type", "INVOKE_RESPONSE");
+        detail.put("iid", (long) i);
+        return new Job(System.currentTimeMillis(), true, detail);
+    }
+
+    static void report(String mode, int jobs, long elapsedNs) {
+        System.out.println(mode + ": " + jobs + " jobs inserted and deleted in " + (elapsedNs / 1000000) + "ms, "
+                + (long) (jobs * 1e9 / elapsedNs) + " jobs/s");
+    }
+
+    static JdbcDelegate newDelegate() throws Exception {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:" + new GUID().toString());
+        ds.setCreateDatabase("create");
+        Connection c = ds.getConnection();
+        try {
+            c.createStatement().executeUpdate("CREATE TABLE ode_job (jobid CHAR(64) NOT NULL DEFAULT '', "
+                    + "ts BIGINT NOT NULL DEFAULT 0, nodeid char(64), scheduled int NOT NULL DEFAULT 0, "
+                    + "transacted int NOT NULL DEFAULT 0, details blob(4096), instanceid BIGINT, jobtype VARCHAR(32), "
+                    + "PRIMARY KEY(jobid))");
+            c.createStatement().executeUpdate("CREATE INDEX IDX_ODE_JOB_TS ON ode_job(ts)");
+            c.createStatement().executeUpdate("CREATE INDEX IDX_ODE_JOB_NODEID ON ode_job(nodeid)");
+            c.createStatement().executeUpdate("CREATE INDEX IDX_ODE_JOB_INSTANCEID ON ode_job(instanceid)");
+        } finally {
+            c.close();
+        }
+        return new JdbcDelegate(ds);
+    }
+}
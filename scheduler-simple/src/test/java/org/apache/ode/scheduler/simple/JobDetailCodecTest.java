@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Test of the job detail encoding.
+ */
+public class JobDetailCodecTest extends TestCase {
+
+    public void testRoundTrip() throws Exception {
+        Map<String, Object> detail = workEvent();
+        detail.put("retry", 3);
+        detail.put("inmem", Boolean.TRUE);
+        detail.put("ckeySet", null);
+        detail.put("date", new Date(1000L));
+        detail.put("unicode", "\u00e9t\u00e9");
+
+        Map<String, Object> decoded = decode(JobDetailCodec.encode(detail));
+        assertEquals(detail, decoded);
+        assertTrue(decoded.containsKey("ckeySet"));
+        assertEquals(Long.class, decoded.get("iid").getClass());
+        assertEquals(Integer.class, decoded.get("retry").getClass());
+    }
+
+    public void testLegacyFormat() throws Exception {
+        HashMap<String, Object> detail = workEvent();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(detail);
+        oos.close();
+        byte[] legacy = bos.toByteArray();
+
+        assertEquals(detail, decode(legacy));
+        // The class descriptors are gone
+        assertTrue(JobDetailCodec.encode(detail).length * 3 < legacy.length * 2);
+    }
+
+    public void testEmpty() throws Exception {
+        assertTrue(decode(JobDetailCodec.encode(new HashMap<String, Object>())).isEmpty());
+    }
+
+    private Map<String, Object> decode(byte[] bytes) throws Exception {
+        return JobDetailCodec.decode(new ByteArrayInputStream(bytes));
+    }
+
+    private HashMap<String, Object> workEvent() {
+        HashMap<String, Object> detail = new HashMap<String, Object>();
+        detail.put("iid", 12345L);
+        detail.put("pid", "{http://ode/bpel/unit-test}HelloWorld2-1");
+        detail.put("type", "INVOKE_RESPONSE");
+        detail.put("mexid", "hqejbhcnphr8b6nu7ffrrj");
+        detail.put("channel", "4521");
+        return detail;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Test of the sharing of the workers between the priority classes and the processes.
+ */
+public class JobDispatcherTest extends TestCase {
+
+    ExecutorService _exec;
+    JobDispatcher _dispatcher;
+    List<String> _ran;
+    CountDownLatch _blocked;
+
+    public void setUp() throws Exception {
+        _exec = Executors.newSingleThreadExecutor();
+        _dispatcher = new JobDispatcher(_exec, 1);
+        _ran = Collections.synchronizedList(new ArrayList<String>());
+        _blocked = new CountDownLatch(1);
+        // Keeps the only worker busy while the jobs are queued
+        _dispatcher.dispatch(new Runnable() {
+            public void run() {
+                try {
+                    _blocked.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        }, JobDispatcher.NORMAL, null, 1);
+    }
+
+    public void tearDown() throws Exception {
+        _exec.shutdownNow();
+    }
+
+    public void testPriorityClasses() throws Exception {
+        for (int i = 0; i < 20; ++i) {
+            dispatch("timer", JobDispatcher.LOW, 1);
+            dispatch("response", JobDispatcher.HIGH, 1);
+            dispatch("resume", JobDispatcher.NORMAL, 1);
+        }
+        assertEquals(60, _dispatcher.getWaitingJobs());
+        runAll(60);
+
+        List<String> first = _ran.subList(0, 21);
+        assertEquals(16, Collections.frequency(first, "response"));
+        assertEquals(4, Collections.frequency(first, "resume"));
+        // The lowest class isn't starved
+        assertEquals(1, Collections.frequency(first, "timer"));
+    }
+
+    public void testProcessWeights() throws Exception {
+        for (int i = 0; i < 40; ++i) {
+            dispatch("noisy", JobDispatcher.NORMAL, 1);
+        }
+        for (int i = 0; i < 10; ++i) {
+            dispatch("quiet", JobDispatcher.NORMAL, 3);
+        }
+        runAll(50);
+
+        // The quiet process gets three workers out of four although it queued its jobs last
+        List<String> first = _ran.subList(0, 12);
+        assertEquals(9, Collections.frequency(first, "quiet"));
+        assertEquals(3, Collections.frequency(first, "noisy"));
+    }
+
+    public void testWeightBounds() throws Exception {
+        for (int i = 0; i < 10; ++i) {
+            dispatch("heavy", JobDispatcher.HIGH, Integer.MAX_VALUE);
+            dispatch("none", JobDispatcher.NORMAL, 0);
+            dispatch("negative", JobDispatcher.LOW, -5);
+        }
+        runAll(30);
+    }
+
+    public void testRejected() throws Exception {
+        final List<String> rejected = Collections.synchronizedList(new ArrayList<String>());
+        for (final String name : new String[] { "queued1", "queued2" }) {
+            _dispatcher.dispatch(new JobDispatcher.Rejectable() {
+                public void run() {
+                    _ran.add(name);
+                }
+
+                public void rejected() {
+                    rejected.add(name);
+                }
+            }, JobDispatcher.NORMAL, null, 1);
+        }
+        // the queued jobs are rejected once the running one is done
+        _exec.shutdown();
+        _blocked.countDown();
+        assertTrue(_exec.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, rejected.size());
+        assertTrue(_ran.isEmpty());
+        assertEquals(0, _dispatcher.getWaitingJobs());
+
+        JobDispatcher dispatcher = new JobDispatcher(_exec, 1);
+        try {
+            dispatcher.dispatch(new JobDispatcher.Rejectable() {
+                public void run() {
+                    _ran.add("direct");
+                }
+
+                public void rejected() {
+                    rejected.add("direct");
+                }
+            }, JobDispatcher.NORMAL, null, 1);
+            fail("Rejected");
+        } catch (RejectedExecutionException e) {
+        }
+        assertEquals(3, rejected.size());
+        assertTrue(rejected.contains("direct"));
+    }
+
+    public void testNotBounded() throws Exception {
+        JobDispatcher dispatcher = new JobDispatcher(Executors.newCachedThreadPool(), 0);
+        final CountDownLatch running = new CountDownLatch(2);
+        for (int i = 0; i < 2; ++i) {
+            dispatcher.dispatch(new Runnable() {
+                public void run() {
+                    running.countDown();
+                }
+            }, JobDispatcher.LOW, "p", 1);
+        }
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertEquals(0, dispatcher.getWaitingJobs());
+    }
+
+    private void dispatch(final String name, int priority, int weight) {
+        _dispatcher.dispatch(new Runnable() {
+            public void run() {
+                _ran.add(name);
+            }
+        }, priority, name, weight);
+    }
+
+    private void runAll(int jobs) throws Exception {
+        _blocked.countDown();
+        for (int i = 0; i < 100 && _ran.size() < jobs; ++i)
+            Thread.sleep(50);
+        assertEquals(jobs, _ran.size());
+        assertEquals(0, _dispatcher.getWaitingJobs());
+    }
+}
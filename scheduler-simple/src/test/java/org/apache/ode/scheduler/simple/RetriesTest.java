@@ -69,6 +69,46 @@ public class RetriesTest extends TestCase implements Scheduler.JobProcessor {
         assertEquals(8, _tried);
     }
 
+    public void testDeadLetter() throws Exception {
+        // a single retry right away, the second failure sends the job to the dead jobs
+        _scheduler.setRetryPolicy(0, 100, 1, 1000, 0);
+        _scheduler.setNearFutureInterval(5000);
+        _scheduler.setImmediateInterval(1000);
+        _scheduler.start();
+        _txm.begin();
+        try {
+            _scheduler.schedulePersistedJob(newDetail("123"), new Date());
+        } finally {
+            _txm.commit();
+        }
+
+        DeadJobsMBean deadJobs = _scheduler.getDeadJobs();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (deadJobs.getDeadJobCount() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(100);
+        assertEquals(1, deadJobs.getDeadJobCount());
+        // failed once, then once more on the retry
+        assertTrue(_tried >= 2);
+        String[] listed = deadJobs.listDeadJobs(10);
+        assertEquals(1, listed.length);
+        assertTrue(listed[0].indexOf("foo=123") > 0);
+
+        assertEquals(1, deadJobs.replayAllDeadJobs());
+        assertEquals(0, deadJobs.getDeadJobCount());
+        assertFalse(deadJobs.replayDeadJob("unknown"));
+    }
+
+    public void testRetryDelay() throws Exception {
+        _scheduler.setRetryPolicy(10, 1000, 5, 60000, 0.5);
+        for (int i = 0; i < 8; ++i) {
+            long delay = _scheduler.getRetryDelay(i);
+            // capped first, then jittered
+            long base = Math.min((long) (1000 * Math.pow(5, i)), 60000);
+            assertTrue(delay >= base);
+            assertTrue(delay <= base * 3 / 2);
+        }
+    }
+
     public void testExecTransaction() throws Exception {
         final int[] tryCount = new int[1];
         tryCount[0] = 0;
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+import javax.transaction.TransactionManager;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.apache.geronimo.transaction.manager.GeronimoTransactionManager;
+import org.apache.ode.bpel.iapi.Scheduler.JobInfo;
+import org.apache.ode.bpel.iapi.Scheduler.JobProcessor;
+import org.apache.ode.bpel.iapi.Scheduler.JobProcessorException;
+import org.apache.ode.utils.GUID;
+
+/**
+ * Load generator for the scheduler: several SimpleScheduler nodes sharing one embedded Derby database are fed
+ * a mix of immediate, near future, far future and failing jobs, then it reports the throughput, the dispatch
+ * latency percentiles by kind of job and the number of SQL statements. Not a test case, run it with:
+ * <code>java [-Dname=value...] org.apache.ode.scheduler.simple.SchedulerLoadGenerator</code>
+ * <ul>
+ * <li>jobs: number of jobs, 20000 by default</li>
+ * <li>mix: share of each kind of job, "immediate:70,near:20,far:5,retry:5" by default</li>
+ * <li>nodes: number of scheduler nodes, 1 by default</li>
+ * <li>threads: size of the job executor of each node, 10 by default</li>
+ * <li>producers: number of threads scheduling the jobs, 4 by default</li>
+ * <li>batch: number of jobs scheduled per transaction, 10 by default</li>
+ * <li>instances: number of process instances the jobs are spread over, 0 for none</li>
+ * <li>work: time spent by each job, in milliseconds, 0 by default</li>
+ * <li>timeout: time to wait for the jobs to complete, in seconds, 300 by default</li>
+ * </ul>
+ * Any ode.scheduler.* property is passed on to the schedulers. The near future interval is 5s and the
+ * immediate interval is 2s unless set, so that far future jobs come up within the run.
+ */
+public class SchedulerLoadGenerator {
+
+    static final String[] KINDS = { "immediate", "near", "far", "retry" };
+
+    final int _jobs = Integer.getInteger("jobs", 20000);
+    final int _nodes = Integer.getInteger("nodes", 1);
+    final int _threads = Integer.getInteger("threads", 10);
+    final int _producers = Integer.getInteger("producers", 4);
+    final int _batch = Integer.getInteger("batch", 10);
+    final int _instances = Integer.getInteger("instances", 0);
+    final long _work = Long.getLong("work", 0);
+    final long _timeout = Long.getLong("timeout", 300);
+    final int[] _mix = parseMix(System.getProperty("mix", "immediate:70,near:20,far:5,retry:5"));
+    final Properties _conf = new Properties();
+
+    /** Number of SQL statements executed, by verb. */
+    final ConcurrentHashMap<String, AtomicLong> _statements = new ConcurrentHashMap<String, AtomicLong>();
+
+    /** Dispatch latencies in milliseconds, by kind of job, in completion order. */
+    final long[][] _latencies = new long[KINDS.length][];
+    final AtomicInteger[] _completed = new AtomicInteger[KINDS.length];
+
+    /** Jobs completed, to tell the jobs run twice. */
+    final ConcurrentHashMap<Integer, Boolean> _done = new ConcurrentHashMap<Integer, Boolean>();
+    final AtomicInteger _duplicates = new AtomicInteger();
+
+    /** Jobs of the retry kind that failed already. */
+    final ConcurrentHashMap<Integer, Boolean> _failed = new ConcurrentHashMap<Integer, Boolean>();
+    final CountDownLatch _allDone;
+    volatile long _lastCompletion;
+
+    TransactionManager _txm;
+    List<SimpleScheduler> _schedulers = new ArrayList<SimpleScheduler>();
+
+    public static void main(String[] args) throws Exception {
+        new SchedulerLoadGenerator().run();
+        System.exit(0);
+    }
+
+    SchedulerLoadGenerator() {
+        _allDone = new CountDownLatch(_jobs);
+        for (int k = 0; k < KINDS.length; ++k) {
+            _latencies[k] = new long[_jobs];
+            _completed[k] = new AtomicInteger();
+        }
+        _conf.setProperty("ode.scheduler.nearFutureInterval", "5000");
+        _conf.setProperty("ode.scheduler.immediateInterval", "2000");
+        for (Map.Entry<Object, Object> e : System.getProperties().entrySet()) {
+            if (e.getKey().toString().startsWith("ode.scheduler."))
+                _conf.put(e.getKey(), e.getValue());
+        }
+    }
+
+    void run() throws Exception {
+        _txm = new GeronimoTransactionManager();
+        DataSource ds = countStatements(newDataSource());
+        for (int n = 0; n < _nodes; ++n) {
+            SimpleScheduler scheduler = new SimpleScheduler("node" + n, new JdbcDelegate(ds), _conf);
+            scheduler.setExecutorService(Executors.newFixedThreadPool(_threads));
+            scheduler.setTransactionManager(_txm);
+            scheduler.setJobProcessor(new Processor());
+            _schedulers.add(scheduler);
+        }
+        for (SimpleScheduler scheduler : _schedulers)
+            scheduler.start();
+        _statements.clear();
+
+        System.out.println("Scheduling " + _jobs + " jobs " + System.getProperty("mix", "immediate:70,near:20,far:5,retry:5")
+                + " on " + _nodes + " node(s) of " + _threads + " threads");
+        long start = System.currentTimeMillis();
+        produce();
+        long scheduled = System.currentTimeMillis();
+        boolean complete = _allDone.await(_timeout, TimeUnit.SECONDS);
+        for (SimpleScheduler scheduler : _schedulers)
+            scheduler.shutdown();
+
+        report(start, scheduled, complete);
+    }
+
+    /**
+     * Schedules the jobs from several threads, in transactions of a few jobs spread over the nodes.
+     */
+    void produce() throws Exception {
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService producers = Executors.newFixedThreadPool(_producers);
+        for (int p = 0; p < _producers; ++p) {
+            producers.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Random random = new Random();
+                    int first;
+                    while ((first = next.getAndAdd(_batch)) < _jobs) {
+                        SimpleScheduler scheduler = _schedulers.get((first / _batch) % _schedulers.size());
+                        _txm.begin();
+                        try {
+                            for (int seq = first; seq < Math.min(first + _batch, _jobs); ++seq)
+                                schedule(scheduler, seq, random);
+                            _txm.commit();
+                        } catch (Exception e) {
+                            _txm.rollback();
+                            throw e;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        producers.shutdown();
+        producers.awaitTermination(_timeout, TimeUnit.SECONDS);
+    }
+
+    void schedule(SimpleScheduler scheduler, int seq, Random random) {
+        int kind = kindOf(seq);
+        long now = System.currentTimeMillis();
+        long due = now;
+        if (KINDS[kind].equals("near"))
+            due = now + scheduler._immediateInterval + random.nextInt((int) (scheduler._nearFutureInterval - scheduler._immediateInterval));
+        else if (KINDS[kind].equals("far"))
+            due = now + scheduler._nearFutureInterval + random.nextInt(2000);
+        HashMap<String, Object> detail = new HashMap<String, Object>();
+        detail.put("type", "INVOKE_RESPONSE");
+        detail.put("seq", seq);
+        detail.put("due", due);
+        if (_instances > 0)
+            detail.put("iid", (long) (seq % _instances));
+        scheduler.schedulePersistedJob(detail, new Date(due));
+    }
+
+    /**
+     * Spreads the kinds of jobs evenly over the sequence, following the mix.
+     */
+    int kindOf(int seq) {
+        int total = 0;
+        for (int share : _mix) total += share;
+        int slot = (int) ((seq * 7919L) % total);
+        for (int k = 0; k < _mix.length; ++k) {
+            if (slot < _mix[k]) return k;
+            slot -= _mix[k];
+        }
+        return 0;
+    }
+
+    class Processor implements JobProcessor {
+        public void onScheduledJob(JobInfo jobInfo) throws JobProcessorException {
+            long now = System.currentTimeMillis();
+            int seq = (Integer) jobInfo.jobDetail.get("seq");
+            int kind = kindOf(seq);
+            if (KINDS[kind].equals("retry") && _failed.putIfAbsent(seq, Boolean.TRUE) == null) {
+                // Fails once, gets retried
+                throw new JobProcessorException(true);
+            }
+            if (_work > 0) {
+                try {
+                    Thread.sleep(_work);
+                } catch (InterruptedException e) {
+                }
+            }
+            if (_done.putIfAbsent(seq, Boolean.TRUE) != null) {
+                _duplicates.incrementAndGet();
+                return;
+            }
+            int n = _completed[kind].getAndIncrement();
+            _latencies[kind][n] = now - (Long) jobInfo.jobDetail.get("due");
+            _lastCompletion = now;
+            _allDone.countDown();
+        }
+    }
+
+    void report(long start, long scheduled, boolean complete) {
+        int completed = _done.size();
+        long elapsed = Math.max(1, _lastCompletion - start);
+        System.out.println((complete ? "Completed " : "Timed out, completed ") + completed + " jobs in " + elapsed
+                + "ms (scheduling took " + (scheduled - start) + "ms), " + (completed * 1000L / elapsed) + " jobs/s");
+        System.out.println("Run twice: " + _duplicates.get() + ", failed once: " + _failed.size());
+        System.out.println("Dispatch latency (ms)    count      p50      p90      p99      max");
+        for (int k = 0; k < KINDS.length; ++k) {
+            int n = _completed[k].get();
+            if (n == 0) continue;
+            long[] l = new long[n];
+            System.arraycopy(_latencies[k], 0, l, 0, n);
+            Arrays.sort(l);
+            System.out.println(String.format("  %-20s %8d %8d %8d %8d %8d", KINDS[k], n, l[n / 2], l[n * 9 / 10],
+                    l[Math.min(n - 1, n * 99 / 100)], l[n - 1]));
+        }
+        long total = 0;
+        System.out.println("SQL statements");
+        for (Map.Entry<String, AtomicLong> e : new TreeMap<String, AtomicLong>(_statements).entrySet()) {
+            System.out.println(String.format("  %-20s %8d", e.getKey(), e.getValue().get()));
+            total += e.getValue().get();
+        }
+        System.out.println(String.format("  %-20s %8d (%.2f per job)", "total", total, total / (double) Math.max(1, completed)));
+    }
+
+    static int[] parseMix(String mix) {
+        int[] shares = new int[KINDS.length];
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            int k = Arrays.asList(KINDS).indexOf(kv[0]);
+            if (k < 0)
+                throw new IllegalArgumentException("Unknown kind of job " + kv[0] + ", expected one of " + Arrays.asList(KINDS));
+            shares[k] = Integer.parseInt(kv[1]);
+        }
+        return shares;
+    }
+
+    static DataSource newDataSource() throws Exception {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:" + new GUID().toString());
+        ds.setCreateDatabase("create");
+        Connection c = ds.getConnection();
+        try {
+            c.createStatement().executeUpdate("CREATE TABLE ode_job (jobid CHAR(64) NOT NULL DEFAULT '', "
+                    + "ts BIGINT NOT NULL DEFAULT 0, nodeid char(64), scheduled int NOT NULL DEFAULT 0, "
+                    + "transacted int NOT NULL DEFAULT 0, details blob(4096), instanceid BIGINT, jobtype VARCHAR(32), "
+                    + "PRIMARY KEY(jobid))");
+            c.createStatement().executeUpdate("CREATE INDEX IDX_ODE_JOB_TS ON ode_job(ts)");
+            c.createStatement().executeUpdate("CREATE INDEX IDX_ODE_JOB_NODEID ON ode_job(nodeid)");
+            c.createStatement().executeUpdate("CREATE INDEX IDX_ODE_JOB_INSTANCEID ON ode_job(instanceid)");
+            c.createStatement().executeUpdate("CREATE TABLE ode_node (nodeid char(64) NOT NULL DEFAULT '', "
+                    + "lease BIGINT NOT NULL DEFAULT 0, PRIMARY KEY(nodeid))");
+        } finally {
+            c.close();
+        }
+        return ds;
+    }
+
+    /**
+     * Wraps the data source so that the statements executed through its connections are counted, by verb.
+     */
+    DataSource countStatements(final DataSource ds) {
+        return (DataSource) proxy(ds, DataSource.class, null);
+    }
+
+    Object proxy(final Object target, Class<?> type, final String sql) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                String name = method.getName();
+                if (result instanceof Connection)
+                    return proxy(result, Connection.class, null);
+                if (result instanceof Statement && name.startsWith("prepare"))
+                    return proxy(result, method.getReturnType(), (String) args[0]);
+                if (result instanceof Statement)
+                    return proxy(result, method.getReturnType(), null);
+                if (name.startsWith("execute")) {
+                    String statement = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+                    String verb = statement == null ? "other" : statement.trim().split("\\s+")[0].toLowerCase();
+                    count(name.equals("executeBatch") ? verb + " (batch)" : verb);
+                }
+                return result;
+            }
+        });
+    }
+
+    void count(String verb) {
+        AtomicLong counter = _statements.get(verb);
+        if (counter == null) {
+            _statements.putIfAbsent(verb, new AtomicLong());
+            counter = _statements.get(verb);
+        }
+        counter.incrementAndGet();
+    }
+}
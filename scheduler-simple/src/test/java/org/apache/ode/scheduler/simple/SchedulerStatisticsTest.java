@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Test of the job statistics of the scheduler.
+ */
+public class SchedulerStatisticsTest extends TestCase {
+
+    public void testRatesAndLatencies() throws Exception {
+        HashMap<String, Long> outstanding = new HashMap<String, Long>();
+        SchedulerStatistics stats = new SchedulerStatistics(outstanding);
+        assertEquals(0, stats.getJobTypes().length);
+        assertEquals(0.0, stats.getTotalCompletionRate(), 0.0);
+
+        for (int i = 0; i < 10; ++i)
+            stats.jobCompleted("RESUME", 2000000L, false);
+        stats.jobCompleted("INVOKE_RESPONSE", 10000000L, true);
+        Thread.sleep(100);
+        double rate = stats.sample();
+
+        assertEquals(2, stats.getJobTypes().length);
+        assertEquals("INVOKE_RESPONSE", stats.getJobTypes()[0]);
+        assertEquals(10, stats.getCompletedJobs("RESUME"));
+        assertEquals(1, stats.getFailedJobs("INVOKE_RESPONSE"));
+        assertEquals(11, stats.getTotalCompletedJobs());
+        assertTrue(rate > 0 && rate <= 110);
+        assertEquals(rate, stats.getTotalCompletionRate(), 0.0);
+        assertTrue(stats.getCompletionRate("RESUME") > stats.getCompletionRate("INVOKE_RESPONSE"));
+        assertEquals(2.0, stats.getAverageLatency("RESUME"), 0.001);
+        assertEquals(10.0, stats.getAverageLatency("INVOKE_RESPONSE"), 0.001);
+
+        // Nothing completed, the rate decreases but the latency is kept
+        Thread.sleep(100);
+        assertTrue(stats.sample() < rate);
+        assertEquals(2.0, stats.getAverageLatency("RESUME"), 0.001);
+
+        outstanding.put("job", 0L);
+        assertEquals(1, stats.getOutstandingJobs());
+
+        stats.reset();
+        assertEquals(0, stats.getJobTypes().length);
+        assertEquals(0, stats.getTotalCompletedJobs());
+    }
+}
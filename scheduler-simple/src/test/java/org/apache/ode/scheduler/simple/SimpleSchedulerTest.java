@@ -41,6 +41,8 @@ public class SimpleSchedulerTest extends TestCase implements JobProcessor {
     ArrayList<JobInfo> _jobs;
     ArrayList<JobInfo> _commit;
     TransactionManager _txm;
+    int _running;
+    int _maxRunning;
 
     public void setUp() throws Exception {
         _txm = new GeronimoTransactionManager();
@@ -95,6 +97,182 @@ public class SimpleSchedulerTest extends TestCase implements JobProcessor {
         assertEquals(1, _jobs.size());
     }
 
+    public void testBatchedJobUpdates() throws Exception {
+        long later = System.currentTimeMillis() + 60000;
+        _txm.begin();
+        String kept;
+        try {
+            kept = _scheduler.schedulePersistedJob(newDetail("kept"), new Date(later));
+            String cancelled = _scheduler.schedulePersistedJob(newDetail("cancelled"), new Date(later));
+            // Nothing hits the database before the commit
+            assertEquals(0, _ds.delegate().getNodeIds().size());
+            _scheduler.cancelJob(cancelled);
+        } finally {
+            _txm.commit();
+        }
+        List<Job> jobs = _ds.delegate().dequeueImmediate("n1", later + 1, 10);
+        assertEquals(1, jobs.size());
+        assertEquals(kept, jobs.get(0).jobId);
+
+        _txm.begin();
+        try {
+            _scheduler.schedulePersistedJob(newDetail("rolledback"), new Date(later));
+        } finally {
+            _txm.rollback();
+        }
+        assertEquals(1, _ds.delegate().dequeueImmediate("n1", later + 1, 10).size());
+    }
+
+    public void testFixedLoadBatch() throws Exception {
+        _scheduler.setAdaptiveLoading(false);
+        _scheduler.setImmediateInterval(200);
+        // 200ms at 20 tps, below the floor of the adaptive batch
+        _scheduler.setTransactionsPerSecond(20);
+        _scheduler.start();
+        _txm.begin();
+        try {
+            for (int i = 0; i < 6; i++)
+                _scheduler.schedulePersistedJob(newDetail("job" + i), new Date());
+        } finally {
+            _txm.commit();
+        }
+        Thread.sleep(1000);
+        assertEquals(6, _jobs.size());
+        assertEquals(4, _scheduler.getStatistics().getLoadBatchSize());
+        // sampled on the load tick all the same
+        assertTrue(_scheduler.getStatistics().getTotalCompletionRate() >= 0);
+    }
+
+    public void testRereadJobsNotFull() throws Exception {
+        _scheduler.setImmediateInterval(10000);
+        // 10s at 1 tps, an initial batch of 10 jobs
+        _scheduler.setTransactionsPerSecond(1);
+        _scheduler.start();
+        // queued on commit, the jobs are still in the database at the next loads
+        _txm.begin();
+        try {
+            for (int i = 0; i < 30; i++)
+                _scheduler.schedulePersistedJob(newDetail("job" + i), new Date(System.currentTimeMillis() + 5000));
+        } finally {
+            _txm.commit();
+        }
+        for (int i = 0; i < 4; i++)
+            assertTrue(_scheduler.doLoadImmediate());
+        // re-reading outstanding jobs is no full load, the batch doesn't grow
+        assertEquals(10, _scheduler.getStatistics().getLoadBatchSize());
+    }
+
+    public void testInstanceLanes() throws Exception {
+        _scheduler.start();
+        _txm.begin();
+        try {
+            for (int i = 0; i < 4; ++i) {
+                Map<String, Object> detail = newDetail("lane" + i);
+                detail.put("iid", 1L);
+                detail.put("delay", 100L);
+                _scheduler.schedulePersistedJob(detail, new Date());
+            }
+        } finally {
+            _txm.commit();
+        }
+        Thread.sleep(1000);
+        assertEquals(4, _jobs.size());
+        // Never two jobs of the same instance at once
+        assertEquals(1, _maxRunning);
+    }
+
+    public void testResumeMerged() throws Exception {
+        _scheduler.start();
+        _txm.begin();
+        try {
+            Map<String, Object> detail = newDetail("slow");
+            detail.put("iid", 1L);
+            detail.put("type", "INVOKE_RESPONSE");
+            detail.put("delay", 300L);
+            _scheduler.schedulePersistedJob(detail, new Date());
+            for (int i = 0; i < 3; ++i) {
+                detail = newDetail("resume" + i);
+                detail.put("iid", 1L);
+                detail.put("type", "RESUME");
+                _scheduler.schedulePersistedJob(detail, new Date());
+            }
+        } finally {
+            _txm.commit();
+        }
+        Thread.sleep(1000);
+        assertEquals(2, _jobs.size());
+        assertEquals("resume0", _jobs.get(1).jobDetail.get("foo"));
+        // The merged jobs are gone too
+        assertEquals(0, _ds.delegate().dequeueImmediate("n1", Long.MAX_VALUE, 100).size());
+    }
+
+    public void testNodeChannel() throws Exception {
+        LoopbackNodeChannel channel = new LoopbackNodeChannel();
+        _scheduler.setNodeChannel(channel);
+        _scheduler.start();
+        SimpleScheduler n2 = newScheduler("n2");
+        n2.setNodeChannel(channel);
+        n2.start();
+        try {
+            _scheduler.updateHeartBeat("n2");
+            // Let the initial loads go by, the next ones are 27s away
+            Thread.sleep(200);
+
+            String[] jobIds = new String[2];
+            _txm.begin();
+            try {
+                for (int i = 0; i < 2; ++i) {
+                    Map<String, Object> detail = newDetail("instance" + i);
+                    detail.put("iid", (long) i);
+                    jobIds[i] = _scheduler.schedulePersistedJob(detail, new Date());
+                }
+            } finally {
+                _txm.commit();
+            }
+            // Instance 1 went to n2, which only knows about it through the channel
+            Thread.sleep(500);
+            assertEquals(2, _jobs.size());
+            assertEquals(0, _ds.delegate().dequeueJobs("n2", Arrays.asList(jobIds), Long.MAX_VALUE).size());
+            assertEquals(0, _ds.delegate().dequeueJobs("n1", Arrays.asList(jobIds), Long.MAX_VALUE).size());
+        } finally {
+            n2.shutdown();
+        }
+    }
+
+    public void testLeaseTakeover() throws Exception {
+        _scheduler.setNearFutureInterval(2000);
+        _scheduler.setImmediateInterval(1000);
+        _scheduler.setStaleInterval(500);
+        _scheduler.start();
+        SimpleScheduler n2 = newScheduler("n2");
+        n2.setNearFutureInterval(2000);
+        n2.setImmediateInterval(1000);
+        n2.setStaleInterval(500);
+        n2.start();
+        try {
+            // n2 knows about n1 through its lease, not its jobs
+            Thread.sleep(300);
+
+            _txm.begin();
+            try {
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < 4; ++i)
+                    _scheduler.schedulePersistedJob(newDetail("near" + i), new Date(now + 1500 + i));
+                _scheduler.schedulePersistedJob(newDetail("far"), new Date(now + 3000));
+            } finally {
+                _txm.commit();
+            }
+            // Gives its lease up
+            _scheduler.stop();
+
+            Thread.sleep(4500);
+            assertEquals(5, _jobs.size());
+            assertEquals(1, _ds.delegate().getNodeLeases().size());
+        } finally {
+            n2.shutdown();
+        }
+    }
+
     public void testStartStop() throws Exception {
         _scheduler.start();
         _txm.begin();
@@ -209,6 +387,17 @@ public class SimpleSchedulerTest extends TestCase implements JobProcessor {
     public void onScheduledJob(final JobInfo jobInfo) throws JobProcessorException {
         synchronized (_jobs) {
             _jobs.add(jobInfo);
+            _maxRunning = Math.max(_maxRunning, ++_running);
+        }
+        try {
+            if (jobInfo.jobDetail.get("delay") != null)
+                Thread.sleep((Long) jobInfo.jobDetail.get("delay"));
+        } catch (InterruptedException e) {
+            // ignore
+        } finally {
+            synchronized (_jobs) {
+                _running--;
+            }
         }
         
         try {
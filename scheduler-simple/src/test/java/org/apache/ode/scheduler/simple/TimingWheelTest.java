@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test of the timing wheel of the scheduler thread.
+ */
+public class TimingWheelTest extends TestCase {
+
+    static final long BASE = 1000000L * 256 + 37;
+
+    public void testExpiry() throws Exception {
+        TimingWheel wheel = new TimingWheel(BASE);
+        Random random = new Random(1);
+        // From the next millisecond to about 80 minutes, crossing the cascades of all the wheels
+        for (int i = 0; i < 20000; ++i)
+            wheel.add(new TimingWheel.Entry(new Task(BASE + (long) (random.nextDouble() * random.nextDouble() * 5000000))));
+        wheel.add(new TimingWheel.Entry(new Task(BASE - 1000)));
+
+        List<TimingWheel.Entry> expired = new ArrayList<TimingWheel.Entry>();
+        int count = 0;
+        for (long now = BASE; now <= BASE + 5000000; now += 1 + random.nextInt(40)) {
+            wheel.advance(now, expired);
+            for (TimingWheel.Entry entry : expired) {
+                assertTrue("early " + entry.task.schedDate, entry.task.schedDate <= now);
+                assertTrue("late " + entry.task.schedDate, now - entry.task.schedDate < 40 || entry.task.schedDate < BASE);
+            }
+            count += expired.size();
+            expired.clear();
+        }
+        assertEquals(20001, count);
+    }
+
+    public void testCancel() throws Exception {
+        TimingWheel wheel = new TimingWheel(BASE);
+        TimingWheel.Entry soon = new TimingWheel.Entry(new Task(BASE + 10));
+        TimingWheel.Entry later = new TimingWheel.Entry(new Task(BASE + 100000));
+        wheel.add(soon);
+        wheel.add(later);
+        soon.canceled = true;
+        later.canceled = true;
+
+        List<TimingWheel.Entry> expired = new ArrayList<TimingWheel.Entry>();
+        wheel.advance(BASE + 200000, expired);
+        assertTrue(expired.isEmpty());
+    }
+
+    public void testNextDelay() throws Exception {
+        TimingWheel wheel = new TimingWheel(BASE);
+        // Nothing before the end of the turn of the first wheel
+        assertEquals(256 - 37, wheel.nextDelay(BASE));
+        wheel.add(new TimingWheel.Entry(new Task(BASE + 50)));
+        assertEquals(50, wheel.nextDelay(BASE));
+        assertEquals(0, wheel.nextDelay(BASE + 60));
+    }
+}
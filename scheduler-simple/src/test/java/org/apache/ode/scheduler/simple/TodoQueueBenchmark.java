@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ode.scheduler.simple;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Micro-benchmark of the todo queue of the scheduler thread, with timers enqueued and half of them canceled
+ * from several threads, the timing wheel versus the priority queue guarded by a lock it replaced. Not a test
+ * case, run it with:
+ * <code>java org.apache.ode.scheduler.simple.TodoQueueBenchmark [jobs per thread] [threads]</code>
+ */
+public class TodoQueueBenchmark {
+
+    interface TodoQueue {
+        void enqueue(Task task);
+        void dequeue(Task task);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        // Warm up the JIT
+        run(newPriorityQueue(), jobs / 10, threads);
+        run(newTimingWheel(), jobs / 10, threads);
+
+        report("priority queue", jobs * threads, run(newPriorityQueue(), jobs, threads));
+        report("timing wheel", jobs * threads, run(newTimingWheel(), jobs, threads));
+        System.exit(0);
+    }
+
+    static long run(final TodoQueue queue, final int jobs, int threads) throws Exception {
+        final long now = System.currentTimeMillis();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; ++t) {
+            final int thread = t;
+            new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < jobs; ++i) {
+                            // Timers between one and ten minutes from now, like onAlarm, wait and invoke checks
+                            String jobId = thread + "-" + i;
+                            queue.enqueue(new Job(now + 60000 + (i * 7919L) % 540000, jobId, true, null));
+                            if (i % 2 == 1)
+                                queue.dequeue(new Job(0, thread + "-" + (i - 1), false, null));
+                        }
+                    } catch (InterruptedException e) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+
+    static void report(String mode, int jobs, long elapsedNs) {
+        System.out.println(mode + ": " + jobs + " jobs enqueued, half canceled in " + (elapsedNs / 1000000) + "ms, "
+                + (long) (jobs * 1e9 / elapsedNs) + " jobs/s");
+    }
+
+    static TodoQueue newTimingWheel() {
+        final SchedulerThread st = new SchedulerThread(new TaskRunner() {
+            public void runTask(Task task) {
+            }
+        });
+        st.start();
+        return new TodoQueue() {
+            public void enqueue(Task task) {
+                st.enqueue(task);
+            }
+
+            public void dequeue(Task task) {
+                st.dequeue(task);
+            }
+        };
+    }
+
+    /**
+     * The todo queue of the scheduler thread before the timing wheel.
+     */
+    static TodoQueue newPriorityQueue() {
+        final PriorityBlockingQueue<Task> todo = new PriorityBlockingQueue<Task>(200, new JobComparatorByDate());
+        final ReentrantLock lock = new ReentrantLock();
+        return new TodoQueue() {
+            public void enqueue(Task task) {
+                lock.lock();
+                try {
+                    todo.add(task);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            public void dequeue(Task task) {
+                lock.lock();
+                try {
+                    todo.remove(task);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+}